@@ -16,6 +16,7 @@ import synoptic.main.options.SynopticOptions;
 import synoptic.main.parser.TraceParser;
 import synoptic.model.ChainsTraceGraph;
 import synoptic.model.EventNode;
+import synoptic.model.TraceGraph;
 import synoptic.model.event.EventType;
 import synoptic.model.export.DotExportFormatter;
 
@@ -60,7 +61,10 @@ public class InvariMintInitializer {
 
     }
 
-    /** Generate the traceGraph from input log files. */
+    /**
+     * Generate the traceGraph from input log files, or load it from a trace
+     * graph snapshot.
+     */
     private void getSynopticChainsTraceGraph() throws Exception {
         // Set up options in Synoptic Main that are used by the library.
         AbstractOptions options = new SynopticOptions().toAbstractOptions();
@@ -75,6 +79,18 @@ public class InvariMintInitializer {
                     new DotExportFormatter());
         }
 
+        if (opts.loadTraceGraph != null) {
+            TraceGraph<?> loadedGraph = AbstractMain
+                    .loadTraceGraph(opts.loadTraceGraph);
+            if (!(loadedGraph instanceof ChainsTraceGraph)) {
+                String errMsg = "Partially ordered trace graph snapshot detected. Stopping.";
+                logger.severe(errMsg);
+                throw new Exception(errMsg);
+            }
+            traceGraph = (ChainsTraceGraph) loadedGraph;
+            return;
+        }
+
         // Instantiate the parser and parse the log lines.
         TraceParser parser = new TraceParser(opts.regExps,
                 opts.partitionRegExp, opts.separatorRegExp, opts.dateFormat);
@@ -105,6 +121,10 @@ public class InvariMintInitializer {
         traceGraph = parser.generateDirectTORelation(parsedEvents);
         // //////////////////
 
+        if (opts.saveTraceGraph != null) {
+            AbstractMain.saveTraceGraph(opts.saveTraceGraph, traceGraph);
+        }
+
     }
 
     /**
@@ -189,7 +189,7 @@ public class InvariMintMain {
                     + opts.getOptDesc("outputPathPrefix");
         }
 
-        if (opts.logFilenames.size() == 0) {
+        if (opts.logFilenames.size() == 0 && opts.loadTraceGraph == null) {
             err = "No log filenames specified, exiting. Try cmd line option:\n\t"
                     + opts.getOptDesc("help");
         }
@@ -127,6 +127,24 @@ public class InvariMintOptions extends Options {
             value = "Format of the dates contained in the log (required by DATETIME)",
             aliases = { "-dateFormat" })
     public String dateFormat = "dd/MMM/yyyy:HH:mm:ss";
+
+    /**
+     * Write the trace graph that is built from the parsed log to a binary
+     * snapshot file, which a later run can load instead of parsing the log.
+     */
+    @Option(
+            value = "Write the trace graph built from the parsed log to a binary snapshot file, which can be loaded with loadTraceGraph",
+            aliases = { "-save-trace-graph" })
+    public String saveTraceGraph = null;
+
+    /**
+     * Load the trace graph from a snapshot file written with saveTraceGraph
+     * (by InvariMint or Synoptic), instead of parsing log files.
+     */
+    @Option(
+            value = "Load the trace graph from a binary snapshot file written with saveTraceGraph, instead of parsing log files",
+            aliases = { "-load-trace-graph" })
+    public String loadTraceGraph = null;
     // end option group "Input Options"
 
     // //////////////////////////////////////////////////
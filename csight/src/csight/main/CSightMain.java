@@ -51,6 +51,7 @@ import synoptic.main.options.SynopticOptions;
 import synoptic.main.parser.TraceParser;
 import synoptic.model.DAGsTraceGraph;
 import synoptic.model.EventNode;
+import synoptic.model.TraceGraph;
 import synoptic.model.channelid.ChannelId;
 import synoptic.model.event.DistEventType;
 import synoptic.model.event.StringEventType;
@@ -259,7 +260,8 @@ public class CSightMain {
 
     /**
      * Runs the CSight process based on the settings in opts. In particular, we
-     * expect that the logFilenames are specified in opts.
+     * expect that the logFilenames (or a trace graph snapshot to load) are
+     * specified in opts.
      * 
      * @throws Exception
      */
@@ -268,6 +270,29 @@ public class CSightMain {
             initializeSynoptic();
         }
 
+        if (opts.loadTraceGraph != null) {
+            TraceGraph<?> loadedGraph = AbstractMain
+                    .loadTraceGraph(opts.loadTraceGraph);
+            if (!(loadedGraph instanceof DAGsTraceGraph)) {
+                String err = "Trace graph snapshot " + opts.loadTraceGraph
+                        + " is not of a partially ordered log, exiting.";
+                throw new OptionException(err);
+            }
+
+            // Interpret the event types of the loaded events with the channel
+            // specification, as is done for parsed events.
+            List<EventNode> loadedEvents = new ArrayList<EventNode>();
+            for (EventNode eNode : loadedGraph.getNodes()) {
+                if (!eNode.getEType().isSpecialEventType()) {
+                    loadedEvents.add(eNode);
+                }
+            }
+            postParseEvents(loadedEvents);
+
+            run((DAGsTraceGraph) loadedGraph);
+            return;
+        }
+
         if (opts.logFilenames.isEmpty()) {
             String err = "No log filenames specified, exiting. Specify log files at the end of the command line.";
             throw new OptionException(err);
@@ -289,6 +314,10 @@ public class CSightMain {
         // Parser can now be garbage-collected.
         parser = null;
 
+        if (opts.saveTraceGraph != null) {
+            AbstractMain.saveTraceGraph(opts.saveTraceGraph, traceGraph);
+        }
+
         run(traceGraph);
     }
 
@@ -475,6 +504,7 @@ public class CSightMain {
         options.ignoreNonMatchingLines = opts.ignoreNonMatchingLines;
         options.recoverFromParseErrors = opts.recoverFromParseErrors;
         options.debugParse = opts.debugParse;
+        options.bitSetTransitiveClosure = opts.bitSetTransitiveClosure;
         this.synMain = new SynopticMain(options, new DotExportFormatter());
     }
 
@@ -137,6 +137,24 @@ public class CSightOptions extends Options {
             aliases = { "-dateFormat" })
     public String dateFormat = "dd/MMM/yyyy:HH:mm:ss";
 
+    /**
+     * Write the trace graph that is built from the parsed log to a binary
+     * snapshot file, which a later run can load instead of parsing the log.
+     */
+    @Option(
+            value = "Write the trace graph built from the parsed log to a binary snapshot file, which can be loaded with loadTraceGraph",
+            aliases = { "-save-trace-graph" })
+    public String saveTraceGraph = null;
+
+    /**
+     * Load the trace graph from a snapshot file written with saveTraceGraph,
+     * instead of parsing log files.
+     */
+    @Option(
+            value = "Load the trace graph from a binary snapshot file written with saveTraceGraph, instead of parsing log files",
+            aliases = { "-load-trace-graph" })
+    public String loadTraceGraph = null;
+
     @Option(
             value = "Set number of top queue elements to compare states for partition graph construction.",
             aliases = { "-topK" })
@@ -154,6 +172,15 @@ public class CSightOptions extends Options {
             value = "-t Use the transitive closure invariant mining algorithm (usually slower)")
     public boolean useTransitiveClosureMining = false;
 
+    /**
+     * With useTransitiveClosureMining, compute the transitive closure of the
+     * traces as bitsets over a topological numbering of each trace.
+     */
+    @Option(
+            value = "With useTransitiveClosureMining, compute the transitive closure of the traces as bitsets",
+            aliases = { "-bitset-tc" })
+    public boolean bitSetTransitiveClosure = false;
+
     // end option group "Debugging Options"
     // //////////////////////////////////////////////////
 
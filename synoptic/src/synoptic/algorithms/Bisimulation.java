@@ -10,6 +10,8 @@
 
 package synoptic.algorithms;
 
+import java.io.File;
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashMap;
@@ -20,22 +22,30 @@ import java.util.List;
 import java.util.Map;
 import java.util.Random;
 import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
 import java.util.logging.Logger;
 
 import synoptic.algorithms.graphops.IOperation;
 import synoptic.algorithms.graphops.PartitionMerge;
 import synoptic.algorithms.graphops.PartitionMultiSplit;
 import synoptic.algorithms.graphops.PartitionSplit;
-import synoptic.benchmarks.PerformanceMetrics;
+import synoptic.algorithms.prioritizers.CExamplePrioritizer;
+import synoptic.benchmarks.MetricsRegistry;
 import synoptic.benchmarks.TimedTask;
+import synoptic.invariants.BinaryInvariant;
 import synoptic.invariants.CExamplePath;
 import synoptic.invariants.ITemporalInvariant;
 import synoptic.invariants.TemporalInvariantSet;
 import synoptic.invariants.constraints.TempConstrainedInvariant;
+import synoptic.invariants.fsmcheck.FsmModelChecker;
+import synoptic.invariants.fsmcheck.IncrementalInvariantChecker;
 import synoptic.main.AbstractMain;
 import synoptic.model.EventNode;
 import synoptic.model.Partition;
 import synoptic.model.PartitionGraph;
+import synoptic.model.PartitionSplitView;
+import synoptic.model.RefinementCheckpoint;
 import synoptic.model.interfaces.ITransition;
 import synoptic.util.InternalSynopticException;
 
@@ -71,7 +81,7 @@ public class Bisimulation {
     public static void splitUntilAllInvsSatisfied(PartitionGraph pGraph) {
         // TODO: assert that the pGraph represents totally ordered traces.
 
-        TimedTask refinement = PerformanceMetrics.createTask("refinement",
+        TimedTask refinement = MetricsRegistry.createTask("refinement",
                 false);
         AbstractMain main = AbstractMain.getInstance();
         if (main.options.dumpIntermediateStages) {
@@ -80,16 +90,156 @@ public class Bisimulation {
         }
 
         int numSplitSteps = 0;
-        int prevNumSplitSteps = 0;
 
         Set<ITemporalInvariant> unsatisfiedInvariants = new LinkedHashSet<ITemporalInvariant>();
         unsatisfiedInvariants.addAll(pGraph.getInvariants().getSet());
-        Set<ITemporalInvariant> satisfiedInvariants = new LinkedHashSet<ITemporalInvariant>();
 
+        // Resume from the checkpoint of an interrupted run, if there is one.
+        File checkpointFile = null;
+        if (main.options.refinementCheckpoint != null) {
+            checkpointFile = new File(main.options.refinementCheckpoint);
+            if (main.options.resume && checkpointFile.exists()) {
+                RefinementCheckpoint checkpoint;
+                try {
+                    checkpoint = RefinementCheckpoint.read(checkpointFile,
+                            pGraph);
+                } catch (IOException e) {
+                    throw new InternalSynopticException(e);
+                }
+                checkpoint.restorePartitions(pGraph);
+                numSplitSteps = checkpoint.getNumSplitSteps();
+                unsatisfiedInvariants = checkpoint.getUnsatisfiedInvariants();
+                main.random = checkpoint.getRandom();
+                logger.info("Resumed refinement from " + checkpointFile
+                        + " at split step " + numSplitSteps);
+            }
+        }
+
+        // Orders the counter-examples of each step. The same instance is used
+        // for all steps, so that learned strategies can learn across them.
+        CExamplePrioritizer prioritizer = CExamplePrioritizer
+                .newPrioritizer(main.options.cExamplePriority);
+
+        if (main.options.cExamplePriorityBaseline
+                && !prioritizer.getName().equals(CExamplePrioritizer.SHUFFLE)) {
+            prioritizer.setNumBaselineSplitSteps(countBaselineSplitSteps(
+                    pGraph, numSplitSteps, unsatisfiedInvariants));
+        }
+
+        // With incremental checking, the checker keeps the states of the
+        // partitions across iterations, and the counter-examples are only
+        // computed for the invariants that it finds to be violated.
+        IncrementalInvariantChecker<Partition> checker = null;
+        Set<Partition> splitParts = null;
+        if (main.options.useFSMChecker && main.options.incrementalChecking) {
+            checker = new IncrementalInvariantChecker<Partition>(
+                    unsatisfiedInvariants, pGraph);
+            splitParts = new LinkedHashSet<Partition>();
+        }
+
+        // Evaluates candidate splits in parallel in all steps.
+        ForkJoinPool splitPool = newSplitPool();
+        try {
+            numSplitSteps = refine(pGraph, numSplitSteps, unsatisfiedInvariants,
+                    checker, splitParts, prioritizer, splitPool,
+                    checkpointFile);
+        } finally {
+            if (splitPool != null) {
+                splitPool.shutdown();
+            }
+        }
+
+        if (main.options.dumpIntermediateStages) {
+            main.exportNonInitialGraph(
+                    main.getIntermediateDumpFilename("r", numSplitSteps),
+                    pGraph);
+        }
+
+        MetricsRegistry.get().histogram("numOfSplitSteps")
+                .record(numSplitSteps);
+        prioritizer.report();
+        refinement.stop();
+    }
+
+    /**
+     * Refines pGraph with the default counter-example order (shuffle), from
+     * the state after numSplitSteps steps, and returns the number of split
+     * steps that it made. The partitions of pGraph and the random number
+     * generator of the run are then restored, so that refinement with another
+     * order starts from the same state. Intermediate stages are not dumped.
+     */
+    private static int countBaselineSplitSteps(PartitionGraph pGraph,
+            int numSplitSteps, Set<ITemporalInvariant> unsatisfiedInvariants) {
+        AbstractMain main = AbstractMain.getInstance();
+        RefinementCheckpoint start = RefinementCheckpoint.take(pGraph,
+                numSplitSteps, unsatisfiedInvariants, main.random);
+        boolean dumpIntermediateStages = main.options.dumpIntermediateStages;
+        main.options.dumpIntermediateStages = false;
+
+        Set<ITemporalInvariant> baselineUnsatisfiedInvariants = start
+                .getUnsatisfiedInvariants();
+        IncrementalInvariantChecker<Partition> checker = null;
+        Set<Partition> splitParts = null;
+        if (main.options.useFSMChecker && main.options.incrementalChecking) {
+            checker = new IncrementalInvariantChecker<Partition>(
+                    baselineUnsatisfiedInvariants, pGraph);
+            splitParts = new LinkedHashSet<Partition>();
+        }
+
+        ForkJoinPool splitPool = newSplitPool();
+        try {
+            return refine(pGraph, numSplitSteps,
+                    baselineUnsatisfiedInvariants, checker, splitParts,
+                    CExamplePrioritizer
+                            .newPrioritizer(CExamplePrioritizer.SHUFFLE),
+                    splitPool, null)
+                    - numSplitSteps;
+        } finally {
+            if (splitPool != null) {
+                splitPool.shutdown();
+            }
+            main.options.dumpIntermediateStages = dumpIntermediateStages;
+            start.restorePartitions(pGraph);
+            main.random = start.getRandom();
+        }
+    }
+
+    /**
+     * Returns a pool of splitThreads threads that evaluates candidate splits
+     * in parallel, or null if splitThreads is 1.
+     */
+    private static ForkJoinPool newSplitPool() {
+        int splitThreads = AbstractMain.getInstance().options.splitThreads;
+        if (splitThreads > 1) {
+            return new ForkJoinPool(splitThreads);
+        }
+        return null;
+    }
+
+    /**
+     * Performs split steps on pGraph, starting after numSplitSteps steps with
+     * the given unsatisfied invariants, until all invariants are satisfied.
+     * Returns the number of split steps made in total.
+     */
+    private static int refine(PartitionGraph pGraph, int numSplitSteps,
+            Set<ITemporalInvariant> unsatisfiedInvariants,
+            IncrementalInvariantChecker<Partition> checker,
+            Set<Partition> splitParts, CExamplePrioritizer prioritizer,
+            ForkJoinPool splitPool, File checkpointFile) {
+        AbstractMain main = AbstractMain.getInstance();
+        int prevNumSplitSteps = 0;
+        int lastCheckpointStep = numSplitSteps;
+        Set<ITemporalInvariant> satisfiedInvariants = new LinkedHashSet<ITemporalInvariant>();
         List<CExamplePath<Partition>> counterExampleTraces = null;
 
         while (true) {
             // Recompute the counter-examples for the unsatisfied invariants.
+            if (checker != null) {
+                Set<ITemporalInvariant> violatedInvariants = new LinkedHashSet<ITemporalInvariant>(
+                        checker.getViolatedInvariants());
+                violatedInvariants.retainAll(unsatisfiedInvariants);
+                unsatisfiedInvariants = violatedInvariants;
+            }
             counterExampleTraces = new TemporalInvariantSet(
                     unsatisfiedInvariants).getAllCounterExamples(pGraph);
             logger.fine("Counter-examples: " + counterExampleTraces);
@@ -125,7 +275,7 @@ public class Bisimulation {
             // Perform the splitting.
             prevNumSplitSteps = numSplitSteps;
             numSplitSteps = performSplits(numSplitSteps, pGraph,
-                    counterExampleTraces);
+                    counterExampleTraces, splitParts, prioritizer, splitPool);
 
             if (numSplitSteps == prevNumSplitSteps) {
                 // No splits were performed, which means that we could not
@@ -139,16 +289,39 @@ public class Bisimulation {
                                 + unsatisfiedInvariants);
             }
 
-        }
+            if (checker != null) {
+                checker.update(splitParts);
+                splitParts.clear();
+            }
 
-        if (main.options.dumpIntermediateStages) {
-            main.exportNonInitialGraph(
-                    main.getIntermediateDumpFilename("r", numSplitSteps),
-                    pGraph);
+            if (checkpointFile != null
+                    && numSplitSteps - lastCheckpointStep >= main.options.checkpointInterval) {
+                writeCheckpoint(pGraph, numSplitSteps, unsatisfiedInvariants,
+                        checkpointFile);
+                lastCheckpointStep = numSplitSteps;
+            }
         }
+        return numSplitSteps;
+    }
 
-        PerformanceMetrics.get().record("numOfSplitSteps", numSplitSteps);
-        refinement.stop();
+    /**
+     * Writes a checkpoint of refinement, from which refinement can continue
+     * with the next step. A checkpoint that cannot be written is only logged,
+     * since refinement itself can still complete.
+     */
+    private static void writeCheckpoint(PartitionGraph pGraph,
+            int numSplitSteps, Set<ITemporalInvariant> unsatisfiedInvariants,
+            File checkpointFile) {
+        try {
+            RefinementCheckpoint.write(pGraph, numSplitSteps,
+                    unsatisfiedInvariants, AbstractMain.getInstance().random,
+                    checkpointFile);
+            logger.fine("Wrote refinement checkpoint at split step "
+                    + numSplitSteps + " to " + checkpointFile);
+        } catch (IOException e) {
+            logger.warning("Unable to write refinement checkpoint to "
+                    + checkpointFile + ": " + e.getMessage());
+        }
     }
 
     /**
@@ -163,11 +336,36 @@ public class Bisimulation {
      *            The graph, whose partitions we will split.
      * @param counterExampleTraces
      *            A list of counter-example traces that we attempt to eliminate
-     *            by splitting.
+     *            by splitting, in the order of the cExamplePriority option.
      * @return The updated numSplitSteps count.
      */
     public static int performSplits(int numSplitSteps, PartitionGraph pGraph,
             List<CExamplePath<Partition>> counterExampleTraces) {
+        ForkJoinPool splitPool = newSplitPool();
+        try {
+            return performSplits(numSplitSteps, pGraph, counterExampleTraces,
+                    null, CExamplePrioritizer.newPrioritizer(AbstractMain
+                            .getInstance().options.cExamplePriority),
+                    splitPool);
+        } finally {
+            if (splitPool != null) {
+                splitPool.shutdown();
+            }
+        }
+    }
+
+    /**
+     * Performs splits as performSplits above does, with the counter-examples
+     * in the order of prioritizer, and if splitParts is not null, adds to it
+     * the partitions that were split along with the partitions that the
+     * splits created. If splitPool is not null, candidate splits are
+     * evaluated in parallel on it.
+     */
+    private static int performSplits(int numSplitSteps,
+            PartitionGraph pGraph,
+            List<CExamplePath<Partition>> counterExampleTraces,
+            Set<Partition> splitParts, CExamplePrioritizer prioritizer,
+            ForkJoinPool splitPool) {
 
         // Stores all splits that cause an invariant to be satisfied, indexed by
         // partition to which they are applied.
@@ -178,10 +376,7 @@ public class Bisimulation {
             return numSplitSteps;
         }
 
-        // Permute the counter-examples, but do so deterministically for the
-        // same random seed argument.
-        Collections.shuffle(counterExampleTraces,
-                AbstractMain.getInstance().random);
+        prioritizer.prioritize(counterExampleTraces, pGraph);
 
         // logger.fine("" + counterExampleTraces.size()
         // + " unsatisfied invariants and counter-examples: "
@@ -196,7 +391,8 @@ public class Bisimulation {
         IOperation arbitrarySplit;
 
         arbitrarySplit = getInvSatisfyingSplits(counterExampleTraces, pGraph,
-                splitsToDoByPartition, newlySatisfiedInvariants);
+                splitsToDoByPartition, newlySatisfiedInvariants, prioritizer,
+                splitPool);
 
         // String logStr;
         if (splitsToDoByPartition.size() == 0) {
@@ -210,12 +406,22 @@ public class Bisimulation {
             // + arbitrarySplit;
 
             pGraph.apply(arbitrarySplit);
+            if (splitParts != null) {
+                PartitionSplit split = (PartitionSplit) arbitrarySplit;
+                splitParts.add(split.getPartition());
+                splitParts.add(split.getSplitEvents().iterator().next()
+                        .getParent());
+            }
 
         } else {
             // We have splits that resolve invariants, perform all of them.
             // int i = 0;
             for (PartitionMultiSplit split : splitsToDoByPartition.values()) {
                 pGraph.apply(split);
+                if (splitParts != null) {
+                    splitParts.addAll(getPartsAfterSplit(split.getPartition(),
+                            split));
+                }
                 // logger.fine("split[" + numSplitSteps + "." + i + "] : " +
                 // split);
                 // i++;
@@ -226,6 +432,7 @@ public class Bisimulation {
         }
 
         // logger.fine(logStr);
+        prioritizer.recordSplitStep();
 
         if (AbstractMain.getInstance().options.dumpIntermediateStages) {
             AbstractMain.getInstance().exportNonInitialGraph(
@@ -564,17 +771,109 @@ public class Bisimulation {
         return true;
     }
 
+    /**
+     * Checks a range of the candidate splits of the counter-example of inv,
+     * each on a view of pGraph with the split applied, and records in
+     * satisfiesGlobally whether or not the split makes the graph satisfy inv.
+     * Ranges are split in halves until they contain a single candidate.
+     */
+    private static class CandidateSplitsTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final PartitionGraph pGraph;
+        private final BinaryInvariant inv;
+        private final List<PartitionSplit> candidateSplits;
+        private final boolean[] satisfiesGlobally;
+        private final int from;
+        private final int to;
+
+        CandidateSplitsTask(PartitionGraph pGraph, BinaryInvariant inv,
+                List<PartitionSplit> candidateSplits,
+                boolean[] satisfiesGlobally, int from, int to) {
+            this.pGraph = pGraph;
+            this.inv = inv;
+            this.candidateSplits = candidateSplits;
+            this.satisfiesGlobally = satisfiesGlobally;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from == 1) {
+                satisfiesGlobally[from] = splitSatisfiesInvariantOnView(inv,
+                        pGraph, new PartitionMultiSplit(candidateSplits
+                                .get(from)));
+                return;
+            }
+            int mid = (from + to) >>> 1;
+            invokeAll(new CandidateSplitsTask(pGraph, inv, candidateSplits,
+                    satisfiesGlobally, from, mid), new CandidateSplitsTask(
+                    pGraph, inv, candidateSplits, satisfiesGlobally, mid, to));
+        }
+    }
+
+    /**
+     * Whether or not the graph with splitOp applied satisfies inv, as
+     * splitSatisfiesInvariantGlobally returns, but checked on a view of pGraph
+     * with the split applied, which leaves pGraph unmodified, so that several
+     * splits can be checked concurrently.
+     */
+    private static boolean splitSatisfiesInvariantOnView(BinaryInvariant inv,
+            PartitionGraph pGraph, PartitionMultiSplit splitOp) {
+        PartitionSplitView view = new PartitionSplitView(pGraph, splitOp);
+        return FsmModelChecker.getCounterExample(inv, view) == null;
+    }
+
+    /**
+     * Whether or not the candidate splits of the counter-example of inv can be
+     * evaluated on views of the graph (see PartitionSplitView), which only
+     * supports the FSM checker for unconstrained invariants.
+     */
+    private static boolean canCheckSplitOnView(ITemporalInvariant inv) {
+        return AbstractMain.getInstance().options.useFSMChecker
+                && inv instanceof BinaryInvariant
+                && !(inv instanceof TempConstrainedInvariant<?>);
+    }
+
+    /**
+     * Evaluates the next batch of candidate splits of the counter-example of
+     * inv, starting at from, in parallel on splitPool: one candidate per
+     * thread of the pool. The graph is not modified. Records in
+     * satisfiesGlobally whether or not each evaluated split makes the graph
+     * satisfy inv, and returns the index after the batch.
+     */
+    private static int evaluateSplitsInParallel(ForkJoinPool splitPool,
+            PartitionGraph pGraph, ITemporalInvariant inv,
+            List<PartitionSplit> candidateSplits, boolean[] satisfiesGlobally,
+            int from) {
+        int to = Math.min(candidateSplits.size(),
+                from + splitPool.getParallelism());
+        splitPool.invoke(new CandidateSplitsTask(pGraph,
+                (BinaryInvariant) inv, candidateSplits, satisfiesGlobally,
+                from, to));
+        return to;
+    }
+
     /**
      * Performs the splitOp on the pGraph and then checks if there is a
      * violation of invariant inv in a specific subgraph of pGraph starting at
      * startPart and ending at endPart. This is accomplished by localized model
      * checking which starts at startPart (rather than the initial node) and
-     * stops at endPart (rather than the terminal node).
+     * stops at endPart (rather than the terminal node). The state machine of
+     * the invariant enters startPart from prevPart, so that the time deltas of
+     * the transitions into startPart are considered. If startPart or endPart
+     * (or prevPart) is the partition being split, then all of its parts after
+     * the split are considered.
      * 
      * @param inv
-     *            The invariant to check for satisfiability after the splitOp.
+     *            The constrained invariant to check for satisfiability after
+     *            the splitOp.
      * @param pGraph
      *            The partition graph to apply to the splitOp to.
+     * @param prevPart
+     *            The partition that precedes startPart in the counter-example
+     *            path, or null if startPart is the initial partition
      * @param startPart
      *            The partition on which to start model checking
      * @param endPart
@@ -585,11 +884,54 @@ public class Bisimulation {
      *         endPart satisfy the invariant, and false otherwise.
      */
     private static boolean splitSatisfiesInvariantLocally(
-            ITemporalInvariant inv, PartitionGraph pGraph, Partition startPart,
-            Partition endPart, PartitionMultiSplit splitOp) {
+            ITemporalInvariant inv, PartitionGraph pGraph, Partition prevPart,
+            Partition startPart, Partition endPart, PartitionMultiSplit splitOp) {
 
-        // TODO: Implement this.
-        return false;
+        // Perform the split.
+        IOperation rewindOperation = pGraph.apply(splitOp);
+
+        Set<Partition> startParts = getPartsAfterSplit(startPart, splitOp);
+        Set<Partition> endParts = getPartsAfterSplit(endPart, splitOp);
+
+        // See if splitting resolved the violation in the subgraph.
+        CExamplePath<Partition> violation = null;
+        if (prevPart == null) {
+            // The violation starts at the initial partition, which is never
+            // split.
+            violation = FsmModelChecker.getLocalCounterExample(
+                    (BinaryInvariant) inv, pGraph, startPart, null, endParts);
+        } else {
+            for (Partition prev : getPartsAfterSplit(prevPart, splitOp)) {
+                violation = FsmModelChecker.getLocalCounterExample(
+                        (BinaryInvariant) inv, pGraph, prev, startParts,
+                        endParts);
+                if (violation != null) {
+                    break;
+                }
+            }
+        }
+
+        // Undo the split (rewind) to get back the input graph.
+        pGraph.apply(rewindOperation);
+
+        return violation == null;
+    }
+
+    /**
+     * Returns the partitions that hold the events of part once splitOp has
+     * been applied: part itself, and the partitions that were split off it if
+     * part is the partition being split.
+     */
+    private static Set<Partition> getPartsAfterSplit(Partition part,
+            PartitionMultiSplit splitOp) {
+        Set<Partition> parts = new LinkedHashSet<Partition>();
+        parts.add(part);
+        if (part == splitOp.getPartition()) {
+            for (Set<EventNode> events : splitOp.getPartitioning()) {
+                parts.add(events.iterator().next().getParent());
+            }
+        }
+        return parts;
     }
 
     /**
@@ -605,6 +947,9 @@ public class Bisimulation {
      *            include all splits that make the graph satisfy previously
      *            unsatisfied invariants.
      * @param newlySatisfiedInvariants
+     * @param prioritizer
+     *            The strategy that ordered counterexampleTraces, which is told
+     *            the outcome of each counter-example.
      * @return an arbitrary split that may be useful in the case that
      *         splitsToDoByPartition is empty and there are no splits that lead
      *         to new invariant satisfaction.
@@ -613,13 +958,14 @@ public class Bisimulation {
             List<CExamplePath<Partition>> counterexampleTraces,
             PartitionGraph pGraph,
             HashMap<Partition, PartitionMultiSplit> splitsToDoByPartition,
-            Set<ITemporalInvariant> newlySatisfiedInvariants) {
+            Set<ITemporalInvariant> newlySatisfiedInvariants,
+            CExamplePrioritizer prioritizer, ForkJoinPool splitPool) {
 
         IOperation arbitrarySplit = null;
         AbstractMain main = AbstractMain.getInstance();
 
-        // TODO: we are considering counter-example traces in an arbitrary
-        // order. This heuristic should be turned into a customizable strategy.
+        // The counter-example traces are considered in the order of the
+        // prioritizer.
         for (CExamplePath<Partition> counterexampleTrace : counterexampleTraces) {
             // logger.fine("Considering counterexample: "
             // + counterexampleTrace.toString());
@@ -633,16 +979,30 @@ public class Bisimulation {
             // counter-example (and which therefore satisfies this
             // counter-example, too).
             if (newlySatisfiedInvariants.contains(inv)) {
+                prioritizer.recordSkipped(counterexampleTrace);
                 continue;
             }
 
-            // Get the possible splits that might resolve this counter-example.
+            // Get the possible splits that might resolve this
+            // counter-example.
             List<PartitionSplit> candidateSplits = getSplits(
                     counterexampleTrace, pGraph);
 
             // Permute the list of candidates.
             Collections.shuffle(candidateSplits, main.random);
 
+            // With a pool, the candidates of unconstrained invariants are
+            // evaluated in parallel, in batches, on views of the split graph.
+            // A view satisfies an invariant exactly when the graph with the
+            // split applied does, and the candidates are still considered in
+            // order, so the same split is chosen as without a pool.
+            boolean[] satisfiesGloballyInParallel = null;
+            int numEvaluatedInParallel = 0;
+            if (splitPool != null && canCheckSplitOnView(inv)) {
+                satisfiesGloballyInParallel = new boolean[candidateSplits
+                        .size()];
+            }
+
             // Save an arbitrary split to return to caller, if we haven't saved
             // one already.
             if (arbitrarySplit == null && !candidateSplits.isEmpty()) {
@@ -655,6 +1015,11 @@ public class Bisimulation {
             // not found
             PartitionMultiSplit locallySatisfyingSplit = null;
 
+            // The number of candidate splits considered, and the number of
+            // them that were checked, globally or locally.
+            int numConsidered = 0;
+            int numCheckerCalls = 0;
+
             // logger.fine("candidateSplits are: " +
             // candidateSplits.toString());
 
@@ -669,6 +1034,7 @@ public class Bisimulation {
             // might have found earlier (for previous counter-examples).
             //
             for (PartitionSplit candidateSplit : candidateSplits) {
+                numConsidered++;
                 if (main.options.performExtraChecks) {
                     // getSplits() should never generate invalid splits.
                     if (!candidateSplit.isValid()) {
@@ -688,7 +1054,31 @@ public class Bisimulation {
                 // invariant, and (2) continue searching for more such splits on
                 // the _mutated_ pGraph.
 
-                if (splitSatisfiesInvariantGlobally(inv, pGraph, splitOp)) {
+                boolean satisfiesGlobally;
+                if (satisfiesGloballyInParallel != null) {
+                    if (numConsidered > numEvaluatedInParallel) {
+                        int from = numEvaluatedInParallel;
+                        numEvaluatedInParallel = evaluateSplitsInParallel(
+                                splitPool, pGraph, inv, candidateSplits,
+                                satisfiesGloballyInParallel, from);
+                        numCheckerCalls += numEvaluatedInParallel - from;
+                    }
+                    satisfiesGlobally = satisfiesGloballyInParallel[numConsidered - 1];
+
+                    // Applying and rewinding a split, as
+                    // splitSatisfiesInvariantGlobally does, moves the events
+                    // of the split to the front of the split partition, and
+                    // later checks walk the events in that order. The split
+                    // is applied and rewound here too, so that refinement
+                    // makes the same splits as without a pool.
+                    pGraph.apply(pGraph.apply(splitOp));
+                } else {
+                    numCheckerCalls++;
+                    satisfiesGlobally = splitSatisfiesInvariantGlobally(inv,
+                            pGraph, splitOp);
+                }
+
+                if (satisfiesGlobally) {
                     // If we already have a split for that partition,
                     // incorporate the new split into it.
                     if (splitsToDoByPartition.containsKey(partitionBeingSplit)) {
@@ -718,20 +1108,35 @@ public class Bisimulation {
                 else if (locallySatisfyingSplit == null
                         && inv instanceof TempConstrainedInvariant<?>) {
 
-                    // Get start and end of violation subgraph
+                    // Get start and end of violation subgraph, and the
+                    // partition from which the violation subpath is entered
+                    Partition prevPart = null;
+                    if (counterexampleTrace.violationStart > 0) {
+                        prevPart = counterexampleTrace.path
+                                .get(counterexampleTrace.violationStart - 1);
+                    }
                     Partition startPart = counterexampleTrace.path
                             .get(counterexampleTrace.violationStart);
                     Partition endPart = counterexampleTrace.path
                             .get(counterexampleTrace.violationEnd);
 
                     // Store the split if the invariant is locally satisfied
-                    if (splitSatisfiesInvariantLocally(inv, pGraph, startPart,
-                            endPart, splitOp)) {
+                    numCheckerCalls++;
+                    if (splitSatisfiesInvariantLocally(inv, pGraph, prevPart,
+                            startPart, endPart, splitOp)) {
                         locallySatisfyingSplit = splitOp;
                     }
                 }
             }
 
+            // Candidates that were evaluated in parallel ahead of the split
+            // that was found were checked, so they are not saved.
+            prioritizer.recordAttempt(counterexampleTrace,
+                    newlySatisfiedInvariants.contains(inv)
+                            || locallySatisfyingSplit != null,
+                    numCheckerCalls, candidateSplits.size()
+                            - Math.max(numConsidered, numEvaluatedInParallel));
+
             // If we didn't find a globally-satisfying split but did find a
             // locally-satisfying one, record it
             if (locallySatisfyingSplit != null) {
@@ -804,10 +1209,19 @@ public class Bisimulation {
 
     /**
      * Attempts to merge partitions that are k-equivalent, while respecting
-     * invariants. Tries all pairs of partitions from pGraph, except for those
-     * that are in the mergeBlacklist (these have been attempted previously and
-     * are known to violate invariants). Returns true if at least one merge was
+     * invariants. Partitions are bucketed by their k-tail signature, so that
+     * only partitions in the same bucket are compared. Pairs of partitions in
+     * the mergeBlacklist (these have been attempted previously and are known to
+     * violate invariants) are skipped. Returns true if at least one merge was
      * performed, otherwise returns false.
+     * <p>
+     * Merges are attempted in batches of pairs that do not share a partition.
+     * A batch is checked against the invariants as a whole, and only if the
+     * batch violates an invariant is each of its merges checked on its own.
+     * Merging only adds paths to the graph, so a merge that violates an
+     * invariant still does after other merges, and the blacklist remains valid
+     * for the rest of coarsening.
+     * </p>
      * 
      * @param pGraph
      * @param mergeBlacklist
@@ -818,86 +1232,166 @@ public class Bisimulation {
     private static boolean mergePartitions(PartitionGraph pGraph,
             Map<Partition, Set<Partition>> mergeBlacklist,
             TemporalInvariantSet invariants, int k) {
-        ArrayList<Partition> partitions = new ArrayList<Partition>();
-        partitions.addAll(pGraph.getNodes());
-
-        // Attempt to merge all pairs of partitions in the current graph.
-        for (Partition p : partitions) {
-            for (Partition q : partitions) {
-                // 1. Can't merge a partition with itself
-                if (p == q) {
-                    continue;
+
+        // Only partitions with the same signature can be k-equivalent.
+        Map<Integer, List<Partition>> buckets = new KTailSignatures<Partition>(
+                new ArrayList<Partition>(pGraph.getNodes()), k)
+                .getEquivalenceClasses();
+        Map<Partition, List<Partition>> bucketOf = new HashMap<Partition, List<Partition>>();
+        for (List<Partition> bucket : buckets.values()) {
+            for (Partition p : bucket) {
+                bucketOf.put(p, bucket);
+            }
+        }
+
+        boolean merged = false;
+        while (true) {
+            List<PartitionMerge> batch = new ArrayList<PartitionMerge>();
+            for (List<Partition> bucket : buckets.values()) {
+                addCandidateMerges(bucket, mergeBlacklist, k, batch);
+            }
+            if (batch.isEmpty()) {
+                // Unable to find any more k-equivalent partitions.
+                break;
+            }
+
+            List<PartitionMerge> accepted = new ArrayList<PartitionMerge>();
+            if (batch.size() > 1 && applyMerges(pGraph, batch, invariants)) {
+                accepted.addAll(batch);
+            } else {
+                for (PartitionMerge merge : batch) {
+                    if (applyMerges(pGraph, Collections.singletonList(merge),
+                            invariants)) {
+                        accepted.add(merge);
+                    } else {
+                        // The merge created a violation. Remember this pair
+                        // of partitions so that we don't try it again.
+                        Partition p = merge.getRetained();
+                        if (!mergeBlacklist.containsKey(p)) {
+                            mergeBlacklist.put(p,
+                                    new LinkedHashSet<Partition>());
+                        }
+                        mergeBlacklist.get(p).add(merge.getRemoved());
+                    }
                 }
+            }
 
-                logger.fine("Attempting to merge: " + p + "(hash: "
-                        + p.hashCode() + ") + " + q + "(hash: " + q.hashCode()
-                        + ")");
+            for (PartitionMerge merge : accepted) {
+                logger.fine("Merge of partitions "
+                        + merge.getRetained().getEType()
+                        + " nodes maintains invs, accepted.");
+                bucketOf.get(merge.getRemoved()).remove(merge.getRemoved());
+                merged = true;
+            }
+        }
+        return merged;
+    }
 
-                // 2. Only merge partitions that are k-equivalent
-                if (!KTails.kEquals(p, q, k)) {
-                    logger.fine("Partitions are not k-equivalent(k=" + k + ")");
+    /**
+     * Adds to batch merges of pairs of k-equivalent partitions from bucket that
+     * are not in the mergeBlacklist, such that no partition is in more than
+     * one merge of the batch.
+     */
+    private static void addCandidateMerges(List<Partition> bucket,
+            Map<Partition, Set<Partition>> mergeBlacklist, int k,
+            List<PartitionMerge> batch) {
+        Set<Partition> used = new HashSet<Partition>();
+        for (int i = 0; i < bucket.size(); i++) {
+            Partition p = bucket.get(i);
+            if (used.contains(p)) {
+                continue;
+            }
+            for (int j = i + 1; j < bucket.size(); j++) {
+                Partition q = bucket.get(j);
+                if (used.contains(q)) {
                     continue;
                 }
 
-                // 3. Ignore partition pairs that were previously tried (are
-                // in blacklist)
+                // Ignore partition pairs that were previously tried (are in
+                // blacklist)
                 if ((mergeBlacklist.containsKey(p) && mergeBlacklist.get(p)
                         .contains(q))
                         || (mergeBlacklist.containsKey(q) && mergeBlacklist
                                 .get(q).contains(p))) {
-                    logger.fine("Partitions are in the merge blacklist.");
                     continue;
                 }
 
-                Set<Partition> parts = new LinkedHashSet<Partition>();
-                parts.addAll(pGraph.getNodes());
-                IOperation rewindOperation = pGraph.apply(new PartitionMerge(p,
-                        q));
-
-                CExamplePath<Partition> cExample = null;
-
-                if (invariants != null) {
-                    cExample = invariants.getFirstCounterExample(pGraph);
+                // With k > 1, the k-tails of a partition change as
+                // partitions after it are merged, so the signatures of the
+                // bucket may be stale.
+                if (k > 1 && !KTails.kEquals(p, q, k)) {
+                    continue;
                 }
 
-                if (cExample != null) {
-                    // The merge created a violation. Remember this pair of
-                    // partitions so that we don't try it again.
-                    logger.fine("Merge violates invariant: "
-                            + cExample.toString());
+                batch.add(new PartitionMerge(p, q));
+                used.add(p);
+                used.add(q);
+                break;
+            }
+        }
+    }
 
-                    if (!mergeBlacklist.containsKey(p)) {
-                        mergeBlacklist.put(p, new LinkedHashSet<Partition>());
-                    }
-                    mergeBlacklist.get(p).add(q);
+    /**
+     * Applies merges to pGraph. If the resulting graph violates one of the
+     * invariants, the merges are undone and false is returned, otherwise
+     * true is returned.
+     */
+    private static boolean applyMerges(PartitionGraph pGraph,
+            List<PartitionMerge> merges, TemporalInvariantSet invariants) {
+        Set<Partition> parts = null;
+        if (AbstractMain.getInstance().options.performExtraChecks) {
+            parts = new LinkedHashSet<Partition>(pGraph.getNodes());
+        }
 
-                    // Undo the merge.
-                    pGraph.apply(rewindOperation);
+        List<IOperation> rewindOperations = new ArrayList<IOperation>();
+        for (PartitionMerge merge : merges) {
+            rewindOperations.add(pGraph.apply(merge));
+        }
 
-                    if (AbstractMain.getInstance().options.performExtraChecks) {
-                        pGraph.checkSanity();
-                    }
+        if (!violatesInvariants(pGraph, invariants)) {
+            return true;
+        }
 
-                    // We cannot change the partition sets because we are
-                    // iterating over the partitions. Therefore, check that
-                    // the resulting partition set is the same as the
-                    // original partition set.
-                    if (!(parts.containsAll(pGraph.getNodes()) && pGraph
-                            .getNodes().containsAll(parts))) {
-                        throw new InternalSynopticException(
-                                "partition set changed due to rewind: "
-                                        + rewindOperation);
-                    }
+        // Undo the merges, in reverse order.
+        for (int i = rewindOperations.size() - 1; i >= 0; i--) {
+            pGraph.apply(rewindOperations.get(i));
+        }
 
-                } else {
-                    logger.fine("Merge of partitions " + p.getEType()
-                            + " nodes maintains invs, accepted.");
-                    return true;
-                }
+        if (parts != null) {
+            pGraph.checkSanity();
+
+            // The partitions are bucketed, so check that the resulting
+            // partition set is the same as the original partition set.
+            if (!(parts.containsAll(pGraph.getNodes()) && pGraph.getNodes()
+                    .containsAll(parts))) {
+                throw new InternalSynopticException(
+                        "partition set changed due to rewind: "
+                                + rewindOperations);
             }
         }
+        return false;
+    }
 
-        // Unable to find any k-equivalent partitions; we're done.
+    /**
+     * Returns true if pGraph violates one of the invariants. With the FSM
+     * checker and more than one checker thread, the invariants are checked in
+     * parallel.
+     */
+    private static boolean violatesInvariants(PartitionGraph pGraph,
+            TemporalInvariantSet invariants) {
+        if (invariants == null) {
+            return false;
+        }
+        AbstractMain main = AbstractMain.getInstance();
+        if (main.options.useFSMChecker && main.options.checkerThreads > 1) {
+            return invariants.getAllCounterExamples(pGraph) != null;
+        }
+        CExamplePath<Partition> cExample = invariants
+                .getFirstCounterExample(pGraph);
+        if (cExample != null) {
+            logger.fine("Merge violates invariant: " + cExample.toString());
+            return true;
+        }
         return false;
     }
 }
@@ -0,0 +1,339 @@
+package synoptic.algorithms;
+
+import java.util.AbstractSet;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+import synoptic.model.EventNode;
+import synoptic.model.interfaces.ITransition;
+
+/**
+ * A transitive closure of the partially ordered traces of a DAGsTraceGraph,
+ * which stores the nodes that each node can reach as a BitSet. The nodes of
+ * each trace are numbered in a topological order of the trace, and the
+ * closure of a node is a BitSet over the numbers of the nodes in its trace.
+ * The closures are computed in reverse topological order: the closure of a
+ * node is the OR of the closures of its children, which BitSet computes a
+ * word (64 nodes) at a time. As in the algorithm of Goralcikova and Koubek
+ * (see DAGsTraceGraph.goralcikovaAlg), the children are visited in
+ * topological order, and a child that is already in the closure is skipped,
+ * since its closure is already included. Nodes of different traces never
+ * reach each other, so the traces are numbered and closed independently,
+ * and in parallel when more than one thread is used.
+ * <br/>
+ * <br/>
+ * As in the other closures of DAGsTraceGraph, only transitions with exactly
+ * the relations of the closure are followed, and the TERMINAL node is not
+ * part of the closure. The closure is built with
+ * DAGsTraceGraph.getBitSetTransitiveClosure and cannot be changed afterwards.
+ * getTC() materializes the explicit closure.
+ */
+public class BitSetTransitiveClosure extends TransitiveClosure {
+    // The closed traces, and the trace and number of each node.
+    private final List<TraceClosure> traces = new ArrayList<TraceClosure>();
+    private final Map<EventNode, TraceClosure> nodeTraces = new IdentityHashMap<EventNode, TraceClosure>();
+
+    private BitSetTransitiveClosure(Set<String> relations) {
+        super(relations);
+    }
+
+    /**
+     * Computes the closure of a set of traces.
+     * 
+     * @param traceInits
+     *            The initial nodes of each trace
+     * @param relations
+     *            The relations of the transitions to follow
+     * @param numThreads
+     *            The number of threads that close traces (1 closes the traces
+     *            sequentially)
+     */
+    public static BitSetTransitiveClosure compute(
+            Collection<Set<EventNode>> traceInits, Set<String> relations,
+            int numThreads) {
+        BitSetTransitiveClosure transClosure = new BitSetTransitiveClosure(
+                relations);
+
+        List<Set<EventNode>> inits = new ArrayList<Set<EventNode>>(traceInits);
+        TraceClosure[] closures = new TraceClosure[inits.size()];
+        if (numThreads > 1 && inits.size() > 1) {
+            ForkJoinPool pool = new ForkJoinPool(numThreads);
+            try {
+                // A few tasks per thread, so that threads that finish early
+                // can steal work.
+                int minTraces = Math.max(1, inits.size() / (4 * numThreads));
+                pool.invoke(new CloseTracesTask(inits, relations, closures, 0,
+                        inits.size(), minTraces));
+            } finally {
+                pool.shutdown();
+            }
+        } else {
+            for (int i = 0; i < inits.size(); i++) {
+                closures[i] = new TraceClosure(inits.get(i), relations);
+            }
+        }
+
+        for (TraceClosure trace : closures) {
+            transClosure.traces.add(trace);
+            for (EventNode node : trace.nodes) {
+                transClosure.nodeTraces.put(node, trace);
+            }
+        }
+        return transClosure;
+    }
+
+    @Override
+    public boolean isReachable(EventNode m, EventNode n) {
+        TraceClosure trace = nodeTraces.get(m);
+        if (trace == null || nodeTraces.get(n) != trace) {
+            return false;
+        }
+        return trace.rows[trace.numbers.get(m)].get(trace.numbers.get(n));
+    }
+
+    /**
+     * Returns an unmodifiable view of the nodes that are reachable from
+     * source, or null if source does not reach any nodes (as for an explicit
+     * closure).
+     */
+    @Override
+    public Set<EventNode> getReachableNodes(final EventNode source) {
+        final TraceClosure trace = nodeTraces.get(source);
+        if (trace == null) {
+            return null;
+        }
+        final BitSet row = trace.rows[trace.numbers.get(source)];
+        if (row.isEmpty()) {
+            return null;
+        }
+        return new AbstractSet<EventNode>() {
+            @Override
+            public Iterator<EventNode> iterator() {
+                return new Iterator<EventNode>() {
+                    int next = row.nextSetBit(0);
+
+                    @Override
+                    public boolean hasNext() {
+                        return next >= 0;
+                    }
+
+                    @Override
+                    public EventNode next() {
+                        if (next < 0) {
+                            throw new NoSuchElementException();
+                        }
+                        EventNode node = trace.nodes[next];
+                        next = row.nextSetBit(next + 1);
+                        return node;
+                    }
+
+                    @Override
+                    public void remove() {
+                        throw new UnsupportedOperationException();
+                    }
+                };
+            }
+
+            @Override
+            public int size() {
+                return row.cardinality();
+            }
+
+            @Override
+            public boolean contains(Object o) {
+                return o instanceof EventNode
+                        && isReachable(source, (EventNode) o);
+            }
+        };
+    }
+
+    /**
+     * Materializes the explicit closure.
+     */
+    @Override
+    public Map<EventNode, Set<EventNode>> getTC() {
+        Map<EventNode, Set<EventNode>> explicit = new LinkedHashMap<EventNode, Set<EventNode>>();
+        for (TraceClosure trace : traces) {
+            for (EventNode node : trace.nodes) {
+                Set<EventNode> reachable = getReachableNodes(node);
+                if (reachable != null) {
+                    explicit.put(node, new LinkedHashSet<EventNode>(reachable));
+                }
+            }
+        }
+        return explicit;
+    }
+
+    @Override
+    public void mergeReachables(EventNode from, EventNode into) {
+        throw new UnsupportedOperationException(
+                "A bitset transitive closure cannot be changed");
+    }
+
+    @Override
+    public void recordTransitiveReachability(EventNode m, EventNode n) {
+        throw new UnsupportedOperationException(
+                "A bitset transitive closure cannot be changed");
+    }
+
+    /**
+     * The closure of a single trace: its nodes in a topological order, and for
+     * each node, the numbers (positions in the order) of the nodes it reaches.
+     */
+    private static class TraceClosure {
+        final EventNode[] nodes;
+        final Map<EventNode, Integer> numbers;
+        final BitSet[] rows;
+
+        TraceClosure(Set<EventNode> inits, Set<String> relations) {
+            // Collect the nodes of the trace, and the children of each node,
+            // by local ids in the order in which the nodes are found.
+            Map<EventNode, Integer> ids = new IdentityHashMap<EventNode, Integer>();
+            List<EventNode> found = new ArrayList<EventNode>();
+            ArrayDeque<EventNode> toVisit = new ArrayDeque<EventNode>();
+            for (EventNode init : inits) {
+                if (!ids.containsKey(init)) {
+                    ids.put(init, found.size());
+                    found.add(init);
+                    toVisit.add(init);
+                }
+            }
+            List<int[]> children = new ArrayList<int[]>();
+            while (!toVisit.isEmpty()) {
+                EventNode node = toVisit.poll();
+                List<? extends ITransition<EventNode>> transitions = node
+                        .getTransitionsWithExactRelations(relations);
+                int[] nodeChildren = new int[transitions.size()];
+                int numChildren = 0;
+                for (ITransition<EventNode> trans : transitions) {
+                    EventNode child = trans.getTarget();
+                    if (child.isTerminal()) {
+                        continue;
+                    }
+                    Integer id = ids.get(child);
+                    if (id == null) {
+                        id = found.size();
+                        ids.put(child, id);
+                        found.add(child);
+                        toVisit.add(child);
+                    }
+                    nodeChildren[numChildren++] = id;
+                }
+                children.add(Arrays.copyOf(nodeChildren, numChildren));
+            }
+
+            // Number the nodes in a topological order (Kahn's algorithm).
+            int n = found.size();
+            int[] numParents = new int[n];
+            for (int[] nodeChildren : children) {
+                for (int child : nodeChildren) {
+                    numParents[child]++;
+                }
+            }
+            int[] order = new int[n];
+            int[] numberOf = new int[n];
+            int head = 0;
+            int tail = 0;
+            for (int id = 0; id < n; id++) {
+                if (numParents[id] == 0) {
+                    order[tail++] = id;
+                }
+            }
+            while (head < tail) {
+                int id = order[head];
+                numberOf[id] = head;
+                head++;
+                for (int child : children.get(id)) {
+                    if (--numParents[child] == 0) {
+                        order[tail++] = child;
+                    }
+                }
+            }
+            if (tail != n) {
+                throw new IllegalArgumentException(
+                        "The trace of " + inits + " is not acyclic");
+            }
+
+            nodes = new EventNode[n];
+            numbers = new IdentityHashMap<EventNode, Integer>();
+            for (int i = 0; i < n; i++) {
+                nodes[i] = found.get(order[i]);
+                numbers.put(nodes[i], i);
+            }
+
+            // Close the nodes in reverse topological order, visiting the
+            // children of each node in topological order.
+            rows = new BitSet[n];
+            for (int i = n - 1; i >= 0; i--) {
+                int[] nodeChildren = children.get(order[i]);
+                int[] childNumbers = new int[nodeChildren.length];
+                for (int j = 0; j < nodeChildren.length; j++) {
+                    childNumbers[j] = numberOf[nodeChildren[j]];
+                }
+                Arrays.sort(childNumbers);
+
+                BitSet row = new BitSet(n);
+                for (int child : childNumbers) {
+                    if (!row.get(child)) {
+                        row.set(child);
+                        row.or(rows[child]);
+                    }
+                }
+                rows[i] = row;
+            }
+        }
+    }
+
+    /**
+     * Closes a range of traces on a ForkJoinPool. Ranges of at most minTraces
+     * traces are closed sequentially, and larger ranges are split in two
+     * halves that are closed in parallel.
+     */
+    private static class CloseTracesTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final List<Set<EventNode>> inits;
+        private final Set<String> relations;
+        private final TraceClosure[] closures;
+        private final int from;
+        private final int to;
+        private final int minTraces;
+
+        CloseTracesTask(List<Set<EventNode>> inits, Set<String> relations,
+                TraceClosure[] closures, int from, int to, int minTraces) {
+            this.inits = inits;
+            this.relations = relations;
+            this.closures = closures;
+            this.from = from;
+            this.to = to;
+            this.minTraces = minTraces;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from <= minTraces) {
+                for (int i = from; i < to; i++) {
+                    closures[i] = new TraceClosure(inits.get(i), relations);
+                }
+                return;
+            }
+            int mid = (from + to) >>> 1;
+            invokeAll(new CloseTracesTask(inits, relations, closures, from,
+                    mid, minTraces), new CloseTracesTask(inits, relations,
+                    closures, mid, to, minTraces));
+        }
+    }
+}
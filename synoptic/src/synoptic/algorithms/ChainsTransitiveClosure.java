@@ -0,0 +1,141 @@
+package synoptic.algorithms;
+
+import java.util.AbstractSet;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import synoptic.model.EventNode;
+
+/**
+ * An implicit transitive closure of the totally ordered traces of a
+ * ChainsTraceGraph. In a chain, a node reaches exactly the nodes that follow
+ * it in the same segment, where a segment is a maximal run of nodes that are
+ * connected by transitions with the relations of the closure. Instead of
+ * recording every reachable pair, which takes memory quadratic in the length
+ * of the traces, this closure numbers the nodes in the order of the chains
+ * and records, for each node, the number of the first node that is past its
+ * segment. isReachable then compares the numbers of the two nodes, and
+ * getReachableNodes returns a view of the nodes that follow the source node
+ * in its segment, so the closure takes memory linear in the number of nodes.
+ * <br/>
+ * <br/>
+ * The closure is built with ChainsTraceGraph.getImplicitTransitiveClosure and
+ * cannot be changed afterwards. getTC() materializes the explicit closure, and
+ * should only be used for small graphs.
+ */
+public class ChainsTransitiveClosure extends TransitiveClosure {
+    // The nodes of all segments, segment after segment, and the position of
+    // each node in this list.
+    private final List<EventNode> nodes = new ArrayList<EventNode>();
+    private final Map<EventNode, Integer> positions = new IdentityHashMap<EventNode, Integer>();
+
+    // segmentEnds[i] is the position one past the last node of the segment of
+    // the node at position i.
+    private int[] segmentEnds = new int[16];
+
+    public ChainsTransitiveClosure(Set<String> relations) {
+        super(relations);
+    }
+
+    /**
+     * Appends a segment to the closure: every node of segment reaches the
+     * nodes that follow it in segment, and no other nodes.
+     * 
+     * @param segment
+     *            The nodes of the segment, in the order of the chain
+     */
+    public void addSegment(List<EventNode> segment) {
+        int start = nodes.size();
+        int end = start + segment.size();
+        if (end > segmentEnds.length) {
+            segmentEnds = Arrays.copyOf(segmentEnds,
+                    Math.max(end, 2 * segmentEnds.length));
+        }
+        for (EventNode node : segment) {
+            positions.put(node, nodes.size());
+            segmentEnds[nodes.size()] = end;
+            nodes.add(node);
+        }
+    }
+
+    @Override
+    public boolean isReachable(EventNode m, EventNode n) {
+        Integer mPos = positions.get(m);
+        if (mPos == null) {
+            return false;
+        }
+        Integer nPos = positions.get(n);
+        if (nPos == null) {
+            return false;
+        }
+        return mPos < nPos && nPos < segmentEnds[mPos];
+    }
+
+    /**
+     * Returns an unmodifiable view of the nodes that are reachable from
+     * source, or null if source does not reach any nodes (as for an explicit
+     * closure).
+     */
+    @Override
+    public Set<EventNode> getReachableNodes(final EventNode source) {
+        Integer pos = positions.get(source);
+        if (pos == null || segmentEnds[pos] == pos + 1) {
+            return null;
+        }
+        final List<EventNode> reachable = nodes.subList(pos + 1,
+                segmentEnds[pos]);
+        return new AbstractSet<EventNode>() {
+            @Override
+            public Iterator<EventNode> iterator() {
+                return Collections.unmodifiableList(reachable).iterator();
+            }
+
+            @Override
+            public int size() {
+                return reachable.size();
+            }
+
+            @Override
+            public boolean contains(Object o) {
+                return o instanceof EventNode
+                        && isReachable(source, (EventNode) o);
+            }
+        };
+    }
+
+    /**
+     * Materializes the explicit closure, which takes memory quadratic in the
+     * length of the traces.
+     */
+    @Override
+    public Map<EventNode, Set<EventNode>> getTC() {
+        Map<EventNode, Set<EventNode>> explicit = new LinkedHashMap<EventNode, Set<EventNode>>();
+        for (EventNode node : nodes) {
+            Set<EventNode> reachable = getReachableNodes(node);
+            if (reachable != null) {
+                explicit.put(node, new LinkedHashSet<EventNode>(reachable));
+            }
+        }
+        return explicit;
+    }
+
+    @Override
+    public void mergeReachables(EventNode from, EventNode into) {
+        throw new UnsupportedOperationException(
+                "An implicit transitive closure cannot be changed");
+    }
+
+    @Override
+    public void recordTransitiveReachability(EventNode m, EventNode n) {
+        throw new UnsupportedOperationException(
+                "An implicit transitive closure cannot be changed");
+    }
+}
@@ -0,0 +1,324 @@
+package synoptic.algorithms;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import synoptic.model.event.EventType;
+import synoptic.model.interfaces.INode;
+
+/**
+ * Computes the k-tails of a set of nodes as canonical signatures, so that
+ * k-equivalent nodes can be found by grouping the nodes by signature instead
+ * of comparing the k-tails of every pair of nodes.
+ * <p>
+ * The k-tails of a node are the strings of event types of length <= k that
+ * label the paths that start at the node (see KTails). These strings are
+ * closed under prefixes, so they are represented as a trie whose root is
+ * labeled with the event type of the node. The tries are hash-consed: every
+ * distinct trie is interned once, as its root event type and the sorted ids
+ * of its child tries, and two tries are equal exactly when their ids are
+ * equal. The interning table hashes each trie by its event type and child ids,
+ * and only compares the tries in the same hash bucket, so the id of a trie is
+ * its canonical signature.
+ * </p>
+ * <p>
+ * The tries are computed by dynamic programming over k: the trie of depth j
+ * of a node is its event type over the union of the tries of depth j - 1 of
+ * its successors, where tries with the same root event type are merged. Only
+ * the nodes within k - j steps of the given nodes need a trie of depth j.
+ * </p>
+ */
+public class KTailSignatures<NodeType extends INode<NodeType>> {
+    private static final int[] noChildren = new int[0];
+
+    // The interned tries, by id: the event type id of the root, and the ids
+    // of the child tries, sorted by the event type ids of their roots.
+    private final List<Integer> trieLabels = new ArrayList<Integer>();
+    private final List<int[]> trieChildren = new ArrayList<int[]>();
+    private final Map<TrieKey, Integer> trieIds = new HashMap<TrieKey, Integer>();
+
+    // Memoizes the merge of two tries with the same root event type.
+    private final Map<Long, Integer> merges = new HashMap<Long, Integer>();
+
+    // The event type with each event type id that labels a trie.
+    private final Map<Integer, EventType> eTypes = new HashMap<Integer, EventType>();
+
+    // The signature of each of the given nodes, in the order of the nodes.
+    private final Map<NodeType, Integer> signatures = new LinkedHashMap<NodeType, Integer>();
+
+    /**
+     * Computes the signatures of the k-tails of nodes.
+     */
+    public KTailSignatures(Collection<NodeType> nodes, int k) {
+        // Note: at k == 0, all "states" should be considered equal, but an
+        // event-based model cannot express this, thus the assert.
+        assert (k > 0);
+
+        // Number the nodes within k - 1 steps of nodes in breadth-first order,
+        // so that the nodes that need a trie of depth j are a prefix of the
+        // order.
+        List<NodeType> order = new ArrayList<NodeType>();
+        Map<NodeType, Integer> index = new HashMap<NodeType, Integer>();
+        List<Integer> dists = new ArrayList<Integer>();
+        for (NodeType node : nodes) {
+            if (!index.containsKey(node)) {
+                index.put(node, order.size());
+                order.add(node);
+                dists.add(0);
+            }
+        }
+        List<int[]> successors = new ArrayList<int[]>();
+        for (int i = 0; i < order.size(); i++) {
+            int dist = dists.get(i);
+            if (dist >= k - 1) {
+                // The trie of depth 1 of the node has no children.
+                successors.add(noChildren);
+                continue;
+            }
+            Set<NodeType> nodeSuccessors = order.get(i).getAllSuccessors();
+            int[] succ = new int[nodeSuccessors.size()];
+            int s = 0;
+            for (NodeType child : nodeSuccessors) {
+                Integer childIndex = index.get(child);
+                if (childIndex == null) {
+                    childIndex = order.size();
+                    index.put(child, childIndex);
+                    order.add(child);
+                    dists.add(dist + 1);
+                }
+                succ[s++] = childIndex;
+            }
+            successors.add(succ);
+        }
+
+        int[] labels = new int[order.size()];
+        for (int i = 0; i < order.size(); i++) {
+            EventType eType = order.get(i).getEType();
+            labels[i] = eType.getId();
+            eTypes.put(labels[i], eType);
+        }
+
+        // tries[i] is the id of the trie of depth j of the node i, for the
+        // nodes with dists.get(i) <= k - j.
+        int[] tries = new int[order.size()];
+        for (int i = 0; i < order.size(); i++) {
+            tries[i] = intern(labels[i], noChildren);
+        }
+        int numNodes = order.size();
+        for (int j = 2; j <= k; j++) {
+            while (numNodes > 0 && dists.get(numNodes - 1) > k - j) {
+                numNodes--;
+            }
+            // The tries of depth j are computed from those of depth j - 1, so
+            // they go into a new array.
+            int[] nextTries = new int[numNodes];
+            for (int i = 0; i < numNodes; i++) {
+                int[] succ = successors.get(i);
+                int[] childTries = new int[succ.length];
+                for (int s = 0; s < succ.length; s++) {
+                    childTries[s] = tries[succ[s]];
+                }
+                nextTries[i] = intern(labels[i], mergeByLabel(childTries));
+            }
+            tries = nextTries;
+        }
+
+        for (NodeType node : nodes) {
+            signatures.put(node, tries[index.get(node)]);
+        }
+    }
+
+    /**
+     * Returns the signature of the k-tails of node, which must be one of the
+     * nodes that the signatures were computed for. Two nodes are k-equivalent
+     * exactly when their signatures are equal.
+     */
+    public int getSignature(NodeType node) {
+        Integer signature = signatures.get(node);
+        if (signature == null) {
+            throw new IllegalArgumentException("No k-tails signature for "
+                    + node);
+        }
+        return signature;
+    }
+
+    /**
+     * Returns whether n1 and n2 are k-equivalent.
+     */
+    public boolean kEquals(NodeType n1, NodeType n2) {
+        return getSignature(n1) == getSignature(n2);
+    }
+
+    /**
+     * Returns the classes of k-equivalent nodes, keyed by their signatures.
+     * The classes and the nodes in each class are in the order of the nodes
+     * that the signatures were computed for.
+     */
+    public Map<Integer, List<NodeType>> getEquivalenceClasses() {
+        Map<Integer, List<NodeType>> classes = new LinkedHashMap<Integer, List<NodeType>>();
+        for (Map.Entry<NodeType, Integer> entry : signatures.entrySet()) {
+            List<NodeType> kClass = classes.get(entry.getValue());
+            if (kClass == null) {
+                kClass = new ArrayList<NodeType>();
+                classes.put(entry.getValue(), kClass);
+            }
+            kClass.add(entry.getKey());
+        }
+        return classes;
+    }
+
+    /**
+     * Returns the k-tails of node as an explicit set of strings. This takes
+     * memory exponential in k, and is meant for logging and testing.
+     */
+    public Set<List<EventType>> getKStrings(NodeType node) {
+        Set<List<EventType>> kStrings = new LinkedHashSet<List<EventType>>();
+        addKStrings(getSignature(node), new ArrayList<EventType>(), kStrings);
+        return kStrings;
+    }
+
+    private void addKStrings(int trie, List<EventType> prefix,
+            Set<List<EventType>> kStrings) {
+        prefix.add(eTypes.get(trieLabels.get(trie)));
+        kStrings.add(new ArrayList<EventType>(prefix));
+        for (int child : trieChildren.get(trie)) {
+            addKStrings(child, prefix, kStrings);
+        }
+        prefix.remove(prefix.size() - 1);
+    }
+
+    /**
+     * Returns the id of the trie with the given root event type and children,
+     * which must be sorted by the event type ids of their roots.
+     */
+    private int intern(int label, int[] children) {
+        TrieKey key = new TrieKey(label, children);
+        Integer id = trieIds.get(key);
+        if (id == null) {
+            id = trieLabels.size();
+            trieLabels.add(label);
+            trieChildren.add(children);
+            trieIds.put(key, id);
+        }
+        return id;
+    }
+
+    /**
+     * Merges the tries with the same root event type, and returns the merged
+     * tries sorted by the event type ids of their roots.
+     */
+    private int[] mergeByLabel(int[] tries) {
+        if (tries.length == 0) {
+            return noChildren;
+        }
+        Integer[] sorted = new Integer[tries.length];
+        for (int i = 0; i < tries.length; i++) {
+            sorted[i] = tries[i];
+        }
+        Arrays.sort(sorted, new Comparator<Integer>() {
+            @Override
+            public int compare(Integer t1, Integer t2) {
+                int l1 = trieLabels.get(t1);
+                int l2 = trieLabels.get(t2);
+                return l1 < l2 ? -1 : (l1 == l2 ? 0 : 1);
+            }
+        });
+        int[] merged = new int[sorted.length];
+        int numMerged = 0;
+        for (int trie : sorted) {
+            if (numMerged > 0
+                    && trieLabels.get(merged[numMerged - 1]).equals(
+                            trieLabels.get(trie))) {
+                merged[numMerged - 1] = merge(merged[numMerged - 1], trie);
+            } else {
+                merged[numMerged++] = trie;
+            }
+        }
+        return Arrays.copyOf(merged, numMerged);
+    }
+
+    /**
+     * Returns the union of two tries with the same root event type.
+     */
+    private int merge(int t1, int t2) {
+        if (t1 == t2) {
+            return t1;
+        }
+        long key = t1 < t2 ? ((long) t1 << 32) | t2 : ((long) t2 << 32) | t1;
+        Integer merged = merges.get(key);
+        if (merged != null) {
+            return merged;
+        }
+
+        // Merge the children, which are sorted by the event type ids of their
+        // roots.
+        int[] c1 = trieChildren.get(t1);
+        int[] c2 = trieChildren.get(t2);
+        int[] children = new int[c1.length + c2.length];
+        int numChildren = 0;
+        int i1 = 0;
+        int i2 = 0;
+        while (i1 < c1.length || i2 < c2.length) {
+            if (i2 == c2.length) {
+                children[numChildren++] = c1[i1++];
+            } else if (i1 == c1.length) {
+                children[numChildren++] = c2[i2++];
+            } else {
+                int l1 = trieLabels.get(c1[i1]);
+                int l2 = trieLabels.get(c2[i2]);
+                if (l1 < l2) {
+                    children[numChildren++] = c1[i1++];
+                } else if (l2 < l1) {
+                    children[numChildren++] = c2[i2++];
+                } else {
+                    children[numChildren++] = merge(c1[i1++], c2[i2++]);
+                }
+            }
+        }
+        merged = intern(trieLabels.get(t1),
+                Arrays.copyOf(children, numChildren));
+        merges.put(key, merged);
+        return merged;
+    }
+
+    /**
+     * The key of an interned trie: its root event type and child tries.
+     */
+    private static class TrieKey {
+        private final int label;
+        private final int[] children;
+        private final int hash;
+
+        TrieKey(int label, int[] children) {
+            this.label = label;
+            this.children = children;
+            this.hash = 31 * label + Arrays.hashCode(children);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (this == obj) {
+                return true;
+            }
+            if (!(obj instanceof TrieKey)) {
+                return false;
+            }
+            TrieKey other = (TrieKey) obj;
+            return label == other.label
+                    && Arrays.equals(children, other.children);
+        }
+    }
+}
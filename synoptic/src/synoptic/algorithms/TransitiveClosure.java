@@ -10,7 +10,11 @@ import synoptic.model.EventNode;
 /**
  * Computes and maintains the transitive closure. Code based on
  * http://www.cs.princeton.edu/courses/archive/fall05/cos226/lectures
- * /digraph.pdf
+ * /digraph.pdf <br/>
+ * <br/>
+ * The closure is stored explicitly, as the set of nodes that each node can
+ * reach. Subclasses may store it implicitly (see ChainsTransitiveClosure), in
+ * which case getTC() materializes it.
  */
 public class TransitiveClosure {
     // Reachability map.
@@ -100,8 +104,9 @@ public class TransitiveClosure {
             return false;
         }
 
-        for (EventNode u : other.tc.keySet()) {
-            for (EventNode v : other.tc.get(u)) {
+        Map<EventNode, Set<EventNode>> otherTC = other.getTC();
+        for (EventNode u : otherTC.keySet()) {
+            for (EventNode v : otherTC.get(u)) {
                 // v is reachable from u in other.tc, check that same is true
                 // for this.tc:
                 if (!isReachable(u, v)) {
@@ -110,8 +115,9 @@ public class TransitiveClosure {
             }
         }
 
-        for (EventNode u : tc.keySet()) {
-            for (EventNode v : tc.get(u)) {
+        Map<EventNode, Set<EventNode>> thisTC = getTC();
+        for (EventNode u : thisTC.keySet()) {
+            for (EventNode v : thisTC.get(u)) {
                 // v is reachable from u in this.tc, check that same is true for
                 // other.tc:
                 if (!other.isReachable(u, v)) {
@@ -123,7 +129,7 @@ public class TransitiveClosure {
     }
 
     public String toString() {
-        return tc.toString();
+        return getTC().toString();
     }
 
     /**
@@ -0,0 +1,226 @@
+package synoptic.algorithms.prioritizers;
+
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.logging.Logger;
+
+import synoptic.benchmarks.MetricsRegistry;
+import synoptic.invariants.CExamplePath;
+import synoptic.main.AbstractMain;
+import synoptic.model.Partition;
+import synoptic.model.PartitionGraph;
+
+/**
+ * A strategy for the order in which refinement (see
+ * Bisimulation.splitUntilAllInvsSatisfied) tries to eliminate the
+ * counter-examples of a split step. Refinement looks for a split that
+ * satisfies the invariant of each counter-example in turn, and skips the
+ * counter-examples whose invariant is satisfied by a split that it found
+ * earlier in the step, so trying the counter-examples that are most likely to
+ * be resolved first saves checker calls and split steps.
+ * <p>
+ * The counter-examples are first shuffled with the random seed of the run, as
+ * refinement has always done, and then sorted stably by the comparator of the
+ * strategy, so that ties are broken in the same way for the same seed. A
+ * strategy also counts the split steps and checker calls that refinement made
+ * while using it, along with the checker calls that it saved, and adds them to
+ * counters of the MetricsRegistry, so that strategies can be compared on a
+ * log. If refinement was also run with the default strategy (shuffle) from the
+ * same state, the strategy reports the split steps that it saved relative to
+ * that run.
+ * </p>
+ */
+public abstract class CExamplePrioritizer {
+    protected static Logger logger = Logger
+            .getLogger("CExamplePrioritizer Logger");
+
+    /** The names of the built-in strategies, as accepted by newPrioritizer. */
+    public static final String SHUFFLE = "shuffle";
+    public static final String SHORTEST = "shortest";
+    public static final String MOST_VIOLATED = "most-violated";
+    public static final String HIGHEST_SUPPORT = "highest-support";
+    public static final String LEARNED = "learned";
+
+    /** The number of split steps that were applied. */
+    private long numSplitSteps = 0;
+
+    /**
+     * The number of split steps that refinement made with the default
+     * strategy from the same state, or -1 if it is not known.
+     */
+    private long numBaselineSplitSteps = -1;
+
+    /** The number of checks of candidate splits that were run. */
+    private long numCheckerCalls = 0;
+
+    /**
+     * The number of candidate splits that were never checked, because a split
+     * that satisfies the invariant was found before them.
+     */
+    private long numCheckerCallsSaved = 0;
+
+    /**
+     * The number of counter-examples that were skipped, because a split that
+     * satisfies their invariant was found earlier in the step.
+     */
+    private long numCExamplesSkipped = 0;
+
+    /**
+     * Returns a new instance of the built-in strategy with the given name.
+     * 
+     * @throws IllegalArgumentException
+     *             if there is no strategy with this name
+     */
+    public static CExamplePrioritizer newPrioritizer(String name) {
+        if (name == null || name.equals(SHUFFLE)) {
+            return new ShufflePrioritizer();
+        } else if (name.equals(SHORTEST)) {
+            return new ShortestPathPrioritizer();
+        } else if (name.equals(MOST_VIOLATED)) {
+            return new MostViolatedPartitionPrioritizer();
+        } else if (name.equals(HIGHEST_SUPPORT)) {
+            return new HighestSupportPrioritizer();
+        } else if (name.equals(LEARNED)) {
+            return new SplitSuccessPrioritizer();
+        }
+        throw new IllegalArgumentException(
+                "Unknown counter-example prioritization strategy: " + name);
+    }
+
+    /**
+     * Orders cExamples in place, in the order in which refinement should try
+     * to eliminate them.
+     * 
+     * @param cExamples
+     *            The counter-examples of a split step.
+     * @param pGraph
+     *            The graph that the counter-examples are paths of.
+     */
+    public void prioritize(List<CExamplePath<Partition>> cExamples,
+            PartitionGraph pGraph) {
+        // Permute the counter-examples, but do so deterministically for the
+        // same random seed argument.
+        Collections.shuffle(cExamples, AbstractMain.getInstance().random);
+
+        Comparator<CExamplePath<Partition>> comparator = getComparator(
+                cExamples, pGraph);
+        if (comparator != null) {
+            Collections.sort(cExamples, comparator);
+        }
+    }
+
+    /**
+     * Returns the comparator that orders cExamples, or null to keep them
+     * shuffled.
+     */
+    protected abstract Comparator<CExamplePath<Partition>> getComparator(
+            List<CExamplePath<Partition>> cExamples, PartitionGraph pGraph);
+
+    /**
+     * Records that refinement looked for a split that satisfies the invariant
+     * of cExample.
+     * 
+     * @param cExample
+     *            The counter-example.
+     * @param resolved
+     *            Whether a split was found.
+     * @param checkerCalls
+     *            The number of checks of candidate splits that were run,
+     *            including those that were run speculatively and whose results
+     *            were not needed.
+     * @param checkerCallsSaved
+     *            The number of candidate splits that were never checked,
+     *            because a split was found before them.
+     */
+    public void recordAttempt(CExamplePath<Partition> cExample,
+            boolean resolved, int checkerCalls, int checkerCallsSaved) {
+        numCheckerCalls += checkerCalls;
+        numCheckerCallsSaved += checkerCallsSaved;
+    }
+
+    /**
+     * Records that refinement skipped cExample, because a split that
+     * satisfies its invariant was found earlier in the step.
+     */
+    public void recordSkipped(CExamplePath<Partition> cExample) {
+        numCExamplesSkipped++;
+    }
+
+    /**
+     * Records that refinement applied a split step.
+     */
+    public void recordSplitStep() {
+        numSplitSteps++;
+    }
+
+    /**
+     * Sets the number of split steps that refinement made with the default
+     * strategy, from the state from which it refines with this strategy.
+     */
+    public void setNumBaselineSplitSteps(long numBaselineSplitSteps) {
+        this.numBaselineSplitSteps = numBaselineSplitSteps;
+    }
+
+    public long getNumSplitSteps() {
+        return numSplitSteps;
+    }
+
+    /**
+     * Returns the number of split steps that this strategy saved relative to
+     * the default strategy (negative if it made more), or 0 if the number of
+     * split steps of the default strategy is not known.
+     */
+    public long getNumSplitStepsSaved() {
+        if (numBaselineSplitSteps < 0) {
+            return 0;
+        }
+        return numBaselineSplitSteps - numSplitSteps;
+    }
+
+    public long getNumCheckerCalls() {
+        return numCheckerCalls;
+    }
+
+    public long getNumCheckerCallsSaved() {
+        return numCheckerCallsSaved;
+    }
+
+    public long getNumCExamplesSkipped() {
+        return numCExamplesSkipped;
+    }
+
+    /**
+     * Returns the name of the strategy, as accepted by newPrioritizer.
+     */
+    public abstract String getName();
+
+    /**
+     * Logs the counts of this strategy, and adds them to counters of the
+     * MetricsRegistry.
+     */
+    public void report() {
+        String splitStepsSaved = "";
+        if (numBaselineSplitSteps >= 0) {
+            splitStepsSaved = " (" + getNumSplitStepsSaved()
+                    + " saved relative to " + numBaselineSplitSteps + " with '"
+                    + SHUFFLE + "')";
+        }
+        logger.fine("Counter-example prioritization '" + getName() + "': "
+                + numSplitSteps + " split steps" + splitStepsSaved + ", "
+                + numCheckerCalls + " checker calls, " + numCheckerCallsSaved
+                + " checker calls saved, " + numCExamplesSkipped
+                + " counter-examples skipped");
+        MetricsRegistry metrics = MetricsRegistry.get();
+        metrics.counter("cexPrioritizerSplitSteps").add(numSplitSteps);
+        if (numBaselineSplitSteps >= 0) {
+            metrics.counter("cexPrioritizerSplitStepsSaved").add(
+                    getNumSplitStepsSaved());
+        }
+        metrics.counter("cexPrioritizerCheckerCalls").add(numCheckerCalls);
+        metrics.counter("cexPrioritizerCheckerCallsSaved").add(
+                numCheckerCallsSaved);
+        metrics.counter("cexPrioritizerCExamplesSkipped").add(
+                numCExamplesSkipped);
+    }
+}
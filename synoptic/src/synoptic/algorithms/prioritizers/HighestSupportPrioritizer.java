@@ -0,0 +1,58 @@
+package synoptic.algorithms.prioritizers;
+
+import java.util.Comparator;
+import java.util.List;
+
+import synoptic.invariants.BinaryInvariant;
+import synoptic.invariants.CExamplePath;
+import synoptic.invariants.ITemporalInvariant;
+import synoptic.invariants.constraints.TempConstrainedInvariant;
+import synoptic.model.Partition;
+import synoptic.model.PartitionGraph;
+import synoptic.util.InvariantStatistics;
+
+/**
+ * Tries first the counter-examples of the invariants with the highest support
+ * count in the log. The events of an invariant with a high support are spread
+ * over many partitions, so resolving it early tends to separate the events
+ * that the other invariants depend on. Invariants without statistics (e.g.,
+ * when support counts were not mined) have a support of 0.
+ */
+public class HighestSupportPrioritizer extends CExamplePrioritizer {
+
+    /**
+     * Returns the support count of inv, or 0 if it has none.
+     */
+    static int getSupport(ITemporalInvariant inv) {
+        if (!(inv instanceof BinaryInvariant)) {
+            return 0;
+        }
+        InvariantStatistics stats = ((BinaryInvariant) inv).getStatistics();
+        if (stats == null && inv instanceof TempConstrainedInvariant<?>) {
+            stats = ((TempConstrainedInvariant<?>) inv).getInv()
+                    .getStatistics();
+        }
+        if (stats == null) {
+            return 0;
+        }
+        return stats.supportCount;
+    }
+
+    @Override
+    protected Comparator<CExamplePath<Partition>> getComparator(
+            List<CExamplePath<Partition>> cExamples, PartitionGraph pGraph) {
+        return new Comparator<CExamplePath<Partition>>() {
+            @Override
+            public int compare(CExamplePath<Partition> o1,
+                    CExamplePath<Partition> o2) {
+                return Integer.valueOf(getSupport(o2.invariant)).compareTo(
+                        getSupport(o1.invariant));
+            }
+        };
+    }
+
+    @Override
+    public String getName() {
+        return HIGHEST_SUPPORT;
+    }
+}
@@ -0,0 +1,66 @@
+package synoptic.algorithms.prioritizers;
+
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import synoptic.invariants.CExamplePath;
+import synoptic.model.Partition;
+import synoptic.model.PartitionGraph;
+
+/**
+ * Tries first the counter-examples that go through the partitions that are on
+ * the most counter-examples of the step. A split of such a partition is likely
+ * to eliminate many counter-examples at once, whose invariants are then
+ * skipped for the rest of the step. The INITIAL and TERMINAL partitions are on
+ * every counter-example and are never split, so they are not counted.
+ */
+public class MostViolatedPartitionPrioritizer extends CExamplePrioritizer {
+
+    @Override
+    protected Comparator<CExamplePath<Partition>> getComparator(
+            List<CExamplePath<Partition>> cExamples, PartitionGraph pGraph) {
+        // The number of counter-examples that go through each partition.
+        Map<Partition, Integer> numViolations = new HashMap<Partition, Integer>();
+        for (CExamplePath<Partition> cExample : cExamples) {
+            for (Partition part : new HashSet<Partition>(cExample.path)) {
+                if (part.isInitial() || part.isTerminal()) {
+                    continue;
+                }
+                Integer num = numViolations.get(part);
+                numViolations.put(part, num == null ? 1 : num + 1);
+            }
+        }
+
+        // The score of a counter-example is the largest number of
+        // counter-examples that go through one of its partitions.
+        final Map<CExamplePath<Partition>, Integer> scores = new HashMap<CExamplePath<Partition>, Integer>();
+        for (CExamplePath<Partition> cExample : cExamples) {
+            int score = 0;
+            Set<Partition> parts = new HashSet<Partition>(cExample.path);
+            for (Partition part : parts) {
+                Integer num = numViolations.get(part);
+                if (num != null && num > score) {
+                    score = num;
+                }
+            }
+            scores.put(cExample, score);
+        }
+
+        return new Comparator<CExamplePath<Partition>>() {
+            @Override
+            public int compare(CExamplePath<Partition> o1,
+                    CExamplePath<Partition> o2) {
+                return scores.get(o2).compareTo(scores.get(o1));
+            }
+        };
+    }
+
+    @Override
+    public String getName() {
+        return MOST_VIOLATED;
+    }
+}
@@ -0,0 +1,35 @@
+package synoptic.algorithms.prioritizers;
+
+import java.util.Comparator;
+import java.util.List;
+
+import synoptic.invariants.CExamplePath;
+import synoptic.model.Partition;
+import synoptic.model.PartitionGraph;
+
+/**
+ * Tries the shortest counter-examples first. A short counter-example has few
+ * partitions, and so few candidate splits to check, and a split that
+ * eliminates it often eliminates the longer counter-examples that share its
+ * partitions.
+ */
+public class ShortestPathPrioritizer extends CExamplePrioritizer {
+
+    @Override
+    protected Comparator<CExamplePath<Partition>> getComparator(
+            List<CExamplePath<Partition>> cExamples, PartitionGraph pGraph) {
+        return new Comparator<CExamplePath<Partition>>() {
+            @Override
+            public int compare(CExamplePath<Partition> o1,
+                    CExamplePath<Partition> o2) {
+                return Integer.valueOf(o1.path.size()).compareTo(
+                        o2.path.size());
+            }
+        };
+    }
+
+    @Override
+    public String getName() {
+        return SHORTEST;
+    }
+}
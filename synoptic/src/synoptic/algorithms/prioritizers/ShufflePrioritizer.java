@@ -0,0 +1,26 @@
+package synoptic.algorithms.prioritizers;
+
+import java.util.Comparator;
+import java.util.List;
+
+import synoptic.invariants.CExamplePath;
+import synoptic.model.Partition;
+import synoptic.model.PartitionGraph;
+
+/**
+ * Tries the counter-examples in a random order, determined by the random seed
+ * of the run. This is the default strategy.
+ */
+public class ShufflePrioritizer extends CExamplePrioritizer {
+
+    @Override
+    protected Comparator<CExamplePath<Partition>> getComparator(
+            List<CExamplePath<Partition>> cExamples, PartitionGraph pGraph) {
+        return null;
+    }
+
+    @Override
+    public String getName() {
+        return SHUFFLE;
+    }
+}
@@ -0,0 +1,112 @@
+package synoptic.algorithms.prioritizers;
+
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import synoptic.invariants.CExamplePath;
+import synoptic.invariants.ITemporalInvariant;
+import synoptic.invariants.constraints.TempConstrainedInvariant;
+import synoptic.model.Partition;
+import synoptic.model.PartitionGraph;
+
+/**
+ * Learns, over the steps of a refinement, how often a split that satisfies the
+ * invariant of a counter-example is found, and tries first the
+ * counter-examples that are most likely to be resolved. The success rate of an
+ * invariant is estimated from the attempts for that invariant once it has had
+ * any, and from the attempts for all invariants of its type before that. Rates
+ * are smoothed, so that an invariant without any attempts has a rate of 1/2.
+ * Ties are broken by the length of the counter-examples, shortest first.
+ * <p>
+ * The rates are kept by this instance, so the same instance must be used for
+ * all the steps of a refinement.
+ * </p>
+ */
+public class SplitSuccessPrioritizer extends CExamplePrioritizer {
+
+    /**
+     * The number of attempts and successes, as an array of two ints, for each
+     * invariant and for each type of invariant.
+     */
+    private final Map<ITemporalInvariant, int[]> invOutcomes = new HashMap<ITemporalInvariant, int[]>();
+    private final Map<String, int[]> typeOutcomes = new HashMap<String, int[]>();
+
+    /**
+     * Returns the type of inv, which distinguishes the bound of constrained
+     * invariants.
+     */
+    private static String getType(ITemporalInvariant inv) {
+        if (inv instanceof TempConstrainedInvariant<?>) {
+            return inv.getShortName()
+                    + " "
+                    + ((TempConstrainedInvariant<?>) inv).getConstraint()
+                            .getClass().getSimpleName();
+        }
+        return inv.getShortName();
+    }
+
+    /**
+     * Returns the estimated rate at which splits that satisfy inv are found.
+     */
+    double getSuccessRate(ITemporalInvariant inv) {
+        int[] outcomes = invOutcomes.get(inv);
+        if (outcomes == null) {
+            outcomes = typeOutcomes.get(getType(inv));
+        }
+        if (outcomes == null) {
+            return 0.5;
+        }
+        return (outcomes[1] + 1.0) / (outcomes[0] + 2.0);
+    }
+
+    @Override
+    protected Comparator<CExamplePath<Partition>> getComparator(
+            List<CExamplePath<Partition>> cExamples, PartitionGraph pGraph) {
+        final Map<ITemporalInvariant, Double> rates = new HashMap<ITemporalInvariant, Double>();
+        for (CExamplePath<Partition> cExample : cExamples) {
+            rates.put(cExample.invariant, getSuccessRate(cExample.invariant));
+        }
+        return new Comparator<CExamplePath<Partition>>() {
+            @Override
+            public int compare(CExamplePath<Partition> o1,
+                    CExamplePath<Partition> o2) {
+                int cmp = rates.get(o2.invariant).compareTo(
+                        rates.get(o1.invariant));
+                if (cmp != 0) {
+                    return cmp;
+                }
+                return Integer.valueOf(o1.path.size()).compareTo(
+                        o2.path.size());
+            }
+        };
+    }
+
+    @Override
+    public void recordAttempt(CExamplePath<Partition> cExample,
+            boolean resolved, int checkerCalls, int checkerCallsSaved) {
+        super.recordAttempt(cExample, resolved, checkerCalls,
+                checkerCallsSaved);
+        addOutcome(invOutcomes, cExample.invariant, resolved);
+        addOutcome(typeOutcomes, getType(cExample.invariant), resolved);
+    }
+
+    private static <K> void addOutcome(Map<K, int[]> outcomesMap, K key,
+            boolean resolved) {
+        int[] outcomes = outcomesMap.get(key);
+        if (outcomes == null) {
+            outcomes = new int[2];
+            outcomesMap.put(key, outcomes);
+        }
+        outcomes[0]++;
+        if (resolved) {
+            outcomes[1]++;
+        }
+    }
+
+    @Override
+    public String getName() {
+        return LEARNED;
+    }
+}
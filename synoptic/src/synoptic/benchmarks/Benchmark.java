@@ -33,19 +33,18 @@ public class Benchmark<ArgumentType> {
         /**
          * A hash map to store the results of the runs.
          */
-        private final LinkedHashMap<ArgumentType, PerformanceMetrics> results = new LinkedHashMap<ArgumentType, PerformanceMetrics>();
+        private final LinkedHashMap<ArgumentType, MetricsRegistry> results = new LinkedHashMap<ArgumentType, MetricsRegistry>();
 
         /**
          * Records the results of a benchmark run (identified by the arguments).
          * 
          * @param arg
          *            identifies the benchmark
-         * @param performanceMetrics
+         * @param metrics
          *            the results
          */
-        synchronized void record(ArgumentType arg,
-                PerformanceMetrics performanceMetrics) {
-            results.put(arg, performanceMetrics);
+        synchronized void record(ArgumentType arg, MetricsRegistry metrics) {
+            results.put(arg, metrics);
         }
 
         /**
@@ -65,14 +64,13 @@ public class Benchmark<ArgumentType> {
          *            the argument
          * @return the metrics collected for the benchmark run
          */
-        public synchronized PerformanceMetrics getResults(ArgumentType arg) {
+        public synchronized MetricsRegistry getResults(ArgumentType arg) {
             return results.get(arg);
         }
 
         /**
          * Returns a runnable that represents the benchmark. This is provided
-         * for future parallelization. TODO: fix the race for performance
-         * metrics.
+         * for future parallelization.
          * 
          * @param val
          *            the configuration to use
@@ -103,30 +101,24 @@ public class Benchmark<ArgumentType> {
     }
 
     /**
-     * Run the synoptic.benchmarks for each arg in arguments.
+     * Run the synoptic.benchmarks for each arg in arguments, and print the
+     * metrics for each arg as CSV, with the counts and sums averaged over the
+     * repetitions. The recorded metrics hold the totals of the repetitions.
      * 
      * @param arguments
      *            the arguments to run the benchmark for
      */
     public void run(Collection<ArgumentType> arguments) {
-        boolean isFirst = true;
         for (ArgumentType arg : arguments) {
             for (int i = 0; i < repetitions; ++i) {
                 Runnable task = taskFactory.configure(arg);
-                TimedTask total = new TimedTask("total");
+                TimedTask total = MetricsRegistry.createTask("total");
                 task.run();
                 total.stop();
-                PerformanceMetrics.get().record(total);
-
-            }
-            if (isFirst || true) {
-                System.out.println(PerformanceMetrics.get().getHeader());
-                isFirst = false;
             }
-            System.out.println(PerformanceMetrics.get().getDataDividedBy(
-                    repetitions));
-            PerformanceMetrics metrics = PerformanceMetrics.get();
-            PerformanceMetrics.clear();
+            MetricsRegistry metrics = MetricsRegistry.get();
+            MetricsRegistry.clear();
+            System.out.print(metrics.toCsv(repetitions));
             taskFactory.record(arg, metrics);
         }
     }
@@ -0,0 +1,401 @@
+package synoptic.benchmarks;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.logging.Logger;
+
+import org.json.simple.JSONValue;
+
+import synoptic.main.AbstractMain;
+
+/**
+ * A registry of performance metrics that can be updated from any number of
+ * threads. It holds three kinds of metrics, each identified by a name:
+ * counters, which are added to; histograms, which record the distribution of
+ * measured values; and timers, which are histograms of task durations in
+ * nanoseconds. The metrics are created on first use, and are updated with
+ * atomic operations only, so recording a measurement does not take a lock.
+ * <p>
+ * Tasks are timed with TimedTasks that are created by createTask. Each thread
+ * has its own stack of running tasks: a task that is created while another
+ * task of the same thread is running is a subtask of that task, and is timed
+ * under the name "task/subtask". Stopping a task records its duration with the
+ * timer of its name, and pops it from the stack of its thread.
+ * </p>
+ * <p>
+ * The metrics can be written to a JSON or a CSV file, for example at the end
+ * of a run (see the metricsFile option).
+ * </p>
+ */
+public class MetricsRegistry {
+    private static Logger logger = Logger.getLogger("Performance Metrics");
+
+    /**
+     * A global metrics registry instance to record statistics.
+     */
+    private static volatile MetricsRegistry globalMetrics = new MetricsRegistry();
+
+    private final ConcurrentMap<String, Counter> counters = new ConcurrentHashMap<String, Counter>();
+    private final ConcurrentMap<String, Histogram> histograms = new ConcurrentHashMap<String, Histogram>();
+    private final ConcurrentMap<String, Histogram> timers = new ConcurrentHashMap<String, Histogram>();
+
+    /**
+     * The innermost running task of each thread.
+     */
+    private final ThreadLocal<TimedTask> currentTask = new ThreadLocal<TimedTask>();
+
+    /**
+     * Returns the global metrics registry.
+     */
+    public static MetricsRegistry get() {
+        return globalMetrics;
+    }
+
+    /**
+     * Replaces the global metrics registry with an empty one. Tasks that are
+     * running are recorded with the registry that created them.
+     */
+    public static void clear() {
+        globalMetrics = new MetricsRegistry();
+    }
+
+    /**
+     * Creates and starts a task of the current thread in the global registry.
+     * 
+     * @param taskName
+     *            the task name. Choose something unique.
+     * @return the timed task created
+     */
+    public static TimedTask createTask(String taskName) {
+        return createTask(taskName, false);
+    }
+
+    /**
+     * Creates and starts a task of the current thread in the global registry.
+     * 
+     * @param taskName
+     *            the task name. Choose something unique.
+     * @param accumulativity
+     *            set this task to be accumulative: its individual durations
+     *            are not logged
+     * @return the created timed task
+     */
+    public static TimedTask createTask(String taskName, boolean accumulativity) {
+        return get().startTask(taskName, accumulativity);
+    }
+
+    /**
+     * Creates and starts a task of the current thread, as a subtask of the
+     * running task of the thread, if any.
+     */
+    public TimedTask startTask(String taskName, boolean accumulativity) {
+        TimedTask task = new TimedTask(taskName, currentTask.get(), this,
+                accumulativity);
+        currentTask.set(task);
+        return task;
+    }
+
+    /**
+     * Records the duration of a stopped task with the timer of its name, and
+     * pops the task from the task stack of the current thread.
+     */
+    void record(TimedTask task) {
+        long nanos = task.getNanoTime();
+        timer(task.getTask()).record(nanos);
+        if (!task.getAccumulativity()) {
+            AbstractMain main = AbstractMain.getInstance();
+            if (main != null && main.options.doBenchmarking) {
+                logger.fine(task.getTask() + " = " + nanos + "ns");
+            }
+        }
+        if (currentTask.get() == task) {
+            currentTask.set(task.getParent());
+        }
+    }
+
+    /**
+     * Returns the counter with the given name, creating it if necessary.
+     */
+    public Counter counter(String name) {
+        Counter counter = counters.get(name);
+        if (counter == null) {
+            counter = new Counter();
+            Counter existing = counters.putIfAbsent(name, counter);
+            if (existing != null) {
+                counter = existing;
+            }
+        }
+        return counter;
+    }
+
+    /**
+     * Returns the histogram with the given name, creating it if necessary.
+     */
+    public Histogram histogram(String name) {
+        return getHistogram(histograms, name);
+    }
+
+    /**
+     * Returns the timer (a histogram of durations in nanoseconds) with the
+     * given name, creating it if necessary.
+     */
+    public Histogram timer(String name) {
+        return getHistogram(timers, name);
+    }
+
+    private static Histogram getHistogram(
+            ConcurrentMap<String, Histogram> histograms, String name) {
+        Histogram histogram = histograms.get(name);
+        if (histogram == null) {
+            histogram = new Histogram();
+            Histogram existing = histograms.putIfAbsent(name, histogram);
+            if (existing != null) {
+                histogram = existing;
+            }
+        }
+        return histogram;
+    }
+
+    /**
+     * Writes the metrics to a file, as JSON if the name of the file ends with
+     * ".json", and as CSV otherwise.
+     */
+    public void write(File file) throws IOException {
+        String contents;
+        if (file.getName().toLowerCase().endsWith(".json")) {
+            contents = toJson();
+        } else {
+            contents = toCsv();
+        }
+        Writer out = new OutputStreamWriter(new FileOutputStream(file),
+                StandardCharsets.UTF_8);
+        try {
+            out.write(contents);
+        } finally {
+            out.close();
+        }
+    }
+
+    /**
+     * Returns the metrics as a JSON object with "counters", "histograms", and
+     * "timers" members, each of which maps the metric names, in alphabetic
+     * order, to their values.
+     */
+    public String toJson() {
+        Map<String, Object> json = new LinkedHashMap<String, Object>();
+        Map<String, Object> countersJson = new LinkedHashMap<String, Object>();
+        for (Map.Entry<String, Counter> entry : new TreeMap<String, Counter>(
+                counters).entrySet()) {
+            countersJson.put(entry.getKey(), entry.getValue().get());
+        }
+        json.put("counters", countersJson);
+        json.put("histograms", histogramsToJson(histograms));
+        json.put("timers", histogramsToJson(timers));
+        return JSONValue.toJSONString(json) + "\n";
+    }
+
+    private static Map<String, Object> histogramsToJson(
+            Map<String, Histogram> histograms) {
+        Map<String, Object> json = new LinkedHashMap<String, Object>();
+        for (Map.Entry<String, Histogram> entry : new TreeMap<String, Histogram>(
+                histograms).entrySet()) {
+            json.put(entry.getKey(), entry.getValue().toJson());
+        }
+        return json;
+    }
+
+    /**
+     * Returns the metrics as CSV, with a header line and a line per metric:
+     * kind (counter, histogram, or timer), name, count, sum, min, max, and
+     * mean. A counter has its value as its count and sum.
+     */
+    public String toCsv() {
+        return toCsv(1);
+    }
+
+    /**
+     * Returns the metrics as toCsv does, for metrics that were recorded over
+     * a number of repetitions of the same run: the counts and sums are
+     * averaged over the repetitions, while min, max, and mean are those of
+     * all the recorded values.
+     */
+    public String toCsv(int repetitions) {
+        StringBuilder csv = new StringBuilder("kind,name,count,sum,min,max,mean\n");
+        for (Map.Entry<String, Counter> entry : new TreeMap<String, Counter>(
+                counters).entrySet()) {
+            String value = perRepetition(entry.getValue().get(), repetitions);
+            csv.append("counter,").append(csvField(entry.getKey())).append(',')
+                    .append(value).append(',').append(value).append(",,,\n");
+        }
+        appendCsv(csv, "histogram", histograms, repetitions);
+        appendCsv(csv, "timer", timers, repetitions);
+        return csv.toString();
+    }
+
+    private static String perRepetition(long value, int repetitions) {
+        if (repetitions == 1) {
+            return Long.toString(value);
+        }
+        return Double.toString((double) value / repetitions);
+    }
+
+    private static void appendCsv(StringBuilder csv, String kind,
+            Map<String, Histogram> histograms, int repetitions) {
+        for (Map.Entry<String, Histogram> entry : new TreeMap<String, Histogram>(
+                histograms).entrySet()) {
+            Histogram histogram = entry.getValue();
+            long count = histogram.getCount();
+            csv.append(kind).append(',').append(csvField(entry.getKey()))
+                    .append(',').append(perRepetition(count, repetitions))
+                    .append(',')
+                    .append(perRepetition(histogram.getSum(), repetitions))
+                    .append(',');
+            if (count > 0) {
+                csv.append(histogram.getMin()).append(',')
+                        .append(histogram.getMax()).append(',')
+                        .append(histogram.getMean());
+            } else {
+                csv.append(",,");
+            }
+            csv.append('\n');
+        }
+    }
+
+    private static String csvField(String field) {
+        if (field.indexOf(',') < 0 && field.indexOf('"') < 0
+                && field.indexOf('\n') < 0) {
+            return field;
+        }
+        return "\"" + field.replace("\"", "\"\"") + "\"";
+    }
+
+    /**
+     * A counter that any number of threads can add to.
+     */
+    public static class Counter {
+        private final AtomicLong value = new AtomicLong();
+
+        public void increment() {
+            value.incrementAndGet();
+        }
+
+        public void add(long delta) {
+            value.addAndGet(delta);
+        }
+
+        public long get() {
+            return value.get();
+        }
+    }
+
+    /**
+     * The distribution of a measured value, which any number of threads can
+     * record values with. Besides the count, sum, minimum, and maximum of the
+     * values, it counts the values in buckets of powers of two: bucket 0
+     * holds the values <= 0, and bucket i > 0 the values in [2^(i-1), 2^i).
+     */
+    public static class Histogram {
+        private static final int numBuckets = 64;
+
+        private final AtomicLong count = new AtomicLong();
+        private final AtomicLong sum = new AtomicLong();
+        private final AtomicLong min = new AtomicLong(Long.MAX_VALUE);
+        private final AtomicLong max = new AtomicLong(Long.MIN_VALUE);
+        private final AtomicLongArray buckets = new AtomicLongArray(numBuckets);
+
+        public void record(long value) {
+            count.incrementAndGet();
+            sum.addAndGet(value);
+            long current = min.get();
+            while (value < current && !min.compareAndSet(current, value)) {
+                current = min.get();
+            }
+            current = max.get();
+            while (value > current && !max.compareAndSet(current, value)) {
+                current = max.get();
+            }
+            buckets.incrementAndGet(getBucket(value));
+        }
+
+        static int getBucket(long value) {
+            if (value <= 0) {
+                return 0;
+            }
+            return 64 - Long.numberOfLeadingZeros(value);
+        }
+
+        public long getCount() {
+            return count.get();
+        }
+
+        public long getSum() {
+            return sum.get();
+        }
+
+        /**
+         * Returns the smallest recorded value, or Long.MAX_VALUE if no values
+         * were recorded.
+         */
+        public long getMin() {
+            return min.get();
+        }
+
+        /**
+         * Returns the largest recorded value, or Long.MIN_VALUE if no values
+         * were recorded.
+         */
+        public long getMax() {
+            return max.get();
+        }
+
+        /**
+         * Returns the mean of the recorded values, or 0 if no values were
+         * recorded.
+         */
+        public double getMean() {
+            long n = count.get();
+            return n == 0 ? 0 : (double) sum.get() / n;
+        }
+
+        /**
+         * Returns the number of recorded values in bucket i.
+         */
+        public long getBucketCount(int i) {
+            return buckets.get(i);
+        }
+
+        Map<String, Object> toJson() {
+            Map<String, Object> json = new LinkedHashMap<String, Object>();
+            long n = count.get();
+            json.put("count", n);
+            json.put("sum", sum.get());
+            if (n > 0) {
+                json.put("min", min.get());
+                json.put("max", max.get());
+                json.put("mean", getMean());
+            }
+            // The non-empty buckets, by the smallest value in the bucket.
+            Map<String, Object> bucketsJson = new LinkedHashMap<String, Object>();
+            for (int i = 0; i < numBuckets; i++) {
+                long bucketCount = buckets.get(i);
+                if (bucketCount > 0) {
+                    bucketsJson.put(i == 0 ? "0" : Long.toString(1L << (i - 1)),
+                            bucketCount);
+                }
+            }
+            json.put("buckets", bucketsJson);
+            return json;
+        }
+    }
+}
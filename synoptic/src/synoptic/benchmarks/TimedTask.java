@@ -6,7 +6,7 @@ package synoptic.benchmarks;
  */
 public class TimedTask {
     /**
-     * Task start time (as returned by currentTimeMillis)
+     * Task start time (as returned by nanoTime)
      */
     private final long timeStart;
     /**
@@ -18,16 +18,16 @@ public class TimedTask {
      */
     private final String task;
     /**
-     * PerformanceMetrics instance to record things at.
+     * MetricsRegistry instance to record things at.
      */
-    private PerformanceMetrics recordAt = null;
+    private MetricsRegistry recordAt = null;
     /**
      * The timed task this task is a subcomputation of.
      */
     private TimedTask parent = null;
     /**
-     * Accumulativity is true, if the recorded number shall not be averaged by
-     * PerformanceMetrics.
+     * Accumulativity is true, if the individual durations of the task shall
+     * not be logged by MetricsRegistry.
      */
     boolean accumulativity = false;
 
@@ -39,12 +39,12 @@ public class TimedTask {
      */
     public TimedTask(String task) {
         this.task = task;
-        timeStart = System.currentTimeMillis();
+        timeStart = System.nanoTime();
     }
 
     /**
      * Create a task. Once stop is called, the task will be recorded at the
-     * performance metrics recordAt.
+     * metrics registry recordAt.
      * 
      * @param task
      *            the task name
@@ -55,7 +55,7 @@ public class TimedTask {
      * @param accumulativity
      */
     public TimedTask(String task, TimedTask parent,
-            PerformanceMetrics recordAt, boolean accumulativity) {
+            MetricsRegistry recordAt, boolean accumulativity) {
         this(parent == null ? task : parent.getTask() + "/" + task);
         this.parent = parent;
         this.accumulativity = accumulativity;
@@ -93,7 +93,7 @@ public class TimedTask {
      */
     public void stop() {
         assert (timeEnd == null);
-        timeEnd = System.currentTimeMillis();
+        timeEnd = System.nanoTime();
         if (recordAt != null) {
             recordAt.record(this);
         }
@@ -108,7 +108,7 @@ public class TimedTask {
         if (timeEnd == null) {
             stop();
         }
-        return task + " in " + (timeEnd - timeStart) + "ms";
+        return task + " in " + getTime() + "ms";
     }
 
     /**
@@ -119,10 +119,21 @@ public class TimedTask {
     }
 
     /**
-     * Get the duration of the task. Will return null of it has not been stopped
-     * yet.
+     * Get the duration of the task in milliseconds. Will return null of it has
+     * not been stopped yet.
      */
     public Long getTime() {
+        if (timeEnd == null) {
+            return null;
+        }
+        return (timeEnd - timeStart) / 1000000;
+    }
+
+    /**
+     * Get the duration of the task in nanoseconds. Will return null of it has
+     * not been stopped yet.
+     */
+    public Long getNanoTime() {
         if (timeEnd == null) {
             return null;
         }
@@ -12,10 +12,12 @@ import java.util.LinkedHashSet;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
-import synoptic.benchmarks.PerformanceMetrics;
+import synoptic.benchmarks.MetricsRegistry;
 import synoptic.benchmarks.TimedTask;
 import synoptic.invariants.fsmcheck.FsmModelChecker;
 import synoptic.invariants.ltlchecker.GraphLTLChecker;
@@ -133,7 +135,7 @@ public class TemporalInvariantSet implements Iterable<ITemporalInvariant> {
      */
     public static <T extends INode<T>> CExamplePath<T> getCounterExample(
             ITemporalInvariant inv, IGraph<T> g) {
-        TimedTask refinement = PerformanceMetrics.createTask(
+        TimedTask refinement = MetricsRegistry.createTask(
                 "getCounterExample", true);
         try {
             if (AbstractMain.getInstance().options.useFSMChecker) {
@@ -149,7 +151,9 @@ public class TemporalInvariantSet implements Iterable<ITemporalInvariant> {
 
     /**
      * Returns a list of paths, each of which violates an invariant maintained
-     * by this invariant set (i.e. each of which is a counter-example).
+     * by this invariant set (i.e. each of which is a counter-example). With
+     * the FSM checker, the invariants are checked with the number of threads
+     * set by the checkerThreads option.
      * 
      * @param <T>
      *            the type of nodes in graph g
@@ -159,14 +163,46 @@ public class TemporalInvariantSet implements Iterable<ITemporalInvariant> {
      */
     public <T extends INode<T>> List<CExamplePath<T>> getAllCounterExamples(
             IGraph<T> graph) {
-        TimedTask violations = PerformanceMetrics.createTask(
+        return getAllCounterExamples(graph,
+                AbstractMain.getInstance().options.checkerThreads);
+    }
+
+    /**
+     * Returns a list of paths, each of which violates an invariant maintained
+     * by this invariant set (i.e. each of which is a counter-example). With
+     * the FSM checker and more than one thread, the invariants are checked in
+     * parallel on a ForkJoinPool. Each check only reads the graph, and the
+     * paths are gathered in the order of the invariants in this set, so the
+     * result is the same as with one thread.
+     * 
+     * @param <T>
+     *            the type of nodes in graph g
+     * @param graph
+     *            the graph within which the violating paths must be found
+     * @param numThreads
+     *            the number of threads that check invariants (only used by
+     *            the FSM checker)
+     * @return a list of violating paths, sorted by length, or null if there
+     *         are none
+     */
+    public <T extends INode<T>> List<CExamplePath<T>> getAllCounterExamples(
+            IGraph<T> graph, int numThreads) {
+        TimedTask violations = MetricsRegistry.createTask(
                 "getAllCounterExamples", false);
         AbstractMain main = AbstractMain.getInstance();
         try {
             List<CExamplePath<T>> paths = null;
+            List<ITemporalInvariant> fsmInvs = null;
             if (main.options.useFSMChecker) {
+                fsmInvs = getInvariantsToTrace(graph);
+            }
+            if (main.options.useFSMChecker && numThreads > 1
+                    && fsmInvs.size() > 1) {
+                paths = getAllCounterExamplesInParallel(graph, fsmInvs,
+                        numThreads);
+            } else if (main.options.useFSMChecker) {
                 paths = new ArrayList<CExamplePath<T>>();
-                for (ITemporalInvariant tinv : invariants) {
+                for (ITemporalInvariant tinv : fsmInvs) {
                     CExamplePath<T> path = FsmModelChecker.getCounterExample(
                             (BinaryInvariant) tinv, graph);
                     if (path != null) {
@@ -191,6 +227,8 @@ public class TemporalInvariantSet implements Iterable<ITemporalInvariant> {
                 return null;
             }
 
+            // The sort is stable, so paths of the same length remain in the
+            // order of their invariants.
             Collections.sort(paths, new Comparator<CExamplePath<T>>() {
                 @Override
                 public int compare(CExamplePath<T> o1, CExamplePath<T> o2) {
@@ -208,6 +246,112 @@ public class TemporalInvariantSet implements Iterable<ITemporalInvariant> {
         }
     }
 
+    /**
+     * The pool that checks invariants in parallel, created on first use, and
+     * re-created when a different number of threads is requested.
+     */
+    private static ForkJoinPool checkerPool = null;
+
+    private static synchronized ForkJoinPool getCheckerPool(int numThreads) {
+        if (checkerPool == null || checkerPool.getParallelism() != numThreads) {
+            if (checkerPool != null) {
+                checkerPool.shutdown();
+            }
+            checkerPool = new ForkJoinPool(numThreads);
+        }
+        return checkerPool;
+    }
+
+    /**
+     * Returns the invariants that the FSM checker needs to look for
+     * counter-examples of in graph. With the batchedChecking option, these
+     * are the invariants that may be violated according to a single
+     * bitset-parallel pass over graph, in the order of this set. Otherwise,
+     * they are all of the invariants.
+     */
+    private <T extends INode<T>> List<ITemporalInvariant> getInvariantsToTrace(
+            IGraph<T> graph) {
+        List<ITemporalInvariant> invs = new ArrayList<ITemporalInvariant>();
+        if (!AbstractMain.getInstance().options.batchedChecking) {
+            invs.addAll(invariants);
+            return invs;
+        }
+        List<BinaryInvariant> binaryInvs = new ArrayList<BinaryInvariant>();
+        for (ITemporalInvariant inv : invariants) {
+            binaryInvs.add((BinaryInvariant) inv);
+        }
+        invs.addAll(FsmModelChecker.runBatchedBitSetChecker(binaryInvs, graph));
+        return invs;
+    }
+
+    /**
+     * Checks invs with the FSM checker on numThreads threads, and returns
+     * their counter-examples in the order of invs.
+     */
+    private <T extends INode<T>> List<CExamplePath<T>> getAllCounterExamplesInParallel(
+            IGraph<T> graph, List<ITemporalInvariant> invs, int numThreads) {
+        // The graph may cache the adjacent nodes of a node on first access
+        // (e.g., PartitionGraph), so fill the cache before the graph is read
+        // concurrently.
+        for (T node : graph.getNodes()) {
+            graph.getAdjacentNodes(node);
+        }
+
+        List<CExamplePath<T>> results = new ArrayList<CExamplePath<T>>(
+                Collections.<CExamplePath<T>> nCopies(invs.size(), null));
+        getCheckerPool(numThreads).invoke(
+                new CounterExamplesTask<T>(graph, invs, results, 0, invs
+                        .size()));
+
+        List<CExamplePath<T>> paths = new ArrayList<CExamplePath<T>>();
+        for (CExamplePath<T> path : results) {
+            if (path != null) {
+                paths.add(path);
+            }
+        }
+        return paths;
+    }
+
+    /**
+     * Finds the counter-examples of a range of invariants, and stores each at
+     * the index of its invariant in results. Ranges are split in halves until
+     * they contain a single invariant.
+     */
+    private static class CounterExamplesTask<T extends INode<T>> extends
+            RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final IGraph<T> graph;
+        private final List<ITemporalInvariant> invs;
+        private final List<CExamplePath<T>> results;
+        private final int from;
+        private final int to;
+
+        CounterExamplesTask(IGraph<T> graph, List<ITemporalInvariant> invs,
+                List<CExamplePath<T>> results, int from, int to) {
+            this.graph = graph;
+            this.invs = invs;
+            this.results = results;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from == 1) {
+                // Each task writes a different index, and the list is not
+                // structurally modified, so the writes do not conflict.
+                results.set(from, FsmModelChecker.getCounterExample(
+                        (BinaryInvariant) invs.get(from), graph));
+                return;
+            }
+            int mid = (from + to) >>> 1;
+            invokeAll(new CounterExamplesTask<T>(graph, invs, results, from,
+                    mid), new CounterExamplesTask<T>(graph, invs, results, mid,
+                    to));
+        }
+    }
+
     /**
      * Returns the first counter-example encountered in the graph g. The order
      * of exploration is unspecified.
@@ -220,11 +364,11 @@ public class TemporalInvariantSet implements Iterable<ITemporalInvariant> {
      */
     public <T extends INode<T>> CExamplePath<T> getFirstCounterExample(
             IGraph<T> g) {
-        TimedTask violations = PerformanceMetrics.createTask(
+        TimedTask violations = MetricsRegistry.createTask(
                 "getFirstCounterExample", false);
         try {
             if (AbstractMain.getInstance().options.useFSMChecker) {
-                for (ITemporalInvariant tinv : invariants) {
+                for (ITemporalInvariant tinv : getInvariantsToTrace(g)) {
                     CExamplePath<T> path = FsmModelChecker.getCounterExample(
                             (BinaryInvariant) tinv, g);
                     if (path != null) {
@@ -296,13 +440,14 @@ public class TemporalInvariantSet implements Iterable<ITemporalInvariant> {
     // + percentReduction + "% reduction through approximation).");
     // }
     //
-    // PerformanceMetrics.get().record("true_invariants",
+    // MetricsRegistry metrics = MetricsRegistry.get();
+    // metrics.histogram("true_invariants").record(
     // overapproximatedInvariantsSet.numInvariants());
-    // PerformanceMetrics.get().record("approx_invariants",
+    // metrics.histogram("approx_invariants").record(
     // overapproximatedInvariantsSetSize);
-    // PerformanceMetrics.get().record("max_possible_invariants",
+    // metrics.histogram("max_possible_invariants").record(
     // possibleInvariants);
-    // PerformanceMetrics.get().record("percentReduction", percentReduction);
+    // metrics.histogram("percentReduction").record(percentReduction);
     // }
 
     // public TraceGraph getInvariantGraph(String shortName) {
@@ -31,6 +31,13 @@ public class AFbyInvFsms<T extends INode<T>> extends FsmStateSet<T> {
         super(invs, 2);
     }
 
+    /**
+     * Used by copy.
+     */
+    public AFbyInvFsms(int numStates) {
+        super(numStates);
+    }
+
     @Override
     public boolean isFail() {
         return !sets.get(1).isEmpty();
@@ -75,4 +82,4 @@ public class AFbyInvFsms<T extends INode<T>> extends FsmStateSet<T> {
         s2.and(neither);
         s2.or(isA);
     }
-}
+}
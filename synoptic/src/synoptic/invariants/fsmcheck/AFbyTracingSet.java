@@ -72,6 +72,15 @@ public class AFbyTracingSet<T extends INode<T>> extends TracingStateSet<T> {
         return result;
     }
 
+    @Override
+    public void setTo(TracingStateSet<T> other) {
+        AFbyTracingSet<T> casted = (AFbyTracingSet<T>) other;
+        a = casted.a;
+        b = casted.b;
+        wasA = casted.wasA;
+        wasB = casted.wasB;
+    }
+
     @Override
     public void mergeWith(TracingStateSet<T> other) {
         AFbyTracingSet<T> casted = (AFbyTracingSet<T>) other;
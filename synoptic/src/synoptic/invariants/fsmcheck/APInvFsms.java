@@ -32,6 +32,13 @@ public class APInvFsms<T extends INode<T>> extends FsmStateSet<T> {
         super(invs, 3);
     }
 
+    /**
+     * Used by copy.
+     */
+    public APInvFsms(int numStates) {
+        super(numStates);
+    }
+
     @Override
     public boolean isFail() {
         return !sets.get(2).isEmpty();
@@ -49,8 +56,9 @@ public class APInvFsms<T extends INode<T>> extends FsmStateSet<T> {
 
     @Override
     public void setInitial(T input) {
-        BitSet isA = getInputInvariantsDependencies(0, input);
-        BitSet isB = getInputInvariantsDependencies(1, input);
+        // Inputs cloned so that the sets do not alias the invariants map.
+        BitSet isA = getInputCopy(0, input);
+        BitSet isB = getInputCopy(1, input);
         BitSet neither = nor(isA, isB, count);
         sets.set(0, neither);
         sets.set(1, isA);
@@ -80,4 +88,4 @@ public class APInvFsms<T extends INode<T>> extends FsmStateSet<T> {
 
         s1.and(neither);
     }
-}
+}
@@ -75,6 +75,16 @@ public class APTracingSet<T extends INode<T>> extends TracingStateSet<T> {
         return result;
     }
 
+    @Override
+    public void setTo(TracingStateSet<T> other) {
+        APTracingSet<T> casted = (APTracingSet<T>) other;
+        a = casted.a;
+        b = casted.b;
+        neitherSeen = casted.neitherSeen;
+        firstA = casted.firstA;
+        firstB = casted.firstB;
+    }
+
     @Override
     public void mergeWith(TracingStateSet<T> other) {
         APTracingSet<T> casted = (APTracingSet<T>) other;
@@ -197,6 +197,17 @@ public abstract class ConstrainedTracingSet<T extends INode<T>> extends
         // Should only be called on INITIAL nodes
         assert (input.isInitial());
 
+        setLocalInitial(input);
+    }
+
+    /**
+     * Starts the state machine at a node that need not be INITIAL, for
+     * localized model checking of the paths that continue from input (see
+     * FsmModelChecker.getLocalCounterExample). As at INITIAL, the state machine
+     * is in State0 with a zero running time, and input is not an input to the
+     * state machine.
+     */
+    public void setLocalInitial(T input) {
         ConstrainedHistoryNode<T> newHistory = new ConstrainedHistoryNode<T>(
                 input, tBound.getZeroTime());
 
@@ -463,6 +474,22 @@ public abstract class ConstrainedTracingSet<T extends INode<T>> extends
         return result;
     }
 
+    @Override
+    public void setTo(TracingStateSet<T> other) {
+        ConstrainedTracingSet<T> casted = (ConstrainedTracingSet<T>) other;
+
+        a = casted.a;
+        b = casted.b;
+        tBound = casted.tBound;
+        numStates = casted.numStates;
+        // The lists may be shared through setStates, so they are replaced
+        // rather than refilled.
+        states = new ArrayList<ConstrainedHistoryNode<T>>(casted.states);
+        tRunning = new ArrayList<ITime>(casted.tRunning);
+        previous = casted.previous;
+        relation = casted.relation;
+    }
+
     @Override
     public boolean isSubset(TracingStateSet<T> o) {
         // Cast so that we can access FSM states
@@ -1,13 +1,14 @@
 package synoptic.invariants.fsmcheck;
 
+import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.BitSet;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.LinkedHashMap;
-import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
-import java.util.Queue;
 import java.util.Set;
 
 import synoptic.invariants.AlwaysFollowedInvariant;
@@ -21,6 +22,7 @@ import synoptic.invariants.constraints.IThresholdConstraint;
 import synoptic.invariants.constraints.LowerBoundConstraint;
 import synoptic.invariants.constraints.TempConstrainedInvariant;
 import synoptic.invariants.constraints.UpperBoundConstraint;
+import synoptic.model.event.EventType;
 import synoptic.model.interfaces.IGraph;
 import synoptic.model.interfaces.INode;
 
@@ -51,21 +53,42 @@ public class FsmModelChecker {
             IStateSet<Node, StateSet> initial, IGraph<Node> graph,
             boolean earlyExit) {
 
-        // A queue of nodes that we should process.
-        Queue<Node> workList = new LinkedList<Node>();
-
-        // Maps a node to a set of states.
-        Map<Node, StateSet> states = new LinkedHashMap<Node, StateSet>();
+        // Number the nodes densely, so that their states, their successors,
+        // and whether they are in the worklist can be kept in arrays indexed by
+        // node number.
+        List<Node> nodes = new ArrayList<Node>(graph.getNodes());
+        int numNodes = nodes.size();
+        Map<Node, Integer> nodeNums = new HashMap<Node, Integer>(2 * numNodes);
+        for (int i = 0; i < numNodes; i++) {
+            nodeNums.put(nodes.get(i), i);
+        }
 
-        // Populate the state map with initial states.
-        for (Node node : graph.getNodes()) {
-            states.put(node, initial.copy());
+        // Maps a node number to a set of states, populated with initial
+        // states.
+        List<StateSet> states = new ArrayList<StateSet>(numNodes);
+        for (int i = 0; i < numNodes; i++) {
+            states.add(initial.copy());
         }
 
+        // The numbers of the nodes adjacent to each node, filled in when the
+        // node is first processed.
+        int[][] successors = new int[numNodes][];
+
+        // A queue of the numbers of the nodes that we should process, and the
+        // numbers of the nodes that are in the queue.
+        ArrayDeque<Integer> workList = new ArrayDeque<Integer>();
+        BitSet inWorkList = new BitSet(numNodes);
+
         // Add initial node to the worklist.
-        Node node = graph.getDummyInitialNode();
-        workList.add(node);
-        states.get(node).setInitial(node);
+        Node initialNode = graph.getDummyInitialNode();
+        int initialNum = nodeNums.get(initialNode);
+        states.get(initialNum).setInitial(initialNode);
+        workList.add(initialNum);
+        inWorkList.set(initialNum);
+
+        // Holds the states that are transitioned into each target. It is
+        // reused for every edge, rather than copying the current states.
+        StateSet updatesToTargetStates = initial.copy();
 
         // Actual model checking step - takes an item off the worklist, and
         // transitions the state found at that node, using the labels of all
@@ -76,13 +99,26 @@ public class FsmModelChecker {
         // merge performed and the destination node added to the worklist
         // (the changed states need to be propagated).
         while (!workList.isEmpty()) {
-            node = workList.remove();
-            StateSet current = states.get(node);
+            int num = workList.remove();
+            inWorkList.clear(num);
+            StateSet current = states.get(num);
+
+            int[] targetNums = successors[num];
+            if (targetNums == null) {
+                Set<Node> targets = graph.getAdjacentNodes(nodes.get(num));
+                targetNums = new int[targets.size()];
+                int i = 0;
+                for (Node target : targets) {
+                    targetNums[i++] = nodeNums.get(target);
+                }
+                successors[num] = targetNums;
+            }
 
             // Process all the nodes that are adjacent to the current node.
-            for (Node target : graph.getAdjacentNodes(node)) {
-                StateSet oldTargetStates = states.get(target);
-                StateSet updatesToTargetStates = current.copy();
+            for (int targetNum : targetNums) {
+                Node target = nodes.get(targetNum);
+                StateSet oldTargetStates = states.get(targetNum);
+                updatesToTargetStates.setTo(current);
                 updatesToTargetStates.transition(target);
 
                 // Evaluate isSubset _before_ the merge.
@@ -91,19 +127,33 @@ public class FsmModelChecker {
                 oldTargetStates.mergeWith(updatesToTargetStates);
                 if (earlyExit && oldTargetStates.isFail()
                         && target.isTerminal()) {
-                    return states;
+                    return toStateMap(nodes, states);
                 }
 
                 // If updatesToTargetStates is subset of targetStates, then NOT
                 // re-exploring the graph starting from the current node
                 // prevents infinitely traversing loops
-                if (!isSubset && !workList.contains(target)) {
-                    workList.add(target);
+                if (!isSubset && !inWorkList.get(targetNum)) {
+                    workList.add(targetNum);
+                    inWorkList.set(targetNum);
                 }
             }
         }
 
-        return states;
+        return toStateMap(nodes, states);
+    }
+
+    /**
+     * Maps each of nodes to the stateset with the same index in states, in
+     * the order of nodes.
+     */
+    private static <Node, StateSet> Map<Node, StateSet> toStateMap(
+            List<Node> nodes, List<StateSet> states) {
+        Map<Node, StateSet> stateMap = new LinkedHashMap<Node, StateSet>();
+        for (int i = 0; i < nodes.size(); i++) {
+            stateMap.put(nodes.get(i), states.get(i));
+        }
+        return stateMap;
     }
 
     // Helper which invokes runChecker given an fsm state set, and process the
@@ -169,6 +219,135 @@ public class FsmModelChecker {
         return results;
     }
 
+    /**
+     * Checks invariants of all types in a single bitset-parallel propagation
+     * over graph, and returns those that may be violated, in the order of
+     * invariants. The AFby, AP, NFby, and IntrBy invariants are returned if
+     * and only if they are violated. A constrained invariant carries running
+     * times that bits cannot hold, so its untimed shape is checked instead: it
+     * is returned if its event types occur on some path in the order that its
+     * tracing state machine needs to fail (A then B for AFby, B for AP, and A
+     * then A for IntrBy). It may still be satisfied, and must be traced to
+     * tell. Invariants of other types are always returned.
+     * 
+     * @param invariants
+     *            The invariants to check.
+     * @param graph
+     *            The graph to check.
+     * @return The invariants that may be violated, which are the only ones
+     *         for which a counter-example needs to be traced.
+     */
+    public static <T extends INode<T>> List<BinaryInvariant> runBatchedBitSetChecker(
+            Iterable<BinaryInvariant> invariants, IGraph<T> graph) {
+
+        List<BinaryInvariant> invs = new ArrayList<BinaryInvariant>();
+        for (BinaryInvariant inv : invariants) {
+            invs.add(inv);
+        }
+
+        // The invariants of the AFby, AP, NFby, and IntrBy machines, and for
+        // each of them the index in invs of the invariant it stands for.
+        List<List<BinaryInvariant>> machineInvs = new ArrayList<List<BinaryInvariant>>();
+        List<List<Integer>> owners = new ArrayList<List<Integer>>();
+        for (int m = 0; m < 4; m++) {
+            machineInvs.add(new ArrayList<BinaryInvariant>());
+            owners.add(new ArrayList<Integer>());
+        }
+
+        BitSet violated = new BitSet(invs.size());
+        for (int i = 0; i < invs.size(); i++) {
+            BinaryInvariant inv = invs.get(i);
+            Class<?> invClass = inv.getClass();
+            if (invClass.equals(AlwaysFollowedInvariant.class)) {
+                addMachineInv(0, inv, i, machineInvs, owners);
+            } else if (invClass.equals(AlwaysPrecedesInvariant.class)) {
+                addMachineInv(1, inv, i, machineInvs, owners);
+            } else if (invClass.equals(NeverFollowedInvariant.class)) {
+                addMachineInv(2, inv, i, machineInvs, owners);
+            } else if (invClass.equals(InterruptedByInvariant.class)) {
+                addMachineInv(3, inv, i, machineInvs, owners);
+            } else if (invClass.equals(TempConstrainedInvariant.class)) {
+                BinaryInvariant untimedInv = ((TempConstrainedInvariant<?>) inv)
+                        .getInv();
+                EventType a = inv.getFirst();
+                EventType b = inv.getSecond();
+                String relation = inv.getRelation();
+                if (untimedInv instanceof AlwaysFollowedInvariant) {
+                    // Fails only after an A that is followed by a B.
+                    addMachineInv(2, new NeverFollowedInvariant(a, b,
+                            relation), i, machineInvs, owners);
+                } else if (untimedInv instanceof AlwaysPrecedesInvariant
+                        && !a.equals(b)) {
+                    // Fails only after a B, which follows an A or not.
+                    addMachineInv(1, new AlwaysPrecedesInvariant(a, b,
+                            relation), i, machineInvs, owners);
+                    addMachineInv(2, new NeverFollowedInvariant(a, b,
+                            relation), i, machineInvs, owners);
+                } else if (untimedInv instanceof InterruptedByInvariant) {
+                    // Fails only after an A that is followed by an A.
+                    addMachineInv(2, new NeverFollowedInvariant(a, a,
+                            relation), i, machineInvs, owners);
+                } else {
+                    violated.set(i);
+                }
+            } else {
+                violated.set(i);
+            }
+        }
+
+        List<FsmStateSet<T>> members = new ArrayList<FsmStateSet<T>>();
+        List<Integer> memberMachines = new ArrayList<Integer>();
+        for (int m = 0; m < 4; m++) {
+            List<BinaryInvariant> mInvs = machineInvs.get(m);
+            if (mInvs.isEmpty()) {
+                continue;
+            }
+            if (m == 0) {
+                members.add(new AFbyInvFsms<T>(mInvs));
+            } else if (m == 1) {
+                members.add(new APInvFsms<T>(mInvs));
+            } else if (m == 2) {
+                members.add(new NFbyInvFsms<T>(mInvs));
+            } else {
+                members.add(new IntrByInvFsms<T>(mInvs));
+            }
+            memberMachines.add(m);
+        }
+
+        if (!members.isEmpty()) {
+            Map<T, FsmStateSetGroup<T>> states = runChecker(
+                    new FsmStateSetGroup<T>(members), graph, false);
+            for (int k = 0; k < members.size(); k++) {
+                BitSet fails = new BitSet();
+                for (Entry<T, FsmStateSetGroup<T>> entry : states.entrySet()) {
+                    if (entry.getKey().isTerminal()) {
+                        fails.or(entry.getValue().getMember(k).whichFail());
+                    }
+                }
+                List<Integer> mOwners = owners.get(memberMachines.get(k));
+                for (int j = fails.nextSetBit(0); j >= 0
+                        && j < mOwners.size(); j = fails.nextSetBit(j + 1)) {
+                    violated.set(mOwners.get(j));
+                }
+            }
+        }
+
+        List<BinaryInvariant> results = new ArrayList<BinaryInvariant>();
+        for (int i = violated.nextSetBit(0); i >= 0; i = violated
+                .nextSetBit(i + 1)) {
+            results.add(invs.get(i));
+        }
+        return results;
+    }
+
+    // Helper to add inv to the invariants of machine m, on behalf of the
+    // invariant at index owner.
+    private static void addMachineInv(int m, BinaryInvariant inv, int owner,
+            List<List<BinaryInvariant>> machineInvs, List<List<Integer>> owners) {
+        machineInvs.get(m).add(inv);
+        owners.get(m).add(owner);
+    }
+
     /**
      * Runs invariant-checking finite state machines over the synoptic.model
      * graph, while keeping history paths which justify any particular state.
@@ -179,14 +358,152 @@ public class FsmModelChecker {
      *            The invariant to test.
      * @return The shortest counterexample path for this invariant.
      */
-    @SuppressWarnings("unchecked")
     public static <Node extends INode<Node>> CExamplePath<Node> getCounterExample(
             BinaryInvariant invariant, IGraph<Node> graph) {
 
-        TracingStateSet<Node> stateset = null;
         if (invariant == null) {
             return null;
         }
+        TracingStateSet<Node> stateset = newTracingSet(invariant);
+
+        // Return the shortest path, ending on a final node, which causes the
+        // invariant to fail.
+        HistoryNode<Node> shortestPath = null;
+        Set<Entry<Node, TracingStateSet<Node>>> entrySet = runChecker(stateset,
+                graph, true).entrySet();
+        for (Entry<Node, TracingStateSet<Node>> e : entrySet) {
+            TracingStateSet<Node> stateSet = e.getValue();
+            Node node = e.getKey();
+
+            HistoryNode<Node> path = stateSet.failpath();
+
+            // 1. We must have ended up at the terminal node.
+            // 2. Invariant is not satisfied, so we have a history path for it.
+            // 3. If we had counter-example path in the past, that path is
+            // longer (because we want the shortest).
+            if (node.isTerminal()
+                    && path != null
+                    && (shortestPath == null || shortestPath.count > path.count)) {
+                shortestPath = path;
+            }
+        }
+
+        // Convert to RelationPath
+        if (shortestPath == null) {
+            return null;
+        }
+
+        return shortestPath.toCounterexample(invariant);
+    }
+
+    /**
+     * Runs the tracing state machine of a constrained invariant over a
+     * subgraph of graph, and returns the shortest path of the subgraph that
+     * violates the invariant, or null if there is none. The paths of the
+     * subgraph start at startNode, where the state machine is in its initial
+     * state (as at the INITIAL node), continue to one of firstNodes (or to any
+     * node, if firstNodes is null), and end at one of endNodes: the state
+     * machine is not run past an end node. Only the nodes that can be reached
+     * in this way are visited, so the cost of the check depends on the size of
+     * the subgraph rather than on the size of the graph.
+     * 
+     * @param invariant
+     *            The constrained invariant to test.
+     * @param startNode
+     *            The node on which the paths start.
+     * @param firstNodes
+     *            The nodes that may follow startNode, or null for any node.
+     * @param endNodes
+     *            The nodes on which the paths end.
+     * @return The shortest counterexample path in the subgraph.
+     */
+    public static <Node extends INode<Node>> CExamplePath<Node> getLocalCounterExample(
+            BinaryInvariant invariant, IGraph<Node> graph, Node startNode,
+            Set<Node> firstNodes, Set<Node> endNodes) {
+
+        if (!(invariant instanceof TempConstrainedInvariant<?>)) {
+            throw new IllegalArgumentException(
+                    "Localized model checking requires a constrained invariant: "
+                            + invariant);
+        }
+        ConstrainedTracingSet<Node> initial = (ConstrainedTracingSet<Node>) FsmModelChecker
+                .<Node> newTracingSet(invariant);
+
+        // The states of the nodes that have been reached. The states at
+        // startNode are kept apart, as paths that return to startNode do not
+        // start over.
+        Map<Node, TracingStateSet<Node>> states = new LinkedHashMap<Node, TracingStateSet<Node>>();
+        ArrayDeque<Node> workList = new ArrayDeque<Node>();
+        Set<Node> inWorkList = new HashSet<Node>();
+
+        ConstrainedTracingSet<Node> startStates = initial.copy();
+        startStates.setLocalInitial(startNode);
+
+        Node node = startNode;
+        TracingStateSet<Node> current = startStates;
+        while (current != null) {
+            for (Node target : graph.getAdjacentNodes(node)) {
+                if (current == startStates && firstNodes != null
+                        && !firstNodes.contains(target)) {
+                    continue;
+                }
+                TracingStateSet<Node> oldTargetStates = states.get(target);
+                if (oldTargetStates == null) {
+                    oldTargetStates = initial.copy();
+                    states.put(target, oldTargetStates);
+                }
+                TracingStateSet<Node> updatesToTargetStates = current.copy();
+                updatesToTargetStates.transition(target);
+
+                boolean isSubset = updatesToTargetStates
+                        .isSubset(oldTargetStates);
+                oldTargetStates.mergeWith(updatesToTargetStates);
+
+                // Paths are not continued past an end node.
+                if (!isSubset && !endNodes.contains(target)
+                        && inWorkList.add(target)) {
+                    workList.add(target);
+                }
+            }
+
+            if (workList.isEmpty()) {
+                current = null;
+            } else {
+                node = workList.remove();
+                inWorkList.remove(node);
+                current = states.get(node);
+            }
+        }
+
+        // Return the shortest path, ending on an end node, which causes the
+        // invariant to fail.
+        HistoryNode<Node> shortestPath = null;
+        for (Node endNode : endNodes) {
+            TracingStateSet<Node> endStates = states.get(endNode);
+            if (endStates == null) {
+                continue;
+            }
+            HistoryNode<Node> path = endStates.failpath();
+            if (path != null
+                    && (shortestPath == null || shortestPath.count > path.count)) {
+                shortestPath = path;
+            }
+        }
+
+        if (shortestPath == null) {
+            return null;
+        }
+        return shortestPath.toCounterexample(invariant);
+    }
+
+    /**
+     * Returns a tracing state set, in which no state is inhabited, for the
+     * type of invariant.
+     */
+    @SuppressWarnings("unchecked")
+    private static <Node extends INode<Node>> TracingStateSet<Node> newTracingSet(
+            BinaryInvariant invariant) {
+        TracingStateSet<Node> stateset = null;
         Class<BinaryInvariant> invClass = (Class<BinaryInvariant>) invariant
                 .getClass();
         if (invClass.equals(AlwaysFollowedInvariant.class)) {
@@ -233,34 +550,6 @@ public class FsmModelChecker {
                 }
             }
         }
-
-        // Return the shortest path, ending on a final node, which causes the
-        // invariant to fail.
-        HistoryNode<Node> shortestPath = null;
-        Set<Entry<Node, TracingStateSet<Node>>> entrySet = runChecker(stateset,
-                graph, true).entrySet();
-        for (Entry<Node, TracingStateSet<Node>> e : entrySet) {
-            TracingStateSet<Node> stateSet = e.getValue();
-            Node node = e.getKey();
-
-            HistoryNode<Node> path = stateSet.failpath();
-
-            // 1. We must have ended up at the terminal node.
-            // 2. Invariant is not satisfied, so we have a history path for it.
-            // 3. If we had counter-example path in the past, that path is
-            // longer (because we want the shortest).
-            if (node.isTerminal()
-                    && path != null
-                    && (shortestPath == null || shortestPath.count > path.count)) {
-                shortestPath = path;
-            }
-        }
-
-        // Convert to RelationPath
-        if (shortestPath == null) {
-            return null;
-        }
-
-        return shortestPath.toCounterexample(invariant);
+        return stateset;
     }
 }
@@ -116,6 +116,17 @@ public abstract class FsmStateSet<T extends INode<T>> implements
         }
     }
 
+    /**
+     * Initializes numStates empty bitsets. Used by copy, which assigns the
+     * other fields.
+     */
+    protected FsmStateSet(int numStates) {
+        sets = new ArrayList<BitSet>(numStates);
+        for (int i = 0; i < numStates; i++) {
+            sets.add(new BitSet());
+        }
+    }
+
     /**
      * At final states (partitions which contain ending nodes of some sample
      * traces), this indicates which of the synoptic.invariants maintained by
@@ -214,6 +225,21 @@ public abstract class FsmStateSet<T extends INode<T>> implements
         return result;
     }
 
+    /**
+     * {@inheritDoc} The BitSets of this set are refilled in place, so no
+     * BitSets are allocated.
+     */
+    @Override
+    public void setTo(FsmStateSet<T> other) {
+        count = other.count;
+        for (int i = 0; i < sets.size(); i++) {
+            BitSet set = sets.get(i);
+            set.clear();
+            set.or(other.sets.get(i));
+        }
+        invariantsMap = other.invariantsMap;
+    }
+
     @SuppressWarnings("unchecked")
     @Override
     public boolean equals(Object otherObj) {
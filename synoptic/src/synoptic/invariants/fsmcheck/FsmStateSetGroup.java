@@ -0,0 +1,106 @@
+package synoptic.invariants.fsmcheck;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import synoptic.model.interfaces.INode;
+
+/**
+ * A group of FsmStateSets, of possibly different invariant types, that are
+ * transitioned and merged together, so that the invariants of all of them are
+ * checked in a single propagation over the graph. The states of each member
+ * are only ever ORed, so the fixpoint of each member is the same as if it was
+ * propagated on its own.
+ * 
+ * @param <T>
+ *            The node type, used as an input.
+ */
+public class FsmStateSetGroup<T extends INode<T>> implements
+        IStateSet<T, FsmStateSetGroup<T>> {
+
+    private final List<FsmStateSet<T>> members;
+
+    /**
+     * Groups members, which are owned by the group from now on.
+     */
+    public FsmStateSetGroup(List<FsmStateSet<T>> members) {
+        this.members = members;
+    }
+
+    /**
+     * Returns the i-th member of the group.
+     */
+    public FsmStateSet<T> getMember(int i) {
+        return members.get(i);
+    }
+
+    /**
+     * Returns the number of members of the group.
+     */
+    public int size() {
+        return members.size();
+    }
+
+    @Override
+    public void setInitial(T x) {
+        for (FsmStateSet<T> member : members) {
+            member.setInitial(x);
+        }
+    }
+
+    @Override
+    public void transition(T input) {
+        for (FsmStateSet<T> member : members) {
+            member.transition(input);
+        }
+    }
+
+    @Override
+    public void mergeWith(FsmStateSetGroup<T> other) {
+        for (int i = 0; i < members.size(); i++) {
+            members.get(i).mergeWith(other.members.get(i));
+        }
+    }
+
+    @Override
+    public boolean isSubset(FsmStateSetGroup<T> other) {
+        for (int i = 0; i < members.size(); i++) {
+            if (!members.get(i).isSubset(other.members.get(i))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public boolean isFail() {
+        for (FsmStateSet<T> member : members) {
+            if (member.isFail()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @Override
+    public FsmStateSetGroup<T> copy() {
+        List<FsmStateSet<T>> copies = new ArrayList<FsmStateSet<T>>(
+                members.size());
+        for (FsmStateSet<T> member : members) {
+            copies.add(member.copy());
+        }
+        return new FsmStateSetGroup<T>(copies);
+    }
+
+    @Override
+    public void setTo(FsmStateSetGroup<T> other) {
+        for (int i = 0; i < members.size(); i++) {
+            members.get(i).setTo(other.members.get(i));
+        }
+    }
+
+    @Override
+    public String toString() {
+        return members.toString();
+    }
+}
@@ -43,4 +43,14 @@ public interface IStateSet<T, StateSetType> {
      * Version of clone which doesn't require unsafe casting.
      */
     StateSetType copy();
+
+    /**
+     * Mutates the stateset to inhabit exactly the states inhabited by
+     * 'other', so that a single stateset can be reused where a copy of other
+     * would otherwise be made.
+     * 
+     * @param other
+     *            The set to take the states of, which is not modified.
+     */
+    void setTo(StateSetType other);
 }
@@ -0,0 +1,116 @@
+package synoptic.invariants.fsmcheck;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map.Entry;
+
+import synoptic.invariants.AlwaysFollowedInvariant;
+import synoptic.invariants.AlwaysPrecedesInvariant;
+import synoptic.invariants.BinaryInvariant;
+import synoptic.invariants.ITemporalInvariant;
+import synoptic.invariants.NeverFollowedInvariant;
+import synoptic.model.interfaces.IGraph;
+import synoptic.model.interfaces.INode;
+
+/**
+ * Determines which invariants a graph violates, as the graph is refined by
+ * splitting its nodes. The AFby, AP, and NFby invariants are checked with the
+ * BitSet state machines, as with FsmModelChecker.runBitSetChecker, but their
+ * states are kept in IncrementalModelChecker instances, so that after a split
+ * only the states of the nodes that follow the split nodes are recomputed.
+ * Invariants without a BitSet state machine (e.g., constrained invariants) are
+ * always reported as violated, and must be checked by the caller.
+ * 
+ * @param <T>
+ *            The type of the nodes of the graph.
+ */
+public class IncrementalInvariantChecker<T extends INode<T>> {
+
+    /**
+     * The invariants of each BitSet checker, in the order of the bits of the
+     * checker.
+     */
+    private final List<List<BinaryInvariant>> fsmInvariants = new ArrayList<List<BinaryInvariant>>();
+
+    private final List<IncrementalModelChecker<T, FsmStateSet<T>>> checkers = new ArrayList<IncrementalModelChecker<T, FsmStateSet<T>>>();
+
+    /** The invariants that are not checked by a BitSet checker. */
+    private final List<BinaryInvariant> otherInvariants = new ArrayList<BinaryInvariant>();
+
+    /**
+     * Checks invariants against graph.
+     * 
+     * @param invariants
+     *            The binary invariants to check.
+     * @param graph
+     *            The graph to check, which is only refined by splits.
+     */
+    public IncrementalInvariantChecker(
+            Iterable<ITemporalInvariant> invariants, IGraph<T> graph) {
+        List<BinaryInvariant> alwaysFollowed = new ArrayList<BinaryInvariant>();
+        List<BinaryInvariant> alwaysPrecedes = new ArrayList<BinaryInvariant>();
+        List<BinaryInvariant> neverFollowed = new ArrayList<BinaryInvariant>();
+        for (ITemporalInvariant inv : invariants) {
+            Class<?> invClass = inv.getClass();
+            if (invClass.equals(AlwaysFollowedInvariant.class)) {
+                alwaysFollowed.add((BinaryInvariant) inv);
+            } else if (invClass.equals(AlwaysPrecedesInvariant.class)) {
+                alwaysPrecedes.add((BinaryInvariant) inv);
+            } else if (invClass.equals(NeverFollowedInvariant.class)) {
+                neverFollowed.add((BinaryInvariant) inv);
+            } else {
+                otherInvariants.add((BinaryInvariant) inv);
+            }
+        }
+
+        addChecker(new AFbyInvFsms<T>(alwaysFollowed), alwaysFollowed, graph);
+        addChecker(new APInvFsms<T>(alwaysPrecedes), alwaysPrecedes, graph);
+        addChecker(new NFbyInvFsms<T>(neverFollowed), neverFollowed, graph);
+    }
+
+    private void addChecker(FsmStateSet<T> initial,
+            List<BinaryInvariant> invs, IGraph<T> graph) {
+        if (invs.isEmpty()) {
+            return;
+        }
+        fsmInvariants.add(invs);
+        checkers.add(new IncrementalModelChecker<T, FsmStateSet<T>>(initial,
+                graph));
+    }
+
+    /**
+     * Updates the states of the checkers after nodes of the graph have been
+     * split.
+     * 
+     * @param splitNodes
+     *            The nodes that have been split, along with the nodes that
+     *            were created by the splits.
+     */
+    public void update(Collection<T> splitNodes) {
+        for (IncrementalModelChecker<T, FsmStateSet<T>> checker : checkers) {
+            checker.update(splitNodes);
+        }
+    }
+
+    /**
+     * Returns the invariants that the graph violates, followed by the
+     * invariants that are not checked by a BitSet checker.
+     */
+    public List<BinaryInvariant> getViolatedInvariants() {
+        List<BinaryInvariant> results = new ArrayList<BinaryInvariant>();
+        for (int i = 0; i < checkers.size(); i++) {
+            BitSet fails = new BitSet();
+            for (Entry<T, FsmStateSet<T>> entry : checkers.get(i).getStates()
+                    .entrySet()) {
+                if (entry.getKey().isTerminal()) {
+                    fails.or(entry.getValue().whichFail());
+                }
+            }
+            FsmModelChecker.bitFilter(fails, fsmInvariants.get(i), results);
+        }
+        results.addAll(otherInvariants);
+        return results;
+    }
+}
@@ -0,0 +1,201 @@
+package synoptic.invariants.fsmcheck;
+
+import java.util.ArrayDeque;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+
+import synoptic.model.interfaces.IGraph;
+import synoptic.model.interfaces.INode;
+
+/**
+ * Computes the same fixpoint of states as FsmModelChecker.runChecker, but keeps
+ * it, along with the transitions it was computed over, so that it can be
+ * updated after nodes of the graph are split, rather than recomputed.
+ * <p>
+ * Splitting a node only removes paths from the graph, so the states of a node
+ * can only shrink, and only if the node can be reached from a split node. An
+ * update therefore resets the states of the nodes that can be reached from
+ * the split nodes, and propagates states into them again from the nodes just
+ * before them. The states of all other nodes are kept. The cost of an update
+ * depends on the part of the graph that follows the split nodes, rather than
+ * on the size of the graph.
+ * </p>
+ * <p>
+ * Nodes must not be merged or removed from the graph between updates.
+ * </p>
+ * 
+ * @param <Node>
+ *            The type of the nodes of the graph.
+ * @param <StateSet>
+ *            The type of StateSet we are propagating.
+ */
+public class IncrementalModelChecker<Node extends INode<Node>, StateSet extends IStateSet<Node, StateSet>> {
+
+    private final IStateSet<Node, StateSet> initial;
+    private final IGraph<Node> graph;
+
+    /** Maps a node to its set of states. */
+    private final Map<Node, StateSet> states = new LinkedHashMap<Node, StateSet>();
+
+    /** The successors of each node, as of the last propagation. */
+    private final Map<Node, Set<Node>> successors = new LinkedHashMap<Node, Set<Node>>();
+
+    /** The predecessors of each node, as of the last propagation. */
+    private final Map<Node, Set<Node>> predecessors = new LinkedHashMap<Node, Set<Node>>();
+
+    /**
+     * Computes the fixpoint of states of graph, starting with the initial
+     * state at each node.
+     * 
+     * @param initial
+     *            The initial state of each node.
+     * @param graph
+     *            The graph to analyze.
+     */
+    public IncrementalModelChecker(IStateSet<Node, StateSet> initial,
+            IGraph<Node> graph) {
+        this.initial = initial;
+        this.graph = graph;
+
+        for (Node node : graph.getNodes()) {
+            states.put(node, initial.copy());
+            updateTransitions(node);
+        }
+
+        Node initialNode = graph.getDummyInitialNode();
+        states.get(initialNode).setInitial(initialNode);
+
+        Set<Node> workList = new LinkedHashSet<Node>();
+        workList.add(initialNode);
+        propagate(workList);
+    }
+
+    /**
+     * Returns the associations between node and stateset.
+     */
+    public Map<Node, StateSet> getStates() {
+        return Collections.unmodifiableMap(states);
+    }
+
+    /**
+     * Updates the fixpoint after nodes of the graph have been split.
+     * 
+     * @param splitNodes
+     *            The nodes that have been split, along with the nodes that
+     *            were created by the splits.
+     */
+    public void update(Collection<Node> splitNodes) {
+        // The transitions of the split nodes have changed, and so have the
+        // transitions into them, i.e. those of their old predecessors.
+        Set<Node> changedNodes = new LinkedHashSet<Node>(splitNodes);
+        for (Node node : splitNodes) {
+            Set<Node> preds = predecessors.get(node);
+            if (preds != null) {
+                changedNodes.addAll(preds);
+            }
+        }
+
+        // The nodes that have lost an incoming transition are reset along
+        // with the split nodes.
+        Set<Node> resetNodes = new LinkedHashSet<Node>(splitNodes);
+        for (Node node : changedNodes) {
+            Set<Node> oldSuccs = successors.get(node);
+            updateTransitions(node);
+            if (oldSuccs != null) {
+                oldSuccs.removeAll(successors.get(node));
+                resetNodes.addAll(oldSuccs);
+            }
+        }
+
+        // Every node that can be reached from a reset node is reset as well.
+        ArrayDeque<Node> toVisit = new ArrayDeque<Node>(resetNodes);
+        while (!toVisit.isEmpty()) {
+            for (Node target : successors.get(toVisit.remove())) {
+                if (resetNodes.add(target)) {
+                    toVisit.add(target);
+                }
+            }
+        }
+
+        // Propagate into the reset nodes from the nodes just before them.
+        Node initialNode = graph.getDummyInitialNode();
+        Set<Node> workList = new LinkedHashSet<Node>();
+        for (Node node : resetNodes) {
+            StateSet nodeStates = initial.copy();
+            if (node == initialNode) {
+                nodeStates.setInitial(node);
+                workList.add(node);
+            }
+            states.put(node, nodeStates);
+        }
+        for (Node node : resetNodes) {
+            for (Node pred : predecessors.get(node)) {
+                if (!resetNodes.contains(pred)) {
+                    workList.add(pred);
+                }
+            }
+        }
+        propagate(workList);
+    }
+
+    /**
+     * Reads the successors of node from the graph, and updates the successors
+     * and predecessors maps.
+     */
+    private void updateTransitions(Node node) {
+        Set<Node> oldSuccs = successors.get(node);
+        if (oldSuccs != null) {
+            for (Node target : oldSuccs) {
+                predecessors.get(target).remove(node);
+            }
+        }
+        if (!predecessors.containsKey(node)) {
+            predecessors.put(node, new LinkedHashSet<Node>());
+        }
+
+        Set<Node> succs = new LinkedHashSet<Node>(graph.getAdjacentNodes(node));
+        successors.put(node, succs);
+        for (Node target : succs) {
+            Set<Node> preds = predecessors.get(target);
+            if (preds == null) {
+                preds = new LinkedHashSet<Node>();
+                predecessors.put(target, preds);
+            }
+            preds.add(node);
+        }
+    }
+
+    /**
+     * Propagates the states of the nodes in initialWorkList along the
+     * transitions, as in FsmModelChecker.runChecker, until a fixpoint is
+     * reached.
+     */
+    private void propagate(Set<Node> initialWorkList) {
+        ArrayDeque<Node> workList = new ArrayDeque<Node>(initialWorkList);
+        Set<Node> inWorkList = initialWorkList;
+        StateSet updatesToTargetStates = initial.copy();
+        while (!workList.isEmpty()) {
+            Node node = workList.remove();
+            inWorkList.remove(node);
+            StateSet current = states.get(node);
+
+            for (Node target : successors.get(node)) {
+                StateSet oldTargetStates = states.get(target);
+                updatesToTargetStates.setTo(current);
+                updatesToTargetStates.transition(target);
+
+                // Evaluate isSubset _before_ the merge.
+                boolean isSubset = updatesToTargetStates
+                        .isSubset(oldTargetStates);
+                oldTargetStates.mergeWith(updatesToTargetStates);
+                if (!isSubset && inWorkList.add(target)) {
+                    workList.add(target);
+                }
+            }
+        }
+    }
+}
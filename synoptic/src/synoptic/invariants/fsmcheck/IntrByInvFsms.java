@@ -0,0 +1,94 @@
+package synoptic.invariants.fsmcheck;
+
+import java.util.BitSet;
+import java.util.List;
+
+import synoptic.invariants.BinaryInvariant;
+import synoptic.model.interfaces.INode;
+
+/**
+ * FSM for a set of invariants of the form "A interrupted by B". The FSM enters
+ * a new state when A is encountered, and leaves it when B is encountered. If A
+ * is encountered again while in this state, then we enter into a permanent
+ * failure state. NOTE: ensure this documentation stays consistent with
+ * IntrByTracingSet.
+ * 
+ * @see IntrByTracingSet
+ * @see FsmStateSet
+ */
+public class IntrByInvFsms<T extends INode<T>> extends FsmStateSet<T> {
+    /**
+     * <pre>
+     * State 1: Accept state (no A seen since the last B)
+     * State 2: Accept state (A seen once since the last B)
+     * State 3: Permanent failed state (A seen twice without a B in between)
+     * 
+     * (non-a/b preserves state) 1 -a-> 2, 1 -b-> 1, 2 -a-> 3, 2 -b-> 1
+     * </pre>
+     */
+
+    public IntrByInvFsms(List<BinaryInvariant> invs) {
+        super(invs, 3);
+    }
+
+    /**
+     * Used by copy.
+     */
+    public IntrByInvFsms(int numStates) {
+        super(numStates);
+    }
+
+    @Override
+    public boolean isFail() {
+        return !sets.get(2).isEmpty();
+    }
+
+    @Override
+    public BitSet whichFail() {
+        return (BitSet) sets.get(2).clone();
+    }
+
+    @Override
+    public BitSet whichPermanentFail() {
+        return (BitSet) sets.get(2).clone();
+    }
+
+    @Override
+    public void setInitial(T input) {
+        BitSet isA = getInputCopy(0, input);
+        sets.set(1, (BitSet) isA.clone());
+        isA.flip(0, count);
+        sets.set(0, isA);
+        sets.set(2, new BitSet());
+    }
+
+    @Override
+    public void transition(T input) {
+        /*
+         * As in IntrByTracingSet, A is processed before B, which matters when
+         * isA and isB are both 1. On A: s3 = s3 | (s2 & isA), s2 = (s2 &
+         * !isA) | (s1 & isA), s1 = s1 & !isA. Then on B: s1 = s1 | (s2 &
+         * isB), s2 = s2 & !isB.
+         */
+        BitSet isA = getInputInvariantsDependencies(0, input);
+        BitSet isB = getInputInvariantsDependencies(1, input);
+        BitSet s1 = sets.get(0);
+        BitSet s2 = sets.get(1);
+        BitSet s3 = sets.get(2);
+
+        BitSet t = (BitSet) s2.clone();
+        t.and(isA); // t = s2 & isA
+        s3.or(t); // s3 = s3 | (s2 & isA)
+
+        t = (BitSet) s1.clone();
+        t.and(isA); // t = s1 & isA
+        s2.andNot(isA); // s2 = s2 & !isA
+        s2.or(t); // s2 = (s2 & !isA) | (s1 & isA)
+        s1.andNot(isA); // s1 = s1 & !isA
+
+        t = (BitSet) s2.clone();
+        t.and(isB); // t = s2 & isB
+        s1.or(t); // s1 = s1 | (s2 & isB)
+        s2.andNot(isB); // s2 = s2 & !isB
+    }
+}
@@ -70,6 +70,16 @@ public class IntrByTracingSet<T extends INode<T>> extends TracingStateSet<T> {
         return result;
     }
 
+    @Override
+    public void setTo(TracingStateSet<T> other) {
+        IntrByTracingSet<T> casted = (IntrByTracingSet<T>) other;
+        a = casted.a;
+        b = casted.b;
+        aNotSeen = casted.aNotSeen;
+        aSeenOnce = casted.aSeenOnce;
+        aSeenMoreThanOnce = casted.aSeenMoreThanOnce;
+    }
+
     @Override
     public void mergeWith(TracingStateSet<T> other) {
         IntrByTracingSet<T> casted = (IntrByTracingSet<T>) other;
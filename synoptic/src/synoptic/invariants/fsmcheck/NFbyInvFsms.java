@@ -30,6 +30,13 @@ public class NFbyInvFsms<T extends INode<T>> extends FsmStateSet<T> {
         super(invs, 3);
     }
 
+    /**
+     * Used by copy.
+     */
+    public NFbyInvFsms(int numStates) {
+        super(numStates);
+    }
+
     @Override
     public boolean isFail() {
         return !sets.get(2).isEmpty();
@@ -81,4 +88,4 @@ public class NFbyInvFsms<T extends INode<T>> extends FsmStateSet<T> {
 
         s1.andNot(isA); // s1 = s1 & !isA
     }
-}
+}
@@ -5,7 +5,7 @@ import java.util.logging.Logger;
 
 import gov.nasa.ltl.graph.Graph;
 
-import synoptic.benchmarks.PerformanceMetrics;
+import synoptic.benchmarks.MetricsRegistry;
 import synoptic.benchmarks.TimedTask;
 import synoptic.invariants.ITemporalInvariant;
 
@@ -28,7 +28,7 @@ public class LtlModelChecker {
         // Graph didCanTransitionSystem = transitionSystem;
         Graph didCanTransitionSystem = null;
 
-        TimedTask didCanTrans = PerformanceMetrics
+        TimedTask didCanTrans = MetricsRegistry
                 .createTask("didCanTranslation");
 
         if (translationCache.containsKey(transitionSystem)) {
@@ -51,7 +51,7 @@ public class LtlModelChecker {
         GraphTransformations.removeDeadlock(didCanTransitionSystem);
 
         // Generate Buchi Automata for negated LTL formula
-        TimedTask buchiTrans = PerformanceMetrics.createTask("buchiTrans");
+        TimedTask buchiTrans = MetricsRegistry.createTask("buchiTrans");
         logger.finest("Generate Buchi automaton...");
         Graph ba = invariant.getAutomaton();
         buchiTrans.stop();
@@ -61,7 +61,7 @@ public class LtlModelChecker {
 
         // Generate Product Automata of Did/Can Expanded Graph and Buchi
         // Automata of LTL formula
-        TimedTask productAutomaton = PerformanceMetrics
+        TimedTask productAutomaton = MetricsRegistry
                 .createTask("productAutomaton");
         logger.finest("Generate product automaton...");
         final GeneralGraph pa = ProductTranslator.translate(
@@ -69,7 +69,7 @@ public class LtlModelChecker {
         productAutomaton.stop();
 
         // Check Property via reachable cycle detection
-        TimedTask cycleChecking = PerformanceMetrics
+        TimedTask cycleChecking = MetricsRegistry
                 .createTask("cycleChecking");
         logger.finest("Checking property...");
         final PersistenceChecker pc = new PersistenceChecker(pa);
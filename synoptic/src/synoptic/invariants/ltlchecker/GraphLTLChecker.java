@@ -15,7 +15,7 @@ import gov.nasa.ltl.graph.Graph;
 import gov.nasa.ltl.graph.Node;
 import gov.nasa.ltl.trans.ParseErrorException;
 
-import synoptic.benchmarks.PerformanceMetrics;
+import synoptic.benchmarks.MetricsRegistry;
 import synoptic.benchmarks.TimedTask;
 import synoptic.invariants.CExamplePath;
 import synoptic.invariants.ITemporalInvariant;
@@ -60,7 +60,7 @@ public class GraphLTLChecker<T extends INode<T>> {
 
         // formula = LTLFormulaPreprocessor.preprocessFormula(formula);
         // monitor.subTask("Preprocessed LTL formula: " + formula);
-        TimedTask transToMC = PerformanceMetrics.createTask("transToMC");
+        TimedTask transToMC = MetricsRegistry.createTask("transToMC");
 
         Graph targetGraph = null;
         String relation = invariant.getRelation();
@@ -1,9 +1,12 @@
 package synoptic.invariants.miners;
 
+import java.util.LinkedHashSet;
 import java.util.LinkedHashMap;
 import java.util.Set;
 
 import synoptic.algorithms.TransitiveClosure;
+import synoptic.model.ChainsTraceGraph;
+import synoptic.model.DAGsTraceGraph;
 import synoptic.model.EventNode;
 import synoptic.model.TraceGraph;
 
@@ -15,8 +18,47 @@ public class AllRelationsTransitiveClosure {
     private final LinkedHashMap<String, TransitiveClosure> tcs = new LinkedHashMap<String, TransitiveClosure>();
 
     public AllRelationsTransitiveClosure(TraceGraph<?> g) {
+        this(g, false);
+    }
+
+    /**
+     * @param g
+     *            The graph
+     * @param implicitChains
+     *            Whether to use implicit closures (see
+     *            ChainsTransitiveClosure) if g is a ChainsTraceGraph
+     */
+    public AllRelationsTransitiveClosure(TraceGraph<?> g,
+            boolean implicitChains) {
+        this(g, implicitChains, false, 1);
+    }
+
+    /**
+     * @param g
+     *            The graph
+     * @param implicitChains
+     *            Whether to use implicit closures (see
+     *            ChainsTransitiveClosure) if g is a ChainsTraceGraph
+     * @param bitSetDAGs
+     *            Whether to use bitset closures (see BitSetTransitiveClosure)
+     *            if g is a DAGsTraceGraph
+     * @param numThreads
+     *            The number of threads that compute bitset closures
+     */
+    public AllRelationsTransitiveClosure(TraceGraph<?> g,
+            boolean implicitChains, boolean bitSetDAGs, int numThreads) {
         for (String relation : g.getRelations()) {
-            tcs.put(relation, g.getTransitiveClosure(relation));
+            Set<String> relations = new LinkedHashSet<String>();
+            relations.add(relation);
+            if (implicitChains && g instanceof ChainsTraceGraph) {
+                tcs.put(relation, ((ChainsTraceGraph) g)
+                        .getImplicitTransitiveClosure(relations));
+            } else if (bitSetDAGs && g instanceof DAGsTraceGraph) {
+                tcs.put(relation, ((DAGsTraceGraph) g)
+                        .getBitSetTransitiveClosure(relations, numThreads));
+            } else {
+                tcs.put(relation, g.getTransitiveClosure(relation));
+            }
         }
     }
 
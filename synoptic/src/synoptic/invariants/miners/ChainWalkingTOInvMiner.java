@@ -1,10 +1,18 @@
 package synoptic.invariants.miners;
 
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.HashSet;
 import java.util.LinkedHashMap;
 import java.util.LinkedHashSet;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.RecursiveTask;
 
 import synoptic.invariants.AlwaysFollowedInvariant;
 import synoptic.invariants.AlwaysPrecedesInvariant;
@@ -16,7 +24,9 @@ import synoptic.model.ChainsTraceGraph;
 import synoptic.model.Trace;
 import synoptic.model.event.Event;
 import synoptic.model.event.EventType;
+import synoptic.model.event.EventTypeIndex;
 import synoptic.model.interfaces.IRelationPath;
+import synoptic.util.InternalSynopticException;
 
 /**
  * Implements a temporal invariant mining algorithm which mines the invariants
@@ -32,6 +42,50 @@ import synoptic.model.interfaces.IRelationPath;
 public class ChainWalkingTOInvMiner extends CountingInvariantMiner implements
         ITOInvariantMiner {
 
+    /**
+     * Whether the counts are kept in int matrices indexed by event type, or in
+     * maps of maps keyed by event type.
+     */
+    private final boolean useCountMatrices;
+
+    /**
+     * The number of threads that count relation paths in parallel (only with
+     * count matrices).
+     */
+    private final int numThreads;
+
+    public ChainWalkingTOInvMiner() {
+        this(true, 1);
+    }
+
+    /**
+     * @param useCountMatrices
+     *            whether to keep the followed-by and precedes counts in dense
+     *            int matrices, indexed by event type (the default), or in maps
+     *            keyed by event type. Both produce the same invariants.
+     * @param numThreads
+     *            number of threads that count the relation paths of the
+     *            traces (1 mines sequentially). Per-thread counts are merged
+     *            pairwise, and the mined invariants are the same as with one
+     *            thread. Several threads require count matrices.
+     * @throws IllegalArgumentException
+     *             if numThreads is less than 1, or greater than 1 without
+     *             count matrices
+     */
+    public ChainWalkingTOInvMiner(boolean useCountMatrices, int numThreads) {
+        if (numThreads < 1) {
+            throw new IllegalArgumentException(
+                    "The number of mining threads must be at least 1: "
+                            + numThreads);
+        }
+        if (numThreads > 1 && !useCountMatrices) {
+            throw new IllegalArgumentException(
+                    "Mining with several threads requires count matrices");
+        }
+        this.useCountMatrices = useCountMatrices;
+        this.numThreads = numThreads;
+    }
+
     public TemporalInvariantSet computeInvariants(ChainsTraceGraph g,
             boolean multipleRelations, boolean supportCount) {
         TemporalInvariantSet result = new TemporalInvariantSet();
@@ -100,7 +154,13 @@ public class ChainWalkingTOInvMiner extends CountingInvariantMiner implements
         // http://stackoverflow.com/questions/434989/hashmap-intialization-parameters-load-initialcapacity
 
         // Stores generated RelationPaths
-        Set<IRelationPath> relationPaths = new HashSet<IRelationPath>();
+        Set<IRelationPath> relationPaths = getRelationPaths(g.getTraces(),
+                relation, multipleRelations);
+
+        if (useCountMatrices) {
+            return new TemporalInvariantSet(computeInvariantsFromMatrices(
+                    relation, relationPaths, multipleRelations, supportCount));
+        }
 
         // Tracks event counts globally -- across all traces.
         Map<EventType, Integer> gEventCnts = new LinkedHashMap<EventType, Integer>();
@@ -112,24 +172,6 @@ public class ChainWalkingTOInvMiner extends CountingInvariantMiner implements
          * of instances for each event type.
          */
         Set<EventType> eTypes = new LinkedHashSet<EventType>();
-        for (Trace trace : g.getTraces()) {
-
-            if (multipleRelations && !relation.equals(Event.defTimeRelationStr)) {
-                IRelationPath relationPath = trace.getBiRelationalPath(
-                        relation, Event.defTimeRelationStr);
-                relationPaths.add(relationPath);
-            } else {
-                Set<IRelationPath> subgraphs = trace
-                        .getSingleRelationPaths(relation);
-                if (relation.equals(Event.defTimeRelationStr)
-                        && subgraphs.size() != 1) {
-                    throw new IllegalStateException(
-                            "Multiple relation subraphs for ordering relation graph");
-                }
-                relationPaths.addAll(subgraphs);
-            }
-
-        }
 
         for (IRelationPath relationPath : relationPaths) {
             eTypes.addAll(relationPath.getSeen());
@@ -223,6 +265,182 @@ public class ChainWalkingTOInvMiner extends CountingInvariantMiner implements
                 multipleRelations, supportCount));
     }
 
+    /**
+     * Computes the same counts as computeInvariants() -- the event counts, the
+     * followed-by and precedes counts, the possible interrupts, and the types
+     * that always follow INITIAL -- directly from the event type sequences of
+     * the relation paths. The event types are numbered densely with an
+     * EventTypeIndex, and the counts are kept in int arrays indexed by these
+     * numbers (n x n matrices for the pairwise counts, stored row-major), so
+     * counting neither boxes integers nor hashes event types. With more than
+     * one thread, the paths are counted in parallel (see PathCountsTask).
+     */
+    private Set<ITemporalInvariant> computeInvariantsFromMatrices(
+            String relation, Set<IRelationPath> relationPaths,
+            boolean multipleRelations, boolean supportCount) {
+
+        ForkJoinPool pool = null;
+        if (numThreads > 1 && relationPaths.size() > 1) {
+            pool = new ForkJoinPool(numThreads);
+        }
+        try {
+            return computeInvariantsFromMatrices(relation, relationPaths,
+                    multipleRelations, supportCount, pool);
+        } finally {
+            if (pool != null) {
+                pool.shutdown();
+            }
+        }
+    }
+
+    private Set<ITemporalInvariant> computeInvariantsFromMatrices(
+            String relation, Set<IRelationPath> relationPaths,
+            boolean multipleRelations, boolean supportCount, ForkJoinPool pool) {
+
+        List<IRelationPath> paths = new ArrayList<IRelationPath>(relationPaths);
+        // A few walk tasks per thread, so that threads that finish early can
+        // steal work.
+        int minPaths = Math.max(1, paths.size() / (4 * numThreads));
+
+        if (pool != null) {
+            // Walk the paths in parallel. The walks only read the graph, and
+            // each path caches its own event types.
+            List<Callable<Void>> walks = new ArrayList<Callable<Void>>();
+            for (int from = 0; from < paths.size(); from += minPaths) {
+                final List<IRelationPath> range = paths.subList(from,
+                        Math.min(paths.size(), from + minPaths));
+                walks.add(new Callable<Void>() {
+                    @Override
+                    public Void call() {
+                        for (IRelationPath relationPath : range) {
+                            relationPath.getEventTypes();
+                        }
+                        return null;
+                    }
+                });
+            }
+            for (Future<Void> walk : pool.invokeAll(walks)) {
+                try {
+                    walk.get();
+                } catch (InterruptedException e) {
+                    throw new InternalSynopticException(e);
+                } catch (ExecutionException e) {
+                    throw new InternalSynopticException(e);
+                }
+            }
+        }
+
+        // Number the event types, in the order in which they are first seen,
+        // and translate each path into a sequence of type numbers.
+        EventTypeIndex index = new EventTypeIndex();
+        List<int[]> sequences = new ArrayList<int[]>(paths.size());
+        for (IRelationPath relationPath : paths) {
+            sequences.add(PathCounts.toSequence(relationPath, index));
+        }
+
+        int n = index.size();
+        PathCounts counts;
+        if (pool != null) {
+            // Each chunk of sequences is counted into its own n x n matrices,
+            // so there is only one chunk per thread, to use no more than
+            // numThreads times the memory of sequential counting.
+            int numChunks = Math.min(numThreads, sequences.size());
+            counts = pool.invoke(new PathCountsTask(n, sequences, numChunks,
+                    0, numChunks));
+        } else {
+            counts = new PathCounts(n);
+            for (int[] sequence : sequences) {
+                counts.count(sequence);
+            }
+        }
+
+        return extractPathInvariantsFromCountMatrices(relation, index,
+                counts.eventCnts, counts.followedByCnts, counts.precedesCnts,
+                counts.capacity, counts.possibleInterrupts,
+                counts.alwaysFollowsINITIAL(sequences.size()),
+                multipleRelations, supportCount);
+    }
+
+    /**
+     * Returns the relation paths of traces for a relation: a path that
+     * combines the relation with the time relation for each trace when mining
+     * multiple relations, and the single relation subgraphs of each trace
+     * otherwise.
+     */
+    static Set<IRelationPath> getRelationPaths(Collection<Trace> traces,
+            String relation, boolean multipleRelations) {
+        Set<IRelationPath> relationPaths = new HashSet<IRelationPath>();
+        for (Trace trace : traces) {
+
+            if (multipleRelations && !relation.equals(Event.defTimeRelationStr)) {
+                IRelationPath relationPath = trace.getBiRelationalPath(
+                        relation, Event.defTimeRelationStr);
+                relationPaths.add(relationPath);
+            } else {
+                Set<IRelationPath> subgraphs = trace
+                        .getSingleRelationPaths(relation);
+                if (relation.equals(Event.defTimeRelationStr)
+                        && subgraphs.size() != 1) {
+                    throw new IllegalStateException(
+                            "Multiple relation subraphs for ordering relation graph");
+                }
+                relationPaths.addAll(subgraphs);
+            }
+
+        }
+        return relationPaths;
+    }
+
+    /**
+     * Counts a range of chunks of the path sequences on a ForkJoinPool: the
+     * sequences are divided into numChunks chunks of (nearly) equal size, a
+     * single chunk is counted directly, and larger ranges are split in two
+     * halves that are counted in parallel and then merged. Merging is
+     * associative, and halves are merged in order, so the result does not
+     * depend on the number of chunks.
+     */
+    private static class PathCountsTask extends RecursiveTask<PathCounts> {
+        private static final long serialVersionUID = 1L;
+
+        private final int n;
+        private final List<int[]> sequences;
+        private final int numChunks;
+        private final int fromChunk;
+        private final int toChunk;
+
+        PathCountsTask(int n, List<int[]> sequences, int numChunks,
+                int fromChunk, int toChunk) {
+            this.n = n;
+            this.sequences = sequences;
+            this.numChunks = numChunks;
+            this.fromChunk = fromChunk;
+            this.toChunk = toChunk;
+        }
+
+        @Override
+        protected PathCounts compute() {
+            if (toChunk - fromChunk == 1) {
+                long size = sequences.size();
+                int from = (int) (fromChunk * size / numChunks);
+                int to = (int) (toChunk * size / numChunks);
+                PathCounts counts = new PathCounts(n);
+                for (int i = from; i < to; i++) {
+                    counts.count(sequences.get(i));
+                }
+                counts.releasePathState();
+                return counts;
+            }
+            int mid = (fromChunk + toChunk) >>> 1;
+            PathCountsTask right = new PathCountsTask(n, sequences, numChunks,
+                    mid, toChunk);
+            right.fork();
+            PathCounts counts = new PathCountsTask(n, sequences, numChunks,
+                    fromChunk, mid).compute();
+            counts.merge(right.join());
+            return counts;
+        }
+    }
+
     /**
      * Prune and update global possible InterruptedBy invariant counts by
      * retaining only those that are valid in this RelationPath and updating
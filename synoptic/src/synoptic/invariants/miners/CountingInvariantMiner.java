@@ -18,6 +18,7 @@ import synoptic.model.ChainRelationPath;
 import synoptic.model.event.DistEventType;
 import synoptic.model.event.Event;
 import synoptic.model.event.EventType;
+import synoptic.model.event.EventTypeIndex;
 import synoptic.model.event.StringEventType;
 import synoptic.util.InternalSynopticException;
 import synoptic.util.InvariantStatistics;
@@ -173,6 +174,135 @@ abstract public class CountingInvariantMiner extends InvariantMiner {
         return invariants;
     }
 
+    /**
+     * Builds the same set of local invariants as
+     * extractPathInvariantsFromWalkCounts(), from counts that are kept in
+     * arrays indexed by the event type numbers of an EventTypeIndex. The
+     * pairwise counts are matrices stored row-major, with rows of length
+     * stride, which is at least the number of types in the index:
+     * 
+     * <pre>
+     * #(a)      = gEventCnts[a]
+     * #F(a->b)  = gFollowedByCnts[a * stride + b]
+     * #P(a->b)  = gPrecedesCnts[a * stride + b]
+     * a IntrBy b <=> b \in gPossibleInterrupts[a] (null for no interrupts)
+     * INITIAL AFby a <=> alwaysFollowsINITIAL[a]
+     * </pre>
+     */
+    protected Set<ITemporalInvariant> extractPathInvariantsFromCountMatrices(
+            String relation, EventTypeIndex types, int[] gEventCnts,
+            int[] gFollowedByCnts, int[] gPrecedesCnts, int stride,
+            int[][] gPossibleInterrupts, boolean[] alwaysFollowsINITIAL,
+            boolean multipleRelations, boolean supportCount) {
+
+        Set<ITemporalInvariant> invariants = new LinkedHashSet<ITemporalInvariant>();
+        int n = types.size();
+
+        for (int a = 0; a < n; a++) {
+            EventType e1 = types.get(a);
+            for (int b = 0; b < n; b++) {
+                EventType e2 = types.get(b);
+                int followedBy = gFollowedByCnts[a * stride + b];
+
+                if (followedBy == 0) {
+                    if (multipleRelations) {
+                        NFBiRelationInvariant invariant = new NFBiRelationInvariant(
+                                e1, e2, relation, Event.defTimeRelationStr);
+                        if (supportCount) {
+                            invariant.setStatistics(new InvariantStatistics(
+                                    gEventCnts[a]));
+                        }
+                        invariants.add(invariant);
+                    } else {
+                        NeverFollowedInvariant invariant = new NeverFollowedInvariant(
+                                e1, e2, relation);
+                        if (supportCount) {
+                            invariant.setStatistics(new InvariantStatistics(
+                                    gEventCnts[a]));
+                        }
+                        invariants.add(invariant);
+                    }
+                }
+
+                if (followedBy == gEventCnts[a]) {
+                    if (multipleRelations) {
+                        AFBiRelationInvariant invariant = new AFBiRelationInvariant(
+                                e1, e2, relation, Event.defTimeRelationStr);
+                        if (supportCount) {
+                            invariant.setStatistics(new InvariantStatistics(
+                                    gEventCnts[a]));
+                        }
+                        invariants.add(invariant);
+                    } else {
+                        AlwaysFollowedInvariant invariant = new AlwaysFollowedInvariant(
+                                e1, e2, relation);
+                        if (supportCount) {
+                            invariant.setStatistics(new InvariantStatistics(
+                                    gEventCnts[a]));
+                        }
+                        invariants.add(invariant);
+                    }
+                }
+
+                if (gPrecedesCnts[a * stride + b] == gEventCnts[b]) {
+                    if (multipleRelations) {
+                        APBiRelationInvariant invariant = new APBiRelationInvariant(
+                                e1, e2, relation, Event.defTimeRelationStr);
+                        if (supportCount) {
+                            invariant.setStatistics(new InvariantStatistics(
+                                    gEventCnts[b]));
+                        }
+                        invariants.add(invariant);
+                    } else {
+                        AlwaysPrecedesInvariant invariant = new AlwaysPrecedesInvariant(
+                                e1, e2, relation);
+                        if (supportCount) {
+                            invariant.setStatistics(new InvariantStatistics(
+                                    gEventCnts[b]));
+                        }
+                        invariants.add(invariant);
+                    }
+                }
+            }
+
+            if (gPossibleInterrupts[a] != null) {
+                for (int b : gPossibleInterrupts[a]) {
+                    if (multipleRelations) {
+                        throw new NotImplementedException();
+                    }
+                    invariants.add(new InterruptedByInvariant(e1, types
+                            .get(b), relation));
+                }
+            }
+        }
+
+        for (int a = 0; a < n; a++) {
+            if (!alwaysFollowsINITIAL[a]) {
+                continue;
+            }
+            if (multipleRelations) {
+                AFBiRelationInvariant invariant = new AFBiRelationInvariant(
+                        StringEventType.newInitialStringEventType(),
+                        types.get(a), relation);
+                if (supportCount) {
+                    invariant.setStatistics(new InvariantStatistics(
+                            gEventCnts[a]));
+                }
+                invariants.add(invariant);
+            } else {
+                AlwaysFollowedInvariant invariant = new AlwaysFollowedInvariant(
+                        StringEventType.newInitialStringEventType(),
+                        types.get(a), relation);
+                if (supportCount) {
+                    invariant.setStatistics(new InvariantStatistics(
+                            gEventCnts[a]));
+                }
+                invariants.add(invariant);
+            }
+        }
+        return invariants;
+    }
+
     /**
      * Returns true if and only if <code>e1</code> gets interrupted by
      * <code>e2</code>.
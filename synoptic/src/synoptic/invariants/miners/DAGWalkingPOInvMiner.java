@@ -8,6 +8,8 @@ import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
 
 import synoptic.invariants.AlwaysFollowedInvariant;
 import synoptic.invariants.AlwaysPrecedesInvariant;
@@ -184,6 +186,11 @@ public class DAGWalkingPOInvMiner extends CountingInvariantMiner implements
      */
     boolean mineConcurrencyInvariants = false;
 
+    /**
+     * The number of threads that walk traces in parallel.
+     */
+    int numThreads = 1;
+
     public DAGWalkingPOInvMiner() {
         // By default, mine the NeverConcurrentWith invariant.
         mineNeverConcurrentWith = true;
@@ -193,6 +200,22 @@ public class DAGWalkingPOInvMiner extends CountingInvariantMiner implements
         this.mineNeverConcurrentWith = mineNeverConcurrentWith;
     }
 
+    /**
+     * Creates a miner that walks the traces with numThreads threads. Each
+     * thread walks a range of traces into its own counts, the counts of
+     * adjacent ranges are merged pairwise, and the mined invariants are the
+     * same as with one thread.
+     * 
+     * @param mineNeverConcurrentWith
+     *            whether or not to mine the NeverConcurrentWith invariant
+     * @param numThreads
+     *            number of mining threads (1 mines sequentially)
+     */
+    public DAGWalkingPOInvMiner(boolean mineNeverConcurrentWith, int numThreads) {
+        this.mineNeverConcurrentWith = mineNeverConcurrentWith;
+        this.numThreads = numThreads;
+    }
+
     public boolean getMineNeverConcurrentWith() {
         return mineNeverConcurrentWith;
     }
@@ -248,11 +271,6 @@ public class DAGWalkingPOInvMiner extends CountingInvariantMiner implements
             }
         }
 
-        // A couple of hash sets for containing parents of special nodes.
-        List<EventNode> initNodeList = new ArrayList<EventNode>();
-        initNodeList.add(initNode);
-        List<EventNode> emptyNodeHashSet = new ArrayList<EventNode>();
-
         gFollowedByCnts.clear();
         gPrecedesCnts.clear();
         gAlwaysFollowsINITIALSet = null;
@@ -286,42 +304,155 @@ public class DAGWalkingPOInvMiner extends CountingInvariantMiner implements
             }
         }
 
-        // Iterate through all the traces.
-        for (Set<EventNode> initTraceNodes : g.getTraceIdToInitNodes().values()) {
-            tNodeParentsMap.put(initNode, emptyNodeHashSet);
-
-            // ///////////////////
-            // TODO: this assumes that we have a single terminal node. But a PO
-            // trace could have multiple terminals. We need to treat terminals
-            // as we do with initial nodes -- maintain a termTraceNodes list.
-            // ///////////////////
-
-            EventNode termNode = null, termNodeNew = null;
-            for (EventNode curNode : initTraceNodes) {
-                tNodeParentsMap.put(curNode, initNodeList);
-                // A pre-processing step: builds the parent\child counts maps,
-                // the parents map, the tSeenETypes set, and determines the
-                // terminal node in the trace.
-                termNodeNew = preTraverseTrace(curNode);
-                if (termNodeNew != null) {
-                    termNode = termNodeNew;
+        List<Set<EventNode>> traces = new ArrayList<Set<EventNode>>(g
+                .getTraceIdToInitNodes().values());
+        if (numThreads > 1 && traces.size() > 1) {
+            // Walk ranges of traces in parallel, each with its own miner
+            // instance, and add the merged counts to the global counts.
+            ForkJoinPool pool = new ForkJoinPool(numThreads);
+            try {
+                // A few tasks per thread, so that threads that finish early
+                // can steal work.
+                int minTraces = Math.max(1, traces.size() / (4 * numThreads));
+                mergeTraceCounts(pool.invoke(new TraceCountsTask(
+                        mineNeverConcurrentWith, initNode, traces, 0, traces
+                                .size(), minTraces)));
+            } finally {
+                pool.shutdown();
+            }
+        } else {
+            // Iterate through all the traces.
+            for (Set<EventNode> initTraceNodes : traces) {
+                countTrace(initNode, initTraceNodes);
+            }
+        }
+
+        // Extract the AFby, NFby, AP invariants based on counts.
+        Set<ITemporalInvariant> pathInvs = extractPathInvariantsFromWalkCounts(
+                relation, gEventCnts, gFollowedByCnts, gPrecedesCnts, null,
+                gEventCoOccurrences, gAlwaysFollowsINITIALSet, false, false);
+
+        if (mineConcurrencyInvariants) {
+            // Extract the concurrency invariants based on counts.
+            Set<ITemporalInvariant> concurInvs = extractConcurrencyInvariantsFromWalkCounts(
+                    mineNeverConcurrentWith, relation, gEventCnts,
+                    gPrecedesCnts, gFollowedByCnts, gEventCoOccurrences,
+                    gEventTypesOrderedBalances);
+            // Merge the two sets.
+            pathInvs.addAll(concurInvs);
+        }
+        // Return pathInvs, which at this point contains any non-redundant
+        // concurrency invariants (if these were also mined -- see above).
+        return new TemporalInvariantSet(pathInvs);
+    } // /computeInvariants
+
+    /**
+     * Walks a single trace, rooted at initTraceNodes, and adds its counts to
+     * the global counts.
+     * 
+     * @param initNode
+     *            the INITIAL node of the graph
+     * @param initTraceNodes
+     *            the first nodes of the trace
+     */
+    private void countTrace(EventNode initNode, Set<EventNode> initTraceNodes) {
+        // A couple of hash sets for containing parents of special nodes.
+        List<EventNode> initNodeList = new ArrayList<EventNode>();
+        initNodeList.add(initNode);
+        List<EventNode> emptyNodeHashSet = new ArrayList<EventNode>();
+
+        tNodeParentsMap.put(initNode, emptyNodeHashSet);
+
+        // ///////////////////
+        // TODO: this assumes that we have a single terminal node. But a PO
+        // trace could have multiple terminals. We need to treat terminals
+        // as we do with initial nodes -- maintain a termTraceNodes list.
+        // ///////////////////
+
+        EventNode termNode = null, termNodeNew = null;
+        for (EventNode curNode : initTraceNodes) {
+            tNodeParentsMap.put(curNode, initNodeList);
+            // A pre-processing step: builds the parent\child counts maps,
+            // the parents map, the tSeenETypes set, and determines the
+            // terminal node in the trace.
+            termNodeNew = preTraverseTrace(curNode);
+            if (termNodeNew != null) {
+                termNode = termNodeNew;
+            }
+        }
+        assert (termNode != null);
+
+        // For every pair of event types in the trace record that the two
+        // types have event instances that co-occur in some trace.
+        Set<EventType> toVisitETypes = new LinkedHashSet<EventType>();
+        toVisitETypes.addAll(tSeenETypes);
+        for (EventType e1 : tSeenETypes) {
+            // We don't consider (e1, e1) as these would be useful for local
+            // invariants and we don't use conditional counts for mining
+            // local invariants; and we do not consider (e1,e2) if we've
+            // already considered (e2,e1).
+            toVisitETypes.remove(e1);
+            for (EventType e2 : toVisitETypes) {
+                // Optimization: We won't be using event co-occurrence
+                // information for
+                // events that are local.
+                if (e1 == e2) {
+                    continue;
+                }
+                if (!(e1 instanceof DistEventType)
+                        || !(e2 instanceof DistEventType)) {
+                    continue;
+                }
+                if (((DistEventType) e1).getProcessName().equals(
+                        ((DistEventType) e2).getProcessName())) {
+
+                    continue;
                 }
+                // </Optimization>
+
+                // Record that e1 and e2 co-occur
+                if (!gEventCoOccurrences.containsKey(e1)) {
+                    gEventCoOccurrences.put(e1,
+                            new LinkedHashSet<EventType>());
+                }
+                gEventCoOccurrences.get(e1).add(e2);
             }
-            assert (termNode != null);
+        }
+
+        // logger.info("co-occur-cnts: " +
+        // traceCoOccurrenceCnts.toString());
+
+        // ////////////////////////////////////////////////////////////////////////
+        // Precedes relations recording: traverse the trace rooted at each
+        // initial node in the forward direction.
+        for (EventNode curNode : initTraceNodes) {
+            if (mineNeverConcurrentWith) {
+                forwardTraverseTrace(curNode, null);
+            } else {
+                forwardTraverseTraceWithoutNeverConcurrent(curNode, null);
+            }
+        }
+
+        // ////////////////////////////////////////////////////////////////////////
+        // FollowedBy relations recording: traverse the trace rooted at
+        // termNode in the reverse direction (following the
+        // tNodeParentsMap).
+        if (mineNeverConcurrentWith) {
+            reverseTraverseTrace(termNode, null);
+        } else {
+            reverseTraverseTraceWithoutNeverConcurrent(termNode, null);
+        }
+
+        if (mineNeverConcurrentWith) {
+            // Compute the gEventTypesOrderedBalances for the current trace.
+
+            // TODO: Because the NCwith invariant is symmetric, we only need
+            // to consider one of the permutations -- just (e1,e2) and not
+            // both (e1,e2) and (e2,e1).
 
-            // For every pair of event types in the trace record that the two
-            // types have event instances that co-occur in some trace.
-            Set<EventType> toVisitETypes = new LinkedHashSet<EventType>();
-            toVisitETypes.addAll(tSeenETypes);
             for (EventType e1 : tSeenETypes) {
-                // We don't consider (e1, e1) as these would be useful for local
-                // invariants and we don't use conditional counts for mining
-                // local invariants; and we do not consider (e1,e2) if we've
-                // already considered (e2,e1).
-                toVisitETypes.remove(e1);
-                for (EventType e2 : toVisitETypes) {
-                    // Optimization: We won't be using event co-occurrence
-                    // information for
+                for (EventType e2 : tSeenETypes) {
+                    // Optimization: we won't be using ordering balance for
                     // events that are local.
                     if (e1 == e2) {
                         continue;
@@ -332,152 +463,184 @@ public class DAGWalkingPOInvMiner extends CountingInvariantMiner implements
                     }
                     if (((DistEventType) e1).getProcessName().equals(
                             ((DistEventType) e2).getProcessName())) {
-
                         continue;
                     }
                     // </Optimization>
 
-                    // Record that e1 and e2 co-occur
-                    if (!gEventCoOccurrences.containsKey(e1)) {
-                        gEventCoOccurrences.put(e1,
-                                new LinkedHashSet<EventType>());
+                    int typeFtypeCnt = 0;
+                    if (tTypeFollowingTypeCnts.containsKey(e1)
+                            && tTypeFollowingTypeCnts.get(e1).containsKey(
+                                    e2)) {
+                        typeFtypeCnt = tTypeFollowingTypeCnts.get(e1).get(
+                                e2);
                     }
-                    gEventCoOccurrences.get(e1).add(e2);
-                }
-            }
 
-            // logger.info("co-occur-cnts: " +
-            // traceCoOccurrenceCnts.toString());
+                    int numE1 = tEventCnts.get(e1);
+                    int numE2 = tEventCnts.get(e2);
 
-            // ////////////////////////////////////////////////////////////////////////
-            // Precedes relations recording: traverse the trace rooted at each
-            // initial node in the forward direction.
-            for (EventNode curNode : initTraceNodes) {
-                if (mineNeverConcurrentWith) {
-                    forwardTraverseTrace(curNode, null);
-                } else {
-                    forwardTraverseTraceWithoutNeverConcurrent(curNode, null);
+                    int typePtypeCnt = 0;
+                    if (tTypePrecedingTypeCnts.containsKey(e1)
+                            && tTypePrecedingTypeCnts.get(e1).containsKey(
+                                    e2)) {
+                        typePtypeCnt = tTypePrecedingTypeCnts.get(e1).get(
+                                e2);
+                    }
+
+                    // NOTE: since numE1 * numE2 is always >= typeFtypeCnt +
+                    // typePtypeCnt, the value is always <= 0. With 0
+                    // indicating that \forall \hat{e1}, \forall \hat{e2} e1
+                    // \precedes e2 or e2 \precedes e1. We use this to
+                    // deduce that e1 and e2 are never concurrent.
+                    addToCount(gEventTypesOrderedBalances, e1, e2,
+                            typeFtypeCnt + typePtypeCnt - (numE1 * numE2));
                 }
             }
+        }
 
-            // ////////////////////////////////////////////////////////////////////////
-            // FollowedBy relations recording: traverse the trace rooted at
-            // termNode in the reverse direction (following the
-            // tNodeParentsMap).
-            if (mineNeverConcurrentWith) {
-                reverseTraverseTrace(termNode, null);
-            } else {
-                reverseTraverseTraceWithoutNeverConcurrent(termNode, null);
+        // Update the AlwaysFollowsINITIALSet set of events by
+        // intersecting it with all events seen in this partition.
+        if (gAlwaysFollowsINITIALSet == null) {
+            // This is the first trace we've processed.
+            gAlwaysFollowsINITIALSet = new LinkedHashSet<EventType>(
+                    tSeenETypes);
+        } else {
+            gAlwaysFollowsINITIALSet.retainAll(tSeenETypes);
+        }
+
+        // Clear all the per-trace structures to prepare for the next trace.
+        tNodeToNumParentsMap.clear();
+        tNodeParentsMap.clear();
+        tNodeToNumChildrenMap.clear();
+        tEventCnts.clear();
+        tSeenETypes.clear();
+        tFollowingNodeSets.clear();
+        tPrecedingNodeSets.clear();
+
+        if (mineNeverConcurrentWith) {
+            tTypeFollowingTypeCnts.clear();
+            tTypePrecedingTypeCnts.clear();
+        } else {
+            tNodeFollowingTypeCnts.clear();
+            tNodePrecedingTypeCnts.clear();
+        }
+
+        // At this point, we've completed all counts computation for the
+        // trace rooted at curNode.
+
+    }
+
+    /**
+     * Adds delta to counts[a][b], which is taken to be 0 if counts has no
+     * entry for (a, b). The global counts of the miner that mines a graph are
+     * pre-seeded with all pairs of types, but those of the miners that walk
+     * ranges of traces in parallel only contain the pairs they count.
+     */
+    private static void addToCount(
+            Map<EventType, Map<EventType, Integer>> counts, EventType a,
+            EventType b, int delta) {
+        Map<EventType, Integer> aCounts = counts.get(a);
+        if (aCounts == null) {
+            aCounts = new LinkedHashMap<EventType, Integer>();
+            counts.put(a, aCounts);
+        }
+        Integer count = aCounts.get(b);
+        aCounts.put(b, (count == null ? 0 : count) + delta);
+    }
+
+    /**
+     * Adds all counts in src to dst.
+     */
+    private static void addCounts(Map<EventType, Map<EventType, Integer>> src,
+            Map<EventType, Map<EventType, Integer>> dst) {
+        for (Entry<EventType, Map<EventType, Integer>> aEntry : src.entrySet()) {
+            for (Entry<EventType, Integer> bEntry : aEntry.getValue()
+                    .entrySet()) {
+                addToCount(dst, aEntry.getKey(), bEntry.getKey(),
+                        bEntry.getValue());
             }
+        }
+    }
 
-            if (mineNeverConcurrentWith) {
-                // Compute the gEventTypesOrderedBalances for the current trace.
-
-                // TODO: Because the NCwith invariant is symmetric, we only need
-                // to consider one of the permutations -- just (e1,e2) and not
-                // both (e1,e2) and (e2,e1).
-
-                for (EventType e1 : tSeenETypes) {
-                    for (EventType e2 : tSeenETypes) {
-                        // Optimization: we won't be using ordering balance for
-                        // events that are local.
-                        if (e1 == e2) {
-                            continue;
-                        }
-                        if (!(e1 instanceof DistEventType)
-                                || !(e2 instanceof DistEventType)) {
-                            continue;
-                        }
-                        if (((DistEventType) e1).getProcessName().equals(
-                                ((DistEventType) e2).getProcessName())) {
-                            continue;
-                        }
-                        // </Optimization>
-
-                        int typeFtypeCnt = 0;
-                        if (tTypeFollowingTypeCnts.containsKey(e1)
-                                && tTypeFollowingTypeCnts.get(e1).containsKey(
-                                        e2)) {
-                            typeFtypeCnt = tTypeFollowingTypeCnts.get(e1).get(
-                                    e2);
-                        }
-
-                        int numE1 = tEventCnts.get(e1);
-                        int numE2 = tEventCnts.get(e2);
-
-                        int typePtypeCnt = 0;
-                        if (tTypePrecedingTypeCnts.containsKey(e1)
-                                && tTypePrecedingTypeCnts.get(e1).containsKey(
-                                        e2)) {
-                            typePtypeCnt = tTypePrecedingTypeCnts.get(e1).get(
-                                    e2);
-                        }
-
-                        int prevBalance = gEventTypesOrderedBalances.get(e1)
-                                .get(e2);
-
-                        // NOTE: since numE1 * numE2 is always >= typeFtypeCnt +
-                        // typePtypeCnt, the value is always <= 0. With 0
-                        // indicating that \forall \hat{e1}, \forall \hat{e2} e1
-                        // \precedes e2 or e2 \precedes e1. We use this to
-                        // deduce that e1 and e2 are never concurrent.
-                        gEventTypesOrderedBalances.get(e1).put(
-                                e2,
-                                prevBalance + typeFtypeCnt + typePtypeCnt
-                                        - (numE1 * numE2));
-                    }
-                }
+    /**
+     * Merges the global counts of other, which walked traces that this miner
+     * did not walk, into the global counts of this miner. Counts are added,
+     * co-occurrences are united, and the types that always follow INITIAL are
+     * intersected.
+     */
+    private void mergeTraceCounts(DAGWalkingPOInvMiner other) {
+        addCounts(other.gFollowedByCnts, gFollowedByCnts);
+        addCounts(other.gPrecedesCnts, gPrecedesCnts);
+        addCounts(other.gEventTypesOrderedBalances, gEventTypesOrderedBalances);
+
+        for (Entry<EventType, Set<EventType>> entry : other.gEventCoOccurrences
+                .entrySet()) {
+            if (!gEventCoOccurrences.containsKey(entry.getKey())) {
+                gEventCoOccurrences.put(entry.getKey(),
+                        new LinkedHashSet<EventType>());
             }
+            gEventCoOccurrences.get(entry.getKey()).addAll(entry.getValue());
+        }
 
-            // Update the AlwaysFollowsINITIALSet set of events by
-            // intersecting it with all events seen in this partition.
+        if (other.gAlwaysFollowsINITIALSet != null) {
             if (gAlwaysFollowsINITIALSet == null) {
-                // This is the first trace we've processed.
                 gAlwaysFollowsINITIALSet = new LinkedHashSet<EventType>(
-                        tSeenETypes);
+                        other.gAlwaysFollowsINITIALSet);
             } else {
-                gAlwaysFollowsINITIALSet.retainAll(tSeenETypes);
+                gAlwaysFollowsINITIALSet
+                        .retainAll(other.gAlwaysFollowsINITIALSet);
             }
-
-            // Clear all the per-trace structures to prepare for the next trace.
-            tNodeToNumParentsMap.clear();
-            tNodeParentsMap.clear();
-            tNodeToNumChildrenMap.clear();
-            tEventCnts.clear();
-            tSeenETypes.clear();
-            tFollowingNodeSets.clear();
-            tPrecedingNodeSets.clear();
-
-            if (mineNeverConcurrentWith) {
-                tTypeFollowingTypeCnts.clear();
-                tTypePrecedingTypeCnts.clear();
-            } else {
-                tNodeFollowingTypeCnts.clear();
-                tNodePrecedingTypeCnts.clear();
-            }
-
-            // At this point, we've completed all counts computation for the
-            // trace rooted at curNode.
         }
+    }
 
-        // Extract the AFby, NFby, AP invariants based on counts.
-        Set<ITemporalInvariant> pathInvs = extractPathInvariantsFromWalkCounts(
-                relation, gEventCnts, gFollowedByCnts, gPrecedesCnts, null,
-                gEventCoOccurrences, gAlwaysFollowsINITIALSet, false, false);
+    /**
+     * Walks a range of traces on a ForkJoinPool, and returns a miner whose
+     * global counts are the counts of the range. Ranges of at most minTraces
+     * traces are walked by a new miner instance, and larger ranges are split
+     * in two halves that are walked in parallel and then merged, in order.
+     */
+    private static class TraceCountsTask extends
+            RecursiveTask<DAGWalkingPOInvMiner> {
+        private static final long serialVersionUID = 1L;
+
+        private final boolean mineNeverConcurrentWith;
+        private final EventNode initNode;
+        private final List<Set<EventNode>> traces;
+        private final int from;
+        private final int to;
+        private final int minTraces;
+
+        TraceCountsTask(boolean mineNeverConcurrentWith, EventNode initNode,
+                List<Set<EventNode>> traces, int from, int to, int minTraces) {
+            this.mineNeverConcurrentWith = mineNeverConcurrentWith;
+            this.initNode = initNode;
+            this.traces = traces;
+            this.from = from;
+            this.to = to;
+            this.minTraces = minTraces;
+        }
 
-        if (mineConcurrencyInvariants) {
-            // Extract the concurrency invariants based on counts.
-            Set<ITemporalInvariant> concurInvs = extractConcurrencyInvariantsFromWalkCounts(
-                    mineNeverConcurrentWith, relation, gEventCnts,
-                    gPrecedesCnts, gFollowedByCnts, gEventCoOccurrences,
-                    gEventTypesOrderedBalances);
-            // Merge the two sets.
-            pathInvs.addAll(concurInvs);
+        @Override
+        protected DAGWalkingPOInvMiner compute() {
+            if (to - from <= minTraces) {
+                DAGWalkingPOInvMiner miner = new DAGWalkingPOInvMiner(
+                        mineNeverConcurrentWith);
+                for (int i = from; i < to; i++) {
+                    miner.countTrace(initNode, traces.get(i));
+                }
+                return miner;
+            }
+            int mid = (from + to) >>> 1;
+            TraceCountsTask right = new TraceCountsTask(
+                    mineNeverConcurrentWith, initNode, traces, mid, to,
+                    minTraces);
+            right.fork();
+            DAGWalkingPOInvMiner miner = new TraceCountsTask(
+                    mineNeverConcurrentWith, initNode, traces, from, mid,
+                    minTraces).compute();
+            miner.mergeTraceCounts(right.join());
+            return miner;
         }
-        // Return pathInvs, which at this point contains any non-redundant
-        // concurrency invariants (if these were also mined -- see above).
-        return new TemporalInvariantSet(pathInvs);
-    } // /computeInvariants
+    }
 
     /**
      * Recursively, depth-first traverses the trace forward to build the
@@ -665,8 +828,7 @@ public class DAGWalkingPOInvMiner extends CountingInvariantMiner implements
                     continue;
                 }
                 if (!a.isTerminalEventType() && !b.isTerminalEventType()) {
-                    gFollowedByCnts.get(a).put(b,
-                            gFollowedByCnts.get(a).get(b) + 1);
+                    addToCount(gFollowedByCnts, a, b, 1);
                 }
                 visitedTypes.add(b);
             }
@@ -774,7 +936,7 @@ public class DAGWalkingPOInvMiner extends CountingInvariantMiner implements
                 if (visitedTypes.contains(a)) {
                     continue;
                 }
-                gPrecedesCnts.get(a).put(b, gPrecedesCnts.get(a).get(b) + 1);
+                addToCount(gPrecedesCnts, a, b, 1);
                 visitedTypes.add(a);
             }
             visitedTypes.clear();
@@ -888,8 +1050,7 @@ public class DAGWalkingPOInvMiner extends CountingInvariantMiner implements
             // preceded the current b event in this trace.
             for (EventType b : tFollowingTypeCnts.keySet()) {
                 if (!a.isTerminalEventType() && !b.isTerminalEventType()) {
-                    gFollowedByCnts.get(a).put(b,
-                            gFollowedByCnts.get(a).get(b) + 1);
+                    addToCount(gFollowedByCnts, a, b, 1);
                 }
             }
 
@@ -973,7 +1134,7 @@ public class DAGWalkingPOInvMiner extends CountingInvariantMiner implements
             // Update the global precedes counts based on the a events that
             // preceded the current b event in this trace.
             for (EventType a : tPrecedingTypeCnts.keySet()) {
-                gPrecedesCnts.get(a).put(b, gPrecedesCnts.get(a).get(b) + 1);
+                addToCount(gPrecedesCnts, a, b, 1);
             }
 
             if (!tPrecedingTypeCnts.containsKey(b)) {
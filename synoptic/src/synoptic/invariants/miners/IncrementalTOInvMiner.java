@@ -0,0 +1,390 @@
+package synoptic.invariants.miners;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import synoptic.invariants.TemporalInvariantSet;
+import synoptic.model.ChainsTraceGraph;
+import synoptic.model.Trace;
+import synoptic.model.event.DistEventType;
+import synoptic.model.event.Event;
+import synoptic.model.event.EventType;
+import synoptic.model.event.EventTypeIndex;
+import synoptic.model.event.StringEventType;
+import synoptic.model.interfaces.IRelationPath;
+
+/**
+ * Mines the same invariants as ChainWalkingTOInvMiner (AFby, AP, NFby, IntrBy
+ * and "INITIAL AFby x"), incrementally. The miner keeps the aggregated counts
+ * of all the traces it has been given -- the event counts, the followed-by and
+ * precedes counts, the possible interrupts, and the number of paths that
+ * contain each type (from which the types that always follow INITIAL are
+ * derived) -- for each relation. Traces are folded into the counts with
+ * addTraces(), at a cost that is proportional to the new traces, and
+ * getInvariants() derives the invariants of all traces added so far from the
+ * counts alone.
+ * <p>
+ * The counts can be saved to a file and loaded again (save() and load()), so
+ * that a log that grows over time can be mined by adding just the traces that
+ * were appended since the counts were saved. The invariants hold for each of
+ * the traces that were added, and in particular for the traces of the latest
+ * graph.
+ * </p>
+ * <p>
+ * The miner also keeps a fingerprint of the traces of each log file that it
+ * counted (see getFileFingerprint()), and skips the traces of a file that
+ * were counted before, so that adding the same log twice does not count its
+ * traces twice.
+ * </p>
+ */
+public class IncrementalTOInvMiner extends CountingInvariantMiner {
+
+    private static final int magic = 0x53494e43; // "SINC"
+    private static final int version = 2;
+
+    private static final byte stringType = 0;
+    private static final byte distType = 1;
+
+    // The offset basis and prime of the 64-bit FNV-1a hash, which the file
+    // fingerprints apply to the values that identify the traces of a file.
+    private static final long fingerprintSeed = 0xcbf29ce484222325L;
+    private static final long fingerprintPrime = 0x100000001b3L;
+
+    /**
+     * The counts of the paths of one relation.
+     */
+    private static class RelationCounts {
+        final EventTypeIndex index = new EventTypeIndex();
+        PathCounts counts = new PathCounts(0);
+        int numPaths = 0;
+    }
+
+    /**
+     * Whether or not the relations are mined together with the time relation
+     * (see ChainWalkingTOInvMiner).
+     */
+    private final boolean multipleRelations;
+
+    private final Map<String, RelationCounts> relationCounts = new LinkedHashMap<String, RelationCounts>();
+
+    /**
+     * The fingerprints of the log files whose traces were counted.
+     */
+    private final Set<Long> fileFingerprints = new LinkedHashSet<Long>();
+
+    /**
+     * Creates a miner without any counts.
+     * 
+     * @param multipleRelations
+     *            whether to mine each relation together with the time
+     *            relation, as ChainWalkingTOInvMiner does with
+     *            multipleRelations
+     */
+    public IncrementalTOInvMiner(boolean multipleRelations) {
+        this.multipleRelations = multipleRelations;
+    }
+
+    public boolean getMultipleRelations() {
+        return multipleRelations;
+    }
+
+    /**
+     * Folds the traces of g into the counts, except for the traces of the log
+     * files whose traces were added before, which are skipped.
+     * 
+     * @return the number of traces that were added
+     */
+    public int addTraces(ChainsTraceGraph g) {
+        // Group the traces by the log file that they were parsed from.
+        Map<String, List<Trace>> tracesByFile = new LinkedHashMap<String, List<Trace>>();
+        for (Trace trace : g.getTraces()) {
+            String fileName = getTimePath(trace).getFirstNode().getEvent()
+                    .getFileName();
+            List<Trace> fileTraces = tracesByFile.get(fileName);
+            if (fileTraces == null) {
+                fileTraces = new ArrayList<Trace>();
+                tracesByFile.put(fileName, fileTraces);
+            }
+            fileTraces.add(trace);
+        }
+
+        List<Trace> newTraces = new ArrayList<Trace>();
+        for (Map.Entry<String, List<Trace>> entry : tracesByFile.entrySet()) {
+            if (fileFingerprints.add(getFileFingerprint(entry.getKey(),
+                    entry.getValue()))) {
+                newTraces.addAll(entry.getValue());
+            } else {
+                logger.warning("Skipping the " + entry.getValue().size()
+                        + " traces of " + entry.getKey()
+                        + ", which were counted before");
+            }
+        }
+        if (newTraces.isEmpty()) {
+            return 0;
+        }
+
+        for (String relation : g.getRelations()) {
+            RelationCounts rCounts = relationCounts.get(relation);
+            if (rCounts == null) {
+                rCounts = new RelationCounts();
+                relationCounts.put(relation, rCounts);
+            }
+
+            Set<IRelationPath> relationPaths = ChainWalkingTOInvMiner
+                    .getRelationPaths(newTraces, relation, multipleRelations);
+            for (IRelationPath relationPath : relationPaths) {
+                int[] sequence = PathCounts.toSequence(relationPath,
+                        rCounts.index);
+                rCounts.counts.grow(rCounts.index.size());
+                rCounts.counts.count(sequence);
+                rCounts.numPaths++;
+            }
+            rCounts.counts.releasePathState();
+        }
+        return newTraces.size();
+    }
+
+    /**
+     * Returns the path of the time relation of trace, which holds all of its
+     * events.
+     */
+    private static IRelationPath getTimePath(Trace trace) {
+        return trace.getSingleRelationPaths(Event.defTimeRelationStr)
+                .iterator().next();
+    }
+
+    /**
+     * Returns a fingerprint of the traces of a log file: a 64-bit hash of the
+     * file name, and of the first line number and the event types of each
+     * trace, in order. The hash only depends on these values, so that it is
+     * the same in every run.
+     */
+    private static long getFileFingerprint(String fileName,
+            List<Trace> traces) {
+        long hash = fingerprint(fingerprintSeed, fileName);
+        for (Trace trace : traces) {
+            IRelationPath path = getTimePath(trace);
+            hash = fingerprint(hash, path.getFirstNode().getEvent()
+                    .getLineNum());
+            for (EventType eType : path.getEventTypes()) {
+                hash = fingerprint(hash, eType.getETypeLabel());
+                if (eType instanceof DistEventType) {
+                    hash = fingerprint(hash,
+                            ((DistEventType) eType).getProcessName());
+                }
+            }
+            // Separates the traces.
+            hash = fingerprint(hash, -1);
+        }
+        return hash;
+    }
+
+    private static long fingerprint(long hash, long value) {
+        return (hash ^ value) * fingerprintPrime;
+    }
+
+    private static long fingerprint(long hash, String value) {
+        if (value == null) {
+            return fingerprint(hash, -2);
+        }
+        hash = fingerprint(hash, value.length());
+        for (int i = 0; i < value.length(); i++) {
+            hash = fingerprint(hash, value.charAt(i));
+        }
+        return hash;
+    }
+
+    /**
+     * Returns the invariants of all the traces added so far.
+     */
+    public TemporalInvariantSet getInvariants(boolean supportCount) {
+        TemporalInvariantSet result = new TemporalInvariantSet();
+        for (Map.Entry<String, RelationCounts> entry : relationCounts
+                .entrySet()) {
+            RelationCounts rCounts = entry.getValue();
+            PathCounts counts = rCounts.counts;
+            result.add(new TemporalInvariantSet(
+                    extractPathInvariantsFromCountMatrices(entry.getKey(),
+                            rCounts.index, counts.eventCnts,
+                            counts.followedByCnts, counts.precedesCnts,
+                            counts.capacity, counts.possibleInterrupts,
+                            counts.alwaysFollowsINITIAL(rCounts.numPaths),
+                            multipleRelations, supportCount)));
+        }
+        return result;
+    }
+
+    /**
+     * Writes the counts to a file.
+     */
+    public void save(File file) throws IOException {
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+                new FileOutputStream(file)));
+        try {
+            out.writeInt(magic);
+            out.writeInt(version);
+            out.writeBoolean(multipleRelations);
+            out.writeInt(relationCounts.size());
+            for (Map.Entry<String, RelationCounts> entry : relationCounts
+                    .entrySet()) {
+                out.writeUTF(entry.getKey());
+                writeCounts(out, entry.getValue());
+            }
+            out.writeInt(fileFingerprints.size());
+            for (long fingerprint : fileFingerprints) {
+                out.writeLong(fingerprint);
+            }
+        } finally {
+            out.close();
+        }
+    }
+
+    private static void writeCounts(DataOutputStream out,
+            RelationCounts rCounts) throws IOException {
+        PathCounts counts = rCounts.counts;
+        int n = rCounts.index.size();
+        out.writeInt(rCounts.numPaths);
+        out.writeInt(n);
+        for (int a = 0; a < n; a++) {
+            EventType eType = rCounts.index.get(a);
+            if (eType instanceof DistEventType) {
+                out.writeByte(distType);
+                out.writeUTF(eType.getETypeLabel());
+                out.writeUTF(((DistEventType) eType).getProcessName());
+            } else {
+                out.writeByte(stringType);
+                out.writeUTF(eType.getETypeLabel());
+            }
+        }
+        for (int a = 0; a < n; a++) {
+            out.writeInt(counts.eventCnts[a]);
+            out.writeInt(counts.numPathsSeen[a]);
+            int[] interrupts = counts.possibleInterrupts[a];
+            if (interrupts == null) {
+                out.writeInt(-1);
+            } else {
+                out.writeInt(interrupts.length);
+                for (int b : interrupts) {
+                    out.writeInt(b);
+                }
+            }
+        }
+        for (int a = 0; a < n; a++) {
+            for (int b = 0; b < n; b++) {
+                out.writeInt(counts.followedByCnts[a * counts.capacity + b]);
+            }
+        }
+        for (int a = 0; a < n; a++) {
+            for (int b = 0; b < n; b++) {
+                out.writeInt(counts.precedesCnts[a * counts.capacity + b]);
+            }
+        }
+    }
+
+    /**
+     * Reads counts that were written by save() into a new miner.
+     * 
+     * @throws IOException
+     *             if the file cannot be read, or does not contain counts
+     */
+    public static IncrementalTOInvMiner load(File file) throws IOException {
+        DataInputStream in = new DataInputStream(new BufferedInputStream(
+                new FileInputStream(file)));
+        try {
+            if (in.readInt() != magic) {
+                throw new IOException(file
+                        + " does not contain invariant mining counts");
+            }
+            int fileVersion = in.readInt();
+            if (fileVersion != version) {
+                throw new IOException("Invariant mining counts " + file
+                        + " have unsupported version " + fileVersion);
+            }
+            IncrementalTOInvMiner miner = new IncrementalTOInvMiner(
+                    in.readBoolean());
+            int numRelations = in.readInt();
+            for (int r = 0; r < numRelations; r++) {
+                String relation = in.readUTF();
+                miner.relationCounts.put(relation, readCounts(in, file));
+            }
+            int numFingerprints = in.readInt();
+            for (int i = 0; i < numFingerprints; i++) {
+                miner.fileFingerprints.add(in.readLong());
+            }
+            return miner;
+        } catch (EOFException e) {
+            throw new IOException("Invariant mining counts " + file
+                    + " are truncated");
+        } finally {
+            in.close();
+        }
+    }
+
+    private static RelationCounts readCounts(DataInputStream in, File file)
+            throws IOException {
+        RelationCounts rCounts = new RelationCounts();
+        rCounts.numPaths = in.readInt();
+        int n = in.readInt();
+        if (n < 0) {
+            throw new IOException("Invariant mining counts " + file
+                    + " are corrupt");
+        }
+        for (int a = 0; a < n; a++) {
+            byte kind = in.readByte();
+            EventType eType;
+            if (kind == stringType) {
+                eType = new StringEventType(in.readUTF());
+            } else if (kind == distType) {
+                String label = in.readUTF();
+                eType = new DistEventType(label, in.readUTF());
+            } else {
+                throw new IOException("Invariant mining counts " + file
+                        + " contain an unknown kind of event type");
+            }
+            if (rCounts.index.add(eType) != a) {
+                throw new IOException("Invariant mining counts " + file
+                        + " contain a duplicate event type " + eType);
+            }
+        }
+
+        PathCounts counts = new PathCounts(n);
+        counts.releasePathState();
+        for (int a = 0; a < n; a++) {
+            counts.eventCnts[a] = in.readInt();
+            counts.numPathsSeen[a] = in.readInt();
+            int numInterrupts = in.readInt();
+            if (numInterrupts >= 0) {
+                int[] interrupts = new int[numInterrupts];
+                for (int k = 0; k < numInterrupts; k++) {
+                    interrupts[k] = in.readInt();
+                    if (interrupts[k] < 0 || interrupts[k] >= n) {
+                        throw new IOException("Invariant mining counts "
+                                + file + " are corrupt");
+                    }
+                }
+                counts.possibleInterrupts[a] = interrupts;
+            }
+        }
+        for (int i = 0; i < n * n; i++) {
+            counts.followedByCnts[i] = in.readInt();
+        }
+        for (int i = 0; i < n * n; i++) {
+            counts.precedesCnts[i] = in.readInt();
+        }
+        rCounts.counts = counts;
+        return rCounts;
+    }
+}
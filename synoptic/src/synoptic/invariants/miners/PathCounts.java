@@ -0,0 +1,280 @@
+package synoptic.invariants.miners;
+
+import java.util.Arrays;
+import java.util.List;
+
+import synoptic.model.event.EventType;
+import synoptic.model.event.EventTypeIndex;
+import synoptic.model.interfaces.IRelationPath;
+
+/**
+ * The counts of a set of totally ordered relation paths, over n event types
+ * numbered 0 to n - 1 (e.g., by an EventTypeIndex). Each path is counted from
+ * the sequence of the type numbers of its events. The arrays have room for
+ * c = capacity >= n types, and the pairwise counts are c x c matrices stored
+ * row-major. The counts are:
+ * 
+ * <pre>
+ * eventCnts[a]              = number of a's in all paths
+ * followedByCnts[a * c + b] = #F(a->b), the number of a's followed by a b
+ * precedesCnts[a * c + b]   = #P(a->b), the number of b's preceded by an a
+ * possibleInterrupts[a]     = the types between every pair of consecutive a's,
+ *                             or null if no path contains two a's
+ * numPathsSeen[a]           = number of paths that contain an a
+ * </pre>
+ * <p>
+ * The counts of two disjoint sets of paths can be merged into the counts of
+ * their union, so paths can be counted in any grouping and order. The number
+ * of types can grow between paths, to count paths with new types. The
+ * capacity grows geometrically, so that adding types one at a time copies the
+ * matrices only a logarithmic number of times.
+ * </p>
+ */
+class PathCounts {
+    int n;
+    int capacity;
+    int[] eventCnts;
+    int[] followedByCnts;
+    int[] precedesCnts;
+    int[][] possibleInterrupts;
+    int[] numPathsSeen;
+
+    // Per-path state, reset after each path. The seen types are kept in
+    // the order in which they are first seen in the path.
+    private int[] pathCnts;
+    private int[] seen;
+    private int[] lastPos;
+    private int[][] pathInterrupts;
+    private int[] mark;
+    private int stamp = 0;
+
+    PathCounts(int n) {
+        this.n = n;
+        this.capacity = n;
+        eventCnts = new int[n];
+        followedByCnts = new int[n * n];
+        precedesCnts = new int[n * n];
+        possibleInterrupts = new int[n][];
+        numPathsSeen = new int[n];
+        mark = new int[n];
+        allocPathState();
+    }
+
+    private void allocPathState() {
+        pathCnts = new int[capacity];
+        seen = new int[capacity];
+        lastPos = new int[capacity];
+        pathInterrupts = new int[capacity][];
+    }
+
+    /**
+     * Grows the counts to newN types. The new types have zero counts. If the
+     * arrays have no room for newN types, their capacity is at least doubled.
+     */
+    void grow(int newN) {
+        if (newN <= n) {
+            return;
+        }
+        if (newN > capacity) {
+            int newCapacity = Math.max(newN, 2 * capacity);
+            followedByCnts = growMatrix(followedByCnts, n, capacity,
+                    newCapacity);
+            precedesCnts = growMatrix(precedesCnts, n, capacity, newCapacity);
+            eventCnts = Arrays.copyOf(eventCnts, newCapacity);
+            possibleInterrupts = Arrays.copyOf(possibleInterrupts,
+                    newCapacity);
+            numPathsSeen = Arrays.copyOf(numPathsSeen, newCapacity);
+            mark = Arrays.copyOf(mark, newCapacity);
+            capacity = newCapacity;
+            if (pathCnts != null) {
+                allocPathState();
+            }
+        }
+        n = newN;
+    }
+
+    /**
+     * Copies the n x n counts of a matrix with rows of length capacity into
+     * a new matrix with rows of length newCapacity.
+     */
+    private static int[] growMatrix(int[] matrix, int n, int capacity,
+            int newCapacity) {
+        int[] grown = new int[newCapacity * newCapacity];
+        for (int a = 0; a < n; a++) {
+            System.arraycopy(matrix, a * capacity, grown, a * newCapacity, n);
+        }
+        return grown;
+    }
+
+    /**
+     * Adds the counts of a path, given as a sequence of type numbers.
+     */
+    void count(int[] sequence) {
+        if (pathCnts == null) {
+            allocPathState();
+        }
+        int numSeen = 0;
+        for (int i = 0; i < sequence.length; i++) {
+            int b = sequence[i];
+
+            // Every a seen so far precedes this b.
+            for (int k = 0; k < numSeen; k++) {
+                precedesCnts[seen[k] * capacity + b]++;
+            }
+
+            if (pathCnts[b] > 0) {
+                // The types between the previous b and this b are the
+                // possible interrupters of b, intersected over all pairs of
+                // consecutive b's.
+                stamp++;
+                for (int j = lastPos[b] + 1; j < i; j++) {
+                    mark[sequence[j]] = stamp;
+                }
+                if (pathInterrupts[b] == null) {
+                    pathInterrupts[b] = collectMarked(seen, numSeen, mark,
+                            stamp);
+                } else {
+                    pathInterrupts[b] = retainMarked(pathInterrupts[b], mark,
+                            stamp);
+                }
+            } else {
+                seen[numSeen++] = b;
+            }
+            lastPos[b] = i;
+            pathCnts[b]++;
+        }
+
+        // The followed-by count of (a, b) in a path is the number of a's
+        // before the last b in the path.
+        for (int k = 0; k < numSeen; k++) {
+            pathCnts[seen[k]] = 0;
+        }
+        int numSeenBefore = 0;
+        for (int i = 0; i < sequence.length; i++) {
+            int b = sequence[i];
+            if (lastPos[b] == i) {
+                for (int k = 0; k < numSeenBefore; k++) {
+                    int a = seen[k];
+                    followedByCnts[a * capacity + b] += pathCnts[a];
+                }
+            }
+            if (pathCnts[b] == 0) {
+                // Types are first seen in the same order as above.
+                numSeenBefore++;
+            }
+            pathCnts[b]++;
+        }
+
+        for (int k = 0; k < numSeen; k++) {
+            int b = seen[k];
+            eventCnts[b] += pathCnts[b];
+            numPathsSeen[b]++;
+            if (pathInterrupts[b] != null) {
+                intersectInterrupts(b, pathInterrupts[b]);
+                pathInterrupts[b] = null;
+            }
+            pathCnts[b] = 0;
+        }
+    }
+
+    /**
+     * Adds the counts of other, which counted a disjoint set of paths over
+     * the same types.
+     */
+    void merge(PathCounts other) {
+        for (int a = 0; a < n; a++) {
+            for (int b = 0; b < n; b++) {
+                followedByCnts[a * capacity + b] += other.followedByCnts[a
+                        * other.capacity + b];
+                precedesCnts[a * capacity + b] += other.precedesCnts[a
+                        * other.capacity + b];
+            }
+        }
+        for (int b = 0; b < n; b++) {
+            eventCnts[b] += other.eventCnts[b];
+            numPathsSeen[b] += other.numPathsSeen[b];
+            if (other.possibleInterrupts[b] != null) {
+                intersectInterrupts(b, other.possibleInterrupts[b]);
+            }
+        }
+    }
+
+    /**
+     * Intersects the possible interrupters of b with interrupts.
+     */
+    void intersectInterrupts(int b, int[] interrupts) {
+        if (possibleInterrupts[b] == null) {
+            possibleInterrupts[b] = interrupts;
+            return;
+        }
+        stamp++;
+        for (int c : interrupts) {
+            mark[c] = stamp;
+        }
+        possibleInterrupts[b] = retainMarked(possibleInterrupts[b], mark,
+                stamp);
+    }
+
+    /**
+     * Releases the per-path state, until the next path is counted.
+     */
+    void releasePathState() {
+        pathCnts = null;
+        seen = null;
+        lastPos = null;
+        pathInterrupts = null;
+    }
+
+    /**
+     * Returns which types appear in all of numPaths paths, i.e., which types
+     * always follow INITIAL.
+     */
+    boolean[] alwaysFollowsINITIAL(int numPaths) {
+        boolean[] alwaysFollowsINITIAL = new boolean[n];
+        for (int a = 0; a < n; a++) {
+            alwaysFollowsINITIAL[a] = (numPathsSeen[a] == numPaths);
+        }
+        return alwaysFollowsINITIAL;
+    }
+
+    /**
+     * Returns the sequence of the type numbers of the events in a path,
+     * adding new types to index.
+     */
+    static int[] toSequence(IRelationPath path, EventTypeIndex index) {
+        List<EventType> eventTypes = path.getEventTypes();
+        int[] sequence = new int[eventTypes.size()];
+        for (int i = 0; i < sequence.length; i++) {
+            sequence[i] = index.add(eventTypes.get(i));
+        }
+        return sequence;
+    }
+
+    /**
+     * Returns the first numTypes elements of types that are marked with stamp.
+     */
+    private static int[] collectMarked(int[] types, int numTypes, int[] mark,
+            int stamp) {
+        int count = 0;
+        for (int k = 0; k < numTypes; k++) {
+            if (mark[types[k]] == stamp) {
+                count++;
+            }
+        }
+        int[] marked = new int[count];
+        count = 0;
+        for (int k = 0; k < numTypes; k++) {
+            if (mark[types[k]] == stamp) {
+                marked[count++] = types[k];
+            }
+        }
+        return marked;
+    }
+
+    /**
+     * Returns the elements of types that are marked with stamp.
+     */
+    private static int[] retainMarked(int[] types, int[] mark, int stamp) {
+        return collectMarked(types, types.length, mark, stamp);
+    }
+}
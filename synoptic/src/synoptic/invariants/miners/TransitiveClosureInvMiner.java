@@ -10,7 +10,7 @@ import java.util.Map.Entry;
 import java.util.Set;
 
 import synoptic.algorithms.TransitiveClosure;
-import synoptic.benchmarks.PerformanceMetrics;
+import synoptic.benchmarks.MetricsRegistry;
 import synoptic.benchmarks.TimedTask;
 import synoptic.invariants.AlwaysFollowedInvariant;
 import synoptic.invariants.AlwaysPrecedesInvariant;
@@ -50,6 +50,24 @@ public class TransitiveClosureInvMiner extends InvariantMiner implements
      */
     public boolean useWarshall = true;
 
+    /**
+     * Whether or not to use implicit transitive closures for totally ordered
+     * traces (see ChainsTransitiveClosure), which take memory linear in the
+     * number of events instead of quadratic in the length of the traces. No
+     * by default.
+     */
+    public boolean implicitChainsTC = false;
+
+    /**
+     * Whether or not to use bitset transitive closures for partially ordered
+     * traces (see BitSetTransitiveClosure), which are computed over a
+     * topological numbering of each trace, with tcThreads threads. No by
+     * default.
+     */
+    public boolean bitSetDAGsTC = false;
+
+    public int tcThreads = 1;
+
     public TransitiveClosureInvMiner() {
         // Empty constructor for testing.
     }
@@ -58,6 +76,20 @@ public class TransitiveClosureInvMiner extends InvariantMiner implements
         this.useWarshall = useWarshall;
     }
 
+    public TransitiveClosureInvMiner(boolean useWarshall,
+            boolean implicitChainsTC) {
+        this.useWarshall = useWarshall;
+        this.implicitChainsTC = implicitChainsTC;
+    }
+
+    public TransitiveClosureInvMiner(boolean useWarshall,
+            boolean implicitChainsTC, boolean bitSetDAGsTC, int tcThreads) {
+        this.useWarshall = useWarshall;
+        this.implicitChainsTC = implicitChainsTC;
+        this.bitSetDAGsTC = bitSetDAGsTC;
+        this.tcThreads = tcThreads;
+    }
+
     @Override
     public TemporalInvariantSet computeInvariants(DAGsTraceGraph g) {
         return computeTransClosureInvariants(g, true);
@@ -85,7 +117,7 @@ public class TransitiveClosureInvMiner extends InvariantMiner implements
     public TemporalInvariantSet computeTransClosureInvariants(TraceGraph<?> g,
             boolean mineConcurrencyInvariants) {
 
-        TimedTask mineInvariants = PerformanceMetrics.createTask(
+        TimedTask mineInvariants = MetricsRegistry.createTask(
                 "mineInvariants", false);
         Set<ITemporalInvariant> overapproximatedInvariantsSet;
 
@@ -94,19 +126,19 @@ public class TransitiveClosureInvMiner extends InvariantMiner implements
         // Compute the over-approximated set of invariants for the input graph.
         try {
 
-            TimedTask itc = PerformanceMetrics.createTask(
+            TimedTask itc = MetricsRegistry.createTask(
                     "invariants_transitive_closure", false);
 
             // Compute the transitive closure.
             AllRelationsTransitiveClosure transitiveClosure = new AllRelationsTransitiveClosure(
-                    g);
+                    g, implicitChainsTC, bitSetDAGsTC, tcThreads);
 
             // Get the over-approximation.
             itc.stop();
             if (main.options.doBenchmarking) {
                 logger.info("BENCHM: " + itc);
             }
-            TimedTask io = PerformanceMetrics.createTask(
+            TimedTask io = MetricsRegistry.createTask(
                     "invariants_approximation", false);
 
             // Extract invariants for all relations, iteratively. Since we are
@@ -23,6 +23,7 @@ import org.apache.commons.io.FilenameUtils;
 import org.apache.commons.io.filefilter.WildcardFileFilter;
 
 import synoptic.algorithms.Bisimulation;
+import synoptic.benchmarks.MetricsRegistry;
 import synoptic.invariants.BinaryInvariant;
 import synoptic.invariants.ITemporalInvariant;
 import synoptic.invariants.TemporalInvariantSet;
@@ -32,6 +33,7 @@ import synoptic.invariants.miners.ChainWalkingTOInvMiner;
 import synoptic.invariants.miners.DAGWalkingPOInvMiner;
 import synoptic.invariants.miners.IPOInvariantMiner;
 import synoptic.invariants.miners.ITOInvariantMiner;
+import synoptic.invariants.miners.IncrementalTOInvMiner;
 import synoptic.invariants.miners.TransitiveClosureInvMiner;
 import synoptic.main.options.AbstractOptions;
 import synoptic.main.options.Options;
@@ -42,6 +44,8 @@ import synoptic.model.DAGsTraceGraph;
 import synoptic.model.EventNode;
 import synoptic.model.PartitionGraph;
 import synoptic.model.Trace;
+import synoptic.model.TraceGraph;
+import synoptic.model.TraceGraphSnapshot;
 import synoptic.model.Transition;
 import synoptic.model.event.Event;
 import synoptic.model.event.EventType;
@@ -57,6 +61,7 @@ import synoptic.model.interfaces.IRelationPath;
 import synoptic.model.testgeneration.AbstractTestCase;
 import synoptic.tests.SynopticLibTest;
 import synoptic.util.BriefLogFormatter;
+import synoptic.util.InternalSynopticException;
 import synoptic.util.SynopticJar;
 import synoptic.util.time.ITime;
 
@@ -170,7 +175,8 @@ public abstract class AbstractMain {
             return null;
         }
 
-        if (AbstractOptions.plumeOpts.logFilenames.size() == 0) {
+        if (AbstractOptions.plumeOpts.logFilenames.size() == 0
+                && options.loadTraceGraph == null) {
             logger.severe("No log filenames specified, exiting. Specify log files at the end of the command line with no options.");
             return null;
         }
@@ -372,17 +378,8 @@ public abstract class AbstractMain {
                 !options.exportAsGML);
     }
 
-    private void processPOLog(TraceParser parserIn, List<EventNode> parsedEvents)
-            throws ParseException, FileNotFoundException {
-        TraceParser parser = parserIn;
-
-        // //////////////////
-        DAGsTraceGraph traceGraph = genDAGsTraceGraph(parser, parsedEvents);
-        // //////////////////
-
-        // Parser can be garbage-collected.
-        parser = null;
-
+    private void processPOLog(DAGsTraceGraph traceGraph)
+            throws FileNotFoundException {
         // TODO: vector time index sets aren't used yet.
         if (AbstractOptions.separateVTimeIndexSets != null) {
             // separateVTimeIndexSets is assumed to be in a format like:
@@ -440,7 +437,40 @@ public abstract class AbstractMain {
             List<String> logFilenames) throws Exception {
         long startTime = loggerInfoStart("Parsing input files..");
 
-        List<EventNode> parsedEvents = new ArrayList<EventNode>();
+        // Files are parsed in parallel if more than one parse thread was
+        // requested, otherwise they are parsed one after another.
+        List<EventNode> parsedEvents = parser.parseTraceFiles(
+                getLogFiles(logFilenames), getInstance().options.parseThreads);
+        loggerInfoEnd("Parsing took ", startTime);
+
+        return parsedEvents;
+    }
+
+    /**
+     * Parses all the log filenames directly into a trace graph, adding each
+     * trace to the graph as soon as it has been parsed.
+     * 
+     * @param parser
+     * @param logFilenames
+     * @return
+     * @throws Exception
+     */
+    static public ChainsTraceGraph parseEventsToGraph(TraceParser parser,
+            List<String> logFilenames) throws Exception {
+        long startTime = loggerInfoStart("Parsing input files into a trace graph..");
+        ChainsTraceGraph traceGraph = parser
+                .parseTraceFilesToGraph(getLogFiles(logFilenames));
+        loggerInfoEnd("Parsing took ", startTime);
+        return traceGraph;
+    }
+
+    /**
+     * Returns the list of files to parse that are matched by the log
+     * filenames.
+     */
+    static private List<File> getLogFiles(List<String> logFilenames)
+            throws Exception {
+        List<File> allFiles = new ArrayList<File>();
         for (String fileArg : logFilenames) {
             logger.fine("\tprocessing fileArg: " + fileArg);
             File[] files = getFiles(fileArg);
@@ -449,14 +479,44 @@ public abstract class AbstractMain {
                         "The set of input files is empty. Please specify a set of existing files to parse.");
             }
             for (File file : files) {
-                logger.fine("\tcalling parseTraceFile with file: "
+                logger.fine("\tadding file to parse: "
                         + file.getAbsolutePath());
-                parsedEvents.addAll(parser.parseTraceFile(file, -1));
+                allFiles.add(file);
             }
         }
-        loggerInfoEnd("Parsing took ", startTime);
+        return allFiles;
+    }
 
-        return parsedEvents;
+    /**
+     * Writes the trace graph to a binary snapshot file.
+     * 
+     * @param filename
+     * @param traceGraph
+     * @throws IOException
+     */
+    static public void saveTraceGraph(String filename,
+            TraceGraph<?> traceGraph) throws IOException {
+        long startTime = loggerInfoStart("Saving trace graph snapshot to "
+                + filename + "..");
+        TraceGraphSnapshot.write(traceGraph, new File(filename));
+        loggerInfoEnd("Saving trace graph took ", startTime);
+    }
+
+    /**
+     * Loads a trace graph from a binary snapshot file, without parsing any
+     * log files.
+     * 
+     * @param filename
+     * @return
+     * @throws IOException
+     */
+    static public TraceGraph<?> loadTraceGraph(String filename)
+            throws IOException {
+        long startTime = loggerInfoStart("Loading trace graph snapshot from "
+                + filename + "..");
+        TraceGraph<?> traceGraph = TraceGraphSnapshot.read(new File(filename));
+        loggerInfoEnd("Loading trace graph took ", startTime);
+        return traceGraph;
     }
 
     static public ChainsTraceGraph genChainsTraceGraph(TraceParser parser,
@@ -492,18 +552,80 @@ public abstract class AbstractMain {
 
     protected TemporalInvariantSet mineTOInvariantsCommon(
             boolean useTransitiveClosureMining, ChainsTraceGraph traceGraph) {
+        if (!useTransitiveClosureMining
+                && options.incrementalMiningCounts != null) {
+            return removeTempConstrainedInvariants(mineTOInvariantsIncrementally(
+                    options.incrementalMiningCounts, traceGraph));
+        }
+
         ITOInvariantMiner miner;
 
         if (useTransitiveClosureMining) {
-            miner = new TransitiveClosureInvMiner();
+            miner = new TransitiveClosureInvMiner(true,
+                    options.implicitTransitiveClosure);
         } else {
-            miner = new ChainWalkingTOInvMiner();
+            miner = new ChainWalkingTOInvMiner(true, options.mineThreads);
         }
 
         long startTime = loggerInfoStart("Mining invariants ["
                 + miner.getClass().getName() + "]..");
-        TemporalInvariantSet minedInvs = miner.computeInvariants(traceGraph,
-                options.multipleRelations, options.outputSupportCount);
+        TemporalInvariantSet minedInvs = removeTempConstrainedInvariants(miner
+                .computeInvariants(traceGraph, options.multipleRelations,
+                        options.outputSupportCount));
+
+        loggerInfoEnd("Mining took ", startTime);
+
+        // Miner can be garbage-collected.
+        miner = null;
+        return minedInvs;
+    }
+
+    /**
+     * Mines the invariants of all the traces whose counts are stored in a
+     * counts file, together with the traces of traceGraph. The counts of
+     * traceGraph are added to the counts file (which is created if it does
+     * not exist), so that the next run only needs to mine the traces that it
+     * parses.
+     * 
+     * @param countsFilename
+     * @param traceGraph
+     * @return
+     */
+    protected TemporalInvariantSet mineTOInvariantsIncrementally(
+            String countsFilename, ChainsTraceGraph traceGraph) {
+        File countsFile = new File(countsFilename);
+        long startTime = loggerInfoStart("Mining invariants incrementally ["
+                + IncrementalTOInvMiner.class.getName() + "]..");
+        try {
+            IncrementalTOInvMiner miner;
+            if (countsFile.exists()) {
+                miner = IncrementalTOInvMiner.load(countsFile);
+                if (miner.getMultipleRelations() != options.multipleRelations) {
+                    throw new IllegalArgumentException(
+                            "Invariant mining counts in " + countsFilename
+                                    + " were not mined with multipleRelations="
+                                    + options.multipleRelations);
+                }
+            } else {
+                miner = new IncrementalTOInvMiner(options.multipleRelations);
+            }
+            miner.addTraces(traceGraph);
+            miner.save(countsFile);
+            TemporalInvariantSet minedInvs = miner
+                    .getInvariants(options.outputSupportCount);
+            loggerInfoEnd("Mining took ", startTime);
+            return minedInvs;
+        } catch (IOException e) {
+            throw new InternalSynopticException(e);
+        }
+    }
+
+    /**
+     * Removes the TempConstrainedInvariants from minedInvs, unless performance
+     * information is used, and returns minedInvs.
+     */
+    private TemporalInvariantSet removeTempConstrainedInvariants(
+            TemporalInvariantSet minedInvs) {
 
         // Remove the interrupted by invariants from the mined set (not used in
         // Synoptic).
@@ -516,11 +638,6 @@ public abstract class AbstractMain {
                 }
             }
         }
-
-        loggerInfoEnd("Mining took ", startTime);
-
-        // Miner can be garbage-collected.
-        miner = null;
         return minedInvs;
     }
 
@@ -537,9 +654,11 @@ public abstract class AbstractMain {
 
         IPOInvariantMiner miner;
         if (useTransitiveClosureMining) {
-            miner = new TransitiveClosureInvMiner();
+            miner = new TransitiveClosureInvMiner(true, false,
+                    options.bitSetTransitiveClosure, options.mineThreads);
         } else {
-            miner = new DAGWalkingPOInvMiner(options.mineNeverConcurrentWithInv);
+            miner = new DAGWalkingPOInvMiner(
+                    options.mineNeverConcurrentWithInv, options.mineThreads);
         }
 
         long startTime = loggerInfoStart("Mining invariants ["
@@ -552,23 +671,31 @@ public abstract class AbstractMain {
     }
 
     /**
-     * Uses the values of static variables in Main to (1) read and parse the
-     * input log files, (2) to mine invariants from the parsed files, and (3)
-     * construct an initial partition graph model of the parsed files.
+     * Reads and parses the input log files, and builds the trace graph of the
+     * parsed events: a ChainsTraceGraph for a totally ordered log, and a
+     * DAGsTraceGraph for a partially ordered log.
      * 
-     * @return The initial partition graph built from the parsed files or null.
-     *         Returns null when the arguments passed to Main require an early
-     *         termination.
+     * @return The trace graph, or null when parsing failed or the arguments
+     *         passed to Main require an early termination.
      * @throws Exception
      */
-    public PartitionGraph createInitialPartitionGraph() throws Exception {
+    private TraceGraph<?> parseTraceGraph() throws Exception {
         TraceParser parser = new TraceParser(options.regExps,
                 AbstractOptions.partitionRegExp,
                 AbstractOptions.separatorRegExp, options.dateFormat);
-        List<EventNode> parsedEvents;
+        List<EventNode> parsedEvents = null;
+        ChainsTraceGraph traceGraph = null;
         try {
-            parsedEvents = parseEvents(parser,
-                    AbstractOptions.plumeOpts.logFilenames);
+            if (options.streamingParse && !options.debugParse
+                    && parser.canParseToGraph()) {
+                // Traces are added to the graph as they are parsed, so the
+                // parsed events are never all held by the parser at once.
+                traceGraph = parseEventsToGraph(parser,
+                        AbstractOptions.plumeOpts.logFilenames);
+            } else {
+                parsedEvents = parseEvents(parser,
+                        AbstractOptions.plumeOpts.logFilenames);
+            }
         } catch (ParseException e) {
             logger.severe("Caught ParseException -- unable to continue, exiting. Try cmd line option:\n\t"
                     + AbstractOptions.plumeOpts.getOptDesc("help"));
@@ -582,11 +709,12 @@ public abstract class AbstractMain {
             return null;
         }
 
-        // PO Logs are processed differently.
+        if (traceGraph != null) {
+            return traceGraph;
+        }
+
         if (!parser.logTimeTypeIsTotallyOrdered()) {
-            logger.warning("Partially ordered log input detected. Only mining invariants since refinement/coarsening is not yet supported.");
-            processPOLog(parser, parsedEvents);
-            return null;
+            return genDAGsTraceGraph(parser, parsedEvents);
         }
 
         if (parsedEvents.size() == 0) {
@@ -594,13 +722,46 @@ public abstract class AbstractMain {
             return null;
         }
 
-        // //////////////////
-        ChainsTraceGraph traceGraph = genChainsTraceGraph(parser, parsedEvents);
-        // //////////////////
+        return genChainsTraceGraph(parser, parsedEvents);
+    }
 
-        // Parsing information can be garbage-collected.
-        parser = null;
-        parsedEvents = null;
+    /**
+     * Uses the values of static variables in Main to (1) read and parse the
+     * input log files (or load a saved trace graph), (2) to mine invariants
+     * from the parsed files, and (3)
+     * construct an initial partition graph model of the parsed files.
+     * 
+     * @return The initial partition graph built from the parsed files or null.
+     *         Returns null when the arguments passed to Main require an early
+     *         termination.
+     * @throws Exception
+     */
+    public PartitionGraph createInitialPartitionGraph() throws Exception {
+        TraceGraph<?> inputGraph;
+        if (options.loadTraceGraph != null) {
+            inputGraph = loadTraceGraph(options.loadTraceGraph);
+        } else {
+            inputGraph = parseTraceGraph();
+            if (inputGraph == null) {
+                return null;
+            }
+            if (options.saveTraceGraph != null) {
+                saveTraceGraph(options.saveTraceGraph, inputGraph);
+            }
+        }
+
+        // PO Logs are processed differently.
+        if (inputGraph instanceof DAGsTraceGraph) {
+            logger.warning("Partially ordered log input detected. Only mining invariants since refinement/coarsening is not yet supported.");
+            processPOLog((DAGsTraceGraph) inputGraph);
+            return null;
+        }
+
+        ChainsTraceGraph traceGraph = (ChainsTraceGraph) inputGraph;
+        if (traceGraph.getNumTraces() == 0) {
+            logger.severe("Did not parse any events from the input log files. Stopping.");
+            return null;
+        }
 
         // Perform trace-wise normalization if requested
         if (options.traceNormalization) {
@@ -892,4 +1053,22 @@ public abstract class AbstractMain {
                     + (System.currentTimeMillis() - startTime) + "ms");
         }
     }
+
+    /**
+     * Exports the performance metrics of the run to the metricsFile option, if
+     * it is set. Called on every exit path of main, including when no model
+     * is built (e.g., with onlyMineInvariants).
+     */
+    public void exportMetrics() {
+        if (options.metricsFile != null) {
+            logger.info("Exporting performance metrics to "
+                    + options.metricsFile + "...");
+            try {
+                MetricsRegistry.get().write(new File(options.metricsFile));
+            } catch (IOException e) {
+                logger.warning("Unable to write performance metrics to "
+                        + options.metricsFile + ": " + e.getMessage());
+            }
+        }
+    }
 }
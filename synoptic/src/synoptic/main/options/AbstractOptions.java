@@ -105,6 +105,21 @@ public class AbstractOptions {
     static final String dateFormatStr = "Format of the dates contained in the log (required by DATETIME)";
     public String dateFormat = "dd/MMM/yyyy:HH:mm:ss";
 
+    static final String parseThreadsStr = "Number of threads used to parse the input log files (1 parses the files sequentially)";
+    public int parseThreads = 1;
+
+    static final String streamingParseStr = "Build the trace graph while parsing, releasing the parsing state of each trace as soon as the trace is complete";
+    public boolean streamingParse = false;
+
+    static final String discardLogLinesStr = "Do not keep the text of parsed log lines in memory (events only keep their file name and line number)";
+    public boolean discardLogLines = false;
+
+    static final String saveTraceGraphStr = "Write the trace graph built from the parsed log to a binary snapshot file, which can be loaded with loadTraceGraph";
+    public String saveTraceGraph = null;
+
+    static final String loadTraceGraphStr = "Load the trace graph from a binary snapshot file written with saveTraceGraph, instead of parsing log files";
+    public String loadTraceGraph = null;
+
     // ////////////////////////////
     // Input options
     // ////////////////////////////
@@ -186,9 +201,48 @@ public class AbstractOptions {
     static final String useTransitiveClosureMiningStr = "Use the transitive closure invariant mining algorithm (usually slower)";
     public boolean useTransitiveClosureMining = false;
 
+    static final String implicitTransitiveClosureStr = "With useTransitiveClosureMining, represent the transitive closure of totally ordered traces implicitly, by the position of each event in its trace, using memory linear in the number of events";
+    public boolean implicitTransitiveClosure = false;
+
+    static final String bitSetTransitiveClosureStr = "With useTransitiveClosureMining, compute the transitive closure of partially ordered traces as bitsets over a topological numbering of each trace, with mineThreads threads";
+    public boolean bitSetTransitiveClosure = false;
+
     static final String mineNeverConcurrentWithInvStr = "Mine the NeverConcurrentWith invariant (only changes behavior for PO traces with useTransitiveClosureMining=false)";
     public boolean mineNeverConcurrentWithInv = true;
 
+    static final String mineThreadsStr = "Number of threads used to mine invariants with the chain and DAG walking miners, and to compute bitset transitive closures (1 mines sequentially)";
+    public int mineThreads = 1;
+
+    static final String incrementalMiningCountsStr = "File that keeps the invariant mining counts of earlier runs: the parsed traces are added to the counts, and the invariants of all the counted traces are used (TO logs only)";
+    public String incrementalMiningCounts = null;
+
+    static final String checkerThreadsStr = "Number of threads used to look for counter-examples of the invariants with the FSM checker (1 checks the invariants sequentially)";
+    public int checkerThreads = 1;
+
+    static final String splitThreadsStr = "Number of threads used to evaluate candidate splits during refinement, on views of the split graph (1 applies and rewinds each split sequentially)";
+    public int splitThreads = 1;
+
+    static final String incrementalCheckingStr = "Keep the FSM checker states of the partitions across refinement steps and only re-check the partitions that are affected by the splits of each step";
+    public boolean incrementalChecking = false;
+
+    static final String batchedCheckingStr = "Check the invariants of all types in a single bitset-parallel pass of the FSM checker, and only trace counter-examples for the invariants that fail it";
+    public boolean batchedChecking = false;
+
+    static final String cExamplePriorityStr = "Order in which refinement tries to eliminate the counter-examples of each split step: shuffle, shortest, most-violated, highest-support, or learned (from the split success rates of the earlier steps)";
+    public String cExamplePriority = "shuffle";
+
+    static final String cExamplePriorityBaselineStr = "Also refine with the default counter-example order (shuffle), from the same state, to report the split steps that cExamplePriority saves";
+    public boolean cExamplePriorityBaseline = false;
+
+    static final String refinementCheckpointStr = "File to which the state of refinement is written every checkpointInterval split steps, so that an interrupted run can be resumed from it with resume";
+    public String refinementCheckpoint = null;
+
+    static final String checkpointIntervalStr = "Number of split steps between two refinement checkpoints";
+    public int checkpointInterval = 10;
+
+    static final String resumeStr = "Resume refinement from the checkpoint in refinementCheckpoint, if the file exists (the log and the options of the interrupted run must be used)";
+    public boolean resume = false;
+
     static final String onlyMineInvariantsStr = "Mine invariants and then quit.";
     public boolean onlyMineInvariants = false;
 
@@ -198,6 +252,9 @@ public class AbstractOptions {
     static final String doBenchmarkingStr = "Perform benchmarking and output benchmark information";
     public boolean doBenchmarking = false;
 
+    static final String metricsFileStr = "File to which the performance metrics of the run are written at its end, as JSON if the file name ends with .json, and as CSV otherwise";
+    public String metricsFile = null;
+
     static final String internCommonStringsStr = "Intern commonly occurring strings, such as event types, as a memory-usage optimization";
     public boolean internCommonStrings = true;
 
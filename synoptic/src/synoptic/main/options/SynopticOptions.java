@@ -188,6 +188,54 @@ public class SynopticOptions extends Options {
      */
     @Option(value = AbstractOptions.dateFormatStr, aliases = { "-dateFormat" })
     public String dateFormat = "dd/MMM/yyyy:HH:mm:ss";
+
+    /**
+     * Number of worker threads to use for parsing the input log files. Files
+     * (and line-independent chunks of large files) are parsed concurrently and
+     * the results are merged in input order, so the parsed traces are
+     * identical to those produced by sequential parsing.
+     */
+    @Option(value = AbstractOptions.parseThreadsStr,
+            aliases = { "-parse-threads" })
+    public int parseThreads = 1;
+
+    /**
+     * Build the trace graph while the log is parsed. Each trace (partition) is
+     * added to the graph as soon as no later log line can belong to it -- at
+     * the end of each file with the default partitions mapping, and at each
+     * separator line when a partitions separator is used -- and the parser
+     * then releases the state it kept for that trace. Only applies to totally
+     * ordered logs without states.
+     */
+    @Option(value = AbstractOptions.streamingParseStr,
+            aliases = { "-streaming-parse" })
+    public boolean streamingParse = false;
+
+    /**
+     * Do not keep the text of each parsed log line in memory. Events still
+     * record the file name and line number from which they were parsed.
+     */
+    @Option(value = AbstractOptions.discardLogLinesStr,
+            aliases = { "-discard-log-lines" })
+    public boolean discardLogLines = false;
+
+    /**
+     * Write the trace graph that is built from the parsed log to a binary
+     * snapshot file. A later run can load the snapshot with loadTraceGraph
+     * instead of parsing the log again.
+     */
+    @Option(value = AbstractOptions.saveTraceGraphStr,
+            aliases = { "-save-trace-graph" })
+    public String saveTraceGraph = null;
+
+    /**
+     * Load the trace graph from a snapshot file written with saveTraceGraph.
+     * No log files are parsed, and the parser options of the run that wrote
+     * the snapshot apply.
+     */
+    @Option(value = AbstractOptions.loadTraceGraphStr,
+            aliases = { "-load-trace-graph" })
+    public String loadTraceGraph = null;
     // end option group "Parser Options"
 
     // //////////////////////////////////////////////////
@@ -355,6 +403,24 @@ public class SynopticOptions extends Options {
     @Option(AbstractOptions.useTransitiveClosureMiningStr)
     public boolean useTransitiveClosureMining = false;
 
+    /**
+     * With useTransitiveClosureMining, represent the transitive closure of the
+     * totally ordered traces implicitly, so that the miner does not record
+     * every pair of events that are ordered in a trace.
+     */
+    @Option(value = AbstractOptions.implicitTransitiveClosureStr,
+            aliases = { "-implicit-tc" })
+    public boolean implicitTransitiveClosure = false;
+
+    /**
+     * With useTransitiveClosureMining, compute the transitive closure of the
+     * partially ordered traces as bitsets over a topological numbering of
+     * each trace. The traces are closed with mineThreads threads.
+     */
+    @Option(value = AbstractOptions.bitSetTransitiveClosureStr,
+            aliases = { "-bitset-tc" })
+    public boolean bitSetTransitiveClosure = false;
+
     /**
      * Tell Synoptic to mine/not mine the NeverConcurrentWith invariant. When
      * false, this option changes mining behavior when
@@ -364,6 +430,115 @@ public class SynopticOptions extends Options {
     @Option(AbstractOptions.mineNeverConcurrentWithInvStr)
     public boolean mineNeverConcurrentWithInv = true;
 
+    /**
+     * Number of threads used by the chain walking (TO) and DAG walking (PO)
+     * invariant miners. With more than one thread, the traces are walked in
+     * parallel and their counts are merged, so the mined invariants are the
+     * same as with one thread.
+     */
+    @Option(value = AbstractOptions.mineThreadsStr,
+            aliases = { "-mine-threads" })
+    public int mineThreads = 1;
+
+    /**
+     * A file that keeps the aggregated invariant mining counts of the traces
+     * of earlier runs. The counts of the parsed traces are added to the file
+     * (which is created if it does not exist), and the invariants that hold
+     * for all the counted traces are used. This way a log that grows over
+     * time can be mined without re-mining the traces that were counted
+     * before. Only applies to totally ordered logs without
+     * useTransitiveClosureMining.
+     */
+    @Option(value = AbstractOptions.incrementalMiningCountsStr,
+            aliases = { "-incremental-mining-counts" })
+    public String incrementalMiningCounts = null;
+
+    /**
+     * Number of threads that look for the counter-examples of different
+     * invariants in parallel during refinement. Only applies to the FSM
+     * checker. The counter-examples are returned in the same order as with
+     * one thread.
+     */
+    @Option(value = AbstractOptions.checkerThreadsStr,
+            aliases = { "-checker-threads" })
+    public int checkerThreads = 1;
+
+    /**
+     * Number of threads that evaluate candidate splits in parallel during
+     * refinement. With more than one thread, each candidate split is checked
+     * on a read-only view of the split graph, instead of being applied to the
+     * graph and rewound. Only applies to the FSM checker and to unconstrained
+     * invariants.
+     */
+    @Option(value = AbstractOptions.splitThreadsStr,
+            aliases = { "-split-threads" })
+    public int splitThreads = 1;
+
+    /**
+     * Keep the states of the FSM checker at each partition across the steps
+     * of refinement. After each step, only the states of the partitions that
+     * can be reached from the split partitions are recomputed, and the
+     * counter-examples are only looked for with the invariants that are
+     * still violated. Only applies to the FSM checker.
+     */
+    @Option(value = AbstractOptions.incrementalCheckingStr,
+            aliases = { "-incremental-checking" })
+    public boolean incrementalChecking = false;
+
+    /**
+     * Checks all invariants in one bitset-parallel pass over the model before
+     * looking for counter-examples, so that counter-example paths are only
+     * traced for the invariants that may be violated. Only applies to the FSM
+     * checker.
+     */
+    @Option(value = AbstractOptions.batchedCheckingStr,
+            aliases = { "-batched-checking" })
+    public boolean batchedChecking = false;
+
+    /**
+     * The strategy that orders the counter-examples of each refinement step,
+     * which decides which splits are tried first. The default, shuffle, tries
+     * them in a random order.
+     */
+    @Option(value = AbstractOptions.cExamplePriorityStr,
+            aliases = { "-cexample-priority" })
+    public String cExamplePriority = "shuffle";
+
+    /**
+     * Also refine with the default counter-example order from the same state,
+     * before refining with cExamplePriority, to report the number of split
+     * steps that cExamplePriority saves. Refinement takes about twice as long.
+     */
+    @Option(value = AbstractOptions.cExamplePriorityBaselineStr,
+            aliases = { "-cexample-priority-baseline" })
+    public boolean cExamplePriorityBaseline = false;
+
+    /**
+     * Periodically write the partitions, the split step count, the
+     * invariants that are still unsatisfied, and the state of the random
+     * number generator of refinement to this file. A run that is interrupted
+     * can then be resumed with resume, instead of refining from scratch.
+     */
+    @Option(value = AbstractOptions.refinementCheckpointStr,
+            aliases = { "-refinement-checkpoint" })
+    public String refinementCheckpoint = null;
+
+    /**
+     * The number of split steps between two checkpoints written to
+     * refinementCheckpoint.
+     */
+    @Option(value = AbstractOptions.checkpointIntervalStr,
+            aliases = { "-checkpoint-interval" })
+    public int checkpointInterval = 10;
+
+    /**
+     * Resume refinement from the checkpoint in refinementCheckpoint. The log,
+     * the random seed, and the mining options must be those of the run that
+     * wrote the checkpoint.
+     */
+    @Option(value = AbstractOptions.resumeStr, aliases = { "-resume" })
+    public boolean resume = false;
+
     /**
      * Used to tell Synoptic to not go past mining invariants.
      */
@@ -385,6 +560,15 @@ public class SynopticOptions extends Options {
     @Option(AbstractOptions.doBenchmarkingStr)
     public boolean doBenchmarking = false;
 
+    /**
+     * Write the performance metrics of the run (counters, histograms, and task
+     * timers in nanoseconds) to this file at the end of the run, as JSON if
+     * the file name ends with .json, and as CSV otherwise.
+     */
+    @Option(value = AbstractOptions.metricsFileStr,
+            aliases = { "-metrics-file" })
+    public String metricsFile = null;
+
     /**
      * Intern commonly occurring strings, such as event types, as a memory-usage
      * optimization. This option is <i>unpublicized</i>; it will not appear in
@@ -510,6 +694,11 @@ public class SynopticOptions extends Options {
         absOpts.recoverFromParseErrors = recoverFromParseErrors;
         absOpts.debugParse = debugParse;
         absOpts.dateFormat = dateFormat;
+        absOpts.parseThreads = parseThreads;
+        absOpts.streamingParse = streamingParse;
+        absOpts.discardLogLines = discardLogLines;
+        absOpts.saveTraceGraph = saveTraceGraph;
+        absOpts.loadTraceGraph = loadTraceGraph;
 
         // Input options
 
@@ -542,10 +731,24 @@ public class SynopticOptions extends Options {
         absOpts.logLvlExtraVerbose = logLvlExtraVerbose;
         AbstractOptions.ignoreInvsOverETypeSet = ignoreInvsOverETypeSet;
         absOpts.useTransitiveClosureMining = useTransitiveClosureMining;
+        absOpts.implicitTransitiveClosure = implicitTransitiveClosure;
+        absOpts.bitSetTransitiveClosure = bitSetTransitiveClosure;
         absOpts.mineNeverConcurrentWithInv = mineNeverConcurrentWithInv;
+        absOpts.mineThreads = mineThreads;
+        absOpts.incrementalMiningCounts = incrementalMiningCounts;
+        absOpts.checkerThreads = checkerThreads;
+        absOpts.splitThreads = splitThreads;
+        absOpts.incrementalChecking = incrementalChecking;
+        absOpts.batchedChecking = batchedChecking;
+        absOpts.cExamplePriority = cExamplePriority;
+        absOpts.cExamplePriorityBaseline = cExamplePriorityBaseline;
+        absOpts.refinementCheckpoint = refinementCheckpoint;
+        absOpts.checkpointInterval = checkpointInterval;
+        absOpts.resume = resume;
         absOpts.onlyMineInvariants = onlyMineInvariants;
         absOpts.noCoarsening = noCoarsening;
         absOpts.doBenchmarking = doBenchmarking;
+        absOpts.metricsFile = metricsFile;
         absOpts.internCommonStrings = internCommonStrings;
         absOpts.runTests = runTests;
         absOpts.runAllTests = runAllTests;
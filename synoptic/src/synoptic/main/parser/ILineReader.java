@@ -0,0 +1,20 @@
+package synoptic.main.parser;
+
+import java.io.Closeable;
+import java.io.IOException;
+
+/**
+ * A source of log lines for the TraceParser.
+ */
+public interface ILineReader extends Closeable {
+
+    /**
+     * Returns the next line, without its line terminator, or null if there
+     * are no more lines. The returned character sequence may change when the
+     * next line is read, so it must be copied (e.g., with toString()) to be
+     * kept.
+     * 
+     * @throws IOException
+     */
+    CharSequence readLine() throws IOException;
+}
@@ -0,0 +1,273 @@
+package synoptic.main.parser;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Reads the lines of a log file (or of a range of a log file) through
+ * memory-mapped regions of the file. Line boundaries are found by scanning
+ * the mapped bytes, so lines can be counted and skipped without decoding
+ * them. A line that only contains ASCII characters is returned as a view of
+ * the mapped bytes, which decodes a character only when it is accessed (e.g.,
+ * by a regular expression matcher), and which creates strings only for the
+ * sub-sequences that are requested (e.g., captured groups). Other lines are
+ * decoded into strings.
+ * <p>
+ * Lines are terminated by '\n', '\r', or "\r\n", as with
+ * BufferedReader.readLine(). Only charsets in which these terminators and all
+ * ASCII characters are encoded as single ASCII bytes are supported (see
+ * canRead()). A file is mapped in regions of at most regionBytes bytes, and
+ * no line may be longer than a region.
+ * </p>
+ */
+public class MappedLogReader implements ILineReader {
+
+    // The default maximum size of a mapped region of a file.
+    public static final int defaultRegionBytes = 1 << 28;
+
+    private final RandomAccessFile file;
+    private final FileChannel channel;
+    private final Charset charset;
+    private final long fileSize;
+
+    // The offset at which reading stops (the start of a line, or fileSize).
+    private final long end;
+
+    private final int regionBytes;
+    private MappedByteBuffer region = null;
+    private long regionStart = 0;
+    private int regionLen = 0;
+
+    // The offset of the next line.
+    private long pos;
+
+    // Whether the previous line ended with '\r', in which case a '\n' at pos
+    // is part of that line's terminator.
+    private boolean skipLF = false;
+
+    // The bounds of the line last found by scanLine, relative to the region.
+    private int lineOffset;
+    private int lineLen;
+    private boolean lineIsAscii;
+
+    private final AsciiLine asciiLine = new AsciiLine();
+    private byte[] decodeBuffer = new byte[256];
+
+    /**
+     * Creates a reader for all of the lines of a file, decoded with the
+     * default charset.
+     */
+    public MappedLogReader(File file) throws IOException {
+        this(file, 0, -1, Charset.defaultCharset(), defaultRegionBytes);
+    }
+
+    /**
+     * Creates a reader for the lines of a file that start at or after byte
+     * offset start and before byte offset end (or the end of the file, if
+     * end is negative). Start must be the offset of the start of a line.
+     */
+    public MappedLogReader(File file, long start, long end, Charset charset,
+            int regionBytes) throws IOException {
+        assert canRead(charset);
+        assert regionBytes > 0;
+
+        this.file = new RandomAccessFile(file, "r");
+        this.channel = this.file.getChannel();
+        this.charset = charset;
+        this.fileSize = channel.size();
+        this.end = (end < 0) ? fileSize : Math.min(end, fileSize);
+        this.regionBytes = regionBytes;
+        this.pos = start;
+    }
+
+    /**
+     * Returns whether or not lines encoded with charset can be read with a
+     * MappedLogReader.
+     */
+    public static boolean canRead(Charset charset) {
+        return charset.equals(StandardCharsets.UTF_8)
+                || charset.equals(StandardCharsets.US_ASCII)
+                || charset.equals(StandardCharsets.ISO_8859_1);
+    }
+
+    @Override
+    public CharSequence readLine() throws IOException {
+        if (!scanLine()) {
+            return null;
+        }
+        if (lineIsAscii) {
+            asciiLine.set(region, lineOffset, lineLen);
+            return asciiLine;
+        }
+        if (decodeBuffer.length < lineLen) {
+            decodeBuffer = new byte[Math.max(lineLen, 2 * decodeBuffer.length)];
+        }
+        for (int i = 0; i < lineLen; i++) {
+            decodeBuffer[i] = region.get(lineOffset + i);
+        }
+        return new String(decodeBuffer, 0, lineLen, charset);
+    }
+
+    /**
+     * Skips up to n lines without decoding them, and returns the number of
+     * lines that were skipped.
+     */
+    public int skipLines(int n) throws IOException {
+        int skipped = 0;
+        while (skipped < n && scanLine()) {
+            skipped++;
+        }
+        return skipped;
+    }
+
+    /**
+     * Returns the byte offset of the start of the next line.
+     */
+    public long position() throws IOException {
+        consumeLF();
+        return pos;
+    }
+
+    @Override
+    public void close() throws IOException {
+        // The mapped regions are unmapped once they are garbage collected.
+        region = null;
+        asciiLine.set(null, 0, 0);
+        file.close();
+    }
+
+    /**
+     * Maps the region of the file that starts at offset start.
+     */
+    private void map(long start) throws IOException {
+        regionStart = start;
+        regionLen = (int) Math.min(regionBytes, fileSize - start);
+        region = channel.map(FileChannel.MapMode.READ_ONLY, start, regionLen);
+    }
+
+    /**
+     * Makes sure that the region contains the byte at offset pos.
+     */
+    private void mapPos() throws IOException {
+        if (region == null || pos < regionStart
+                || pos >= regionStart + regionLen) {
+            map(pos);
+        }
+    }
+
+    /**
+     * Skips a '\n' that completes the "\r\n" terminator of the previous line.
+     */
+    private void consumeLF() throws IOException {
+        if (!skipLF) {
+            return;
+        }
+        skipLF = false;
+        if (pos < fileSize) {
+            mapPos();
+            if (region.get((int) (pos - regionStart)) == '\n') {
+                pos++;
+            }
+        }
+    }
+
+    /**
+     * Finds the bounds of the next line and advances past it. Returns false
+     * if there are no more lines.
+     */
+    private boolean scanLine() throws IOException {
+        consumeLF();
+        if (pos >= end) {
+            return false;
+        }
+        mapPos();
+        while (true) {
+            int start = (int) (pos - regionStart);
+            boolean isAscii = true;
+            int i = start;
+            while (i < regionLen) {
+                byte b = region.get(i);
+                if (b == '\n' || b == '\r') {
+                    break;
+                }
+                if (b < 0) {
+                    isAscii = false;
+                }
+                i++;
+            }
+
+            if (i == regionLen && regionStart + regionLen < fileSize) {
+                // The line continues past the end of the region.
+                if (start == 0 && regionLen == regionBytes) {
+                    throw new IOException("Line at byte offset " + pos
+                            + " is longer than " + regionBytes + " bytes");
+                }
+                map(pos);
+                continue;
+            }
+
+            lineOffset = start;
+            lineLen = i - start;
+            lineIsAscii = isAscii;
+            pos = regionStart + i;
+            if (i < regionLen) {
+                // Skip the terminator.
+                skipLF = (region.get(i) == '\r');
+                pos++;
+            }
+            return true;
+        }
+    }
+
+    /**
+     * A line of ASCII characters, backed by the mapped bytes.
+     */
+    private static class AsciiLine implements CharSequence {
+        private ByteBuffer bytes;
+        private int offset;
+        private int length;
+
+        void set(ByteBuffer bytes, int offset, int length) {
+            this.bytes = bytes;
+            this.offset = offset;
+            this.length = length;
+        }
+
+        @Override
+        public int length() {
+            return length;
+        }
+
+        @Override
+        public char charAt(int index) {
+            if (index < 0 || index >= length) {
+                throw new IndexOutOfBoundsException("index: " + index);
+            }
+            return (char) bytes.get(offset + index);
+        }
+
+        @Override
+        public CharSequence subSequence(int start, int end) {
+            if (start < 0 || end > length || start > end) {
+                throw new IndexOutOfBoundsException("start: " + start
+                        + ", end: " + end);
+            }
+            char[] chars = new char[end - start];
+            for (int i = start; i < end; i++) {
+                chars[i - start] = (char) bytes.get(offset + i);
+            }
+            return new String(chars);
+        }
+
+        @Override
+        public String toString() {
+            return subSequence(0, length).toString();
+        }
+    }
+}
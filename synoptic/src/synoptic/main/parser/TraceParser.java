@@ -5,20 +5,27 @@ import java.io.File;
 import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStreamReader;
-import java.io.Reader;
 import java.io.StringReader;
+import java.nio.charset.Charset;
 import java.text.SimpleDateFormat;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.Date;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.Iterator;
 import java.util.LinkedHashMap;
 import java.util.LinkedHashSet;
-import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.logging.Logger;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
@@ -37,8 +44,10 @@ import synoptic.model.event.EventType;
 import synoptic.model.event.StringEventType;
 import synoptic.model.state.State;
 import synoptic.util.InternalSynopticException;
-import synoptic.util.matching.NamedMatcher;
+import synoptic.util.matching.INamedValues;
+import synoptic.util.matching.NamedMatchView;
 import synoptic.util.matching.NamedPattern;
+import synoptic.util.matching.NamedPatternDispatcher;
 import synoptic.util.matching.NamedSubstitution;
 import synoptic.util.time.DTotalTime;
 import synoptic.util.time.EqualVectorTimestampsException;
@@ -48,6 +57,7 @@ import synoptic.util.time.ITotalTime;
 import synoptic.util.time.LTotalTime;
 import synoptic.util.time.NotComparableVectorsException;
 import synoptic.util.time.VectorTime;
+import synoptic.util.time.WrongTimeTypeException;
 
 /**
  * A generic trace parser, configured in terms of Java 7 style named capture
@@ -61,18 +71,42 @@ public class TraceParser {
 	private final List<LinkedHashMap<String, NamedSubstitution>> constantFields;
 	private final List<Map<String, Boolean>> incrementors;
 
-	private static int nextTraceID;
+	// Selects the parsers to try on each line, in an order adapted to the
+	// parsed log. Created lazily once parsing starts since the parsers may
+	// change until then. Each (worker) parser keeps its own dispatcher.
+	private NamedPatternDispatcher dispatcher = null;
+
+	// Reusable views of the fields that each of the parsers extracts from a
+	// line, so that parsing a line does not allocate maps of the fields.
+	// Created along with the dispatcher.
+	private List<NamedMatchView> parserFields = null;
+
+	// Reusable view of the fields that are used to name partitions.
+	private final PartitionNameFields partitionNameFields = new PartitionNameFields();
+
+	// The trace ID to assign to the next newly observed partition. This is
+	// per-parser state (and not static) so that parsers used concurrently,
+	// e.g., the worker parsers used by parseTraceFiles, do not race on it.
+	private int nextTraceID;
 	private final Map<String, Integer> partitionNameToTraceID;
 
 	private NamedSubstitution filter;
 
 	// Partitioning based on filter expressions -- maps a unique partition
 	// string to a set of parsed events corresponding to that partition.
+	//
+	// NOTE: this map and allEventRelations below are not synchronized. When
+	// parsing in parallel each worker parser fills in its own maps, which are
+	// then merged into these maps by the calling thread.
 	Map<String, ArrayList<EventNode>> partitions = new LinkedHashMap<String, ArrayList<EventNode>>();
 
 	// EventNode -> Relation associated with this event node.
 	Map<EventNode, Set<Relation>> allEventRelations = new HashMap<EventNode, Set<Relation>>();
 
+	// The default number of log lines per chunk when a file is split into
+	// chunks that are parsed in parallel.
+	public static final int defaultParallelChunkLines = 50000;
+
 	// Patterns used to pre-process regular expressions
 	private static final Pattern matchEscapedSeparator = Pattern
 			.compile("\\\\;\\\\;");
@@ -143,6 +177,10 @@ public class TraceParser {
 	private static final String dummyEtypeLabel = "dummy-etype-for-line-with-state"
 			.intern();
 
+	// Relations are immutable, so all events share the time relation.
+	private static final Relation timeRelation = new Relation("time-relation",
+			Event.defTimeRelationStr, false);
+
 	/**
 	 * Returns an un-parameterized trace parser.
 	 */
@@ -155,6 +193,27 @@ public class TraceParser {
 		partitionNameToTraceID = new LinkedHashMap<String, Integer>();
 	}
 
+	/**
+	 * Returns a worker parser that shares the (read-only, once parsing starts)
+	 * regular expression configuration of the configured parser, but has its
+	 * own partitions, relations, and trace ID state. Used for parsing in
+	 * parallel.
+	 */
+	private TraceParser(TraceParser configured) {
+		parsers = configured.parsers;
+		constantFields = configured.constantFields;
+		incrementors = configured.incrementors;
+		filter = configured.filter;
+		nextTraceID = 0;
+		partitionNameToTraceID = new LinkedHashMap<String, Integer>();
+		selectedTimeGroup = configured.selectedTimeGroup;
+		parsePIDs = configured.parsePIDs;
+		if (configured.dateFormatter != null) {
+			// SimpleDateFormat is not thread-safe.
+			dateFormatter = (SimpleDateFormat) configured.dateFormatter.clone();
+		}
+	}
+
 	/**
 	 * Initializes and returns a new trace parser that is parameterized with
 	 * regular expressions for parsing log lines/partitions/separators.
@@ -400,6 +459,8 @@ public class TraceParser {
 			throw parseException;
 		}
 		parsers.add(parser);
+		dispatcher = null;
+		parserFields = null;
 		// A list of all named groups i.e., fields that have no assignment.
 		List<String> groups = parser.groupNames();
 
@@ -576,6 +637,8 @@ public class TraceParser {
 		cycle(parsers);
 		cycle(incrementors);
 		cycle(constantFields);
+		dispatcher = null;
+		parserFields = null;
 		filter.concat(new NamedSubstitution("\\k<SEPCOUNT>"));
 	}
 
@@ -606,9 +669,7 @@ public class TraceParser {
 		String fileName = "";
 		try {
 			fileName = file.getAbsolutePath();
-			FileInputStream fstream = new FileInputStream(file);
-			InputStreamReader fileReader = new InputStreamReader(fstream);
-			return parseTrace(fileReader, fileName, linesToRead);
+			return parseTrace(openLogFile(file), fileName, linesToRead);
 		} catch (IOException e) {
 			String error = "Error while attempting to read log file ["
 					+ fileName + "]: " + e.getMessage();
@@ -643,7 +704,8 @@ public class TraceParser {
 		}
 		StringReader stringReader = new StringReader(trace);
 		try {
-			return parseTrace(stringReader, traceName, linesToRead);
+			return parseTrace(new BufferedLineReader(new BufferedReader(
+					stringReader)), traceName, linesToRead);
 		} catch (IOException e) {
 			String error = "Error while reading string [" + traceName + "]: "
 					+ e.getMessage();
@@ -653,7 +715,7 @@ public class TraceParser {
 	}
 
 	/**
-	 * Parses strings generated by traceReader as event instances.
+	 * Parses lines generated by traceReader as event instances.
 	 * 
 	 * @param traceReader
 	 *            reader generated lines to parse.
@@ -668,43 +730,485 @@ public class TraceParser {
 	 * @throws InternalSynopticException
 	 *             when Synoptic code is the problem
 	 */
-	private ArrayList<EventNode> parseTrace(Reader traceReader,
+	private ArrayList<EventNode> parseTrace(ILineReader traceReader,
 			String traceName, int linesToRead) throws ParseException,
 			IOException, InternalSynopticException {
-		BufferedReader br = new BufferedReader(traceReader);
+		String tName = internTraceName(traceName);
 
-		// Initialize incrementor context.
+		ArrayList<EventNode> results = parseLines(traceReader, tName, 1,
+				linesToRead);
+		processPartitionTimes();
+
+		logger.info("Successfully parsed " + partitions.size()
+				+ " traces, containing a total of " + results.size()
+				+ " events from [" + tName + "]");
+		return results;
+	}
+
+	/**
+	 * Parses a list of log files into a list of log events, using up to
+	 * numThreads threads. Files are parsed concurrently, and when the
+	 * configured regular expressions parse every line independently of the
+	 * lines before it (no incrementors, no states, and no delta times), large
+	 * files are also split into chunks of chunkLines lines that are parsed
+	 * concurrently. Files are split at line boundaries that are found by
+	 * scanning the memory-mapped file, without decoding the lines (see
+	 * MappedLogReader). Each file/chunk is parsed by a separate worker parser and
+	 * the results are merged in input order, so the returned events, trace
+	 * IDs, and partitions are identical to those produced by parsing the files
+	 * one after another with parseTraceFile.
+	 *
+	 * @param files
+	 *            Files to read and then parse, in order.
+	 * @param numThreads
+	 *            Number of parsing threads. Values less than 2 parse the files
+	 *            sequentially.
+	 * @param chunkLines
+	 *            Maximum number of lines in a chunk of a split file.
+	 * @return The parsed log events.
+	 * @throws ParseException
+	 *             when user supplied expressions are the problem
+	 * @throws InternalSynopticException
+	 *             when Synoptic code is the problem
+	 */
+	public ArrayList<EventNode> parseTraceFiles(List<File> files,
+			int numThreads, int chunkLines) throws ParseException,
+			InternalSynopticException {
+		assert chunkLines > 0;
+
+		ArrayList<EventNode> results = new ArrayList<EventNode>();
+		if (numThreads < 2) {
+			for (File file : files) {
+				results.addAll(parseTraceFile(file, -1));
+			}
+			return results;
+		}
+
+		boolean splitFiles = linesAreIndependent()
+				&& MappedLogReader.canRead(Charset.defaultCharset());
+		List<ParseJob> jobs = new ArrayList<ParseJob>();
+		List<Future<ArrayList<EventNode>>> jobResults = new ArrayList<Future<ArrayList<EventNode>>>();
+		ExecutorService pool = Executors.newFixedThreadPool(numThreads);
+		String fileName = "";
+		try {
+			for (File file : files) {
+				fileName = file.getAbsolutePath();
+				String tName = internTraceName(fileName);
+				if (!splitFiles) {
+					jobs.add(new ParseJob(new TraceParser(this), file, 0, -1,
+							tName, 1));
+					jobResults.add(pool.submit(jobs.get(jobs.size() - 1)));
+					continue;
+				}
+
+				MappedLogReader reader = new MappedLogReader(file);
+				try {
+					int firstLineNum = 1;
+					long start = reader.position();
+					int numLines;
+					while ((numLines = reader.skipLines(chunkLines)) > 0) {
+						long end = reader.position();
+						jobs.add(new ParseJob(new TraceParser(this), file,
+								start, end, tName, firstLineNum));
+						jobResults.add(pool.submit(jobs.get(jobs.size() - 1)));
+						firstLineNum += numLines;
+						start = end;
+					}
+				} finally {
+					reader.close();
+				}
+			}
+
+			// Merge the results in input order.
+			for (int i = 0; i < jobs.size(); i++) {
+				mergeWorkerResults(jobs.get(i).worker, jobResults.get(i).get(),
+						results);
+			}
+		} catch (IOException e) {
+			String error = "Error while attempting to read log file ["
+					+ fileName + "]: " + e.getMessage();
+			logger.severe(error);
+			throw new ParseException(error);
+		} catch (InterruptedException e) {
+			throw InternalSynopticException.wrap(e);
+		} catch (ExecutionException e) {
+			Throwable cause = e.getCause();
+			if (cause instanceof ParseException) {
+				throw (ParseException) cause;
+			}
+			if (cause instanceof RuntimeException) {
+				throw (RuntimeException) cause;
+			}
+			throw InternalSynopticException.wrap(e);
+		} finally {
+			pool.shutdownNow();
+		}
+
+		processPartitionTimes();
+
+		logger.info("Successfully parsed " + partitions.size()
+				+ " traces, containing a total of " + results.size()
+				+ " events from " + files.size() + " files using "
+				+ numThreads + " threads");
+		return results;
+	}
+
+	/**
+	 * Parses a list of log files into a list of log events, using up to
+	 * numThreads threads and the default chunk size for splitting large files.
+	 */
+	public ArrayList<EventNode> parseTraceFiles(List<File> files,
+			int numThreads) throws ParseException, InternalSynopticException {
+		return parseTraceFiles(files, numThreads, defaultParallelChunkLines);
+	}
+
+	/**
+	 * Returns whether or not the log can be parsed directly into a trace graph
+	 * with parseTraceFilesToGraph: the log must be totally ordered and must
+	 * not contain states, which are merged with events after parsing.
+	 */
+	public boolean canParseToGraph() {
+		return logTimeTypeIsTotallyOrdered() && !usesStates()
+				&& !AbstractMain.getInstance().options.stateProcessing;
+	}
+
+	/**
+	 * Parses a list of totally ordered log files directly into a trace graph.
+	 * Unlike parseTraceFiles followed by generateDirectTORelation, which keep
+	 * all of the parsed events and partitions until the graph is generated,
+	 * this method adds each partition (trace) to the graph as soon as no later
+	 * log line can belong to it, and then releases the parser's state for that
+	 * partition. A partition is complete at the end of its file when partitions
+	 * are per-file (the default partitions mapping), and when an incrementor
+	 * used in the partitions mapping changes value, e.g., at a partitions
+	 * separator. With any other partitions mapping the partitions are added
+	 * once all of the files have been parsed.
+	 * 
+	 * The returned graph is identical to the one generated from the events
+	 * parsed by parseTraceFiles.
+	 * 
+	 * @param files
+	 *            Files to read and then parse, in order.
+	 * @return The trace graph of the parsed log events.
+	 * @throws ParseException
+	 *             when user supplied expressions are the problem, or when a
+	 *             line maps to a partition that was already added to the graph
+	 * @throws InternalSynopticException
+	 *             when Synoptic code is the problem
+	 */
+	public ChainsTraceGraph parseTraceFilesToGraph(List<File> files)
+			throws ParseException, InternalSynopticException {
+		assert canParseToGraph();
+
+		ChainsTraceGraph graph = new ChainsTraceGraph();
+
+		// Partitions are per-file if the partition names include the name of
+		// the file being parsed (see parseLine).
+		boolean filePartitions = AbstractOptions.partitionRegExp
+				.equals(AbstractOptions.partitionRegExpDefault)
+				&& filter.references("FILE");
+
+		// The parsed events that have not yet been added to the graph, in the
+		// order in which they were parsed.
+		List<EventNode> pendingEvents = new ArrayList<EventNode>();
+		int numEvents = 0;
+		String fileName = "";
+		try {
+			for (File file : files) {
+				fileName = file.getAbsolutePath();
+				String tName = internTraceName(fileName);
+
+				Map<String, Integer> context = newIncrementorContext();
+				// Incrementors used in partition names. Incrementors are reset
+				// for every file, so they only scope per-file partitions.
+				List<String> scopeFields = new ArrayList<String>();
+				if (filePartitions) {
+					for (String incField : context.keySet()) {
+						if (filter.references(incField)) {
+							scopeFields.add(incField);
+						}
+					}
+				}
+				int[] scope = new int[scopeFields.size()];
+
+				ILineReader reader = openLogFile(file);
+				try {
+					lastTime = null;
+					int lineNum = 0;
+					CharSequence strLine;
+					while ((strLine = reader.readLine()) != null) {
+						lineNum++;
+						EventNode node = parseLine(strLine, tName, context,
+								lineNum);
+						if (node != null) {
+							pendingEvents.add(node);
+							numEvents++;
+						}
+
+						boolean scopeChanged = false;
+						for (int i = 0; i < scope.length; i++) {
+							int value = context.get(scopeFields.get(i));
+							if (value != scope[i]) {
+								scope[i] = value;
+								scopeChanged = true;
+							}
+						}
+						if (scopeChanged) {
+							// A pre-incremented line starts a new partition,
+							// which must remain open.
+							addCompletePartitions(graph, pendingEvents, node);
+						}
+					}
+				} finally {
+					reader.close();
+				}
+
+				if (filePartitions) {
+					addCompletePartitions(graph, pendingEvents, null);
+				}
+			}
+		} catch (IOException e) {
+			String error = "Error while attempting to read log file ["
+					+ fileName + "]: " + e.getMessage();
+			logger.severe(error);
+			throw new ParseException(error);
+		}
+		addCompletePartitions(graph, pendingEvents, null);
+
+		logger.info("Successfully parsed " + graph.getNumTraces()
+				+ " traces, containing a total of " + numEvents
+				+ " events from " + files.size() + " files");
+		return graph;
+	}
+
+	/**
+	 * Adds all of the open partitions, except for the partition of openEvent
+	 * (if not null), as traces to graph. The pending events of these partitions
+	 * are added to the graph in parse order, and the partitions and their
+	 * relations are then dropped from this parser.
+	 */
+	private void addCompletePartitions(ChainsTraceGraph graph,
+			List<EventNode> pendingEvents, EventNode openEvent)
+			throws ParseException {
+		List<EventNode> stillPending = new ArrayList<EventNode>();
+		for (EventNode eventNode : pendingEvents) {
+			if (openEvent != null
+					&& eventNode.getTraceID() == openEvent.getTraceID()) {
+				stillPending.add(eventNode);
+			} else {
+				graph.add(eventNode);
+			}
+		}
+
+		Iterator<Map.Entry<String, ArrayList<EventNode>>> it = partitions
+				.entrySet().iterator();
+		while (it.hasNext()) {
+			Map.Entry<String, ArrayList<EventNode>> partition = it.next();
+			if (openEvent != null
+					&& partitionNameToTraceID.get(partition.getKey()) == openEvent
+							.getTraceID()) {
+				continue;
+			}
+			ArrayList<EventNode> events = partition.getValue();
+			graph.addTrace(events, allEventRelations);
+			for (EventNode eventNode : events) {
+				allEventRelations.remove(eventNode);
+			}
+			it.remove();
+		}
+
+		pendingEvents.clear();
+		pendingEvents.addAll(stillPending);
+	}
+
+	/**
+	 * A unit of work for parallel parsing: an entire file, or a chunk of
+	 * consecutive lines from a file, which starts at byte offset start and
+	 * ends before byte offset end. Each job parses into its own worker parser,
+	 * so that jobs share no mutable state.
+	 */
+	private static class ParseJob implements Callable<ArrayList<EventNode>> {
+		final TraceParser worker;
+		final File file;
+		final long start;
+		final long end;
+		final String tName;
+		final int firstLineNum;
+
+		ParseJob(TraceParser worker, File file, long start, long end,
+				String tName, int firstLineNum) {
+			this.worker = worker;
+			this.file = file;
+			this.start = start;
+			this.end = end;
+			this.tName = tName;
+			this.firstLineNum = firstLineNum;
+		}
+
+		@Override
+		public ArrayList<EventNode> call() throws Exception {
+			if (end < 0) {
+				return worker.parseLines(openLogFile(file), tName, 1, -1);
+			}
+			return worker.parseLines(
+					new MappedLogReader(file, start, end, Charset
+							.defaultCharset(),
+							MappedLogReader.defaultRegionBytes), tName,
+					firstLineNum, -1);
+		}
+	}
+
+	/**
+	 * Appends the events parsed by a worker parser to results and merges the
+	 * worker's partitions and relations into this parser. Partitions that this
+	 * parser has not seen before are assigned trace IDs in the order in which
+	 * the worker first observed them, and the worker's events are re-tagged
+	 * with this parser's trace IDs.
+	 */
+	private void mergeWorkerResults(TraceParser worker,
+			ArrayList<EventNode> workerResults, ArrayList<EventNode> results) {
+		Map<Integer, Integer> traceIDs = new HashMap<Integer, Integer>();
+		for (Map.Entry<String, Integer> entry : worker.partitionNameToTraceID
+				.entrySet()) {
+			String pName = entry.getKey();
+			ArrayList<EventNode> events = partitions.get(pName);
+			if (events == null) {
+				events = new ArrayList<EventNode>();
+				partitions.put(pName, events);
+				partitionNameToTraceID.put(pName, nextTraceID);
+				nextTraceID++;
+			}
+			traceIDs.put(entry.getValue(), partitionNameToTraceID.get(pName));
+			events.addAll(worker.partitions.get(pName));
+		}
+
+		for (EventNode eventNode : workerResults) {
+			eventNode.setTraceID(traceIDs.get(eventNode.getTraceID()));
+		}
+		allEventRelations.putAll(worker.allEventRelations);
+		results.addAll(workerResults);
+	}
+
+	/**
+	 * Returns whether or not every log line can be parsed without knowing the
+	 * lines that precede it in the same file, in which case a file can be split
+	 * into chunks that are parsed independently.
+	 */
+	private boolean linesAreIndependent() {
+		if (AbstractOptions.inputDelta || usesStates()) {
+			return false;
+		}
+		for (Map<String, Boolean> incs : incrementors) {
+			if (!incs.isEmpty()) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Returns whether or not any of the regular expressions parses states.
+	 */
+	private boolean usesStates() {
+		for (int i = 0; i < parsers.size(); i++) {
+			if (parsers.get(i).groupNames().contains(stateGroup)
+					|| constantFields.get(i).containsKey(stateGroup)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Returns the name to use for a trace, interning it if requested.
+	 */
+	private static String internTraceName(String traceName) {
+		if (AbstractMain.getInstance().options.internCommonStrings) {
+			return traceName.intern();
+		}
+		return traceName;
+	}
+
+	/**
+	 * Initializes and returns the incrementor context for parsing a trace.
+	 */
+	private Map<String, Integer> newIncrementorContext() {
 		Map<String, Integer> context = new LinkedHashMap<String, Integer>();
 		for (Map<String, Boolean> incs : incrementors) {
 			for (String incField : incs.keySet()) {
 				context.put(incField, 0);
 			}
 		}
+		return context;
+	}
 
-		ArrayList<EventNode> results = new ArrayList<EventNode>();
-		String strLine = null;
+	/**
+	 * Opens a log file for reading lines: through memory-mapped regions of the
+	 * file if the default charset allows it, and otherwise through a stream
+	 * reader.
+	 */
+	private static ILineReader openLogFile(File file) throws IOException {
+		if (MappedLogReader.canRead(Charset.defaultCharset())) {
+			return new MappedLogReader(file);
+		}
+		return new BufferedLineReader(new BufferedReader(new InputStreamReader(
+				new FileInputStream(file))));
+	}
 
-		String tName = traceName;
-		if (AbstractMain.getInstance().options.internCommonStrings) {
-			tName = tName.intern();
+	/**
+	 * Reads lines with a BufferedReader.
+	 */
+	private static class BufferedLineReader implements ILineReader {
+		private final BufferedReader reader;
+
+		BufferedLineReader(BufferedReader reader) {
+			this.reader = reader;
+		}
+
+		@Override
+		public CharSequence readLine() throws IOException {
+			return reader.readLine();
+		}
+
+		@Override
+		public void close() throws IOException {
+			reader.close();
 		}
+	}
+
+	/**
+	 * Parses the lines read from reader as event instances, and merges any
+	 * parsed states with their events. The first line read is line number
+	 * firstLineNum in the trace tName.
+	 */
+	private ArrayList<EventNode> parseLines(ILineReader reader, String tName,
+			int firstLineNum, int linesToRead) throws ParseException,
+			IOException, InternalSynopticException {
+		// Initialize incrementor context.
+		Map<String, Integer> context = newIncrementorContext();
+
+		ArrayList<EventNode> results = new ArrayList<EventNode>();
+		CharSequence strLine = null;
 
 		lastTime = null;
 
-		int lineNum = 0;
+		int lineNum = firstLineNum - 1;
 		// Process each line in sequence.
-		while ((strLine = br.readLine()) != null) {
-			if (results.size() == linesToRead) {
-				break;
-			}
-			lineNum++;
-			EventNode node = parseLine(strLine, tName, context, lineNum);
-			if (node == null) {
-				continue;
+		try {
+			while ((strLine = reader.readLine()) != null) {
+				if (results.size() == linesToRead) {
+					break;
+				}
+				lineNum++;
+				EventNode node = parseLine(strLine, tName, context, lineNum);
+				if (node == null) {
+					continue;
+				}
+				results.add(node);
 			}
-			results.add(node);
+		} finally {
+			reader.close();
 		}
-		br.close();
 		// TODO: this is a hacky solution, should refactor the parseTrace and
 		// parseLine methods so that State is separated from EventNode.
 		// At this point, each node in results either represents an event or
@@ -712,7 +1216,15 @@ public class TraceParser {
 		if (AbstractMain.getInstance().options.stateProcessing) {
 			mergeStatesWithEventNodes(results);
 		}
+		return results;
+	}
 
+	/**
+	 * Post-processes the vector times of all the parsed partitions: infers the
+	 * PID of each event if PIDs were not parsed explicitly, and otherwise checks
+	 * that the events of each PID in a partition are totally ordered.
+	 */
+	private void processPartitionTimes() throws ParseException {
 		if (selectedTimeGroup.equals("VTIME") && !parsePIDs) {
 			// Infer the PID (process ID) corresponding to each of the parsed
 			// events, if PIDs were not parsed explicitly from the trace.
@@ -751,67 +1263,78 @@ public class TraceParser {
 			// PID.
 
 			for (List<EventNode> group : partitions.values()) {
-				// Determine the set of unique PIDs in this partition.
-				LinkedHashSet<String> PIDs = new LinkedHashSet<String>();
+				// Group the events of this partition by PID, in one pass.
+				LinkedHashMap<String, List<EventNode>> PIDs = new LinkedHashMap<String, List<EventNode>>();
 				for (EventNode node : group) {
 					if (!(node.getEType() instanceof DistEventType)) {
 						String error = "Parsed a non dist. event type for a trace with VTIME format.";
 						logger.severe(error);
 						throw new ParseException(error);
 					}
-					PIDs.add(((DistEventType) node.getEType()).getProcessName());
+					String pid = ((DistEventType) node.getEType()).getProcessName();
+					List<EventNode> pidEvents = PIDs.get(pid);
+					if (pidEvents == null) {
+						pidEvents = new ArrayList<EventNode>();
+						PIDs.put(pid, pidEvents);
+					}
+					pidEvents.add(node);
 				}
 
-				LinkedList<EventNode> pidEvents = new LinkedList<EventNode>();
-				for (String pid : PIDs) {
-					// Select all events from the partition with the same PID
-					for (EventNode node : group) {
-						if (((DistEventType) node.getEType()).getProcessName()
-								.equals(pid)) {
-							pidEvents.add(node);
-						}
+				for (Map.Entry<String, List<EventNode>> entry : PIDs.entrySet()) {
+					// Sort the events by the sums of their clocks. A vector time
+					// has a smaller sum than the vector times that it is less
+					// than, so if the events are totally ordered then every event
+					// is less than the next one in this order. Otherwise, some
+					// event is not less than the next one, since lessThan is
+					// transitive, and we've violated the property we're checking.
+					List<EventNode> pidEvents = entry.getValue();
+					final Map<EventNode, Long> sums = new HashMap<EventNode, Long>();
+					for (EventNode node : pidEvents) {
+						sums.put(node, clockSum(node.getTime()));
 					}
-
-					// Now walk through all pidEvents and remove the minimal
-					// element -- all elements should be comparable, otherwise
-					// we've violated the property we're checking.
-					while (pidEvents.size() != 0) {
-						EventNode minElement = pidEvents.get(0);
-						for (EventNode node : pidEvents) {
-							if (node == minElement) {
-								continue;
-							}
-							if (node.getTime().lessThan(minElement.getTime())) {
-								minElement = node;
-							} else {
-								if (!minElement.getTime().lessThan(
-										node.getTime())) {
-									String error = "Two events in the same partition with same PID["
-											+ pid
-											+ "] have incomparable VTIMEs: \n"
-											+ "\t"
-											+ minElement.toString()
-											+ ": "
-											+ minElement.getTime().toString()
-											+ "\n\t"
-											+ node.toString()
-											+ ": "
-											+ node.getTime().toString();
-									logger.severe(error);
-									throw new ParseException(error);
-								}
-							}
+					Collections.sort(pidEvents, new Comparator<EventNode>() {
+						@Override
+						public int compare(EventNode e1, EventNode e2) {
+							return sums.get(e1).compareTo(sums.get(e2));
+						}
+					});
+					for (int i = 1; i < pidEvents.size(); i++) {
+						EventNode prev = pidEvents.get(i - 1);
+						EventNode node = pidEvents.get(i);
+						if (!prev.getTime().lessThan(node.getTime())) {
+							String error = "Two events in the same partition with same PID["
+									+ entry.getKey()
+									+ "] have incomparable VTIMEs: \n"
+									+ "\t"
+									+ prev.toString()
+									+ ": "
+									+ prev.getTime().toString()
+									+ "\n\t"
+									+ node.toString()
+									+ ": "
+									+ node.getTime().toString();
+							logger.severe(error);
+							throw new ParseException(error);
 						}
-						pidEvents.remove(minElement);
 					}
 				}
 			}
 		}
+	}
 
-		logger.info("Successfully parsed " + partitions.size()
-				+ " traces, containing a total of " + results.size()
-				+ " events from [" + tName + "]");
-		return results;
+	/**
+	 * Returns the sum of the clocks of a vector time.
+	 */
+	private static long clockSum(ITime time) {
+		if (!(time instanceof VectorTime)) {
+			throw new WrongTimeTypeException();
+		}
+		VectorTime vTime = (VectorTime) time;
+		long sum = 0;
+		for (int i = 0; i < vTime.size(); i++) {
+			sum += vTime.get(i);
+		}
+		return sum;
 	}
 
 	/**
@@ -867,11 +1390,48 @@ public class TraceParser {
 		}
 	}
 
+	/**
+	 * Creates the dispatcher and the field views used to parse lines with the
+	 * current parsers.
+	 */
+	private void prepareParsers() {
+		dispatcher = new NamedPatternDispatcher(parsers);
+		// Every parser's fields include the incrementors and its constants.
+		Set<String> contextFields = newIncrementorContext().keySet();
+		parserFields = new ArrayList<NamedMatchView>(parsers.size());
+		for (int i = 0; i < parsers.size(); i++) {
+			List<String> extraFields = new ArrayList<String>(contextFields);
+			extraFields.addAll(constantFields.get(i).keySet());
+			parserFields.add(new NamedMatchView(parsers.get(i), extraFields));
+		}
+	}
+
+	/**
+	 * The fields of a parsed line that can be used in the partitions mapping:
+	 * all of the fields except for TYPE and TIME, and the name of the parsed
+	 * file as FILE when partitioning by file.
+	 */
+	private static class PartitionNameFields implements INamedValues {
+		NamedMatchView fields;
+		String fileName;
+
+		@Override
+		public String get(String name) {
+			if (name.equals(typeGroup) || name.equals("TIME")) {
+				return null;
+			}
+			if (fileName != null && name.equals("FILE")) {
+				return fileName;
+			}
+			return fields.get(name);
+		}
+	}
+
 	/**
 	 * Builds a generic string to describe a location of an error on a line in
 	 * some input file.
 	 */
-	private String buildLineErrorLocString(String line, String fileName,
+	private String buildLineErrorLocString(CharSequence line, String fileName,
 			int lineNum) {
 		// Basic error location string is simply the line number.
 		String ret = "Line #" + Integer.toString(lineNum);
@@ -889,9 +1449,10 @@ public class TraceParser {
 	}
 
 	/**
-	 * Parse an individual line.
+	 * Parse an individual line. The line is only copied into a string if the
+	 * entire line is used as the event type or kept as the event's log line.
 	 */
-	private EventNode parseLine(String line, String fileName,
+	private EventNode parseLine(CharSequence line, String fileName,
 			Map<String, Integer> context, int lineNum) throws ParseException,
 			InternalSynopticException {
 
@@ -900,16 +1461,21 @@ public class TraceParser {
 
 		AbstractMain main = AbstractMain.getInstance();
 
-		for (int i = 0; i < parsers.size(); i++) {
-			NamedMatcher matcher = parsers.get(i).matcher(line);
-			if (!matcher.matches()) {
+		if (dispatcher == null) {
+			prepareParsers();
+		}
+		// The dispatcher skips parsers that cannot match the line, and orders
+		// the rest such that the first parser to match is the same as when
+		// trying the parsers in the order in which they were added.
+		for (int i : dispatcher.tryOrder()) {
+			if (!dispatcher.mayMatch(i, line)) {
 				continue;
 			}
-
-			@SuppressWarnings("unchecked")
-			Map<String, NamedSubstitution> cs = (Map<String, NamedSubstitution>) constantFields
-					.get(i).clone();
-			Map<String, String> matched = matcher.toMatchResult().namedGroups();
+			NamedMatchView matched = parserFields.get(i);
+			if (!matched.matches(line)) {
+				continue;
+			}
+			dispatcher.recordHit(i);
 
 			// Perform pre-increments.
 			for (Map.Entry<String, Boolean> inc : incrementors.get(i)
@@ -921,10 +1487,11 @@ public class TraceParser {
 
 			// Overlay increment context.
 			for (Map.Entry<String, Integer> entry : context.entrySet()) {
-				matched.put(entry.getKey(), entry.getValue().toString());
+				matched.set(entry.getKey(), entry.getValue().toString());
 			}
 
-			for (Map.Entry<String, NamedSubstitution> entry : cs.entrySet()) {
+			for (Map.Entry<String, NamedSubstitution> entry : constantFields
+					.get(i).entrySet()) {
 				// Process the constant field by substituting
 				// back-references.
 				String key = entry.getKey();
@@ -939,8 +1506,9 @@ public class TraceParser {
 
 				// TODO: Determine policy of constant fields vs. extracted have
 				// overlay priority
-				if (!matched.containsKey(key)) {
-					matched.put(key, val);
+				if (parsers.get(i).groupIndex(key) == 0
+						&& !context.containsKey(key)) {
+					matched.set(key, val);
 				}
 			}
 
@@ -961,13 +1529,13 @@ public class TraceParser {
 			String eTypeLabel;
 			EventType eType;
 			// Check if this line contains event type or state.
-			if (matched.containsKey(typeGroup)) {
+			if (matched.contains(typeGroup)) {
 				if (main.options.internCommonStrings) {
 					eTypeLabel = matched.get(typeGroup).intern();
 				} else {
 					eTypeLabel = matched.get(typeGroup);
 				}
-			} else if (matched.containsKey(stateGroup)) {
+			} else if (matched.contains(stateGroup)) {
 				// This line has state, so event type is irrelevant.
 				// Use use the dummy string as the type.
 				eTypeLabel = dummyEtypeLabel;
@@ -975,9 +1543,13 @@ public class TraceParser {
 				// TODO: determine if this is desired + print warning
 				// In the absence of an event type, use the entire log line as
 				// the type.
-				eTypeLabel = line;
+				eTypeLabel = line.toString();
 			}
 
+			// The file name and line number locate the log line even if its
+			// text is discarded.
+			String logLine = main.options.discardLogLines ? null : line
+					.toString();
 			if (selectedTimeGroup.equals("VTIME")) {
 				if (parsePIDs) {
 					eType = new DistEventType(eTypeLabel,
@@ -985,11 +1557,14 @@ public class TraceParser {
 				} else {
 					eType = new DistEventType(eTypeLabel);
 				}
-				event = new Event(eType, line, fileName, lineNum);
+				event = new Event(eType, logLine, fileName, lineNum);
 			} else {
 				eType = new StringEventType(eTypeLabel);
-				event = new Event(eType, line, fileName, lineNum);
+				event = new Event(eType, logLine, fileName, lineNum);
 			}
+			// Assign the dense id of the type while parsing, so that later
+			// stages only read it.
+			eType.getId();
 
 			/*
 			 * Tag event nodes with relation fields. This is gross, is there a
@@ -997,9 +1572,10 @@ public class TraceParser {
 			 */
 			Set<String> relationValues = new HashSet<String>();
 			Set<Relation> eventRelations = new HashSet<Relation>();
-			for (String key : matched.keySet()) {
+			for (int slot = 0; slot < matched.size(); slot++) {
+				String key = matched.name(slot);
 				if (key.startsWith(relationGroup)) {
-					String relationString = matched.get(key);
+					String relationString = matched.get(slot);
 
 					if (relationValues.contains(relationString)) {
 						throw new ParseException(
@@ -1050,7 +1626,7 @@ public class TraceParser {
 							+ selectedTimeGroup;
 					logger.severe(error);
 					ParseException parseException = new ParseException(error);
-					parseException.setLogLine(line);
+					parseException.setLogLine(line.toString());
 					throw parseException;
 				}
 
@@ -1124,23 +1700,16 @@ public class TraceParser {
 					logger.severe(error);
 					logger.severe(e.toString());
 					ParseException parseException = new ParseException(errMsg);
-					parseException.setLogLine(line);
+					parseException.setLogLine(line.toString());
 					throw parseException;
 				}
 			}
 
-			Map<String, String> eventStringArgs = new LinkedHashMap<String, String>();
-
-			for (Map.Entry<String, String> group : matched.entrySet()) {
-				String name = group.getKey();
-				if (!name.equals("TYPE") && !name.equals("TIME")) {
-					eventStringArgs.put(name, group.getValue());
-				}
-			}
-
+			partitionNameFields.fields = matched;
+			partitionNameFields.fileName = null;
 			if (AbstractOptions.partitionRegExp.equals("\\k<FILE>")) {
 				// These logs are to be partitioned via file
-				eventStringArgs.put("FILE", fileName);
+				partitionNameFields.fileName = fileName;
 				// "" + traceNameToTraceID.get(fileName));
 			}
 
@@ -1156,12 +1725,13 @@ public class TraceParser {
 				// TODO: include partition name in the list of field values
 				logger.info("input: " + line);
 				StringBuilder msg = new StringBuilder("{");
-				for (Map.Entry<String, String> entry : eventStringArgs
-						.entrySet()) {
-					if (entry.getKey().equals("FILE")) {
+				for (int slot = 0; slot < matched.size(); slot++) {
+					String name = matched.name(slot);
+					if (name.equals("TYPE") || name.equals("TIME")
+							|| name.equals("FILE")) {
 						continue;
 					}
-					msg.append(entry.getKey() + " = " + entry.getValue() + ", ");
+					msg.append(name + " = " + matched.get(slot) + ", ");
 				}
 				msg.append("TYPE = " + eType.toString());
 				msg.append("}");
@@ -1169,11 +1739,9 @@ public class TraceParser {
 			}
 			event.setTime(nextTime);
 
-			Relation timeRelation = new Relation("time-relation",
-					Event.defTimeRelationStr, false);
 			eventRelations.add(timeRelation);
 
-			String partitionName = filter.substitute(eventStringArgs);
+			String partitionName = filter.substitute(partitionNameFields);
 			EventNode eventNode = addEventNodeToPartition(event, partitionName);
 
 			// If a state is captured, save it to eventNode's post-event state
@@ -1183,8 +1751,8 @@ public class TraceParser {
 			// pre-event state might be set before we check if that node
 			// represents
 			// state or event.
-			if (eventStringArgs.containsKey(stateGroup)) {
-				String stateStr = eventStringArgs.get(stateGroup);
+			if (matched.contains(stateGroup)) {
+				String stateStr = matched.get(stateGroup);
 				State state = new State(stateStr);
 				eventNode.setPostEventState(state);
 				// State is parsed. Enable state processing.
@@ -1206,14 +1774,15 @@ public class TraceParser {
 				relations.addAll(eventRelations);
 			}
 
-			eventStringArgs = null;
 			return eventNode;
 		}
 
 		if (main.options.recoverFromParseErrors) {
 			logger.warning(buildLineErrorLocString(line, fileName, lineNum)
 					+ " Failed to parse trace line. Using entire line as type.");
-			event = new Event(new StringEventType(line), line, fileName,
+			String logLine = line.toString();
+			event = new Event(new StringEventType(logLine),
+					main.options.discardLogLines ? null : logLine, fileName,
 					lineNum);
 			if (selectedTimeGroup.equals(implicitTimeGroup)) {
 				// We can recover OK with log-line counting time.
@@ -1250,7 +1819,7 @@ public class TraceParser {
 
 		logger.severe(loggerError);
 		ParseException parseException = new ParseException(exceptionError);
-		parseException.setLogLine(line);
+		parseException.setLogLine(line.toString());
 		throw parseException;
 	}
 
@@ -1263,11 +1832,23 @@ public class TraceParser {
 	 * 
 	 * @param eventNode
 	 * @param pName
+	 * @throws ParseException
+	 *             if the partition was already added to a trace graph by
+	 *             parseTraceFilesToGraph
 	 */
-	private EventNode addEventNodeToPartition(Event event, String pName) {
+	private EventNode addEventNodeToPartition(Event event, String pName)
+			throws ParseException {
 		EventNode eventNode = new EventNode(event);
 		ArrayList<EventNode> events = partitions.get(pName);
 		if (events == null) {
+			if (partitionNameToTraceID.containsKey(pName)) {
+				String error = "Line #" + event.getLineNum() + " from file ["
+						+ event.getFileName() + "] maps to partition '" + pName
+						+ "', which was already added to the trace graph."
+						+ " Re-run without the streamingParse option.";
+				logger.severe(error);
+				throw new ParseException(error);
+			}
 			events = new ArrayList<EventNode>();
 			partitions.put(pName, events);
 			logger.fine("Created partition '" + pName + "'");
@@ -1,5 +1,6 @@
 package synoptic.model;
 
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashSet;
 import java.util.LinkedHashMap;
@@ -29,6 +30,9 @@ public class ChainRelationPath implements IRelationPath {
      */
     private boolean counted;
 
+    /** The types of the events in this path, in path order. */
+    private List<EventType> eventTypes = null;
+
     /** The set of nodes seen prior to some point in the trace. */
     private Set<EventType> seen;
     /** Maintains the current event count in the path. */
@@ -74,18 +78,15 @@ public class ChainRelationPath implements IRelationPath {
 
     /**
      * Assumes tracegraph is already constructed. Walks over the tracegraph that
-     * eNode is part of to populate seen, eventcounts, followedByCounts,
-     * precedesCounts and possibleInterrupts. Throws an error if a node has
-     * multiple transitions for a single relation (i.e., not a totally ordered
-     * relation path).
+     * eNode is part of to collect the types of the events in this path. Throws
+     * an error if a node has multiple transitions for a single relation (i.e.,
+     * not a totally ordered relation path).
      */
-    private void count() {
-        if (counted) {
+    private void walk() {
+        if (eventTypes != null) {
             return;
         }
-
-        // Used for IntrBy, which needs to record order
-        LinkedList<EventType> history = new LinkedList<EventType>();
+        eventTypes = new ArrayList<EventType>();
 
         Set<String> relationSet = new HashSet<String>();
         relationSet.add(relation);
@@ -117,11 +118,41 @@ public class ChainRelationPath implements IRelationPath {
                                         relationSet).size());
             }
 
-            // The current event is 'b', and all prior events are 'a' --
-            // this notation indicates that an 'a' always occur prior to a
-            // 'b' in the path.
-            EventType b = curNode.getEType();
+            eventTypes.add(curNode.getEType());
+
+            // Move on to the next node in the trace.
+            List<? extends ITransition<EventNode>> searchTransitions = curNode
+                    .getTransitionsWithIntersectingRelations(relationSet);
+
+            if (curNode.equals(eFinal)) {
+                break;
+            }
+
+            curNode = searchTransitions.get(0).getTarget();
+
+            transitions = curNode
+                    .getTransitionsWithIntersectingRelations(relationSet);
+
+        }
+    }
+
+    /**
+     * Populates seen, eventcounts, followedByCounts, precedesCounts and
+     * possibleInterrupts from the event types in this path.
+     */
+    private void count() {
+        if (counted) {
+            return;
+        }
+        walk();
+
+        // Used for IntrBy, which needs to record order
+        LinkedList<EventType> history = new LinkedList<EventType>();
 
+        // The current event is 'b', and all prior events are 'a' -- this
+        // notation indicates that an 'a' always occur prior to a 'b' in the
+        // path.
+        for (EventType b : eventTypes) {
             // Update the precedes counts based on the a events that
             // preceded the current b event in this path.
             for (EventType a : seen) {
@@ -195,25 +226,16 @@ public class ChainRelationPath implements IRelationPath {
             } else {
                 eventCounts.put(b, eventCounts.get(b) + 1);
             }
-
-            // Move on to the next node in the trace.
-            List<? extends ITransition<EventNode>> searchTransitions = curNode
-                    .getTransitionsWithIntersectingRelations(relationSet);
-
-            if (curNode.equals(eFinal)) {
-                break;
-            }
-
-            curNode = searchTransitions.get(0).getTarget();
-
-            transitions = curNode
-                    .getTransitionsWithIntersectingRelations(relationSet);
-
         }
 
         counted = true;
     }
 
+    public List<EventType> getEventTypes() {
+        walk();
+        return Collections.unmodifiableList(eventTypes);
+    }
+
     public Set<EventType> getSeen() {
         count();
         return Collections.unmodifiableSet(seen);
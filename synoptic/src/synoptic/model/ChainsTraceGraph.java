@@ -13,6 +13,7 @@ import java.util.List;
 import java.util.Map;
 import java.util.Set;
 
+import synoptic.algorithms.ChainsTransitiveClosure;
 import synoptic.algorithms.TransitiveClosure;
 import synoptic.main.options.AbstractOptions;
 import synoptic.main.parser.ParseException;
@@ -238,6 +239,49 @@ public class ChainsTraceGraph extends TraceGraph<StringEventType> {
         return transClosure;
     }
 
+    /**
+     * Builds the same transitive closure as getTransitiveClosure, but
+     * implicitly: instead of recording every pair of nodes in a segment of a
+     * chain, the closure records the segments, which takes memory linear in
+     * the number of nodes rather than quadratic in the length of the traces.
+     */
+    public ChainsTransitiveClosure getImplicitTransitiveClosure(
+            Set<String> relations) {
+        assert relations != null;
+
+        ChainsTransitiveClosure transClosure = new ChainsTransitiveClosure(
+                relations);
+        List<EventNode> segment = new ArrayList<EventNode>();
+        for (EventNode firstNode : traceIdToInitNodes.values()) {
+            EventNode curNode = firstNode;
+
+            while (!curNode.isTerminal()) {
+                segment.clear();
+
+                while (curNode.getTransitionsWithExactRelations(relations)
+                        .size() == 1) {
+                    segment.add(curNode);
+                    curNode = curNode
+                            .getTransitionsWithExactRelations(relations).get(0)
+                            .getTarget();
+                }
+
+                // The segment ends with the first node that is not followed
+                // by a transition with the relations, unless the chain ends.
+                if (!curNode.isTerminal()) {
+                    segment.add(curNode);
+                    transClosure.addSegment(segment);
+
+                    assert curNode.getAllSuccessors().size() == 1;
+                    curNode = curNode.getAllSuccessors().iterator().next();
+                } else {
+                    transClosure.addSegment(segment);
+                }
+            }
+        }
+        return transClosure;
+    }
+
     // Used by tests only (so that DAGWalking invariant miner can operate on
     // ChainsTraceGraph)
     @Override
@@ -251,6 +295,14 @@ public class ChainsTraceGraph extends TraceGraph<StringEventType> {
         return map;
     }
 
+    /**
+     * Adds a trace whose nodes and transitions are already in this graph (used
+     * when loading a TraceGraphSnapshot).
+     */
+    void addTrace(Trace trace) {
+        traces.add(trace);
+    }
+
     public List<Trace> getTraces() {
         return Collections.unmodifiableList(traces);
     }
@@ -1,7 +1,9 @@
 package synoptic.model;
 
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.Comparator;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.LinkedHashMap;
@@ -11,6 +13,7 @@ import java.util.List;
 import java.util.Map;
 import java.util.Set;
 
+import synoptic.algorithms.BitSetTransitiveClosure;
 import synoptic.algorithms.FloydWarshall;
 import synoptic.algorithms.TransitiveClosure;
 import synoptic.model.event.DistEventType;
@@ -101,6 +104,23 @@ public class DAGsTraceGraph extends TraceGraph<DistEventType> {
         return getTransitiveClosure(relations, true);
     }
 
+    /**
+     * Returns the transitive closure of the DAG trace graph, with the nodes
+     * that each node reaches stored as a BitSet over a topological numbering
+     * of its trace (see BitSetTransitiveClosure).
+     * 
+     * @param relations
+     *            The relations of the transitions to follow
+     * @param numThreads
+     *            The number of threads that close traces (1 closes the traces
+     *            sequentially)
+     */
+    public BitSetTransitiveClosure getBitSetTransitiveClosure(
+            Set<String> relations, int numThreads) {
+        return BitSetTransitiveClosure.compute(traceIdToInitNodes.values(),
+                relations, numThreads);
+    }
+
     /**
      * This function takes a collection of transitions, and a list of nodes that
      * are somehow canonically ordered. It returns a list of nodes that the
@@ -108,30 +128,29 @@ public class DAGsTraceGraph extends TraceGraph<DistEventType> {
      * ordering.
      * 
      * @param unorderedTrans
-     * @param orderedSuperList
+     * @param orderMap
+     *            Maps each node in the canonical order to its position in the
+     *            order
      * @return
      */
     private List<EventNode> getSubSortedList(
             Collection<? extends ITransition<EventNode>> unorderedTrans,
-            List<EventNode> orderedSuperList) {
-
-        // TODO: this is inefficient because in the worst case it is n^2.
-        // Ideally, this would do the following:
-        // 1. Add all nodes in unordered to subList
-        // 2. Sort subList using a comparator that uses the relative position of
-        // elements in the orderedSuperList for computing the order of elements.
-
-        List<EventNode> subList = new LinkedList<EventNode>();
+            final Map<EventNode, Integer> orderMap) {
         Set<EventNode> unorderedNodes = new LinkedHashSet<EventNode>();
         for (ITransition<EventNode> trans : unorderedTrans) {
-            unorderedNodes.add(trans.getTarget());
+            if (orderMap.containsKey(trans.getTarget())) {
+                unorderedNodes.add(trans.getTarget());
+            }
         }
 
-        for (EventNode n : orderedSuperList) {
-            if (unorderedNodes.contains(n)) {
-                subList.add(n);
+        // Sort the nodes by their relative positions in the order.
+        List<EventNode> subList = new ArrayList<EventNode>(unorderedNodes);
+        Collections.sort(subList, new Comparator<EventNode>() {
+            @Override
+            public int compare(EventNode n1, EventNode n2) {
+                return orderMap.get(n1).compareTo(orderMap.get(n2));
             }
-        }
+        });
         return subList;
     }
 
@@ -181,16 +200,15 @@ public class DAGsTraceGraph extends TraceGraph<DistEventType> {
             // 1. Get the nodes sorted in some topological order.
             topoOrder = computeTopologicalOrder(dagInits, relations);
 
-            // TODO: Potential optimization
             // 2. Build the order map -- this maps a node from the topological
             // order to its position in the order. We use this map to derive
             // sublists that are sorted from sets of nodes (that are not
             // necessarily contiguous in the order).
-            // int counter = 0;
-            // for (EventNode n : topoOrder) {
-            // orderMap.put(n, counter);
-            // counter++;
-            // }
+            int counter = 0;
+            for (EventNode n : topoOrder) {
+                orderMap.put(n, counter);
+                counter++;
+            }
 
             // 2. Construct the implicit reverse graph -- the graph that is
             // formed by reversing all the edges (by constructing the
@@ -225,7 +243,7 @@ public class DAGsTraceGraph extends TraceGraph<DistEventType> {
                 // that was computed earlier for all the nodes in the graph.
                 subSortedList = getSubSortedList(
                         m.getTransitionsWithExactRelations(relations),
-                        topoOrder);
+                        orderMap);
 
                 for (EventNode child : subSortedList) {
                     if (!transClosure.isReachable(m, child)) {
@@ -243,6 +261,7 @@ public class DAGsTraceGraph extends TraceGraph<DistEventType> {
             // traces:
             tcParents.clear();
             parentsMap.clear();
+            orderMap.clear();
             reverseTopoOrder.clear();
             topoOrder.clear();
         }
@@ -64,7 +64,7 @@ public class EventNode implements INode<EventNode> {
 	 */
 	private EventNode processLocalSucc = null;
 
-	private void setProcessLocalSuccessor(EventNode processLocalSucc) {
+	void setProcessLocalSuccessor(EventNode processLocalSucc) {
 		assert this.processLocalSucc == null;
 
 		this.processLocalSucc = processLocalSucc;
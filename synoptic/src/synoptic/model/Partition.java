@@ -10,6 +10,7 @@ import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 
 import daikonizer.DaikonInvariants;
 
@@ -62,6 +63,30 @@ public class Partition implements INode<Partition> {
      */
     private final List<Transition<Partition>> cachedTransitionsWithInvs;
 
+    /**
+     * Cached outgoing transitions of this partition, or null if they have to
+     * be recomputed from the events of the partition. The caches are cleared
+     * whenever the events of this partition change, or the events of a
+     * partition that a transition leads to change (i.e., when a partition
+     * split or merge is committed).
+     */
+    private volatile List<Transition<Partition>> cachedTransitions = null;
+
+    /**
+     * Cached outgoing transitions of this partition, with their probabilities
+     * and counts, or null if they have to be recomputed.
+     */
+    private volatile List<Transition<Partition>> cachedWeightedTransitions = null;
+
+    /**
+     * The partitions that have cached transitions to this partition, and whose
+     * caches must be cleared when the events of this partition change.
+     * Transitions may be cached by several threads that read the graph at
+     * once, so the set is concurrent.
+     */
+    private final Set<Partition> cachedTransitionSources = Collections
+            .newSetFromMap(new ConcurrentHashMap<Partition, Boolean>());
+
     /**
      * Creates a new partition that will contain a set of event nodes.
      * 
@@ -85,6 +110,24 @@ public class Partition implements INode<Partition> {
         cachedTransitionsWithInvs = new ArrayList<Transition<Partition>>();
     }
 
+    /**
+     * Creates a partition that contains eNodes without becoming their parent,
+     * so that the event nodes, and the partitions that contain them, are not
+     * changed. Used by views of a partition graph that do not modify the graph
+     * (see PartitionSplitView).
+     */
+    static Partition newDetachedPartition(Set<EventNode> eNodes) {
+        assert eNodes.size() > 0;
+        return new Partition(eNodes, eNodes.iterator().next().getEType());
+    }
+
+    private Partition(Set<EventNode> eNodes, EventType eType) {
+        events = new LinkedHashSet<EventNode>(eNodes);
+        this.eType = eType;
+        initialized = true;
+        cachedTransitionsWithInvs = new ArrayList<Transition<Partition>>();
+    }
+
     public void initialize(EventNode eNode) {
         eType = eNode.getEType();
         initialized = true;
@@ -103,6 +146,7 @@ public class Partition implements INode<Partition> {
         }
 
         events.addAll(eNodes);
+        clearTransitionCaches();
         for (final EventNode e : eNodes) {
             e.setParent(this);
             // A Partition is allowed to contain only EventNode instances of the
@@ -125,6 +169,7 @@ public class Partition implements INode<Partition> {
         }
         eNode.setParent(this);
         events.add(eNode);
+        clearTransitionCaches();
     }
 
     /**
@@ -144,6 +189,7 @@ public class Partition implements INode<Partition> {
     public void removeEventNodes(Set<EventNode> eventNodes) {
         events.removeAll(eventNodes);
         assert events.size() > 0;
+        clearTransitionCaches();
     }
 
     /**
@@ -152,6 +198,21 @@ public class Partition implements INode<Partition> {
     public void removeAllEventNodes() {
         events.clear();
         initialized = false;
+        clearTransitionCaches();
+    }
+
+    /**
+     * Clears the cached transitions of this partition, and of the partitions
+     * that have cached transitions to this partition.
+     */
+    private void clearTransitionCaches() {
+        cachedTransitions = null;
+        cachedWeightedTransitions = null;
+        for (Partition source : cachedTransitionSources) {
+            source.cachedTransitions = null;
+            source.cachedWeightedTransitions = null;
+        }
+        cachedTransitionSources.clear();
     }
 
     /**
@@ -323,10 +384,25 @@ public class Partition implements INode<Partition> {
     public List<? extends ITransition<Partition>> getWeightedTransitions() {
         assert initialized;
 
-        List<? extends ITransition<Partition>> transitions = getAllTransitions();
+        List<Transition<Partition>> transitions = cachedWeightedTransitions;
+        if (transitions == null) {
+            transitions = cacheWeightedTransitions();
+        }
+        return new ArrayList<Transition<Partition>>(transitions);
+    }
+
+    /**
+     * Computes and caches the weighted transitions of this partition.
+     */
+    private synchronized List<Transition<Partition>> cacheWeightedTransitions() {
+        if (cachedWeightedTransitions != null) {
+            return cachedWeightedTransitions;
+        }
 
-        // TODO: Cache whether or not the fractions/counts have already been set
-        // on the transitions.
+        // The weights are set on transitions of their own, since the weights
+        // are part of the labels of a transition, and the transitions returned
+        // by getAllTransitions are not weighted.
+        List<Transition<Partition>> transitions = computeTransitions();
 
         if (this.isInitial()) {
             // We handle INITIAL partitions differently because we optimized the
@@ -371,14 +447,33 @@ public class Partition implements INode<Partition> {
         } else {
             // Non-INITIAL partition case.
 
-            int totalAtSource = events.size();
-            for (ITransition<Partition> tr : transitions) {
-                int numOutgoing = 0;
-                for (final EventNode event : events) {
-                    if (fulfillsStrong(event, tr)) {
-                        numOutgoing += 1;
+            // Count, in one pass over the events, the events that fulfill
+            // each transition (see fulfillsStrong).
+            Map<Partition, Integer> numOutgoingPerChildPartition = new HashMap<Partition, Integer>();
+            Map<Partition, Transition<Partition>> transitionPerChildPartition = new HashMap<Partition, Transition<Partition>>();
+            for (Transition<Partition> tr : transitions) {
+                numOutgoingPerChildPartition.put(tr.getTarget(), 0);
+                transitionPerChildPartition.put(tr.getTarget(), tr);
+            }
+            Set<Partition> fulfilled = new HashSet<Partition>();
+            for (final EventNode event : events) {
+                fulfilled.clear();
+                for (ITransition<EventNode> t : event.getAllTransitions()) {
+                    Partition childP = t.getTarget().getParent();
+                    if (t.getRelation().equals(
+                            transitionPerChildPartition.get(childP)
+                                    .getRelation())
+                            && fulfilled.add(childP)) {
+                        numOutgoingPerChildPartition.put(childP,
+                                numOutgoingPerChildPartition.get(childP) + 1);
                     }
                 }
+            }
+
+            int totalAtSource = events.size();
+            for (ITransition<Partition> tr : transitions) {
+                int numOutgoing = numOutgoingPerChildPartition.get(tr
+                        .getTarget());
 
                 double probability = (double) numOutgoing
                         / (double) totalAtSource;
@@ -388,6 +483,10 @@ public class Partition implements INode<Partition> {
 
             }
         }
+        for (Partition target : getTargets(transitions)) {
+            target.cachedTransitionSources.add(this);
+        }
+        cachedWeightedTransitions = transitions;
         return transitions;
     }
 
@@ -515,8 +614,33 @@ public class Partition implements INode<Partition> {
 
     @Override
     public List<? extends ITransition<Partition>> getAllTransitions() {
-        // TODO: implement a transition cache optimization.
-        Map<Partition, Transition<Partition>> transitions = new HashMap<Partition, Transition<Partition>>();
+        List<Transition<Partition>> transitions = cachedTransitions;
+        if (transitions == null) {
+            transitions = cacheTransitions();
+        }
+        return new ArrayList<Transition<Partition>>(transitions);
+    }
+
+    /**
+     * Computes and caches the transitions of this partition.
+     */
+    private synchronized List<Transition<Partition>> cacheTransitions() {
+        if (cachedTransitions != null) {
+            return cachedTransitions;
+        }
+        List<Transition<Partition>> transitions = computeTransitions();
+        for (Partition target : getTargets(transitions)) {
+            target.cachedTransitionSources.add(this);
+        }
+        cachedTransitions = transitions;
+        return transitions;
+    }
+
+    /**
+     * Computes the transitions of this partition from its events.
+     */
+    private List<Transition<Partition>> computeTransitions() {
+        Map<Partition, Transition<Partition>> transitions = new LinkedHashMap<Partition, Transition<Partition>>();
 
         for (EventNode e : events) {
             for (ITransition<EventNode> tr : e.getAllTransitions()) {
@@ -548,15 +672,25 @@ public class Partition implements INode<Partition> {
         return ret;
     }
 
+    /**
+     * Returns the partitions that transitions lead to, in order.
+     */
+    private static Set<Partition> getTargets(
+            List<Transition<Partition>> transitions) {
+        Set<Partition> targets = new LinkedHashSet<Partition>();
+        for (Transition<Partition> tx : transitions) {
+            targets.add(tx.getTarget());
+        }
+        return targets;
+    }
+
     @Override
     public Set<Partition> getAllSuccessors() {
-        Set<Partition> successors = new LinkedHashSet<Partition>();
-        for (EventNode e : events) {
-            for (EventNode eSucc : e.getAllSuccessors()) {
-                successors.add(eSucc.getParent());
-            }
+        List<Transition<Partition>> transitions = cachedTransitions;
+        if (transitions == null) {
+            transitions = cacheTransitions();
         }
-        return successors;
+        return getTargets(transitions);
     }
 
     // TODO: this code is very similar to getAllTransitions(), refactor it.
@@ -288,6 +288,25 @@ public class PartitionGraph implements IGraph<Partition> {
         }
     }
 
+    /**
+     * Replaces the partitions of this graph with partitions of exactly the
+     * given sets of event nodes, which must cover all the event nodes of the
+     * trace graph. Used to restore the partitions of a refinement checkpoint
+     * (see RefinementCheckpoint). The history of applied splits is cleared,
+     * since the splits refer to the partitions that are replaced.
+     * 
+     * @param eventSets
+     *            The event nodes of each partition
+     */
+    public void restorePartitions(Collection<Set<EventNode>> eventSets) {
+        partitions = new LinkedHashSet<Partition>();
+        for (Set<EventNode> eNodes : eventSets) {
+            partitions.add(new Partition(eNodes));
+        }
+        transitionCache.clear();
+        appliedSplits.clear();
+    }
+
     /**
      * Each event is mapped to its own unique partition. This is the most direct
      * means of mapping a graph into a partition graph.
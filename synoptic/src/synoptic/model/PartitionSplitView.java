@@ -0,0 +1,142 @@
+package synoptic.model;
+
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import synoptic.algorithms.graphops.PartitionMultiSplit;
+import synoptic.model.interfaces.IGraph;
+
+/**
+ * A read-only view of a partition graph as it would be after a partition
+ * split is committed, without committing the split. The graph, its partitions,
+ * and its event nodes are not modified: the partition that is split keeps
+ * standing for the first set of events of the split, the other sets are held
+ * by detached partitions that only exist in the view, and the transitions
+ * that involve the split partition are computed from the events of the view.
+ * All other transitions are read from the graph.
+ * <p>
+ * A view can therefore be model checked while the graph is read by other
+ * threads, e.g., to evaluate many candidate splits in parallel, as long as
+ * the graph is not modified in the meantime. The transitions of the graph are
+ * read from the partitions (see Partition.getAllSuccessors), which cache them
+ * safely across threads, rather than from the transition cache of the graph,
+ * which is not synchronized. A view is used by a single thread.
+ * </p>
+ * <p>
+ * The view only supports checkers that walk the graph through its nodes and
+ * the adjacency of the view, such as the FSM checker for unconstrained
+ * invariants. Transitions that are read from the partitions themselves (as
+ * with constrained invariants) still refer to the partitions of the graph.
+ * </p>
+ */
+public class PartitionSplitView implements IGraph<Partition> {
+
+    private final PartitionGraph pGraph;
+
+    /** The partition that is split in this view. */
+    private final Partition splitPartition;
+
+    /** The partitions of the view. */
+    private final Set<Partition> partitions;
+
+    /** Maps the events of the split partition to their partitions. */
+    private final Map<EventNode, Partition> splitEventParents = new LinkedHashMap<EventNode, Partition>();
+
+    /** The partitions of the view that hold the events of the split. */
+    private final Map<Partition, Set<EventNode>> splitParts = new LinkedHashMap<Partition, Set<EventNode>>();
+
+    /** Adjacency of the partitions of the view, computed on first access. */
+    private final Map<Partition, Set<Partition>> transitionCache = new LinkedHashMap<Partition, Set<Partition>>();
+
+    /**
+     * Creates a view of pGraph with split applied.
+     */
+    public PartitionSplitView(PartitionGraph pGraph, PartitionMultiSplit split) {
+        this.pGraph = pGraph;
+        this.splitPartition = split.getPartition();
+        this.partitions = new LinkedHashSet<Partition>(pGraph.getNodes());
+
+        List<Set<EventNode>> partitioning = split.getPartitioning();
+        for (int i = 0; i < partitioning.size(); i++) {
+            Set<EventNode> events = partitioning.get(i);
+            Partition part;
+            if (i == 0) {
+                // As with a committed split, the first set of events remains
+                // in the split partition.
+                part = splitPartition;
+            } else {
+                part = Partition.newDetachedPartition(events);
+                partitions.add(part);
+            }
+            splitParts.put(part, events);
+            for (EventNode event : events) {
+                splitEventParents.put(event, part);
+            }
+        }
+    }
+
+    /**
+     * Returns the partition that contains event in this view.
+     */
+    private Partition partitionOf(EventNode event) {
+        Partition part = splitEventParents.get(event);
+        if (part != null) {
+            return part;
+        }
+        return event.getParent();
+    }
+
+    @Override
+    public Set<Partition> getNodes() {
+        return partitions;
+    }
+
+    @Override
+    public Set<String> getRelations() {
+        return pGraph.getRelations();
+    }
+
+    @Override
+    public Partition getDummyInitialNode() {
+        return pGraph.getDummyInitialNode();
+    }
+
+    @Override
+    public Set<Partition> getAdjacentNodes(Partition pNode) {
+        Set<Partition> adjPartitions = transitionCache.get(pNode);
+        if (adjPartitions != null) {
+            return adjPartitions;
+        }
+
+        Set<EventNode> events = splitParts.get(pNode);
+        if (events == null) {
+            Set<Partition> graphAdjPartitions = pNode.getAllSuccessors();
+            if (!graphAdjPartitions.contains(splitPartition)) {
+                // The transitions of pNode are not affected by the split.
+                transitionCache.put(pNode, graphAdjPartitions);
+                return graphAdjPartitions;
+            }
+            events = pNode.getEventNodes();
+        }
+
+        adjPartitions = new LinkedHashSet<Partition>();
+        for (EventNode event : events) {
+            for (EventNode eSucc : event.getAllSuccessors()) {
+                adjPartitions.add(partitionOf(eSucc));
+            }
+        }
+        transitionCache.put(pNode, adjPartitions);
+        return adjPartitions;
+    }
+
+    /**
+     * A view cannot be modified.
+     */
+    @Override
+    public void add(Partition node) {
+        throw new UnsupportedOperationException();
+    }
+}
@@ -0,0 +1,377 @@
+package synoptic.model;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InvalidClassException;
+import java.io.ObjectInputStream;
+import java.io.ObjectStreamClass;
+import java.io.ObjectOutputStream;
+import java.io.RandomAccessFile;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+
+import synoptic.invariants.ITemporalInvariant;
+import synoptic.model.event.EventType;
+import synoptic.util.InternalSynopticException;
+
+/**
+ * The state of an interrupted refinement (see
+ * Bisimulation.splitUntilAllInvsSatisfied), written to a compact binary file
+ * so that refinement can be resumed from it instead of from the initial
+ * partitions. A checkpoint holds the partition of each event node, the number
+ * of split steps made so far, the invariants that were not yet satisfied, and
+ * the state of the random number generator of the run, so that a resumed run
+ * continues from the state in which the interrupted run was checkpointed.
+ * <p>
+ * The event nodes are referred to by their positions in the trace graph,
+ * which are the same when the same log is parsed with the same options. The
+ * invariants are mined in an order that may differ between runs, so they are
+ * referred to by their positions in the invariant set of the partition graph
+ * when it is sorted by the string forms of the invariants. To
+ * detect a checkpoint of a different log or different invariants, the
+ * checkpoint also holds the number and a hash of the event types of the event
+ * nodes, and of the invariants. The layout is in DataOutput (big-endian)
+ * format, as in TraceGraphSnapshot. The history of applied splits is not
+ * kept, since the splits refer to partitions that only exist in the
+ * interrupted run.
+ * </p>
+ */
+public class RefinementCheckpoint {
+
+    private static final int magic = 0x53524350; // "SRCP"
+    private static final int version = 1;
+
+    private final List<Set<EventNode>> partitions;
+    private final int numSplitSteps;
+    private final Set<ITemporalInvariant> unsatisfiedInvariants;
+    private final Random random;
+
+    private RefinementCheckpoint(List<Set<EventNode>> partitions,
+            int numSplitSteps, Set<ITemporalInvariant> unsatisfiedInvariants,
+            Random random) {
+        this.partitions = partitions;
+        this.numSplitSteps = numSplitSteps;
+        this.unsatisfiedInvariants = unsatisfiedInvariants;
+        this.random = random;
+    }
+
+    /**
+     * Writes the state of refinement to a checkpoint file. The checkpoint is
+     * first written to a temporary file, which then replaces file, so that an
+     * interruption while writing does not destroy the previous checkpoint.
+     * 
+     * @param pGraph
+     *            The partition graph that is refined
+     * @param numSplitSteps
+     *            The number of split steps made so far
+     * @param unsatisfiedInvariants
+     *            The invariants of pGraph that may not be satisfied yet
+     * @param random
+     *            The random number generator of the run
+     */
+    public static void write(PartitionGraph pGraph, int numSplitSteps,
+            Set<ITemporalInvariant> unsatisfiedInvariants, Random random,
+            File file) throws IOException {
+        Map<Partition, Integer> partitionIds = new IdentityHashMap<Partition, Integer>();
+        for (Partition partition : pGraph.getNodes()) {
+            partitionIds.put(partition, partitionIds.size());
+        }
+        List<ITemporalInvariant> invariants = getSortedInvariants(pGraph);
+        Map<ITemporalInvariant, Integer> invariantIds = new HashMap<ITemporalInvariant, Integer>();
+        for (ITemporalInvariant inv : invariants) {
+            invariantIds.put(inv, invariantIds.size());
+        }
+
+        File tmpFile = new File(file.getPath() + ".tmp");
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+                new FileOutputStream(tmpFile)));
+        try {
+            out.writeInt(magic);
+            out.writeInt(version);
+
+            Set<EventNode> events = pGraph.getTraceGraph().getNodes();
+            out.writeInt(events.size());
+            out.writeInt(eventsHash(events));
+            out.writeInt(invariantIds.size());
+            out.writeInt(invariantsHash(invariants));
+
+            out.writeInt(numSplitSteps);
+
+            byte[] randomState = serialize(random);
+            out.writeInt(randomState.length);
+            out.write(randomState);
+
+            out.writeInt(partitionIds.size());
+            for (EventNode event : events) {
+                Integer id = partitionIds.get(event.getParent());
+                if (id == null) {
+                    throw new IllegalArgumentException("Event node " + event
+                            + " is not in a partition of the graph");
+                }
+                out.writeInt(id);
+            }
+
+            out.writeInt(unsatisfiedInvariants.size());
+            for (ITemporalInvariant inv : unsatisfiedInvariants) {
+                Integer id = invariantIds.get(inv);
+                if (id == null) {
+                    throw new IllegalArgumentException("Invariant " + inv
+                            + " is not an invariant of the graph");
+                }
+                out.writeInt(id);
+            }
+        } finally {
+            out.close();
+        }
+        Files.move(tmpFile.toPath(), file.toPath(),
+                StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    /**
+     * Returns a checkpoint of the current state of refinement of pGraph, held
+     * in memory, with copies of the partitions, unsatisfiedInvariants, and
+     * random. Refinement can be restarted from it after pGraph and random are
+     * changed.
+     */
+    public static RefinementCheckpoint take(PartitionGraph pGraph,
+            int numSplitSteps, Set<ITemporalInvariant> unsatisfiedInvariants,
+            Random random) {
+        List<Set<EventNode>> partitions = new ArrayList<Set<EventNode>>();
+        for (Partition partition : pGraph.getNodes()) {
+            partitions.add(new LinkedHashSet<EventNode>(partition
+                    .getEventNodes()));
+        }
+        Random randomCopy;
+        try {
+            randomCopy = deserialize(serialize(random), null);
+        } catch (IOException e) {
+            throw new InternalSynopticException(e);
+        }
+        return new RefinementCheckpoint(partitions, numSplitSteps,
+                new LinkedHashSet<ITemporalInvariant>(unsatisfiedInvariants),
+                randomCopy);
+    }
+
+    /**
+     * Reads a checkpoint file of a refinement of pGraph. The partitions of
+     * pGraph are not changed until restorePartitions is called.
+     * 
+     * @throws IOException
+     *             if the file cannot be read, is not a valid checkpoint, or is
+     *             a checkpoint of a different log or invariants
+     */
+    public static RefinementCheckpoint read(File file, PartitionGraph pGraph)
+            throws IOException {
+        RandomAccessFile raf = new RandomAccessFile(file, "r");
+        try {
+            FileChannel channel = raf.getChannel();
+            if (channel.size() > Integer.MAX_VALUE) {
+                throw new IOException("Refinement checkpoint " + file
+                        + " is too large to be mapped");
+            }
+            ByteBuffer in = channel.map(FileChannel.MapMode.READ_ONLY, 0,
+                    channel.size());
+            try {
+                return read(in, file, pGraph);
+            } catch (BufferUnderflowException e) {
+                throw new IOException("Refinement checkpoint " + file
+                        + " is truncated");
+            } catch (IndexOutOfBoundsException e) {
+                throw new IOException("Refinement checkpoint " + file
+                        + " is corrupt");
+            }
+        } finally {
+            raf.close();
+        }
+    }
+
+    private static RefinementCheckpoint read(ByteBuffer in, File file,
+            PartitionGraph pGraph) throws IOException {
+        if (in.remaining() < 8 || in.getInt() != magic) {
+            throw new IOException(file + " is not a refinement checkpoint");
+        }
+        int fileVersion = in.getInt();
+        if (fileVersion != version) {
+            throw new IOException("Refinement checkpoint " + file
+                    + " has unsupported version " + fileVersion);
+        }
+
+        Set<EventNode> events = pGraph.getTraceGraph().getNodes();
+        if (in.getInt() != events.size() || in.getInt() != eventsHash(events)) {
+            throw new IOException("Refinement checkpoint " + file
+                    + " was written for a different log");
+        }
+        List<ITemporalInvariant> invariants = getSortedInvariants(pGraph);
+        if (in.getInt() != invariants.size()
+                || in.getInt() != invariantsHash(invariants)) {
+            throw new IOException("Refinement checkpoint " + file
+                    + " was written for different invariants");
+        }
+
+        int numSplitSteps = in.getInt();
+
+        byte[] randomState = new byte[in.getInt()];
+        in.get(randomState);
+        Random random = deserialize(randomState, file);
+
+        List<Set<EventNode>> partitions = new ArrayList<Set<EventNode>>();
+        int numPartitions = in.getInt();
+        for (int i = 0; i < numPartitions; i++) {
+            partitions.add(new LinkedHashSet<EventNode>());
+        }
+        for (EventNode event : events) {
+            partitions.get(in.getInt()).add(event);
+        }
+        for (Set<EventNode> partition : partitions) {
+            if (partition.isEmpty()) {
+                throw new IOException("Refinement checkpoint " + file
+                        + " is corrupt");
+            }
+            EventType eType = partition.iterator().next().getEType();
+            for (EventNode event : partition) {
+                if (!event.getEType().equals(eType)) {
+                    throw new IOException("Refinement checkpoint " + file
+                            + " is corrupt");
+                }
+            }
+        }
+
+        Set<ITemporalInvariant> unsatisfiedInvariants = new LinkedHashSet<ITemporalInvariant>();
+        int numUnsatisfied = in.getInt();
+        for (int i = 0; i < numUnsatisfied; i++) {
+            unsatisfiedInvariants.add(invariants.get(in.getInt()));
+        }
+
+        return new RefinementCheckpoint(partitions, numSplitSteps,
+                unsatisfiedInvariants, random);
+    }
+
+    /**
+     * Replaces the partitions of pGraph, which must be the graph that the
+     * checkpoint was read for, with the partitions of the checkpoint.
+     */
+    public void restorePartitions(PartitionGraph pGraph) {
+        pGraph.restorePartitions(partitions);
+    }
+
+    public int getNumSplitSteps() {
+        return numSplitSteps;
+    }
+
+    public Set<ITemporalInvariant> getUnsatisfiedInvariants() {
+        return unsatisfiedInvariants;
+    }
+
+    /**
+     * Returns the random number generator of the run, in the state that it was
+     * in when the checkpoint was written.
+     */
+    public Random getRandom() {
+        return random;
+    }
+
+    private static int eventsHash(Set<EventNode> events) {
+        int hash = 1;
+        for (EventNode event : events) {
+            hash = 31 * hash + event.getEType().toString().hashCode();
+        }
+        return hash;
+    }
+
+    /**
+     * Returns the invariants of pGraph, sorted by their string forms.
+     */
+    private static List<ITemporalInvariant> getSortedInvariants(
+            PartitionGraph pGraph) {
+        List<ITemporalInvariant> invariants = new ArrayList<ITemporalInvariant>(
+                pGraph.getInvariants().getSet());
+        Collections.sort(invariants, new Comparator<ITemporalInvariant>() {
+            @Override
+            public int compare(ITemporalInvariant inv1, ITemporalInvariant inv2) {
+                return inv1.toString().compareTo(inv2.toString());
+            }
+        });
+        return invariants;
+    }
+
+    private static int invariantsHash(List<ITemporalInvariant> invariants) {
+        int hash = 1;
+        for (ITemporalInvariant inv : invariants) {
+            hash = 31 * hash + inv.toString().hashCode();
+        }
+        return hash;
+    }
+
+    /**
+     * Random does not expose its seed, but it is serializable, and its
+     * serialized form holds the seed.
+     */
+    private static byte[] serialize(Random random) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        ObjectOutputStream out = new ObjectOutputStream(bytes);
+        out.writeObject(random);
+        out.close();
+        return bytes.toByteArray();
+    }
+
+    private static Random deserialize(byte[] state, File file)
+            throws IOException {
+        ObjectInputStream in = new RandomInputStream(new ByteArrayInputStream(
+                state));
+        try {
+            return (Random) in.readObject();
+        } catch (InvalidClassException e) {
+            throw new IOException("Refinement checkpoint " + file
+                    + " has an unknown random number generator");
+        } catch (ClassNotFoundException e) {
+            throw new IOException("Refinement checkpoint " + file
+                    + " has an unknown random number generator");
+        } catch (ClassCastException e) {
+            throw new IOException("Refinement checkpoint " + file
+                    + " is corrupt");
+        } finally {
+            in.close();
+        }
+    }
+
+    /**
+     * Reads the serialized form of a java.util.Random, and rejects the classes
+     * of any other object, so that reading a checkpoint does not instantiate
+     * arbitrary classes.
+     */
+    private static class RandomInputStream extends ObjectInputStream {
+
+        public RandomInputStream(InputStream in) throws IOException {
+            super(in);
+        }
+
+        @Override
+        protected Class<?> resolveClass(ObjectStreamClass desc)
+                throws IOException, ClassNotFoundException {
+            if (!desc.getName().equals(Random.class.getName())) {
+                throw new InvalidClassException(desc.getName(),
+                        "not a java.util.Random");
+            }
+            return super.resolveClass(desc);
+        }
+    }
+}
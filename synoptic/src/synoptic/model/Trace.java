@@ -196,6 +196,13 @@ public class Trace {
         return null;
     }
 
+    /**
+     * Returns the first non-INITIAL node for each relation in this trace.
+     */
+    Map<String, EventNode> getInitialNodes() {
+        return relationToInitialNodes;
+    }
+
     public boolean containsRelation(String relation) {
         return relationToInitialNodes.containsKey(relation);
     }
@@ -0,0 +1,531 @@
+package synoptic.model;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import synoptic.model.event.DistEventType;
+import synoptic.model.event.Event;
+import synoptic.model.event.EventType;
+import synoptic.model.event.StringEventType;
+import synoptic.util.time.DTotalTime;
+import synoptic.util.time.FTotalTime;
+import synoptic.util.time.ITime;
+import synoptic.util.time.ITotalTime;
+import synoptic.util.time.LTotalTime;
+import synoptic.util.time.VectorTime;
+
+/**
+ * Writes a ChainsTraceGraph or a DAGsTraceGraph to a compact binary file, and
+ * reads it back through a memory-mapped buffer. Loading a snapshot rebuilds
+ * the trace graph that was built from the parsed log, without matching any
+ * log lines against regular expressions, so it can replace parsing when the
+ * same log is processed repeatedly with different modeling options.
+ * <p>
+ * A snapshot holds a table of the strings in the graph (event type labels,
+ * process names, file names, and relations), the distinct event types, the
+ * distinct sets of relations that label transitions, and then the events
+ * (each with its type, file name, line number, log line, time, and trace id),
+ * the transitions out of each node, and the ordering information that is
+ * particular to the kind of graph: the initial nodes of each trace in a
+ * ChainsTraceGraph, and the process-local successors in a DAGsTraceGraph. All
+ * of the references are indices into the tables, which are written in
+ * DataOutput (big-endian) format. DistEventTypes are stored as they are
+ * created by the parser, by their label and process name.
+ * </p>
+ * <p>
+ * Successive events of a process usually differ in only a few clocks of their
+ * vector times, so a vector time is written as the differences from the
+ * vector time of the previous event of the same process when that is
+ * shorter.
+ * </p>
+ */
+public class TraceGraphSnapshot {
+
+    private static final int magic = 0x53544753; // "STGS"
+    private static final int version = 2;
+
+    private static final byte chainsKind = 0;
+    private static final byte dagsKind = 1;
+
+    // Tags for the kinds of event times.
+    private static final byte noTime = 0;
+    private static final byte intTime = 1;
+    private static final byte longTime = 2;
+    private static final byte floatTime = 3;
+    private static final byte doubleTime = 4;
+    private static final byte vectorTime = 5;
+    private static final byte vectorDeltaTime = 6;
+
+    private static final Charset charset = StandardCharsets.UTF_8;
+
+    private TraceGraphSnapshot() {
+        // Only static methods.
+    }
+
+    /**
+     * Writes a ChainsTraceGraph or a DAGsTraceGraph to a snapshot file.
+     */
+    public static void write(TraceGraph<?> graph, File file) throws IOException {
+        byte kind;
+        if (graph instanceof ChainsTraceGraph) {
+            kind = chainsKind;
+        } else if (graph instanceof DAGsTraceGraph) {
+            kind = dagsKind;
+        } else {
+            throw new IllegalArgumentException("Cannot write a snapshot of "
+                    + graph.getClass().getName());
+        }
+
+        // Number the nodes: the dummy INITIAL and TERMINAL nodes come first.
+        List<EventNode> nodes = new ArrayList<EventNode>();
+        nodes.add(graph.dummyInitialNode);
+        nodes.add(graph.dummyTerminalNode);
+        for (EventNode node : graph.getNodes()) {
+            if (node != graph.dummyInitialNode
+                    && node != graph.dummyTerminalNode) {
+                nodes.add(node);
+            }
+        }
+        Map<EventNode, Integer> nodeIds = new IdentityHashMap<EventNode, Integer>();
+        for (int i = 0; i < nodes.size(); i++) {
+            nodeIds.put(nodes.get(i), i);
+        }
+
+        // Intern the strings, event types, and relation sets.
+        Interner<String> strings = new Interner<String>();
+        Interner<EventType> types = new Interner<EventType>();
+        Interner<List<String>> relationSets = new Interner<List<String>>();
+        for (int i = 2; i < nodes.size(); i++) {
+            EventType eType = nodes.get(i).getEType();
+            if (!types.contains(eType)) {
+                types.id(eType);
+                strings.id(eType.getETypeLabel());
+                if (eType instanceof DistEventType) {
+                    strings.id(((DistEventType) eType).getProcessName());
+                }
+            }
+            String fileName = nodes.get(i).getEvent().getFileName();
+            if (fileName != null) {
+                strings.id(fileName);
+            }
+        }
+        for (EventNode node : nodes) {
+            for (Transition<EventNode> tx : node.getAllTransitions()) {
+                List<String> relations = new ArrayList<String>(
+                        tx.getRelation());
+                if (!relationSets.contains(relations)) {
+                    relationSets.id(relations);
+                    for (String relation : relations) {
+                        strings.id(relation);
+                    }
+                }
+            }
+        }
+        if (kind == chainsKind) {
+            for (Trace trace : ((ChainsTraceGraph) graph).getTraces()) {
+                for (String relation : trace.getInitialNodes().keySet()) {
+                    strings.id(relation);
+                }
+            }
+        }
+
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+                new FileOutputStream(file)));
+        try {
+            out.writeInt(magic);
+            out.writeInt(version);
+            out.writeByte(kind);
+
+            out.writeInt(strings.size());
+            for (String s : strings.values()) {
+                writeString(out, s);
+            }
+
+            out.writeInt(types.size());
+            for (EventType eType : types.values()) {
+                out.writeInt(strings.id(eType.getETypeLabel()));
+                if (eType instanceof DistEventType) {
+                    out.writeInt(strings.id(((DistEventType) eType)
+                            .getProcessName()));
+                } else {
+                    out.writeInt(-1);
+                }
+            }
+
+            out.writeInt(relationSets.size());
+            for (List<String> relations : relationSets.values()) {
+                out.writeInt(relations.size());
+                for (String relation : relations) {
+                    out.writeInt(strings.id(relation));
+                }
+            }
+
+            // The vector time of the last written event of each process.
+            Map<String, VectorTime> lastVectorTimes = new HashMap<String, VectorTime>();
+            out.writeInt(nodes.size() - 2);
+            for (int i = 2; i < nodes.size(); i++) {
+                EventNode node = nodes.get(i);
+                Event event = node.getEvent();
+                out.writeInt(types.id(event.getEType()));
+                out.writeInt(event.getFileName() == null ? -1 : strings
+                        .id(event.getFileName()));
+                out.writeInt(event.getLineNum());
+                out.writeInt(node.getTraceID());
+                writeString(out, event.getLine());
+                writeTime(out, event.getTime(),
+                        getProcessName(event.getEType()), lastVectorTimes);
+            }
+
+            for (EventNode node : nodes) {
+                List<Transition<EventNode>> transitions = node
+                        .getAllTransitions();
+                out.writeInt(transitions.size());
+                for (Transition<EventNode> tx : transitions) {
+                    out.writeInt(nodeIds.get(tx.getTarget()));
+                    out.writeInt(relationSets.id(new ArrayList<String>(tx
+                            .getRelation())));
+                }
+            }
+
+            if (kind == chainsKind) {
+                List<Trace> traces = ((ChainsTraceGraph) graph).getTraces();
+                out.writeInt(traces.size());
+                for (Trace trace : traces) {
+                    Map<String, EventNode> initialNodes = trace
+                            .getInitialNodes();
+                    out.writeInt(initialNodes.size());
+                    for (String relation : initialNodes.keySet()) {
+                        out.writeInt(strings.id(relation));
+                        out.writeInt(nodeIds.get(initialNodes.get(relation)));
+                    }
+                }
+            } else {
+                for (int i = 2; i < nodes.size(); i++) {
+                    EventNode succ = nodes.get(i).getProcessLocalSuccessor();
+                    out.writeInt(succ == null ? -1 : nodeIds.get(succ));
+                }
+            }
+        } finally {
+            out.close();
+        }
+    }
+
+    /**
+     * Reads a snapshot file, and returns the ChainsTraceGraph or
+     * DAGsTraceGraph that it contains.
+     * 
+     * @throws IOException
+     *             if the file cannot be read or is not a valid snapshot
+     */
+    public static TraceGraph<?> read(File file) throws IOException {
+        RandomAccessFile raf = new RandomAccessFile(file, "r");
+        try {
+            FileChannel channel = raf.getChannel();
+            if (channel.size() > Integer.MAX_VALUE) {
+                throw new IOException("Trace graph snapshot " + file
+                        + " is too large to be mapped");
+            }
+            ByteBuffer in = channel.map(FileChannel.MapMode.READ_ONLY, 0,
+                    channel.size());
+            try {
+                return read(in, file);
+            } catch (BufferUnderflowException e) {
+                throw new IOException("Trace graph snapshot " + file
+                        + " is truncated");
+            } catch (IndexOutOfBoundsException e) {
+                throw new IOException("Trace graph snapshot " + file
+                        + " is corrupt");
+            }
+        } finally {
+            raf.close();
+        }
+    }
+
+    private static TraceGraph<?> read(ByteBuffer in, File file)
+            throws IOException {
+        if (in.remaining() < 8 || in.getInt() != magic) {
+            throw new IOException(file + " is not a trace graph snapshot");
+        }
+        int fileVersion = in.getInt();
+        if (fileVersion != version) {
+            throw new IOException("Trace graph snapshot " + file
+                    + " has unsupported version " + fileVersion);
+        }
+        byte kind = in.get();
+        if (kind != chainsKind && kind != dagsKind) {
+            throw new IOException("Trace graph snapshot " + file
+                    + " contains an unknown kind of graph");
+        }
+
+        String[] strings = new String[in.getInt()];
+        for (int i = 0; i < strings.length; i++) {
+            strings[i] = readString(in);
+        }
+
+        EventType[] types = new EventType[in.getInt()];
+        for (int i = 0; i < types.length; i++) {
+            String label = strings[in.getInt()];
+            int processName = in.getInt();
+            if (kind == chainsKind) {
+                types[i] = new StringEventType(label);
+            } else {
+                types[i] = new DistEventType(label, strings[processName]);
+            }
+        }
+
+        List<List<String>> relationSets = new ArrayList<List<String>>();
+        int numRelationSets = in.getInt();
+        for (int i = 0; i < numRelationSets; i++) {
+            List<String> relations = new ArrayList<String>();
+            int numRelations = in.getInt();
+            for (int j = 0; j < numRelations; j++) {
+                relations.add(strings[in.getInt()]);
+            }
+            relationSets.add(relations);
+        }
+
+        Map<String, VectorTime> lastVectorTimes = new HashMap<String, VectorTime>();
+        int numEvents = in.getInt();
+        List<EventNode> events = new ArrayList<EventNode>(numEvents);
+        for (int i = 0; i < numEvents; i++) {
+            EventType eType = types[in.getInt()];
+            int fileName = in.getInt();
+            int lineNum = in.getInt();
+            int traceID = in.getInt();
+            String logLine = readString(in);
+            Event event = new Event(eType, logLine, fileName < 0 ? null
+                    : strings[fileName], lineNum);
+            event.setTime(readTime(in, getProcessName(eType), lastVectorTimes));
+            EventNode node = new EventNode(event);
+            node.setTraceID(traceID);
+            events.add(node);
+        }
+
+        TraceGraph<?> graph;
+        if (kind == chainsKind) {
+            graph = new ChainsTraceGraph(events);
+        } else {
+            graph = new DAGsTraceGraph(events);
+        }
+        List<EventNode> nodes = new ArrayList<EventNode>(numEvents + 2);
+        nodes.add(graph.dummyInitialNode);
+        nodes.add(graph.dummyTerminalNode);
+        nodes.addAll(events);
+
+        for (EventNode node : nodes) {
+            int numTransitions = in.getInt();
+            for (int i = 0; i < numTransitions; i++) {
+                EventNode target = nodes.get(in.getInt());
+                Set<String> relations = new LinkedHashSet<String>(
+                        relationSets.get(in.getInt()));
+                if (node == graph.dummyInitialNode) {
+                    // Also records the initial nodes of each trace id.
+                    graph.tagInitial(target, relations);
+                } else {
+                    node.addTransition(target, relations);
+                }
+            }
+        }
+
+        if (kind == chainsKind) {
+            ChainsTraceGraph chainsGraph = (ChainsTraceGraph) graph;
+            int numTraces = in.getInt();
+            for (int i = 0; i < numTraces; i++) {
+                Trace trace = new Trace();
+                int numInitialNodes = in.getInt();
+                for (int j = 0; j < numInitialNodes; j++) {
+                    String relation = strings[in.getInt()];
+                    trace.addInitialNode(relation, nodes.get(in.getInt()));
+                }
+                chainsGraph.addTrace(trace);
+            }
+        } else {
+            for (EventNode node : events) {
+                int succ = in.getInt();
+                if (succ >= 0) {
+                    node.setProcessLocalSuccessor(nodes.get(succ));
+                }
+            }
+        }
+        return graph;
+    }
+
+    /**
+     * Writes a string as its length in bytes followed by its UTF-8 bytes, or
+     * -1 for null.
+     */
+    private static void writeString(DataOutputStream out, String s)
+            throws IOException {
+        if (s == null) {
+            out.writeInt(-1);
+            return;
+        }
+        byte[] bytes = s.getBytes(charset);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readString(ByteBuffer in) {
+        int length = in.getInt();
+        if (length < 0) {
+            return null;
+        }
+        byte[] bytes = new byte[length];
+        in.get(bytes);
+        return new String(bytes, charset);
+    }
+
+    /**
+     * Returns the process name of a DistEventType, and null for other event
+     * types, so that the vector times of their events are delta-encoded
+     * against each other.
+     */
+    private static String getProcessName(EventType eType) {
+        if (eType instanceof DistEventType) {
+            return ((DistEventType) eType).getProcessName();
+        }
+        return null;
+    }
+
+    private static void writeTime(DataOutputStream out, ITime time,
+            String processName, Map<String, VectorTime> lastVectorTimes)
+            throws IOException {
+        if (time == null) {
+            out.writeByte(noTime);
+        } else if (time instanceof ITotalTime) {
+            out.writeByte(intTime);
+            out.writeInt(((ITotalTime) time).time);
+        } else if (time instanceof LTotalTime) {
+            out.writeByte(longTime);
+            out.writeLong(((LTotalTime) time).time);
+        } else if (time instanceof FTotalTime) {
+            out.writeByte(floatTime);
+            out.writeFloat(((FTotalTime) time).time);
+        } else if (time instanceof DTotalTime) {
+            out.writeByte(doubleTime);
+            out.writeDouble(((DTotalTime) time).time);
+        } else if (time instanceof VectorTime) {
+            VectorTime vTime = (VectorTime) time;
+            VectorTime last = lastVectorTimes.put(processName, vTime);
+            int numChanged = 0;
+            if (last != null && last.size() == vTime.size()) {
+                for (int i = 0; i < vTime.size(); i++) {
+                    if (vTime.get(i) != last.get(i)) {
+                        numChanged++;
+                    }
+                }
+            }
+            if (last != null && last.size() == vTime.size()
+                    && 2 * numChanged < vTime.size()) {
+                // An index and a difference for each changed clock.
+                out.writeByte(vectorDeltaTime);
+                out.writeInt(numChanged);
+                for (int i = 0; i < vTime.size(); i++) {
+                    if (vTime.get(i) != last.get(i)) {
+                        out.writeInt(i);
+                        out.writeInt(vTime.get(i) - last.get(i));
+                    }
+                }
+            } else {
+                out.writeByte(vectorTime);
+                out.writeInt(vTime.size());
+                for (int i = 0; i < vTime.size(); i++) {
+                    out.writeInt(vTime.get(i));
+                }
+            }
+        } else {
+            throw new IllegalArgumentException("Cannot write time of type "
+                    + time.getClass().getName());
+        }
+    }
+
+    private static ITime readTime(ByteBuffer in, String processName,
+            Map<String, VectorTime> lastVectorTimes) throws IOException {
+        byte tag = in.get();
+        switch (tag) {
+        case noTime:
+            return null;
+        case intTime:
+            return new ITotalTime(in.getInt());
+        case longTime:
+            return new LTotalTime(in.getLong());
+        case floatTime:
+            return new FTotalTime(in.getFloat());
+        case doubleTime:
+            return new DTotalTime(in.getDouble());
+        case vectorTime:
+            int[] vector = new int[in.getInt()];
+            for (int i = 0; i < vector.length; i++) {
+                vector[i] = in.getInt();
+            }
+            VectorTime vTime = new VectorTime(vector);
+            lastVectorTimes.put(processName, vTime);
+            return vTime;
+        case vectorDeltaTime:
+            VectorTime last = lastVectorTimes.get(processName);
+            if (last == null) {
+                throw new IOException(
+                        "Vector time difference without a previous vector time in trace graph snapshot");
+            }
+            int[] clocks = last.toArray();
+            int numChanged = in.getInt();
+            for (int i = 0; i < numChanged; i++) {
+                int index = in.getInt();
+                clocks[index] += in.getInt();
+            }
+            vTime = new VectorTime(clocks);
+            lastVectorTimes.put(processName, vTime);
+            return vTime;
+        default:
+            throw new IOException("Unknown time type in trace graph snapshot: "
+                    + tag);
+        }
+    }
+
+    /**
+     * Assigns dense ids to distinct values, in the order in which they are
+     * first seen.
+     */
+    private static class Interner<T> {
+        private final Map<T, Integer> ids = new HashMap<T, Integer>();
+        private final List<T> values = new ArrayList<T>();
+
+        boolean contains(T value) {
+            return ids.containsKey(value);
+        }
+
+        int id(T value) {
+            Integer id = ids.get(value);
+            if (id == null) {
+                id = values.size();
+                ids.put(value, id);
+                values.add(value);
+            }
+            return id;
+        }
+
+        int size() {
+            return values.size();
+        }
+
+        List<T> values() {
+            return values;
+        }
+    }
+}
@@ -87,6 +87,9 @@ public class DistEventType extends EventType implements IDistEventType {
      * @return
      */
     public String interpretEType(List<ChannelId> channelIds) {
+        // The fields below may change, even if interpretation fails.
+        resetId();
+
         if (channelIds == null)
             return "Empty set of channelIds";
         if (channelId != null)
@@ -277,6 +280,24 @@ public class DistEventType extends EventType implements IDistEventType {
         processName = pName;
     }
 
+    /**
+     * Creates a copy of a DistEventType.
+     */
+    private DistEventType(DistEventType copyFrom) {
+        this(copyFrom.eType, copyFrom.processName,
+                copyFrom.isInitialEventType, copyFrom.isTerminalEventType);
+        pid = copyFrom.pid;
+        eventCls = copyFrom.eventCls;
+        channelId = copyFrom.channelId;
+    }
+
+    @Override
+    EventType internCopy() {
+        // CSight interprets event types after they are parsed, so the
+        // EventTypeTable must not share an instance that may change.
+        return new DistEventType(this);
+    }
+
     /**
      * Creates a new DistEventType that is a non-INITIAL and non-TERMINAL with a
      * pName.
@@ -321,6 +342,7 @@ public class DistEventType extends EventType implements IDistEventType {
     }
 
     public String setProcessName(String pName) {
+        resetId();
         return processName = pName;
     }
 
@@ -354,6 +376,10 @@ public class DistEventType extends EventType implements IDistEventType {
         }
 
         DistEventType otherE = (DistEventType) other;
+        if (haveIds(otherE)) {
+            return getId() == otherE.getId();
+        }
+
         if (!otherE.getEType().equals(eType)) {
             return false;
         }
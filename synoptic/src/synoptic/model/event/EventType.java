@@ -29,6 +29,12 @@ public abstract class EventType implements Comparable<EventType> {
      */
     protected final boolean isTerminalEventType;
 
+    /**
+     * The id of this type in the EventTypeTable, or -1 if the id has not been
+     * looked up yet, or if this type has changed since then.
+     */
+    private volatile int id = -1;
+
     /**
      * Instantiates a new EventType that can be an INITIAL, a TERMINAL, or
      * neither. It cannot be both an INITIAL and a TERMINAL.
@@ -55,6 +61,42 @@ public abstract class EventType implements Comparable<EventType> {
     public boolean isSpecialEventType() {
         return isInitialEventType || isTerminalEventType;
     }
+
+    /**
+     * Returns the dense integer id of this event type in the global
+     * EventTypeTable. Equal event types have equal ids.
+     */
+    public int getId() {
+        int i = id;
+        if (i < 0) {
+            i = EventTypeTable.intern(this);
+            id = i;
+        }
+        return i;
+    }
+
+    /**
+     * Must be called whenever a field that is used by equals() changes, so
+     * that the id of this type is looked up again.
+     */
+    protected void resetId() {
+        id = -1;
+    }
+
+    /**
+     * Returns whether or not both this type and other have ids, in which case
+     * the two types are equal if and only if their ids are equal.
+     */
+    protected boolean haveIds(EventType other) {
+        return id >= 0 && other.id >= 0;
+    }
+
+    /**
+     * Returns an instance that is equal to this type and that does not change
+     * when this type changes. Used as the key of this type in the
+     * EventTypeTable.
+     */
+    abstract EventType internCopy();
     
     /**
      * Returns the label of this event type.
@@ -0,0 +1,61 @@
+package synoptic.model.event;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Numbers a set of event types densely (0, 1, 2, ...), in the order in which
+ * they are added. The index of a type is looked up in an array by the type's
+ * EventTypeTable id, so that code that counts events can number the types it
+ * sees without hashing them, and then keep its counts in arrays indexed by
+ * these small numbers. An index is not thread-safe.
+ */
+public class EventTypeIndex {
+
+    // Maps an EventTypeTable id to (index + 1), or to 0 for absent types.
+    private int[] indexById = new int[16];
+
+    private final List<EventType> types = new ArrayList<EventType>();
+
+    /**
+     * Returns the index of eType, adding it to the index if it is not already
+     * present.
+     */
+    public int add(EventType eType) {
+        int id = eType.getId();
+        if (id >= indexById.length) {
+            indexById = Arrays.copyOf(indexById,
+                    Math.max(id + 1, 2 * indexById.length));
+        }
+        int index = indexById[id] - 1;
+        if (index < 0) {
+            index = types.size();
+            types.add(eType);
+            indexById[id] = index + 1;
+        }
+        return index;
+    }
+
+    /**
+     * Returns the index of eType, or -1 if it has not been added.
+     */
+    public int indexOf(EventType eType) {
+        int id = eType.getId();
+        return id < indexById.length ? indexById[id] - 1 : -1;
+    }
+
+    /**
+     * Returns the (first added instance of the) event type with an index.
+     */
+    public EventType get(int index) {
+        return types.get(index);
+    }
+
+    /**
+     * Returns the number of event types in the index.
+     */
+    public int size() {
+        return types.size();
+    }
+}
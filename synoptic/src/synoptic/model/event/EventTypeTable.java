@@ -0,0 +1,69 @@
+package synoptic.model.event;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * A global symbol table of event types. The table assigns each distinct event
+ * type (according to EventType.equals()) a dense integer id, starting at 0, in
+ * the order in which the types are first seen. Equal types always have the
+ * same id, so code that handles many events (e.g., miners, partitions, and
+ * model checkers) can index arrays of size size() by EventType.getId() instead
+ * of hashing event types.
+ * <p>
+ * Ids are usually assigned when events are parsed, and are cached by the
+ * EventType instances (see EventType.getId()). The table keeps its own copy of
+ * each type, so that later changes to a type instance (e.g., by
+ * DistEventType.interpretEType()) do not change the table. Ids are never
+ * reclaimed. The table is thread-safe.
+ * </p>
+ */
+public final class EventTypeTable {
+
+    private static final ConcurrentHashMap<EventType, Integer> ids = new ConcurrentHashMap<EventType, Integer>();
+
+    // The interned types, indexed by id. Guarded by the class lock.
+    private static final List<EventType> types = new ArrayList<EventType>();
+
+    private EventTypeTable() {
+        // Only static methods.
+    }
+
+    /**
+     * Returns the id of eType, assigning the next id to it if no equal type
+     * has been interned yet.
+     */
+    static int intern(EventType eType) {
+        Integer id = ids.get(eType);
+        if (id != null) {
+            return id;
+        }
+        synchronized (EventTypeTable.class) {
+            id = ids.get(eType);
+            if (id == null) {
+                EventType key = eType.internCopy();
+                id = types.size();
+                types.add(key);
+                ids.put(key, id);
+            }
+            return id;
+        }
+    }
+
+    /**
+     * Returns the interned type with an id. The returned type must not be
+     * modified.
+     */
+    public static synchronized EventType getType(int id) {
+        return types.get(id);
+    }
+
+    /**
+     * Returns the number of ids that have been assigned. All ids are less than
+     * this number.
+     */
+    public static synchronized int size() {
+        return types.size();
+    }
+}
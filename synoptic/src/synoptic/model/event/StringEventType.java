@@ -58,7 +58,17 @@ public class StringEventType extends EventType {
         if (!super.equals(other)) {
             return false;
         }
-        return eType.equals(((StringEventType) other).eType);
+        StringEventType otherE = (StringEventType) other;
+        if (haveIds(otherE)) {
+            return getId() == otherE.getId();
+        }
+        return eType.equals(otherE.eType);
+    }
+
+    @Override
+    EventType internCopy() {
+        // String event types never change.
+        return this;
     }
 
     @Override
@@ -1,5 +1,6 @@
 package synoptic.model.interfaces;
 
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
 
@@ -12,6 +13,12 @@ import synoptic.model.event.EventType;
  */
 public interface IRelationPath {
 
+    /**
+     * Returns the types of the events in this path, in path order. The counts
+     * below are all derived from this sequence.
+     */
+    public List<EventType> getEventTypes();
+
     public Set<EventType> getSeen();
 
     public Map<EventType, Integer> getEventCounts();
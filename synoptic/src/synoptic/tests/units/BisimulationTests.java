@@ -1,12 +1,20 @@
 package synoptic.tests.units;
 
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertTrue;
 
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
 
 import org.junit.Test;
 
 import synoptic.algorithms.Bisimulation;
+import synoptic.algorithms.graphops.IOperation;
+import synoptic.algorithms.graphops.PartitionMerge;
 import synoptic.invariants.TemporalInvariantSet;
 import synoptic.invariants.miners.ChainWalkingTOInvMiner;
 import synoptic.invariants.miners.ITOInvariantMiner;
@@ -136,6 +144,116 @@ public class BisimulationTests extends SynopticTest {
         assertTrue(parsedEvents.size() == 0);
     }
 
+    /**
+     * Refines the initial partition graph of the trace graph of parsedEvents
+     * with respect to invariants, evaluating candidate splits with
+     * splitThreads threads. Checks that the refined graph satisfies the
+     * invariants, and returns its partitions as sets of the indices of their
+     * events in parsedEvents.
+     */
+    private static Set<Set<Integer>> refineGraph(List<EventNode> parsedEvents,
+            ChainsTraceGraph inputGraph, TemporalInvariantSet invariants,
+            int splitThreads, long seed) {
+        AbstractMain main = AbstractMain.getInstance();
+        main.options.splitThreads = splitThreads;
+        main.random = new Random(seed);
+
+        PartitionGraph pGraph = new PartitionGraph(inputGraph, true, invariants);
+        Bisimulation.splitUntilAllInvsSatisfied(pGraph);
+        assertTrue(invariants.getAllCounterExamples(pGraph) == null);
+
+        Set<Set<Integer>> partitioning = new HashSet<Set<Integer>>();
+        for (Partition p : pGraph.getNodes()) {
+            Set<Integer> indices = new HashSet<Integer>();
+            for (EventNode e : p.getEventNodes()) {
+                indices.add(parsedEvents.indexOf(e));
+            }
+            partitioning.add(indices);
+        }
+        return partitioning;
+    }
+
+    /**
+     * Refinement that evaluates candidate splits in parallel, on views of the
+     * split graph, chooses the same splits as refinement that applies and
+     * rewinds each candidate split does, given the same random seed.
+     */
+    @Test
+    public void parallelSplitEvaluationTest() throws Exception {
+        String[] eventTypes = new String[] { "--", "a", "b", "c", "d", "e" };
+        try {
+            for (int i = 0; i < 5; i++) {
+                String[] log = TOLogInvariantMiningTests
+                        .genRandomLog(eventTypes);
+                logger.fine("log: " + Arrays.toString(log));
+                TraceParser defParser = genDefParser();
+                ArrayList<EventNode> parsedEvents = defParser
+                        .parseTraceString(concatinateWithNewlines(log),
+                                getTestName().getMethodName(), -1);
+                ChainsTraceGraph inputGraph = defParser
+                        .generateDirectTORelation(parsedEvents);
+                // Refinement does not always satisfy IntrBy invariants, so
+                // they are not used. Both refinements use the same invariant
+                // set, since refinement considers the invariants in the
+                // order of the set.
+                TemporalInvariantSet invariants = filterIntrByInvariants(new ChainWalkingTOInvMiner()
+                        .computeInvariants(inputGraph, false, false));
+                Set<Set<Integer>> sequential = refineGraph(parsedEvents,
+                        inputGraph, invariants, 1, i);
+                Set<Set<Integer>> parallel = refineGraph(parsedEvents,
+                        inputGraph, invariants, 4, i);
+                assertEquals(sequential, parallel);
+            }
+        } finally {
+            AbstractMain.getInstance().options.splitThreads = 1;
+        }
+    }
+
+    /**
+     * Coarsening a refined graph maintains the invariants and the events of
+     * the graph, and leaves no pair of partitions of the same type that could
+     * be merged without violating an invariant.
+     */
+    @Test
+    public void mergePartitionsTest() throws Exception {
+        String[] eventTypes = new String[] { "--", "a", "b", "c", "d", "e" };
+        AbstractMain main = AbstractMain.getInstance();
+        for (int i = 0; i < 5; i++) {
+            main.random = new Random(i);
+            String[] log = TOLogInvariantMiningTests.genRandomLog(eventTypes);
+            logger.fine("log: " + Arrays.toString(log));
+
+            ChainsTraceGraph inputGraph = genInitialLinearGraph(log);
+            TemporalInvariantSet invariants = filterIntrByInvariants(new ChainWalkingTOInvMiner()
+                    .computeInvariants(inputGraph, false, false));
+            PartitionGraph pGraph = new PartitionGraph(inputGraph, true,
+                    invariants);
+            int numEvents = 0;
+            for (Partition p : pGraph.getNodes()) {
+                numEvents += p.size();
+            }
+
+            Bisimulation.splitUntilAllInvsSatisfied(pGraph);
+            Bisimulation.mergePartitions(pGraph);
+            assertTrue(invariants.getAllCounterExamples(pGraph) == null);
+
+            List<Partition> partitions = new ArrayList<Partition>(
+                    pGraph.getNodes());
+            for (Partition p : partitions) {
+                numEvents -= p.size();
+                for (Partition q : partitions) {
+                    if (p == q || !p.getEType().equals(q.getEType())) {
+                        continue;
+                    }
+                    IOperation rewind = pGraph.apply(new PartitionMerge(p, q));
+                    assertTrue(invariants.getFirstCounterExample(pGraph) != null);
+                    pGraph.apply(rewind);
+                }
+            }
+            assertEquals(0, numEvents);
+        }
+    }
+
     // TODO: test the single step splitPartitions version.
 
     // TODO: change mergePartitionsTest to use total order, since a partially
@@ -0,0 +1,238 @@
+package synoptic.tests.units;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+
+import synoptic.algorithms.Bisimulation;
+import synoptic.algorithms.prioritizers.CExamplePrioritizer;
+import synoptic.algorithms.prioritizers.SplitSuccessPrioritizer;
+import synoptic.benchmarks.MetricsRegistry;
+import synoptic.invariants.BinaryInvariant;
+import synoptic.invariants.CExamplePath;
+import synoptic.invariants.TemporalInvariantSet;
+import synoptic.invariants.miners.ChainWalkingTOInvMiner;
+import synoptic.main.AbstractMain;
+import synoptic.main.parser.ParseException;
+import synoptic.model.ChainsTraceGraph;
+import synoptic.model.Partition;
+import synoptic.model.PartitionGraph;
+import synoptic.tests.SynopticTest;
+
+/**
+ * Tests for the counter-example prioritization strategies in
+ * synoptic.algorithms.prioritizers.
+ */
+public class CExamplePrioritizerTests extends SynopticTest {
+
+    private static final String[] eventTypes = new String[] { "--", "a", "b",
+            "c", "d", "e" };
+
+    private static final String[] strategies = new String[] {
+            CExamplePrioritizer.SHUFFLE, CExamplePrioritizer.SHORTEST,
+            CExamplePrioritizer.MOST_VIOLATED,
+            CExamplePrioritizer.HIGHEST_SUPPORT, CExamplePrioritizer.LEARNED };
+
+    @Override
+    public void setUp() throws ParseException {
+        super.setUp();
+        AbstractMain.getInstance().options.useFSMChecker = true;
+    }
+
+    /**
+     * Returns the initial partition graph of a random log, with the AFby, AP,
+     * and NFby invariants of the log along with their support counts.
+     */
+    private PartitionGraph genRandomPartitionGraph(int seed) throws Exception {
+        AbstractMain.getInstance().random = new Random(seed);
+        String[] log = TOLogInvariantMiningTests.genRandomLog(eventTypes);
+        logger.fine("log: " + Arrays.toString(log));
+        TemporalInvariantSet invariants = filterIntrByInvariants(new ChainWalkingTOInvMiner()
+                .computeInvariants(genInitialLinearGraph(log), false, true));
+        return new PartitionGraph(genInitialLinearGraph(log), true,
+                invariants);
+    }
+
+    private static int getSupport(CExamplePath<Partition> cExample) {
+        return ((BinaryInvariant) cExample.invariant).getStatistics().supportCount;
+    }
+
+    private static int getMaxViolations(CExamplePath<Partition> cExample,
+            List<CExamplePath<Partition>> cExamples) {
+        int max = 0;
+        for (Partition part : new HashSet<Partition>(cExample.path)) {
+            if (part.isInitial() || part.isTerminal()) {
+                continue;
+            }
+            int num = 0;
+            for (CExamplePath<Partition> other : cExamples) {
+                if (other.path.contains(part)) {
+                    num++;
+                }
+            }
+            max = Math.max(max, num);
+        }
+        return max;
+    }
+
+    /**
+     * The built-in strategies order the counter-examples by their criteria,
+     * without losing any of them.
+     */
+    @Test
+    public void orderingTest() throws Exception {
+        for (int i = 0; i < 5; i++) {
+            PartitionGraph pGraph = genRandomPartitionGraph(i);
+            List<CExamplePath<Partition>> cExamples = pGraph.getInvariants()
+                    .getAllCounterExamples(pGraph);
+            if (cExamples == null) {
+                continue;
+            }
+
+            for (String strategy : strategies) {
+                List<CExamplePath<Partition>> ordered = new ArrayList<CExamplePath<Partition>>(
+                        cExamples);
+                CExamplePrioritizer.newPrioritizer(strategy).prioritize(
+                        ordered, pGraph);
+                assertTrue(new HashSet<CExamplePath<Partition>>(cExamples)
+                        .equals(new HashSet<CExamplePath<Partition>>(ordered)));
+
+                for (int j = 1; j < ordered.size(); j++) {
+                    CExamplePath<Partition> prev = ordered.get(j - 1);
+                    CExamplePath<Partition> cur = ordered.get(j);
+                    if (strategy.equals(CExamplePrioritizer.SHORTEST)) {
+                        assertTrue(prev.path.size() <= cur.path.size());
+                    } else if (strategy
+                            .equals(CExamplePrioritizer.HIGHEST_SUPPORT)) {
+                        assertTrue(getSupport(prev) >= getSupport(cur));
+                    } else if (strategy
+                            .equals(CExamplePrioritizer.MOST_VIOLATED)) {
+                        assertTrue(getMaxViolations(prev, cExamples) >= getMaxViolations(
+                                cur, cExamples));
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * The learned strategy tries first the invariants for which splits were
+     * found.
+     */
+    @Test
+    public void learnedOrderingTest() throws Exception {
+        PartitionGraph pGraph = genRandomPartitionGraph(0);
+        List<CExamplePath<Partition>> cExamples = pGraph.getInvariants()
+                .getAllCounterExamples(pGraph);
+        assertTrue(cExamples != null && cExamples.size() > 1);
+
+        SplitSuccessPrioritizer prioritizer = new SplitSuccessPrioritizer();
+        CExamplePath<Partition> resolved = cExamples.get(cExamples.size() - 1);
+        for (CExamplePath<Partition> cExample : cExamples) {
+            prioritizer.recordAttempt(cExample, cExample == resolved, 1, 0);
+        }
+        List<CExamplePath<Partition>> ordered = new ArrayList<CExamplePath<Partition>>(
+                cExamples);
+        prioritizer.prioritize(ordered, pGraph);
+        assertTrue(ordered.get(0).invariant == resolved.invariant);
+        assertTrue(prioritizer.getNumCheckerCalls() == cExamples.size());
+    }
+
+    /**
+     * Refinement satisfies all invariants with each of the strategies.
+     */
+    @Test
+    public void refinementTest() throws Exception {
+        AbstractMain main = AbstractMain.getInstance();
+        try {
+            for (String strategy : strategies) {
+                main.options.cExamplePriority = strategy;
+                for (int i = 0; i < 5; i++) {
+                    PartitionGraph pGraph = genRandomPartitionGraph(i);
+                    Bisimulation.splitUntilAllInvsSatisfied(pGraph);
+                    assertTrue(pGraph.getInvariants().getAllCounterExamples(
+                            pGraph) == null);
+                }
+            }
+        } finally {
+            main.options.cExamplePriority = CExamplePrioritizer.SHUFFLE;
+        }
+    }
+
+    /**
+     * Refines the initial partition graph of graph with respect to invariants,
+     * with the given strategy and random seed, and returns the metrics that
+     * the refinement recorded.
+     */
+    private static MetricsRegistry refineWithStrategy(ChainsTraceGraph graph,
+            TemporalInvariantSet invariants, String strategy, boolean baseline,
+            int seed) {
+        AbstractMain main = AbstractMain.getInstance();
+        main.options.cExamplePriority = strategy;
+        main.options.cExamplePriorityBaseline = baseline;
+        main.random = new Random(seed);
+        MetricsRegistry.clear();
+        PartitionGraph pGraph = new PartitionGraph(graph, true, invariants);
+        Bisimulation.splitUntilAllInvsSatisfied(pGraph);
+        assertTrue(invariants.getAllCounterExamples(pGraph) == null);
+        return MetricsRegistry.get();
+    }
+
+    /**
+     * With the baseline option, a strategy reports the split steps that it
+     * saved relative to refinement with the default strategy from the same
+     * state, and still makes the same split steps as without the option.
+     */
+    @Test
+    public void splitStepsSavedTest() throws Exception {
+        AbstractMain main = AbstractMain.getInstance();
+        try {
+            for (int i = 0; i < 5; i++) {
+                main.random = new Random(i);
+                String[] log = TOLogInvariantMiningTests
+                        .genRandomLog(eventTypes);
+                logger.fine("log: " + Arrays.toString(log));
+                // Each refinement uses the same invariant set, since
+                // refinement considers the invariants in the order of the set.
+                ChainsTraceGraph graph = genInitialLinearGraph(log);
+                TemporalInvariantSet invariants = filterIntrByInvariants(new ChainWalkingTOInvMiner()
+                        .computeInvariants(graph, false, true));
+
+                long shuffleSteps = refineWithStrategy(graph, invariants,
+                        CExamplePrioritizer.SHUFFLE, false, i)
+                        .counter("cexPrioritizerSplitSteps").get();
+                for (String strategy : strategies) {
+                    if (strategy.equals(CExamplePrioritizer.SHUFFLE)) {
+                        continue;
+                    }
+                    long steps = refineWithStrategy(graph, invariants,
+                            strategy, false, i)
+                            .counter("cexPrioritizerSplitSteps").get();
+                    MetricsRegistry metrics = refineWithStrategy(graph,
+                            invariants, strategy, true, i);
+                    assertEquals(steps,
+                            metrics.counter("cexPrioritizerSplitSteps").get());
+                    assertEquals(shuffleSteps - steps,
+                            metrics.counter("cexPrioritizerSplitStepsSaved")
+                                    .get());
+                }
+            }
+        } finally {
+            main.options.cExamplePriority = CExamplePrioritizer.SHUFFLE;
+            main.options.cExamplePriorityBaseline = false;
+            MetricsRegistry.clear();
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void unknownStrategyTest() {
+        CExamplePrioritizer.newPrioritizer("no-such-strategy");
+    }
+}
@@ -0,0 +1,77 @@
+package synoptic.tests.units;
+
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+
+import org.junit.Test;
+
+import synoptic.invariants.TemporalInvariantSet;
+import synoptic.invariants.miners.ChainWalkingTOInvMiner;
+import synoptic.invariants.miners.DAGWalkingPOInvMiner;
+import synoptic.model.ChainsTraceGraph;
+import synoptic.tests.SynopticTest;
+
+/**
+ * Tests for synoptic.invariants.miners.ChainWalkingTOInvMiner class
+ */
+public class ChainWalkingTOInvMinerTests extends SynopticTest {
+
+    /**
+     * Mines invariants, including IntrBy invariants, from randomly generated
+     * logs with the count matrices and with the count maps of the chain
+     * walking miner, and checks that the two invariant sets are identical.
+     */
+    @Test
+    public void countMatricesMatchCountMapsTest() throws Exception {
+        String[] eventTypes = new String[] { "--", "a", "b", "c", "d", "e",
+                "f", "g" };
+        for (int i = 0; i < 10; i++) {
+            String[] log = TOLogInvariantMiningTests.genRandomLog(eventTypes);
+            ChainsTraceGraph inputGraph = genInitialLinearGraph(log);
+            TemporalInvariantSet matrixInvs = new ChainWalkingTOInvMiner(true,
+                    1).computeInvariants(inputGraph, false, false);
+            TemporalInvariantSet mapInvs = new ChainWalkingTOInvMiner(false, 1)
+                    .computeInvariants(inputGraph, false, false);
+            logger.fine("log: " + Arrays.toString(log));
+            assertTrue(matrixInvs.sameInvariants(mapInvs));
+        }
+    }
+
+    /**
+     * Mines invariants from randomly generated logs with one and with several
+     * threads, also with more threads than traces, and checks that the
+     * invariant sets are identical. The DAG walking miner, which also mines
+     * totally ordered logs, is checked in the same way.
+     */
+    @Test
+    public void parallelMiningTest() throws Exception {
+        String[] eventTypes = new String[] { "--", "a", "b", "c", "d", "e" };
+        for (int i = 0; i < 10; i++) {
+            String[] log = TOLogInvariantMiningTests.genRandomLog(eventTypes);
+            ChainsTraceGraph inputGraph = genInitialLinearGraph(log);
+            logger.fine("log: " + Arrays.toString(log));
+
+            TemporalInvariantSet chainInvs = new ChainWalkingTOInvMiner(true,
+                    1).computeInvariants(inputGraph, false, false);
+            TemporalInvariantSet dagInvs = new DAGWalkingPOInvMiner(true, 1)
+                    .computeInvariants(inputGraph, false, false);
+            for (int numThreads : new int[] { 2, 3, 8 }) {
+                assertTrue(chainInvs.sameInvariants(new ChainWalkingTOInvMiner(
+                        true, numThreads).computeInvariants(inputGraph, false,
+                        false)));
+                assertTrue(dagInvs.sameInvariants(new DAGWalkingPOInvMiner(
+                        true, numThreads).computeInvariants(inputGraph, false,
+                        false)));
+            }
+        }
+    }
+
+    /**
+     * Mining with several threads requires count matrices.
+     */
+    @Test(expected = IllegalArgumentException.class)
+    public void parallelCountMapsTest() {
+        new ChainWalkingTOInvMiner(false, 2);
+    }
+}
@@ -12,10 +12,12 @@ import java.util.LinkedHashSet;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
+import java.util.Random;
 import java.util.Set;
 
 import org.junit.Test;
 
+import synoptic.algorithms.ChainsTransitiveClosure;
 import synoptic.algorithms.TransitiveClosure;
 import synoptic.main.AbstractMain;
 import synoptic.main.parser.ParseException;
@@ -202,6 +204,78 @@ public class ChainsTraceGraphTests extends SynopticTest {
         assertTrue(tcTrue.equals(tcGenerated.getTC()));
     }
 
+    /**
+     * Checks that the implicit transitive closure of g for a relation agrees
+     * with the explicit one on every pair of nodes.
+     */
+    private void assertSameImplicitTC(ChainsTraceGraph graph, String relation) {
+        Set<String> relations = new LinkedHashSet<String>();
+        relations.add(relation);
+        TransitiveClosure explicit = graph.getTransitiveClosure(relations);
+        ChainsTransitiveClosure implicit = graph
+                .getImplicitTransitiveClosure(relations);
+
+        assertEquals(explicit.getTC(), implicit.getTC());
+        assertTrue(implicit.isEqual(explicit));
+        for (EventNode m : graph.getNodes()) {
+            assertEquals(explicit.getReachableNodes(m),
+                    implicit.getReachableNodes(m));
+            for (EventNode n : graph.getNodes()) {
+                assertEquals(explicit.isReachable(m, n),
+                        implicit.isReachable(m, n));
+            }
+        }
+    }
+
+    /**
+     * Tests that the implicit transitive closure of a trace that has two
+     * relations along the same chain is the same as the explicit one.
+     */
+    @Test
+    public void implicitTwoRelationsTCTest() {
+        g = new ChainsTraceGraph();
+
+        // a --f--> b --a--> c --f--> d:
+        a.addTransition(new Transition<EventNode>(a, b, "followed by"));
+        b.addTransition(new Transition<EventNode>(b, c, "after"));
+        c.addTransition(new Transition<EventNode>(c, d, "followed by"));
+
+        g.add(a);
+        g.add(b);
+        g.add(c);
+        g.add(d);
+
+        g.tagInitial(b, "after");
+        g.tagInitial(a, "followed by");
+        g.tagTerminal(c, "after");
+        g.tagTerminal(d, "followed by");
+
+        assertSameImplicitTC(g, "followed by");
+        assertSameImplicitTC(g, "after");
+
+        Set<String> relations = new LinkedHashSet<String>();
+        relations.add("followed by");
+        ChainsTransitiveClosure tc = g.getImplicitTransitiveClosure(relations);
+        assertTrue(tc.isReachable(a, b));
+        assertFalse(tc.isReachable(a, c));
+        assertFalse(tc.isReachable(b, a));
+    }
+
+    /**
+     * Tests that the implicit transitive closures of random logs are the same
+     * as the explicit ones.
+     */
+    @Test
+    public void implicitTCRandomLogsTest() throws Exception {
+        String[] eventTypes = new String[] { "--", "a", "b", "c", "d" };
+        for (int i = 0; i < 10; i++) {
+            AbstractMain.getInstance().random = new Random(i);
+            String[] log = TOLogInvariantMiningTests.genRandomLog(eventTypes);
+            assertSameImplicitTC(genInitialLinearGraph(log),
+                    Event.defTimeRelationStr);
+        }
+    }
+
     private void generateTestEvents(List<EventNode> events,
             Map<EventNode, Set<Relation>> allEventRelations) {
         // Set up the events with time information.
@@ -1,21 +1,36 @@
 package synoptic.tests.units;
 
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
 
+import java.util.ArrayList;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Random;
 import java.util.Set;
 
 import org.junit.Test;
 
 import synoptic.algorithms.Bisimulation;
 import synoptic.algorithms.graphops.PartitionSplit;
+import synoptic.invariants.BinaryInvariant;
 import synoptic.invariants.CExamplePath;
+import synoptic.invariants.ITemporalInvariant;
+import synoptic.invariants.NeverFollowedInvariant;
+import synoptic.invariants.TemporalInvariantSet;
+import synoptic.invariants.constraints.TempConstrainedInvariant;
+import synoptic.invariants.fsmcheck.FsmModelChecker;
 import synoptic.invariants.fsmcheck.TracingStateSet;
+import synoptic.invariants.miners.ChainWalkingTOInvMiner;
+import synoptic.invariants.miners.ConstrainedInvMiner;
+import synoptic.main.AbstractMain;
+import synoptic.main.parser.TraceParser;
+import synoptic.model.ChainsTraceGraph;
 import synoptic.model.EventNode;
 import synoptic.model.Partition;
+import synoptic.model.PartitionGraph;
 import synoptic.model.event.Event;
 import synoptic.model.event.EventType;
 import synoptic.model.event.StringEventType;
@@ -328,6 +343,130 @@ public class ConstrainedRefinementTests extends PynopticTest {
         assertTrue(hasTerminal);
     }
 
+    /**
+     * Check that localized model checking, from the partition preceding the
+     * violation subpath of a counter-example to the end of the subpath, finds
+     * the violation, and that it no longer finds a violation once the graph
+     * has been refined
+     */
+    @Test
+    public void localCounterExampleTest() throws Exception {
+        String[] events = { "a 0", "b 3", "c 5", "d 6", "--", "a 10", "b 11",
+                "c 14", "d 16" };
+
+        graph = genConstrainedPartitionGraph(events, null);
+        inv = getConstrainedInv(graph.getInvariants(), "a AFby d upper");
+
+        CExamplePath<Partition> cExPath = FsmModelChecker.getCounterExample(
+                inv, graph);
+        assertTrue(cExPath != null);
+
+        Partition prevPart = cExPath.path.get(cExPath.violationStart - 1);
+        Set<Partition> startParts = new HashSet<Partition>();
+        startParts.add(cExPath.path.get(cExPath.violationStart));
+        Set<Partition> endParts = new HashSet<Partition>();
+        endParts.add(cExPath.path.get(cExPath.violationEnd));
+
+        CExamplePath<Partition> localPath = FsmModelChecker
+                .getLocalCounterExample(inv, graph, prevPart, startParts,
+                        endParts);
+        assertTrue(localPath != null);
+        assertTrue(localPath.path.get(localPath.path.size() - 1) == cExPath.path
+                .get(cExPath.violationEnd));
+
+        // No path from a partition of a to a partition of d violates the
+        // invariant once refinement is complete
+        Bisimulation.splitUntilAllInvsSatisfied(graph);
+        startParts.clear();
+        endParts.clear();
+        for (Partition part : graph.getNodes()) {
+            if (part.getEType().equals(new StringEventType("a"))) {
+                startParts.add(part);
+            } else if (part.getEType().equals(new StringEventType("d"))) {
+                endParts.add(part);
+            }
+        }
+        assertTrue(FsmModelChecker.getLocalCounterExample(inv, graph,
+                graph.getDummyInitialNode(), startParts, endParts) == null);
+    }
+
+    /**
+     * Refines the graph of the parsed events with the invariants, evaluating
+     * candidate splits with the number of threads, and returns the resulting
+     * partitioning as sets of indices of the parsed events.
+     */
+    private static Set<Set<Integer>> refineGraph(List<EventNode> parsedEvents,
+            ChainsTraceGraph inputGraph, TemporalInvariantSet invariants,
+            int splitThreads, long seed) {
+        AbstractMain main = AbstractMain.getInstance();
+        main.options.splitThreads = splitThreads;
+        main.random = new Random(seed);
+
+        PartitionGraph pGraph = new PartitionGraph(inputGraph, true, invariants);
+        Bisimulation.splitUntilAllInvsSatisfied(pGraph);
+        assertTrue(invariants.getAllCounterExamples(pGraph) == null);
+
+        Set<Set<Integer>> partitioning = new HashSet<Set<Integer>>();
+        for (Partition p : pGraph.getNodes()) {
+            Set<Integer> indices = new HashSet<Integer>();
+            for (EventNode e : p.getEventNodes()) {
+                indices.add(parsedEvents.indexOf(e));
+            }
+            partitioning.add(indices);
+        }
+        return partitioning;
+    }
+
+    /**
+     * Check that refinement with both constrained and unconstrained invariants
+     * chooses the same splits when the candidate splits of unconstrained
+     * invariants are evaluated in parallel as when they are not, given the
+     * same random seed
+     */
+    @Test
+    public void parallelMixedRefinementTest() throws Exception {
+        // Traces 1 and 2 produce constrained invariants, as in
+        // completeRefinementTest(). The b events of traces 3 to 5 are merged
+        // with those of traces 1 and 2, and violate 'x NFby w' and 'z NFby y'.
+        String[] events = { "a 0", "b 3", "c 5", "d 6", "e 9", "--", "a 10",
+                "b 11", "c 14", "d 16", "--", "x 0", "b 2", "y 3", "--",
+                "z 0", "b 1", "w 4", "--", "x 10", "b 12", "y 14" };
+
+        TraceParser parser = genITimeParser();
+        ArrayList<EventNode> parsedEvents = parseLogEvents(events, parser);
+        ChainsTraceGraph inputGraph = (ChainsTraceGraph) parser
+                .generateDefaultOrderRelation(parsedEvents);
+
+        // Both refinements use the same invariant set, since refinement
+        // considers the invariants in the order of the set.
+        TemporalInvariantSet invs = new ConstrainedInvMiner()
+                .computeInvariants(new ChainWalkingTOInvMiner(), inputGraph,
+                        false);
+        boolean hasConstrained = false;
+        boolean hasUnconstrained = false;
+        for (ITemporalInvariant i : invs) {
+            if (i instanceof TempConstrainedInvariant<?>) {
+                hasConstrained = true;
+            } else if (i instanceof NeverFollowedInvariant) {
+                hasUnconstrained = true;
+            }
+        }
+        assertTrue(hasConstrained);
+        assertTrue(hasUnconstrained);
+
+        try {
+            for (int seed = 0; seed < 5; seed++) {
+                Set<Set<Integer>> sequential = refineGraph(parsedEvents,
+                        inputGraph, invs, 1, seed);
+                Set<Set<Integer>> parallel = refineGraph(parsedEvents,
+                        inputGraph, invs, 2, seed);
+                assertEquals(sequential, parallel);
+            }
+        } finally {
+            AbstractMain.getInstance().options.splitThreads = 1;
+        }
+    }
+
     /**
      * Common code for testing refinement of graphs aimed at a specific
      * constrained invariant type
@@ -589,4 +728,54 @@ public class ConstrainedRefinementTests extends PynopticTest {
         graph = genConstrainedPartitionGraph(events, TracingSet.IntrByLower);
         Bisimulation.splitUntilAllInvsSatisfied(graph);
     }
+
+    /**
+     * Check that the batched bitset pass returns every constrained invariant
+     * that has a counter-example, before and after refinement
+     */
+    private void batchedCheckingTestCommon(String[] events, TracingSet type)
+            throws Exception {
+        graph = genConstrainedPartitionGraph(events, type);
+        assertTrue(checkBatchedCandidates() > 0);
+        Bisimulation.splitUntilAllInvsSatisfied(graph);
+        assertTrue(checkBatchedCandidates() == 0);
+    }
+
+    /**
+     * Checks that the invariants of graph that have counter-examples are
+     * among those returned by the batched bitset pass, and returns their
+     * number
+     */
+    private int checkBatchedCandidates() {
+        List<BinaryInvariant> invs = new ArrayList<BinaryInvariant>();
+        for (ITemporalInvariant inv : graph.getInvariants()) {
+            invs.add((BinaryInvariant) inv);
+        }
+        List<BinaryInvariant> candidates = FsmModelChecker
+                .runBatchedBitSetChecker(invs, graph);
+
+        int numViolated = 0;
+        for (BinaryInvariant inv : invs) {
+            if (FsmModelChecker.getCounterExample(inv, graph) != null) {
+                assertTrue(candidates.contains(inv));
+                numViolated++;
+            }
+        }
+        return numViolated;
+    }
+
+    @Test
+    public void batchedCheckingTest() throws Exception {
+        String[] events = { "a 0", "b 3", "c 5", "d 6", "e 9", "--", "a 10",
+                "b 11", "c 14", "d 16" };
+        batchedCheckingTestCommon(events, null);
+    }
+
+    @Test
+    public void IntrByBatchedCheckingTest() throws Exception {
+        String[] events = { "x 0", "z 4", "x 5", "--", "x 0", "z 1", "x 5",
+                "--", "x 0", "--", "z 0" };
+        batchedCheckingTestCommon(events, TracingSet.IntrByUpper);
+        batchedCheckingTestCommon(events, TracingSet.IntrByLower);
+    }
 }
@@ -22,15 +22,33 @@ import synoptic.tests.DAGsTraceGraphBaseTest;
 @RunWith(value = Parameterized.class)
 public class DAGsTraceGraphTCTests extends DAGsTraceGraphBaseTest {
     boolean useFloysWarshall;
+    // Whether to use the BitSetTransitiveClosure, with this many threads (0
+    // uses getTransitiveClosure with useFloysWarshall).
+    int bitSetThreads;
 
     @Parameters
     public static Collection<Object[]> data() {
-        Object[][] data = new Object[][] { { true }, { false } };
+        Object[][] data = new Object[][] { { true, 0 }, { false, 0 },
+                { false, 1 }, { false, 4 } };
         return Arrays.asList(data);
     }
 
-    public DAGsTraceGraphTCTests(boolean useFloysWarshall) {
+    public DAGsTraceGraphTCTests(boolean useFloysWarshall, int bitSetThreads) {
         this.useFloysWarshall = useFloysWarshall;
+        this.bitSetThreads = bitSetThreads;
+    }
+
+    /**
+     * Returns the transitive closure of dag for relation, computed by the
+     * algorithm of the parameters.
+     */
+    private TransitiveClosure getTransitiveClosure(String relation) {
+        if (bitSetThreads > 0) {
+            Set<String> relations = new LinkedHashSet<String>();
+            relations.add(relation);
+            return dag.getBitSetTransitiveClosure(relations, bitSetThreads);
+        }
+        return dag.getTransitiveClosure(relation, useFloysWarshall);
     }
 
     public void addToTC(Map<EventNode, Set<EventNode>> tc, EventNode e1,
@@ -54,8 +72,7 @@ public class DAGsTraceGraphTCTests extends DAGsTraceGraphBaseTest {
     @Test
     public void forkGraphTCTest() {
         dag = buildForkDAG();
-        TransitiveClosure tc = dag.getTransitiveClosure("followed by",
-                useFloysWarshall);
+        TransitiveClosure tc = getTransitiveClosure("followed by");
 
         Map<EventNode, Set<EventNode>> tc2 = new LinkedHashMap<EventNode, Set<EventNode>>();
         tc2.put(a,
@@ -78,8 +95,7 @@ public class DAGsTraceGraphTCTests extends DAGsTraceGraphBaseTest {
     @Test
     public void complexForkGraphTCTest() {
         dag = buildComplexForkDAG();
-        TransitiveClosure tc = dag.getTransitiveClosure("followed by",
-                useFloysWarshall);
+        TransitiveClosure tc = getTransitiveClosure("followed by");
 
         Map<EventNode, Set<EventNode>> tc2 = new LinkedHashMap<EventNode, Set<EventNode>>();
 
@@ -115,8 +131,7 @@ public class DAGsTraceGraphTCTests extends DAGsTraceGraphBaseTest {
     @Test
     public void twoSourcesDAGTopoOrderTest() {
         dag = buildTwoSourcesDAG();
-        TransitiveClosure tc = dag.getTransitiveClosure("followed by",
-                useFloysWarshall);
+        TransitiveClosure tc = getTransitiveClosure("followed by");
 
         Map<EventNode, Set<EventNode>> tc2 = new LinkedHashMap<EventNode, Set<EventNode>>();
         tc2.put(a,
@@ -144,8 +159,7 @@ public class DAGsTraceGraphTCTests extends DAGsTraceGraphBaseTest {
     @Test
     public void twoSourcesComplexDAGTopoOrderTest() {
         dag = buildTwoSourcesComplexDAG();
-        TransitiveClosure tc = dag.getTransitiveClosure("followed by",
-                useFloysWarshall);
+        TransitiveClosure tc = getTransitiveClosure("followed by");
 
         Map<EventNode, Set<EventNode>> tc2 = new LinkedHashMap<EventNode, Set<EventNode>>();
 
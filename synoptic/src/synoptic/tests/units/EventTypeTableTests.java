@@ -0,0 +1,98 @@
+package synoptic.tests.units;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+import synoptic.main.parser.TraceParser;
+import synoptic.model.EventNode;
+import synoptic.model.channelid.ChannelId;
+import synoptic.model.event.DistEventType;
+import synoptic.model.event.EventType;
+import synoptic.model.event.EventTypeTable;
+import synoptic.model.event.StringEventType;
+import synoptic.tests.SynopticTest;
+
+/**
+ * Tests for synoptic.model.event.EventTypeTable class
+ */
+public class EventTypeTableTests extends SynopticTest {
+
+    /**
+     * Equal types have the same id, different types have different ids, and
+     * ids are dense.
+     */
+    @Test
+    public void denseIdsTest() {
+        EventType a1 = new StringEventType("table-a");
+        EventType a2 = new StringEventType("table-a");
+        EventType b = new StringEventType("table-b");
+        EventType init = StringEventType.newInitialStringEventType();
+        EventType initLabel = new StringEventType("INITIAL");
+
+        int size = EventTypeTable.size();
+        assertEquals(a1.getId(), a2.getId());
+        assertTrue(a1.getId() != b.getId());
+        assertTrue(init.getId() != initLabel.getId());
+        assertTrue(a1.getId() < EventTypeTable.size());
+        assertTrue(b.getId() < EventTypeTable.size());
+        assertTrue(EventTypeTable.size() <= size + 4);
+        assertEquals(a1, EventTypeTable.getType(a1.getId()));
+        assertEquals(b, EventTypeTable.getType(b.getId()));
+
+        // Types compare equal with and without ids.
+        assertEquals(a1, a2);
+        assertEquals(a1, new StringEventType("table-a"));
+        assertFalse(a1.equals(b));
+        assertFalse(init.equals(initLabel));
+    }
+
+    /**
+     * A DistEventType gets a new id when it is changed by its
+     * interpretation, and the table is not affected by the change.
+     */
+    @Test
+    public void interpretedDistTypeTest() {
+        DistEventType local = new DistEventType("tablex", "0");
+        DistEventType same = new DistEventType("tablex", "0");
+        int id = local.getId();
+        assertEquals(id, same.getId());
+
+        List<ChannelId> channelIds = new ArrayList<ChannelId>();
+        channelIds.add(new ChannelId(0, 1, 0, "c"));
+        assertNull(local.interpretEType(channelIds));
+        assertFalse(local.equals(same));
+        assertTrue(local.getId() != id);
+        assertEquals(same, EventTypeTable.getType(id));
+
+        DistEventType send = new DistEventType("c!tablem", "0");
+        assertNull(send.interpretEType(channelIds));
+        DistEventType otherSend = new DistEventType("c!tablem", "0");
+        assertNull(otherSend.interpretEType(channelIds));
+        assertEquals(send.getId(), otherSend.getId());
+        assertEquals(send, otherSend);
+        assertTrue(send.getId() != new DistEventType("tablem", "0").getId());
+    }
+
+    /**
+     * Parsed event types get ids that agree with the table.
+     */
+    @Test
+    public void parsedTypesTest() throws Exception {
+        String[] log = new String[] { "table-p", "table-q", "table-p" };
+        TraceParser parser = genDefParser();
+        List<EventNode> events = parseLogEvents(log, parser);
+        assertEquals(events.get(0).getEType().getId(), events.get(2)
+                .getEType().getId());
+        assertTrue(events.get(0).getEType().getId() != events.get(1)
+                .getEType().getId());
+        assertEquals(events.get(1).getEType(),
+                EventTypeTable.getType(events.get(1).getEType().getId()));
+    }
+}
@@ -102,6 +102,38 @@ public class FsmStateSetTests extends SynopticTest {
         assertTrue(!f1.equals(f2)); // differ in getClass() values
     }
 
+    /**
+     * Tests that setTo makes a stateset equal to another, without the two
+     * sharing state.
+     */
+    @Test
+    public void setToTest() {
+        List<BinaryInvariant> invs = new LinkedList<BinaryInvariant>();
+        invs.add(new AlwaysPrecedesInvariant("a", "b",
+                Event.defTimeRelationStr));
+        invs.add(new AlwaysPrecedesInvariant("b", "a",
+                Event.defTimeRelationStr));
+
+        FsmStateSet<EventNode> f1 = new APInvFsms<EventNode>(invs);
+        f1.setInitial(msgA);
+        FsmStateSet<EventNode> f2 = new APInvFsms<EventNode>(invs);
+        f2.setInitial(msgB);
+        FsmStateSet<EventNode> f3 = f1.copy();
+
+        f2.setTo(f1);
+        assertTrue(f2.equals(f1));
+
+        // Transitioning either set leaves the other set, and the initial
+        // states of new sets, unchanged.
+        f2.transition(msgB);
+        f2.transition(msgZ);
+        assertTrue(f1.equals(f3));
+        f1.transition(msgA);
+        f3 = new APInvFsms<EventNode>(invs);
+        f3.setInitial(msgA);
+        assertTrue(f1.equals(f3));
+    }
+
     /**
      * Helper interface for testing different invariant types.
      */
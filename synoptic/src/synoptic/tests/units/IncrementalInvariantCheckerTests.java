@@ -0,0 +1,136 @@
+package synoptic.tests.units;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+
+import org.junit.Test;
+
+import synoptic.algorithms.Bisimulation;
+import synoptic.invariants.BinaryInvariant;
+import synoptic.invariants.CExamplePath;
+import synoptic.invariants.ITemporalInvariant;
+import synoptic.invariants.TemporalInvariantSet;
+import synoptic.invariants.fsmcheck.FsmModelChecker;
+import synoptic.invariants.fsmcheck.IncrementalInvariantChecker;
+import synoptic.invariants.miners.ChainWalkingTOInvMiner;
+import synoptic.main.AbstractMain;
+import synoptic.main.parser.ParseException;
+import synoptic.model.Partition;
+import synoptic.model.PartitionGraph;
+import synoptic.tests.SynopticTest;
+
+/**
+ * Tests for synoptic.invariants.fsmcheck.IncrementalInvariantChecker class
+ */
+public class IncrementalInvariantCheckerTests extends SynopticTest {
+
+    @Override
+    public void setUp() throws ParseException {
+        super.setUp();
+        AbstractMain.getInstance().options.useFSMChecker = true;
+    }
+
+    /**
+     * Returns a partition graph of a log, with the AFby, AP, and NFby
+     * invariants of the log.
+     */
+    private PartitionGraph genPartitionGraph(String[] log) throws Exception {
+        TemporalInvariantSet invariants = filterIntrByInvariants(new ChainWalkingTOInvMiner()
+                .computeInvariants(genInitialLinearGraph(log), false, false));
+        return new PartitionGraph(genInitialLinearGraph(log), true, invariants);
+    }
+
+    private static Set<BinaryInvariant> runBitSetChecker(
+            PartitionGraph pGraph) {
+        List<BinaryInvariant> invs = new ArrayList<BinaryInvariant>();
+        for (ITemporalInvariant inv : pGraph.getInvariants()) {
+            invs.add((BinaryInvariant) inv);
+        }
+        return new HashSet<BinaryInvariant>(FsmModelChecker.runBitSetChecker(
+                invs, pGraph));
+    }
+
+    /**
+     * After each step of refinement, the checker that is updated with the
+     * partitions of the step finds the same violated invariants as the BitSet
+     * checker does over the whole graph.
+     */
+    @Test
+    public void refinementStepsTest() throws Exception {
+        String[] eventTypes = new String[] { "--", "a", "b", "c", "d", "e" };
+        for (int i = 0; i < 10; i++) {
+            AbstractMain.getInstance().random = new Random(i);
+            String[] log = TOLogInvariantMiningTests.genRandomLog(eventTypes);
+            logger.fine("log: " + Arrays.toString(log));
+            PartitionGraph pGraph = genPartitionGraph(log);
+            IncrementalInvariantChecker<Partition> checker = new IncrementalInvariantChecker<Partition>(
+                    pGraph.getInvariants(), pGraph);
+
+            int numSplitSteps = 0;
+            while (true) {
+                assertEquals(runBitSetChecker(pGraph),
+                        new HashSet<BinaryInvariant>(checker
+                                .getViolatedInvariants()));
+
+                List<CExamplePath<Partition>> counterExamples = pGraph
+                        .getInvariants().getAllCounterExamples(pGraph);
+                if (counterExamples == null) {
+                    break;
+                }
+
+                Map<Partition, Integer> sizes = new LinkedHashMap<Partition, Integer>();
+                for (Partition part : pGraph.getNodes()) {
+                    sizes.put(part, part.size());
+                }
+                int prevNumSplitSteps = numSplitSteps;
+                numSplitSteps = Bisimulation.performSplits(numSplitSteps,
+                        pGraph, counterExamples);
+                assertTrue(numSplitSteps > prevNumSplitSteps);
+
+                // The partitions that were split and created by the step.
+                Set<Partition> splitParts = new LinkedHashSet<Partition>();
+                for (Partition part : pGraph.getNodes()) {
+                    Integer size = sizes.get(part);
+                    if (size == null || size != part.size()) {
+                        splitParts.add(part);
+                    }
+                }
+                checker.update(splitParts);
+            }
+            assertTrue(checker.getViolatedInvariants().isEmpty());
+        }
+    }
+
+    /**
+     * Refinement with incremental checking satisfies all invariants.
+     */
+    @Test
+    public void incrementalRefinementTest() throws Exception {
+        String[] eventTypes = new String[] { "--", "a", "b", "c", "d", "e" };
+        AbstractMain main = AbstractMain.getInstance();
+        try {
+            main.options.incrementalChecking = true;
+            for (int i = 0; i < 10; i++) {
+                main.random = new Random(i);
+                String[] log = TOLogInvariantMiningTests
+                        .genRandomLog(eventTypes);
+                logger.fine("log: " + Arrays.toString(log));
+                PartitionGraph pGraph = genPartitionGraph(log);
+                Bisimulation.splitUntilAllInvsSatisfied(pGraph);
+                assertTrue(pGraph.getInvariants().getAllCounterExamples(pGraph) == null);
+            }
+        } finally {
+            main.options.incrementalChecking = false;
+        }
+    }
+}
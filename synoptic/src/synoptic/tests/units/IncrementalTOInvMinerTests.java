@@ -0,0 +1,199 @@
+package synoptic.tests.units;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import org.junit.Test;
+
+import synoptic.invariants.BinaryInvariant;
+import synoptic.invariants.ITemporalInvariant;
+import synoptic.invariants.TemporalInvariantSet;
+import synoptic.invariants.miners.ChainWalkingTOInvMiner;
+import synoptic.invariants.miners.IncrementalTOInvMiner;
+import synoptic.tests.SynopticTest;
+import synoptic.util.InvariantStatistics;
+
+/**
+ * Tests for synoptic.invariants.miners.IncrementalTOInvMiner class
+ */
+public class IncrementalTOInvMinerTests extends SynopticTest {
+
+    /**
+     * Generates a log of numTraces random traces over the given event types,
+     * separated by "--".
+     */
+    private static List<String> genTraces(Random random, String[] eventTypes,
+            int numTraces) {
+        List<String> log = new ArrayList<String>();
+        for (int t = 0; t < numTraces; t++) {
+            if (t > 0) {
+                log.add("--");
+            }
+            int length = 1 + random.nextInt(6);
+            for (int i = 0; i < length; i++) {
+                log.add(eventTypes[random.nextInt(eventTypes.length)]);
+            }
+        }
+        return log;
+    }
+
+    private static String[] toArray(List<String> log) {
+        return log.toArray(new String[log.size()]);
+    }
+
+    /**
+     * Returns the invariants that the chain walking miner mines from a log.
+     */
+    private TemporalInvariantSet mineLog(List<String> log) throws Exception {
+        return new ChainWalkingTOInvMiner().computeInvariants(
+                genInitialLinearGraph(toArray(log)), false, false);
+    }
+
+    /**
+     * Adding the traces of a log in several parts produces the invariants of
+     * the whole log, also when later parts contain new event types.
+     */
+    @Test
+    public void addTracesTest() throws Exception {
+        Random random = new Random(1);
+        for (int i = 0; i < 10; i++) {
+            List<String> part1 = genTraces(random, new String[] { "a", "b",
+                    "c" }, 1 + random.nextInt(4));
+            List<String> part2 = genTraces(random, new String[] { "a", "b",
+                    "c", "d" }, 1 + random.nextInt(4));
+
+            IncrementalTOInvMiner miner = new IncrementalTOInvMiner(false);
+            miner.addTraces(genInitialLinearGraph(toArray(part1)));
+            assertTrue(mineLog(part1).sameInvariants(
+                    miner.getInvariants(false)));
+
+            miner.addTraces(genInitialLinearGraph(toArray(part2)));
+            List<String> log = new ArrayList<String>(part1);
+            log.add("--");
+            log.addAll(part2);
+            logger.fine("log: " + log);
+            assertTrue(mineLog(log).sameInvariants(miner.getInvariants(false)));
+        }
+    }
+
+    /**
+     * Counts that are saved and loaded again produce the same invariants, and
+     * can be extended with more traces.
+     */
+    @Test
+    public void saveLoadTest() throws Exception {
+        Random random = new Random(2);
+        List<String> part1 = genTraces(random, new String[] { "a", "b", "c" },
+                4);
+        List<String> part2 = genTraces(random, new String[] { "b", "c", "d" },
+                3);
+
+        IncrementalTOInvMiner miner = new IncrementalTOInvMiner(false);
+        miner.addTraces(genInitialLinearGraph(toArray(part1)));
+        File file = new File(testOutputDir + "incremental-counts.bin");
+        miner.save(file);
+
+        IncrementalTOInvMiner loaded = IncrementalTOInvMiner.load(file);
+        assertFalse(loaded.getMultipleRelations());
+        assertTrue(miner.getInvariants(false).sameInvariants(
+                loaded.getInvariants(false)));
+
+        loaded.addTraces(genInitialLinearGraph(toArray(part2)));
+        List<String> log = new ArrayList<String>(part1);
+        log.add("--");
+        log.addAll(part2);
+        assertTrue(mineLog(log).sameInvariants(loaded.getInvariants(false)));
+    }
+
+    /**
+     * Returns the support count of each invariant in invs that has one.
+     */
+    private static Map<ITemporalInvariant, Integer> getSupportCounts(
+            TemporalInvariantSet invs) {
+        Map<ITemporalInvariant, Integer> supportCounts = new HashMap<ITemporalInvariant, Integer>();
+        for (ITemporalInvariant inv : invs) {
+            InvariantStatistics stats = ((BinaryInvariant) inv)
+                    .getStatistics();
+            if (stats != null) {
+                supportCounts.put(inv, stats.supportCount);
+            }
+        }
+        return supportCounts;
+    }
+
+    /**
+     * Adding the traces of a log that were already added, also after saving
+     * and loading the counts, adds nothing, so the support counts are those
+     * of the log.
+     */
+    @Test
+    public void addSameTracesTwiceTest() throws Exception {
+        List<String> log = genTraces(new Random(3), new String[] { "a", "b",
+                "c" }, 4);
+        TemporalInvariantSet minedInvs = new ChainWalkingTOInvMiner()
+                .computeInvariants(genInitialLinearGraph(toArray(log)), false,
+                        true);
+        Map<ITemporalInvariant, Integer> expected = getSupportCounts(minedInvs);
+        assertFalse(expected.isEmpty());
+
+        IncrementalTOInvMiner miner = new IncrementalTOInvMiner(false);
+        assertEquals(4, miner.addTraces(genInitialLinearGraph(toArray(log))));
+        assertEquals(0, miner.addTraces(genInitialLinearGraph(toArray(log))));
+        assertEquals(expected, getSupportCounts(miner.getInvariants(true)));
+
+        File file = new File(testOutputDir + "incremental-twice.bin");
+        miner.save(file);
+        IncrementalTOInvMiner loaded = IncrementalTOInvMiner.load(file);
+        assertEquals(0, loaded.addTraces(genInitialLinearGraph(toArray(log))));
+        assertEquals(expected, getSupportCounts(loaded.getInvariants(true)));
+    }
+
+    /**
+     * Adding traces with a new event type each, one at a time, produces the
+     * invariants of the whole log.
+     */
+    @Test
+    public void addNewTypesTest() throws Exception {
+        IncrementalTOInvMiner miner = new IncrementalTOInvMiner(false);
+        List<String> log = new ArrayList<String>();
+        for (int i = 0; i < 20; i++) {
+            List<String> trace = new ArrayList<String>();
+            trace.add("a");
+            trace.add("t" + i);
+            miner.addTraces(genInitialLinearGraph(toArray(trace)));
+            if (i > 0) {
+                log.add("--");
+            }
+            log.addAll(trace);
+        }
+        assertTrue(mineLog(log).sameInvariants(miner.getInvariants(false)));
+    }
+
+    /**
+     * A file that does not contain counts cannot be loaded.
+     */
+    @Test
+    public void invalidCountsTest() throws Exception {
+        File file = new File(testOutputDir + "incremental-invalid.bin");
+        FileOutputStream out = new FileOutputStream(file);
+        out.write("not counts".getBytes("UTF-8"));
+        out.close();
+        try {
+            IncrementalTOInvMiner.load(file);
+            fail("Expected an IOException for invalid counts.");
+        } catch (IOException e) {
+            // Expected.
+        }
+    }
+}
@@ -0,0 +1,129 @@
+package synoptic.tests.units;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import org.junit.Test;
+
+import synoptic.algorithms.KTailSignatures;
+import synoptic.main.AbstractMain;
+import synoptic.model.EventNode;
+import synoptic.model.Partition;
+import synoptic.model.PartitionGraph;
+import synoptic.model.event.EventType;
+import synoptic.model.interfaces.INode;
+import synoptic.tests.SynopticTest;
+
+/**
+ * Tests for synoptic.algorithms.KTailSignatures class
+ */
+public class KTailSignaturesTests extends SynopticTest {
+
+    /**
+     * Returns the strings of length <= k that label the paths from node, by
+     * enumerating the paths.
+     */
+    private static <NodeType extends INode<NodeType>> Set<List<EventType>> getKStrings(
+            NodeType node, int k) {
+        Set<List<EventType>> kStrings = new HashSet<List<EventType>>();
+        addKStrings(node, k, new ArrayList<EventType>(), kStrings);
+        return kStrings;
+    }
+
+    private static <NodeType extends INode<NodeType>> void addKStrings(
+            NodeType node, int k, List<EventType> prefix,
+            Set<List<EventType>> kStrings) {
+        prefix.add(node.getEType());
+        kStrings.add(new ArrayList<EventType>(prefix));
+        if (k > 1) {
+            for (NodeType child : node.getAllSuccessors()) {
+                addKStrings(child, k - 1, prefix, kStrings);
+            }
+        }
+        prefix.remove(prefix.size() - 1);
+    }
+
+    /**
+     * The k-tails of the nodes of a chain graph are the strings of the paths
+     * from the nodes, and nodes are k-equivalent exactly when their k-tails
+     * are equal.
+     */
+    @Test
+    public void chainNodesTest() throws Exception {
+        String[] log = new String[] { "a", "b", "c", "--", "a", "b", "d",
+                "--", "b", "c" };
+        List<EventNode> nodes = new ArrayList<EventNode>(genInitialLinearGraph(
+                log).getNodes());
+        for (int k = 1; k <= 4; k++) {
+            KTailSignatures<EventNode> signatures = new KTailSignatures<EventNode>(
+                    nodes, k);
+            for (EventNode n1 : nodes) {
+                assertEquals(getKStrings(n1, k), signatures.getKStrings(n1));
+                for (EventNode n2 : nodes) {
+                    assertEquals(getKStrings(n1, k).equals(getKStrings(n2, k)),
+                            signatures.kEquals(n1, n2));
+                }
+            }
+        }
+    }
+
+    /**
+     * The equivalence classes of the partitions of random logs, whose graphs
+     * have cycles, are the classes of partitions with equal k-tails, in the
+     * order of the partitions.
+     */
+    @Test
+    public void randomPartitionGraphsTest() throws Exception {
+        String[] eventTypes = new String[] { "--", "a", "b", "c", "d" };
+        AbstractMain main = AbstractMain.getInstance();
+        for (int i = 0; i < 10; i++) {
+            main.random = new Random(i);
+            String[] log = TOLogInvariantMiningTests.genRandomLog(eventTypes);
+            logger.fine("log: " + Arrays.toString(log));
+            PartitionGraph pGraph = new PartitionGraph(
+                    genInitialLinearGraph(log), false, null);
+            List<Partition> partitions = new ArrayList<Partition>(
+                    pGraph.getNodes());
+
+            for (int k = 1; k <= 3; k++) {
+                List<List<Partition>> expected = new ArrayList<List<Partition>>();
+                List<Set<List<EventType>>> expectedKStrings = new ArrayList<Set<List<EventType>>>();
+                for (Partition p : partitions) {
+                    Set<List<EventType>> kStrings = getKStrings(p, k);
+                    int index = expectedKStrings.indexOf(kStrings);
+                    if (index < 0) {
+                        expected.add(new ArrayList<Partition>());
+                        expectedKStrings.add(kStrings);
+                        index = expected.size() - 1;
+                    }
+                    expected.get(index).add(p);
+                }
+
+                KTailSignatures<Partition> signatures = new KTailSignatures<Partition>(
+                        partitions, k);
+                assertEquals(expected, new ArrayList<List<Partition>>(
+                        signatures.getEquivalenceClasses().values()));
+            }
+        }
+    }
+
+    /**
+     * Signatures are only computed for the given nodes.
+     */
+    @Test(expected = IllegalArgumentException.class)
+    public void unknownNodeTest() throws Exception {
+        List<EventNode> nodes = new ArrayList<EventNode>(genInitialLinearGraph(
+                new String[] { "a", "b" }).getNodes());
+        KTailSignatures<EventNode> signatures = new KTailSignatures<EventNode>(
+                nodes.subList(0, 1), 2);
+        assertTrue(signatures.kEquals(nodes.get(0), nodes.get(0)));
+        signatures.getSignature(nodes.get(1));
+    }
+}
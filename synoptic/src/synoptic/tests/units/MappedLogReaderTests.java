@@ -0,0 +1,133 @@
+package synoptic.tests.units;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.fail;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.StringReader;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+import synoptic.main.parser.MappedLogReader;
+import synoptic.tests.SynopticTest;
+
+/**
+ * Tests for synoptic.main.parser.MappedLogReader class
+ */
+public class MappedLogReaderTests extends SynopticTest {
+
+    private static final Charset utf8 = StandardCharsets.UTF_8;
+
+    // Lines with all kinds of terminators, empty lines, and non-ASCII
+    // characters.
+    private static final String log = "first line\nsecond\r\nthird\r\rfifth\n\n"
+            + "caf\u00e9 \u00fcber\r\nlast line without terminator";
+
+    private File writeLog(String name, String contents) throws IOException {
+        File file = new File(testOutputDir + name);
+        FileOutputStream out = new FileOutputStream(file);
+        out.write(contents.getBytes(utf8));
+        out.close();
+        return file;
+    }
+
+    private List<String> readAll(MappedLogReader reader) throws IOException {
+        List<String> lines = new ArrayList<String>();
+        CharSequence line;
+        while ((line = reader.readLine()) != null) {
+            lines.add(line.toString());
+        }
+        reader.close();
+        return lines;
+    }
+
+    private List<String> readAll(BufferedReader reader) throws IOException {
+        List<String> lines = new ArrayList<String>();
+        String line;
+        while ((line = reader.readLine()) != null) {
+            lines.add(line);
+        }
+        reader.close();
+        return lines;
+    }
+
+    /**
+     * The mapped reader returns the same lines as a BufferedReader, including
+     * when lines cross the boundaries of the mapped regions.
+     */
+    @Test
+    public void readLinesTest() throws IOException {
+        File file = writeLog("mapped-reader.log", log);
+        List<String> expected = readAll(new BufferedReader(new StringReader(
+                log)));
+        for (int regionBytes : new int[] { 30, 45, 1024 }) {
+            assertEquals(expected, readAll(new MappedLogReader(file, 0, -1,
+                    utf8, regionBytes)));
+        }
+        assertEquals(expected, readAll(new BufferedReader(
+                new InputStreamReader(new FileInputStream(file), utf8))));
+    }
+
+    /**
+     * Chunks delimited by the positions after skipped lines contain all of
+     * the lines, in order.
+     */
+    @Test
+    public void chunkedReadTest() throws IOException {
+        File file = writeLog("mapped-reader-chunks.log", log);
+        List<String> expected = readAll(new BufferedReader(new StringReader(
+                log)));
+
+        MappedLogReader splitter = new MappedLogReader(file, 0, -1, utf8, 32);
+        List<String> lines = new ArrayList<String>();
+        long start = splitter.position();
+        while (splitter.skipLines(2) > 0) {
+            long end = splitter.position();
+            lines.addAll(readAll(new MappedLogReader(file, start, end, utf8,
+                    32)));
+            start = end;
+        }
+        splitter.close();
+        assertEquals(expected, lines);
+    }
+
+    /**
+     * A line that does not fit in a mapped region cannot be read.
+     */
+    @Test
+    public void lineTooLongTest() throws IOException {
+        File file = writeLog("mapped-reader-long.log", "short\n"
+                + "a line that is much too long\n");
+        MappedLogReader reader = new MappedLogReader(file, 0, -1, utf8, 8);
+        assertEquals("short", reader.readLine().toString());
+        try {
+            reader.readLine();
+            fail("Expected an IOException for a line longer than a region.");
+        } catch (IOException e) {
+            // Expected.
+        } finally {
+            reader.close();
+        }
+    }
+
+    /**
+     * An empty file has no lines.
+     */
+    @Test
+    public void emptyFileTest() throws IOException {
+        File file = writeLog("mapped-reader-empty.log", "");
+        MappedLogReader reader = new MappedLogReader(file);
+        assertNull(reader.readLine());
+        reader.close();
+    }
+}
@@ -0,0 +1,147 @@
+package synoptic.tests.units;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.InputStreamReader;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import org.json.simple.JSONObject;
+import org.json.simple.JSONValue;
+import org.junit.Test;
+
+import synoptic.benchmarks.MetricsRegistry;
+import synoptic.benchmarks.MetricsRegistry.Histogram;
+import synoptic.benchmarks.TimedTask;
+import synoptic.tests.SynopticTest;
+
+/**
+ * Tests for synoptic.benchmarks.MetricsRegistry class
+ */
+public class MetricsRegistryTests extends SynopticTest {
+
+    /**
+     * A histogram records the count, sum, minimum, maximum, and power of two
+     * bucket of its values.
+     */
+    @Test
+    public void histogramTest() {
+        Histogram histogram = new MetricsRegistry().histogram("h");
+        for (long value : new long[] { 0, 1, 2, 3, 1000 }) {
+            histogram.record(value);
+        }
+        assertEquals(5, histogram.getCount());
+        assertEquals(1006, histogram.getSum());
+        assertEquals(0, histogram.getMin());
+        assertEquals(1000, histogram.getMax());
+        assertEquals(1006.0 / 5, histogram.getMean(), 0);
+        assertEquals(1, histogram.getBucketCount(0));
+        assertEquals(1, histogram.getBucketCount(1));
+        assertEquals(2, histogram.getBucketCount(2));
+        // 512 <= 1000 < 1024
+        assertEquals(1, histogram.getBucketCount(10));
+    }
+
+    /**
+     * Counters and histograms that are updated from many threads at once do
+     * not lose updates, and the tasks of each thread nest only within the
+     * tasks of that thread.
+     */
+    @Test
+    public void concurrentUpdatesTest() throws Exception {
+        final MetricsRegistry metrics = new MetricsRegistry();
+        final int numThreads = 8;
+        final int numUpdates = 10000;
+        final List<String> taskNames = new ArrayList<String>();
+        List<Thread> threads = new ArrayList<Thread>();
+        for (int t = 0; t < numThreads; t++) {
+            threads.add(new Thread() {
+                @Override
+                public void run() {
+                    TimedTask outer = metrics.startTask("outer", false);
+                    for (int i = 0; i < numUpdates; i++) {
+                        metrics.counter("c").increment();
+                        metrics.histogram("h").record(i);
+                    }
+                    TimedTask inner = metrics.startTask("inner", true);
+                    inner.stop();
+                    outer.stop();
+                    synchronized (taskNames) {
+                        taskNames.add(inner.getTask());
+                    }
+                }
+            });
+        }
+        for (Thread thread : threads) {
+            thread.start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        assertEquals(numThreads * numUpdates, metrics.counter("c").get());
+        Histogram histogram = metrics.histogram("h");
+        assertEquals(numThreads * numUpdates, histogram.getCount());
+        assertEquals((long) numThreads * numUpdates * (numUpdates - 1) / 2,
+                histogram.getSum());
+        assertEquals(0, histogram.getMin());
+        assertEquals(numUpdates - 1, histogram.getMax());
+        for (String taskName : taskNames) {
+            assertEquals("outer/inner", taskName);
+        }
+        assertEquals(numThreads, metrics.timer("outer").getCount());
+        assertEquals(numThreads, metrics.timer("outer/inner").getCount());
+
+        // The task stack of this thread is unaffected.
+        TimedTask task = metrics.startTask("main", false);
+        task.stop();
+        assertEquals("main", task.getTask());
+    }
+
+    /**
+     * The metrics are written as JSON or CSV, depending on the file name.
+     */
+    @Test
+    public void writeTest() throws Exception {
+        MetricsRegistry metrics = new MetricsRegistry();
+        metrics.counter("calls").add(3);
+        metrics.histogram("sizes").record(4);
+        TimedTask task = metrics.startTask("task", false);
+        task.stop();
+
+        File jsonFile = new File(testOutputDir + "metrics.json");
+        metrics.write(jsonFile);
+        InputStreamReader reader = new InputStreamReader(new FileInputStream(
+                jsonFile), "UTF-8");
+        JSONObject json;
+        try {
+            json = (JSONObject) JSONValue.parse(reader);
+        } finally {
+            reader.close();
+        }
+        assertEquals(3L, ((Map<?, ?>) json.get("counters")).get("calls"));
+        Map<?, ?> sizes = (Map<?, ?>) ((Map<?, ?>) json.get("histograms"))
+                .get("sizes");
+        assertEquals(1L, sizes.get("count"));
+        assertEquals(4L, sizes.get("max"));
+        Map<?, ?> timer = (Map<?, ?>) ((Map<?, ?>) json.get("timers"))
+                .get("task");
+        assertEquals(1L, timer.get("count"));
+        assertEquals(task.getNanoTime(), timer.get("sum"));
+
+        String csv = metrics.toCsv();
+        assertTrue(csv.startsWith("kind,name,count,sum,min,max,mean\n"));
+        assertTrue(csv.contains("\ncounter,calls,3,3,,,\n"));
+        assertTrue(csv.contains("\nhistogram,sizes,1,4,4,4,4.0\n"));
+        assertTrue(csv.contains("\ntimer,task,1," + task.getNanoTime() + ","));
+
+        // Over two repetitions, the counts and sums are averaged.
+        csv = metrics.toCsv(2);
+        assertTrue(csv.contains("\ncounter,calls,1.5,1.5,,,\n"));
+        assertTrue(csv.contains("\nhistogram,sizes,0.5,2.0,4,4,4.0\n"));
+    }
+}
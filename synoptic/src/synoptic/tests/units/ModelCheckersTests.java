@@ -2,10 +2,14 @@ package synoptic.tests.units;
 
 import static org.junit.Assert.assertTrue;
 
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
+import java.util.HashSet;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Random;
+import java.util.Set;
 
 import org.junit.Assert;
 import org.junit.Before;
@@ -16,10 +20,13 @@ import org.junit.runners.Parameterized.Parameters;
 
 import synoptic.invariants.AlwaysFollowedInvariant;
 import synoptic.invariants.AlwaysPrecedesInvariant;
+import synoptic.invariants.BinaryInvariant;
 import synoptic.invariants.CExamplePath;
 import synoptic.invariants.ITemporalInvariant;
 import synoptic.invariants.NeverFollowedInvariant;
 import synoptic.invariants.TemporalInvariantSet;
+import synoptic.invariants.fsmcheck.FsmModelChecker;
+import synoptic.invariants.miners.ChainWalkingTOInvMiner;
 import synoptic.invariants.miners.TransitiveClosureInvMiner;
 import synoptic.main.AbstractMain;
 import synoptic.main.parser.ParseException;
@@ -429,6 +436,98 @@ public class ModelCheckersTests extends SynopticTest {
 
     // /////////////////////////
 
+    /**
+     * Checking the invariants of a log with several threads produces the same
+     * counter-examples, in the same order, as checking them sequentially.
+     * 
+     * @throws Exception
+     */
+    @Test
+    public void parallelCounterExamplesTest() throws Exception {
+        String[] events = new String[] { "x", "a", "b", "a", "c", "y", "--",
+                "x", "c", "a", "y", "--", "b", "x", "a", "b", "c", "--", "y",
+                "c", "b", "a", "x" };
+
+        TraceParser parser = new TraceParser();
+        parser.addRegex("^(?<TYPE>)$");
+        parser.addPartitionsSeparator("^--$");
+        PartitionGraph pGraph = genInitialPartitionGraph(events, parser,
+                new TransitiveClosureInvMiner(), false);
+
+        // The initial partition graph merges all the events of a type, so it
+        // violates many of the invariants mined from the log.
+        TemporalInvariantSet invs = pGraph.getInvariants();
+        List<CExamplePath<Partition>> sequential = invs.getAllCounterExamples(
+                pGraph, 1);
+        List<CExamplePath<Partition>> parallel = invs.getAllCounterExamples(
+                pGraph, 4);
+
+        assertTrue(sequential != null);
+        assertTrue(parallel != null);
+        assertTrue(sequential.size() == parallel.size());
+        for (int i = 0; i < sequential.size(); i++) {
+            assertTrue(sequential.get(i).invariant == parallel.get(i).invariant);
+            assertTrue(sequential.get(i).path.equals(parallel.get(i).path));
+        }
+    }
+
+    /**
+     * With batched checking, the counter-examples are the same as without it.
+     * With the FSM checker, the batched bitset pass returns exactly the
+     * invariants that have counter-examples.
+     * 
+     * @throws Exception
+     */
+    @Test
+    public void batchedCounterExamplesTest() throws Exception {
+        String[] eventTypes = new String[] { "--", "a", "b", "c", "d" };
+        AbstractMain main = AbstractMain.getInstance();
+        for (int i = 0; i < 10; i++) {
+            main.random = new Random(i);
+            String[] log = TOLogInvariantMiningTests.genRandomLog(eventTypes);
+            TemporalInvariantSet invs = new ChainWalkingTOInvMiner()
+                    .computeInvariants(genInitialLinearGraph(log), false,
+                            false);
+            PartitionGraph pGraph = new PartitionGraph(
+                    genInitialLinearGraph(log), true, invs);
+
+            List<CExamplePath<Partition>> unbatched = invs
+                    .getAllCounterExamples(pGraph, 1);
+            List<CExamplePath<Partition>> batched;
+            try {
+                main.options.batchedChecking = true;
+                batched = invs.getAllCounterExamples(pGraph, 1);
+            } finally {
+                main.options.batchedChecking = false;
+            }
+
+            assertTrue((unbatched == null) == (batched == null));
+            if (unbatched != null) {
+                assertTrue(unbatched.size() == batched.size());
+                for (int j = 0; j < unbatched.size(); j++) {
+                    assertTrue(unbatched.get(j).invariant == batched.get(j).invariant);
+                    assertTrue(unbatched.get(j).path
+                            .equals(batched.get(j).path));
+                }
+            }
+
+            if (useFSMChecker) {
+                List<BinaryInvariant> binaryInvs = new ArrayList<BinaryInvariant>();
+                Set<BinaryInvariant> violated = new HashSet<BinaryInvariant>();
+                for (ITemporalInvariant inv : invs) {
+                    binaryInvs.add((BinaryInvariant) inv);
+                    if (FsmModelChecker.getCounterExample(
+                            (BinaryInvariant) inv, pGraph) != null) {
+                        violated.add((BinaryInvariant) inv);
+                    }
+                }
+                assertTrue(violated.equals(new HashSet<BinaryInvariant>(
+                        FsmModelChecker.runBatchedBitSetChecker(binaryInvs,
+                                pGraph))));
+            }
+        }
+    }
+
     // compareViolations is not used above because the NASA and FSM checkers
     // often produce different, but correct, violating paths. This function
     // might be useful for testing for violations before and after modifying a
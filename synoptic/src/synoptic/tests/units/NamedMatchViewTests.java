@@ -0,0 +1,67 @@
+package synoptic.tests.units;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.Map;
+
+import org.junit.Test;
+
+import synoptic.tests.SynopticTest;
+import synoptic.util.matching.NamedMatchView;
+import synoptic.util.matching.NamedMatcher;
+import synoptic.util.matching.NamedPattern;
+import synoptic.util.matching.NamedSubstitution;
+
+/**
+ * Tests for synoptic.util.matching.NamedMatchView class
+ */
+public class NamedMatchViewTests extends SynopticTest {
+
+    /**
+     * The view exposes the same group values as NamedMatcher.namedGroups(),
+     * followed by the extra fields.
+     */
+    @Test
+    public void groupsAndFieldsTest() throws Exception {
+        NamedPattern pattern = NamedPattern
+                .compile("^(?<TYPE>\\w+) (?<host>\\w+)(?: (?<opt>\\w+))?$");
+        NamedMatchView view = new NamedMatchView(pattern, Arrays.asList(
+                "SEPCOUNT", "host"));
+
+        assertEquals(4, view.size());
+        assertEquals("TYPE", view.name(0));
+        assertEquals("SEPCOUNT", view.name(3));
+        assertEquals(1, view.slot("host"));
+        assertEquals(-1, view.slot("missing"));
+
+        String line = "send h1";
+        assertTrue(view.matches(line));
+        NamedMatcher matcher = pattern.matcher(line);
+        assertTrue(matcher.matches());
+        Map<String, String> groups = matcher.namedGroups();
+        for (String name : groups.keySet()) {
+            assertEquals(groups.get(name), view.get(name));
+        }
+        assertNull(view.get("opt"));
+        assertNull(view.get("SEPCOUNT"));
+        assertNull(view.get("missing"));
+
+        // Set values override group values until the next match.
+        view.set("SEPCOUNT", "2");
+        view.set("host", "h2");
+        assertEquals("2", view.get("SEPCOUNT"));
+        assertEquals("h2", view.get(1));
+        assertEquals("send h2 2", new NamedSubstitution(
+                "\\k<TYPE> \\k<host> \\k<SEPCOUNT>").substitute(view));
+
+        assertFalse(view.matches("bad"));
+        assertTrue(view.matches("recv h3 x"));
+        assertEquals("h3", view.get("host"));
+        assertEquals("x", view.get("opt"));
+        assertNull(view.get("SEPCOUNT"));
+    }
+}
@@ -0,0 +1,113 @@
+package synoptic.tests.units;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+
+import synoptic.tests.SynopticTest;
+import synoptic.util.matching.NamedPattern;
+import synoptic.util.matching.NamedPatternDispatcher;
+
+/**
+ * Tests for synoptic.util.matching.NamedPatternDispatcher class
+ */
+public class NamedPatternDispatcherTests extends SynopticTest {
+
+    /**
+     * Literal prefixes and required literals are extracted from the top level
+     * of a regex, ignoring groups, classes, and optional characters.
+     */
+    @Test
+    public void requiredLiteralsTest() {
+        assertEquals(Arrays.asList("GET /"),
+                NamedPatternDispatcher.requiredLiterals("^GET /"));
+        assertEquals(Arrays.asList("recv ", " from "),
+                NamedPatternDispatcher
+                        .requiredLiterals("^recv (\\S+) from (\\S+)$"));
+        assertEquals(Arrays.asList("[", "] "),
+                NamedPatternDispatcher.requiredLiterals("\\[(\\d+)\\] (.+)"));
+        assertEquals(Arrays.asList("a", "c"),
+                NamedPatternDispatcher.requiredLiterals("ab?c"));
+        assertEquals(Arrays.asList("x", "z"),
+                NamedPatternDispatcher.requiredLiterals("x[)(]y{2}z"));
+        assertEquals(Arrays.asList("ab"),
+                NamedPatternDispatcher.requiredLiterals("ab(c|d)"));
+        assertEquals(Arrays.asList(""),
+                NamedPatternDispatcher.requiredLiterals(".*"));
+
+        // Constructs that are not handled.
+        assertNull(NamedPatternDispatcher.requiredLiterals("a|b"));
+        assertNull(NamedPatternDispatcher.requiredLiterals("(?i)abc"));
+        assertNull(NamedPatternDispatcher.requiredLiterals("\\Qa.b\\E"));
+        assertNull(NamedPatternDispatcher.requiredLiterals("(a)\\1"));
+    }
+
+    /**
+     * Returns the index of the first pattern in list order that matches line,
+     * or -1.
+     */
+    private int firstMatch(List<NamedPattern> patterns, String line) {
+        for (int i = 0; i < patterns.size(); i++) {
+            if (patterns.get(i).matcher(line).matches()) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Returns the index of the first pattern in try order that matches line,
+     * or -1, and records the hit with the dispatcher.
+     */
+    private int dispatchMatch(NamedPatternDispatcher dispatcher, String line) {
+        for (int i : dispatcher.tryOrder()) {
+            if (!dispatcher.mayMatch(i, line)) {
+                continue;
+            }
+            if (dispatcher.getPattern(i).matcher(line).matches()) {
+                dispatcher.recordHit(i);
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * The dispatcher finds the same first matching pattern as trying all of
+     * the patterns in order, both before and after the try order is adapted
+     * to the hit counts.
+     */
+    @Test
+    public void firstMatchSemanticsTest() throws Exception {
+        List<NamedPattern> patterns = new ArrayList<NamedPattern>();
+        patterns.add(NamedPattern.compile("^send (?<TYPE>\\S+)$"));
+        patterns.add(NamedPattern.compile("^se(?<TYPE>\\S+) x$"));
+        patterns.add(NamedPattern.compile("^recv (?<TYPE>\\S+)$"));
+        patterns.add(NamedPattern.compile("^(?<TYPE>\\S+) done$"));
+        patterns.add(NamedPattern.compile("^recv (?<TYPE>ack)$"));
+        patterns.add(NamedPattern.compile("^(?<TYPE>.+)$"));
+        NamedPatternDispatcher dispatcher = new NamedPatternDispatcher(
+                patterns);
+
+        String[] lines = { "send a", "send x", "sex x", "recv a", "recv ack",
+                "a done", "recv done", "other" };
+        Random rand = new Random(0);
+        for (int n = 0; n < 5000; n++) {
+            // Make "recv ack" lines much more common, so that the patterns are
+            // reordered.
+            String line = (rand.nextInt(4) == 0) ? lines[rand
+                    .nextInt(lines.length)] : "recv ack";
+            assertEquals(firstMatch(patterns, line),
+                    dispatchMatch(dispatcher, line));
+        }
+        // recv patterns precede the send patterns after reordering.
+        assertTrue(dispatcher.tryOrder()[0] == 2);
+    }
+}
@@ -57,8 +57,12 @@ public class POLogInvariantMiningTests extends SynopticTest {
         Object[][] data = new Object[][] {
                 { new TransitiveClosureInvMiner(false) },
                 { new TransitiveClosureInvMiner(true) },
+                { new TransitiveClosureInvMiner(true, false, true, 1) },
+                { new TransitiveClosureInvMiner(true, false, true, 4) },
                 { new DAGWalkingPOInvMiner(true) },
-                { new DAGWalkingPOInvMiner(false) } };
+                { new DAGWalkingPOInvMiner(false) },
+                { new DAGWalkingPOInvMiner(true, 4) },
+                { new DAGWalkingPOInvMiner(false, 4) } };
         return Arrays.asList(data);
     }
 
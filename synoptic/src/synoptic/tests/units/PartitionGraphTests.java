@@ -4,6 +4,7 @@ import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertTrue;
 
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
@@ -12,19 +13,27 @@ import java.util.Set;
 import org.junit.Test;
 
 import synoptic.algorithms.graphops.IOperation;
+import synoptic.algorithms.graphops.PartitionMerge;
+import synoptic.algorithms.graphops.PartitionMultiSplit;
 import synoptic.algorithms.graphops.PartitionSplit;
+import synoptic.invariants.BinaryInvariant;
+import synoptic.invariants.ITemporalInvariant;
 import synoptic.invariants.TemporalInvariantSet;
+import synoptic.invariants.fsmcheck.FsmModelChecker;
 import synoptic.invariants.miners.ChainWalkingTOInvMiner;
 import synoptic.invariants.miners.ITOInvariantMiner;
+import synoptic.main.AbstractMain;
 import synoptic.main.parser.TraceParser;
 import synoptic.model.ChainsTraceGraph;
 import synoptic.model.EventNode;
 import synoptic.model.Partition;
 import synoptic.model.PartitionGraph;
+import synoptic.model.PartitionSplitView;
 import synoptic.model.event.EventType;
 import synoptic.model.event.StringEventType;
 import synoptic.model.interfaces.IGraph;
 import synoptic.model.interfaces.INode;
+import synoptic.model.interfaces.ITransition;
 import synoptic.tests.SynopticTest;
 
 public class PartitionGraphTests extends SynopticTest {
@@ -250,4 +259,132 @@ public class PartitionGraphTests extends SynopticTest {
         assertEquals("There should be exactly one trace",
                 paths.keySet().size(), 1);
     }
+
+    /**
+     * Checking invariants on a view of a split graph gives the same results as
+     * checking them on the graph with the split applied, and does not modify
+     * the graph.
+     */
+    @Test
+    public void splitViewTest() throws Exception {
+        String[] events = new String[] { "a", "b", "c", "--", "a", "c", "b",
+                "--", "d", "a", "b", "c", "--", "b", "d" };
+        TraceParser parser = new TraceParser();
+        parser.addRegex("^(?<TYPE>)$");
+        parser.addPartitionsSeparator("^--$");
+        PartitionGraph pGraph = genInitialPartitionGraph(events, parser,
+                new ChainWalkingTOInvMiner(), false);
+        AbstractMain.getInstance().options.useFSMChecker = true;
+
+        for (Partition part : new ArrayList<Partition>(pGraph.getNodes())) {
+            if (part.size() < 2) {
+                continue;
+            }
+            // Split off the first event of the partition.
+            PartitionSplit split = new PartitionSplit(part);
+            split.addEventToSplit(part.getEventNodes().iterator().next());
+            PartitionMultiSplit splitOp = new PartitionMultiSplit(split);
+
+            PartitionSplitView view = new PartitionSplitView(pGraph, splitOp);
+            assertEquals(pGraph.getNodes().size() + 1, view.getNodes().size());
+            List<Boolean> viewSatisfied = new ArrayList<Boolean>();
+            for (ITemporalInvariant inv : pGraph.getInvariants()) {
+                viewSatisfied.add(FsmModelChecker.getCounterExample(
+                        (BinaryInvariant) inv, view) == null);
+            }
+            for (EventNode e : part.getEventNodes()) {
+                assertTrue(e.getParent() == part);
+            }
+
+            IOperation rewind = pGraph.apply(splitOp);
+            int i = 0;
+            for (ITemporalInvariant inv : pGraph.getInvariants()) {
+                boolean satisfied = FsmModelChecker.getCounterExample(
+                        (BinaryInvariant) inv, pGraph) == null;
+                assertEquals(satisfied, viewSatisfied.get(i));
+                i++;
+            }
+            pGraph.apply(rewind);
+        }
+    }
+
+    /**
+     * Checks that the (cached) weighted transitions of every partition of
+     * pGraph match the transitions of its events.
+     */
+    private static void checkTransitions(PartitionGraph pGraph) {
+        for (Partition part : pGraph.getNodes()) {
+            // Number of events of part with a transition into each partition
+            // (for INITIAL, the number of events that its single event has a
+            // transition to).
+            Map<Partition, Integer> counts = new HashMap<Partition, Integer>();
+            for (EventNode e : part.getEventNodes()) {
+                List<Partition> targets = new ArrayList<Partition>();
+                for (EventNode eSucc : e.getAllSuccessors()) {
+                    if (part.isInitial()
+                            || !targets.contains(eSucc.getParent())) {
+                        targets.add(eSucc.getParent());
+                    }
+                }
+                for (Partition target : targets) {
+                    Integer count = counts.get(target);
+                    counts.put(target, count == null ? 1 : count + 1);
+                }
+            }
+
+            assertEquals(counts.keySet(), part.getAllSuccessors());
+            assertEquals(counts.size(), part.getAllTransitions().size());
+            List<? extends ITransition<Partition>> transitions = part
+                    .getWeightedTransitions();
+            assertEquals(counts.size(), transitions.size());
+            for (ITransition<Partition> tr : transitions) {
+                assertTrue(tr.getSource() == part);
+                assertEquals(counts.get(tr.getTarget()), tr.getCount());
+            }
+        }
+    }
+
+    /**
+     * The cached transitions of partitions are updated when splits and merges
+     * are committed and rewound.
+     */
+    @Test
+    public void transitionCacheTest() throws Exception {
+        String[] events = new String[] { "a", "b", "c", "--", "a", "c", "b",
+                "--", "d", "a", "b", "c", "--", "b", "d" };
+        TraceParser parser = new TraceParser();
+        parser.addRegex("^(?<TYPE>)$");
+        parser.addPartitionsSeparator("^--$");
+        PartitionGraph pGraph = genInitialPartitionGraph(events, parser,
+                new ChainWalkingTOInvMiner(), false);
+        checkTransitions(pGraph);
+
+        for (Partition part : new ArrayList<Partition>(pGraph.getNodes())) {
+            if (part.size() < 2) {
+                continue;
+            }
+            // Split off the first event of the partition.
+            PartitionSplit split = new PartitionSplit(part);
+            split.addEventToSplit(part.getEventNodes().iterator().next());
+            IOperation rewindMultiSplit = pGraph
+                    .apply(new PartitionMultiSplit(split));
+            checkTransitions(pGraph);
+
+            // Merge the split partitions back.
+            Partition splitOff = null;
+            for (Partition p : pGraph.getNodes()) {
+                if (p != part && p.getEType().equals(part.getEType())) {
+                    splitOff = p;
+                }
+            }
+            IOperation rewindMerge = pGraph.apply(new PartitionMerge(part,
+                    splitOff));
+            checkTransitions(pGraph);
+            pGraph.apply(rewindMerge);
+            checkTransitions(pGraph);
+
+            pGraph.apply(rewindMultiSplit);
+            checkTransitions(pGraph);
+        }
+    }
 }
@@ -0,0 +1,252 @@
+package synoptic.tests.units;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import org.junit.Test;
+
+import synoptic.algorithms.Bisimulation;
+import synoptic.invariants.CExamplePath;
+import synoptic.invariants.ITemporalInvariant;
+import synoptic.invariants.TemporalInvariantSet;
+import synoptic.invariants.miners.ChainWalkingTOInvMiner;
+import synoptic.main.AbstractMain;
+import synoptic.model.EventNode;
+import synoptic.model.Partition;
+import synoptic.model.PartitionGraph;
+import synoptic.model.RefinementCheckpoint;
+import synoptic.tests.SynopticTest;
+
+/**
+ * Tests for synoptic.model.RefinementCheckpoint class, and for resuming
+ * refinement from a checkpoint.
+ */
+public class RefinementCheckpointTests extends SynopticTest {
+
+    /**
+     * Returns a partition graph of a log, with the AFby, AP, and NFby
+     * invariants of the log.
+     */
+    private PartitionGraph genPartitionGraph(String[] log) throws Exception {
+        TemporalInvariantSet invariants = filterIntrByInvariants(new ChainWalkingTOInvMiner()
+                .computeInvariants(genInitialLinearGraph(log), false, false));
+        return new PartitionGraph(genInitialLinearGraph(log), true, invariants);
+    }
+
+    /**
+     * Returns the partitions of pGraph, each as the set of the positions of
+     * its event nodes in the trace graph, so that the partitions of graphs of
+     * the same log can be compared.
+     */
+    private static Set<Set<Integer>> getMembership(PartitionGraph pGraph) {
+        List<EventNode> events = new ArrayList<EventNode>(pGraph
+                .getTraceGraph().getNodes());
+        Set<Set<Integer>> membership = new HashSet<Set<Integer>>();
+        for (Partition partition : pGraph.getNodes()) {
+            Set<Integer> positions = new HashSet<Integer>();
+            for (EventNode event : partition.getEventNodes()) {
+                positions.add(events.indexOf(event));
+            }
+            membership.add(positions);
+        }
+        return membership;
+    }
+
+    /**
+     * A checkpoint that is read for a graph of the same log restores the
+     * partitions, the split step count, the unsatisfied invariants, and the
+     * state of the random number generator.
+     */
+    @Test
+    public void roundTripTest() throws Exception {
+        String[] log = new String[] { "a", "b", "c", "--", "a", "c", "b",
+                "--", "b", "a", "c" };
+        PartitionGraph pGraph = genPartitionGraph(log);
+        List<CExamplePath<Partition>> counterExamples = pGraph.getInvariants()
+                .getAllCounterExamples(pGraph);
+        Bisimulation.performSplits(0, pGraph, counterExamples);
+
+        Set<ITemporalInvariant> unsatisfied = new LinkedHashSet<ITemporalInvariant>();
+        for (CExamplePath<Partition> cExample : counterExamples) {
+            unsatisfied.add(cExample.invariant);
+        }
+        Random random = new Random(7);
+        random.nextInt();
+        File file = new File(testOutputDir + "checkpoint-roundtrip.src");
+        RefinementCheckpoint.write(pGraph, 3, unsatisfied, random, file);
+
+        PartitionGraph restored = genPartitionGraph(log);
+        RefinementCheckpoint checkpoint = RefinementCheckpoint.read(file,
+                restored);
+        checkpoint.restorePartitions(restored);
+        restored.checkSanity();
+        assertEquals(getMembership(pGraph), getMembership(restored));
+        assertEquals(3, checkpoint.getNumSplitSteps());
+        assertEquals(unsatisfied, checkpoint.getUnsatisfiedInvariants());
+        for (int i = 0; i < 10; i++) {
+            assertEquals(random.nextInt(), checkpoint.getRandom().nextInt());
+        }
+    }
+
+    /**
+     * Refinement that is resumed from a checkpoint starts from the partitions
+     * of the checkpoint: every partition that it arrives at is contained in a
+     * partition of the checkpoint.
+     */
+    @Test
+    public void resumeTest() throws Exception {
+        String[] eventTypes = new String[] { "--", "a", "b", "c", "d", "e" };
+        AbstractMain main = AbstractMain.getInstance();
+        File file = new File(testOutputDir + "checkpoint-resume.src");
+        try {
+            for (int i = 0; i < 10; i++) {
+                main.random = new Random(i);
+                String[] log = TOLogInvariantMiningTests
+                        .genRandomLog(eventTypes);
+                logger.fine("log: " + Arrays.toString(log));
+
+                // Make one split step, and checkpoint.
+                PartitionGraph pGraph = genPartitionGraph(log);
+                List<CExamplePath<Partition>> counterExamples = pGraph
+                        .getInvariants().getAllCounterExamples(pGraph);
+                if (counterExamples == null) {
+                    continue;
+                }
+                int numSplitSteps = Bisimulation.performSplits(0, pGraph,
+                        counterExamples);
+                Set<ITemporalInvariant> unsatisfied = new LinkedHashSet<ITemporalInvariant>();
+                for (CExamplePath<Partition> cExample : counterExamples) {
+                    unsatisfied.add(cExample.invariant);
+                }
+                RefinementCheckpoint.write(pGraph, numSplitSteps, unsatisfied,
+                        main.random, file);
+                Set<Set<Integer>> checkpointed = getMembership(pGraph);
+
+                // Resume from the checkpoint with a different random state,
+                // which the checkpoint replaces.
+                main.options.refinementCheckpoint = file.getPath();
+                main.options.resume = true;
+                main.random = new Random(i + 100);
+                PartitionGraph resumed = genPartitionGraph(log);
+                Bisimulation.splitUntilAllInvsSatisfied(resumed);
+                main.options.refinementCheckpoint = null;
+                main.options.resume = false;
+
+                assertTrue(resumed.getInvariants().getAllCounterExamples(
+                        resumed) == null);
+                for (Set<Integer> positions : getMembership(resumed)) {
+                    boolean contained = false;
+                    for (Set<Integer> checkpointPositions : checkpointed) {
+                        if (checkpointPositions.containsAll(positions)) {
+                            contained = true;
+                            break;
+                        }
+                    }
+                    assertTrue(contained);
+                }
+            }
+        } finally {
+            main.options.refinementCheckpoint = null;
+            main.options.resume = false;
+        }
+    }
+
+    /**
+     * Refinement writes checkpoints at the checkpoint interval, and the last
+     * one can be resumed from.
+     */
+    @Test
+    public void periodicCheckpointTest() throws Exception {
+        String[] eventTypes = new String[] { "--", "a", "b", "c", "d", "e" };
+        AbstractMain main = AbstractMain.getInstance();
+        File file = new File(testOutputDir + "checkpoint-periodic.src");
+        try {
+            main.options.refinementCheckpoint = file.getPath();
+            main.options.checkpointInterval = 1;
+            for (int i = 0; i < 5; i++) {
+                file.delete();
+                main.random = new Random(i);
+                String[] log = TOLogInvariantMiningTests
+                        .genRandomLog(eventTypes);
+                PartitionGraph pGraph = genPartitionGraph(log);
+                boolean violated = pGraph.getInvariants()
+                        .getAllCounterExamples(pGraph) != null;
+                Bisimulation.splitUntilAllInvsSatisfied(pGraph);
+                assertEquals(violated, file.exists());
+                if (!violated) {
+                    continue;
+                }
+
+                PartitionGraph resumed = genPartitionGraph(log);
+                RefinementCheckpoint checkpoint = RefinementCheckpoint.read(
+                        file, resumed);
+                assertTrue(checkpoint.getNumSplitSteps() > 0);
+                checkpoint.restorePartitions(resumed);
+                assertEquals(getMembership(pGraph), getMembership(resumed));
+            }
+        } finally {
+            main.options.refinementCheckpoint = null;
+            main.options.checkpointInterval = 10;
+        }
+    }
+
+    /**
+     * A checkpoint cannot be read for a graph of a different log.
+     */
+    @Test
+    public void differentLogTest() throws Exception {
+        String[] log = new String[] { "a", "b", "c", "--", "a", "c", "b" };
+        PartitionGraph pGraph = genPartitionGraph(log);
+        File file = new File(testOutputDir + "checkpoint-different.src");
+        RefinementCheckpoint.write(pGraph, 0,
+                new LinkedHashSet<ITemporalInvariant>(), new Random(0), file);
+
+        String[] otherLog = new String[] { "a", "b", "--", "a", "c", "b" };
+        try {
+            RefinementCheckpoint.read(file, genPartitionGraph(otherLog));
+            fail("Expected an IOException for a checkpoint of another log.");
+        } catch (IOException e) {
+            // Expected.
+        }
+    }
+
+    /**
+     * A random number generator that is not a java.util.Random, although it
+     * extends it.
+     */
+    private static class OtherRandom extends Random {
+        private static final long serialVersionUID = 1L;
+    }
+
+    /**
+     * A checkpoint whose random number generator is not a java.util.Random
+     * cannot be read.
+     */
+    @Test
+    public void otherRandomTest() throws Exception {
+        String[] log = new String[] { "a", "b", "c", "--", "a", "c", "b" };
+        PartitionGraph pGraph = genPartitionGraph(log);
+        File file = new File(testOutputDir + "checkpoint-random.src");
+        RefinementCheckpoint.write(pGraph, 0,
+                new LinkedHashSet<ITemporalInvariant>(), new OtherRandom(),
+                file);
+
+        try {
+            RefinementCheckpoint.read(file, genPartitionGraph(log));
+            fail("Expected an IOException for a checkpoint of another random number generator.");
+        } catch (IOException e) {
+            // Expected.
+        }
+    }
+}
@@ -53,8 +53,12 @@ public class TOLogInvariantMiningTests extends SynopticTest {
         Object[][] data = new Object[][] {
                 { new TransitiveClosureInvMiner(false) },
                 { new TransitiveClosureInvMiner(true) },
+                { new TransitiveClosureInvMiner(true, true) },
                 { new ChainWalkingTOInvMiner() },
-                { new DAGWalkingPOInvMiner() } };
+                { new ChainWalkingTOInvMiner(false, 1) },
+                { new ChainWalkingTOInvMiner(true, 4) },
+                { new DAGWalkingPOInvMiner() },
+                { new DAGWalkingPOInvMiner(true, 4) } };
         return Arrays.asList(data);
     }
 
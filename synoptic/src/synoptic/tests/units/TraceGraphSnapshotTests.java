@@ -0,0 +1,198 @@
+package synoptic.tests.units;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+import synoptic.invariants.TemporalInvariantSet;
+import synoptic.invariants.miners.ChainWalkingTOInvMiner;
+import synoptic.invariants.miners.DAGWalkingPOInvMiner;
+import synoptic.main.parser.TraceParser;
+import synoptic.model.ChainsTraceGraph;
+import synoptic.model.DAGsTraceGraph;
+import synoptic.model.EventNode;
+import synoptic.model.Trace;
+import synoptic.model.TraceGraph;
+import synoptic.model.TraceGraphSnapshot;
+import synoptic.model.Transition;
+import synoptic.model.event.Event;
+import synoptic.tests.SynopticTest;
+
+/**
+ * Tests for synoptic.model.TraceGraphSnapshot class
+ */
+public class TraceGraphSnapshotTests extends SynopticTest {
+
+    /**
+     * Writes a trace graph to a snapshot file and reads it back.
+     */
+    private TraceGraph<?> roundTrip(TraceGraph<?> graph, String name)
+            throws IOException {
+        File file = new File(testOutputDir + name);
+        TraceGraphSnapshot.write(graph, file);
+        return TraceGraphSnapshot.read(file);
+    }
+
+    /**
+     * Checks that two trace graphs have equivalent nodes, in the same order,
+     * and equivalent transitions between corresponding nodes.
+     */
+    private void assertSameGraph(TraceGraph<?> expected, TraceGraph<?> actual) {
+        List<EventNode> expectedNodes = new ArrayList<EventNode>(
+                expected.getNodes());
+        List<EventNode> actualNodes = new ArrayList<EventNode>(
+                actual.getNodes());
+        assertEquals(expectedNodes.size(), actualNodes.size());
+        assertEquals(expected.getNumTraces(), actual.getNumTraces());
+        assertEquals(expected.getRelations(), actual.getRelations());
+
+        for (int i = 0; i < expectedNodes.size(); i++) {
+            EventNode e = expectedNodes.get(i);
+            EventNode a = actualNodes.get(i);
+            Event eEvent = e.getEvent();
+            Event aEvent = a.getEvent();
+            assertEquals(eEvent.getEType(), aEvent.getEType());
+            assertEquals(eEvent.getTime(), aEvent.getTime());
+            assertEquals(eEvent.getLine(), aEvent.getLine());
+            assertEquals(eEvent.getFileName(), aEvent.getFileName());
+            assertEquals(eEvent.getLineNum(), aEvent.getLineNum());
+            assertEquals(e.getTraceID(), a.getTraceID());
+
+            List<Transition<EventNode>> eTxs = e.getAllTransitions();
+            List<Transition<EventNode>> aTxs = a.getAllTransitions();
+            assertEquals(eTxs.size(), aTxs.size());
+            for (int j = 0; j < eTxs.size(); j++) {
+                assertEquals(expectedNodes.indexOf(eTxs.get(j).getTarget()),
+                        actualNodes.indexOf(aTxs.get(j).getTarget()));
+                assertEquals(eTxs.get(j).getRelation(), aTxs.get(j)
+                        .getRelation());
+            }
+
+            EventNode eSucc = e.getProcessLocalSuccessor();
+            EventNode aSucc = a.getProcessLocalSuccessor();
+            assertEquals(eSucc == null ? -1 : expectedNodes.indexOf(eSucc),
+                    aSucc == null ? -1 : actualNodes.indexOf(aSucc));
+        }
+    }
+
+    /**
+     * A totally ordered graph with multiple traces and regular and closure
+     * relations is restored exactly, and the same invariants are mined from
+     * the restored graph.
+     */
+    @Test
+    public void chainsRoundTripTest() throws Exception {
+        TraceParser parser = new TraceParser();
+        parser.addRegex("^(?<TIME>)(?<TYPE>)$");
+        parser.addRegex("^(?<TIME>)(?<RELATION>)(?<TYPE>)$");
+        parser.addRegex("^(?<TIME>)(?<RELATION*>)cl(?<TYPE>)$");
+        parser.addPartitionsSeparator("^--$");
+        String[] events = new String[] { "1 v", "2 r cl w", "3 x", "4 r y",
+                "--", "2 b", "1 a", "3 r c" };
+
+        ChainsTraceGraph graph = parser.generateDirectTORelation(parseLogEvents(
+                events, parser));
+        TraceGraph<?> loaded = roundTrip(graph, "snapshot-chains.stg");
+        assertTrue(loaded instanceof ChainsTraceGraph);
+        ChainsTraceGraph loadedChains = (ChainsTraceGraph) loaded;
+        assertSameGraph(graph, loadedChains);
+
+        List<Trace> traces = graph.getTraces();
+        List<Trace> loadedTraces = loadedChains.getTraces();
+        assertEquals(traces.size(), loadedTraces.size());
+        for (int i = 0; i < traces.size(); i++) {
+            assertEquals(traces.get(i).getSingleRelationPaths("r").size(),
+                    loadedTraces.get(i).getSingleRelationPaths("r").size());
+        }
+
+        ChainWalkingTOInvMiner miner = new ChainWalkingTOInvMiner();
+        TemporalInvariantSet invs = miner.computeInvariants(graph, true, false);
+        TemporalInvariantSet loadedInvs = miner.computeInvariants(loadedChains,
+                true, false);
+        assertTrue(invs.sameInvariants(loadedInvs));
+    }
+
+    /**
+     * A partially ordered graph is restored with its vector times and
+     * process-local successors, and the same invariants are mined from the
+     * restored graph.
+     */
+    @Test
+    public void dagsRoundTripTest() throws Exception {
+        TraceParser parser = new TraceParser();
+        parser.addRegex("^(?<VTIME>)(?<PID>)(?<TYPE>)$");
+        parser.addPartitionsSeparator("^--$");
+        String[] events = new String[] { "1,0 0 a", "2,0 0 b", "0,1 1 c",
+                "2,2 1 d", "--", "1,0 0 a", "1,1 1 c" };
+
+        DAGsTraceGraph graph = genDAGsTraceGraph(events, parser);
+        TraceGraph<?> loaded = roundTrip(graph, "snapshot-dags.stg");
+        assertTrue(loaded instanceof DAGsTraceGraph);
+        DAGsTraceGraph loadedDAGs = (DAGsTraceGraph) loaded;
+        assertSameGraph(graph, loadedDAGs);
+
+        DAGWalkingPOInvMiner miner = new DAGWalkingPOInvMiner(true);
+        assertTrue(miner.computeInvariants(graph).sameInvariants(
+                miner.computeInvariants(loadedDAGs)));
+    }
+
+    /**
+     * The vector times of events that differ in few clocks from the previous
+     * event of the same process are restored exactly.
+     */
+    @Test
+    public void dagsVectorTimeDeltaTest() throws Exception {
+        TraceParser parser = new TraceParser();
+        parser.addRegex("^(?<VTIME>)(?<PID>)(?<TYPE>)$");
+        parser.addPartitionsSeparator("^--$");
+        String[] events = new String[] { "1,0,0,0 0 a", "2,0,0,0 0 b",
+                "0,1,0,0 1 c", "2,2,0,0 1 d", "0,0,1,0 2 e", "2,2,2,0 2 f",
+                "3,2,2,0 0 g", "3,2,2,1 3 h", "3,2,2,2 3 i", "--",
+                "1,0,0,0 0 a", "1,1,0,0 1 c", "1,1,1,0 2 e", "1,1,2,0 2 f" };
+
+        DAGsTraceGraph graph = genDAGsTraceGraph(events, parser);
+        TraceGraph<?> loaded = roundTrip(graph, "snapshot-vtime-delta.stg");
+        assertTrue(loaded instanceof DAGsTraceGraph);
+        assertSameGraph(graph, loaded);
+    }
+
+    /**
+     * A file that is not a snapshot, or that is truncated, cannot be read.
+     */
+    @Test
+    public void invalidSnapshotTest() throws Exception {
+        File file = new File(testOutputDir + "snapshot-invalid.stg");
+        FileOutputStream out = new FileOutputStream(file);
+        out.write("not a snapshot".getBytes("UTF-8"));
+        out.close();
+        try {
+            TraceGraphSnapshot.read(file);
+            fail("Expected an IOException for an invalid snapshot.");
+        } catch (IOException e) {
+            // Expected.
+        }
+
+        ChainsTraceGraph graph = genInitialLinearGraph(new String[] { "a",
+                "b", "c" });
+        file = new File(testOutputDir + "snapshot-truncated.stg");
+        TraceGraphSnapshot.write(graph, file);
+        RandomAccessFile raf = new RandomAccessFile(file, "rw");
+        raf.setLength(raf.length() - 3);
+        raf.close();
+        try {
+            TraceGraphSnapshot.read(file);
+            fail("Expected an IOException for a truncated snapshot.");
+        } catch (IOException e) {
+            // Expected.
+        }
+    }
+}
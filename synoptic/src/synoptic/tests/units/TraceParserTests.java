@@ -2,16 +2,21 @@ package synoptic.tests.units;
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
 import java.text.SimpleDateFormat;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.Comparator;
 import java.util.Date;
+import java.util.Iterator;
 import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Random;
@@ -1492,4 +1497,183 @@ public class TraceParserTests extends SynopticTest {
 
         AbstractOptions.inputDelta = false;
     }
+
+    /**
+     * Writes numFiles log files, each with linesPerFile lines of the form
+     * "time type host", where host is one of three hosts. Every numSepLines
+     * lines (if positive), a "--" separator line is written instead.
+     */
+    private List<File> writeLogFiles(String prefix, int numFiles,
+            int linesPerFile, int numSepLines) throws IOException {
+        Random rand = new Random(numFiles * linesPerFile);
+        List<File> files = new ArrayList<File>();
+        for (int i = 0; i < numFiles; i++) {
+            File file = new File(testOutputDir + prefix + "-" + i + ".log");
+            FileWriter writer = new FileWriter(file);
+            for (int j = 1; j <= linesPerFile; j++) {
+                if (numSepLines > 0 && j % numSepLines == 0) {
+                    writer.write("--\n");
+                    continue;
+                }
+                writer.write(j + " " + (char) ('a' + rand.nextInt(5)) + " h"
+                        + rand.nextInt(3) + "\n");
+            }
+            writer.close();
+            files.add(file);
+        }
+        return files;
+    }
+
+    /**
+     * Parses files sequentially and in parallel with the given configuration,
+     * and checks that the two parsers produce identical events, trace IDs, and
+     * trace graphs.
+     */
+    private void checkParallelParseMatchesSequential(List<File> files,
+            String partitionsMap, String separator) throws Exception {
+        TraceParser seqParser = new TraceParser();
+        TraceParser parParser = new TraceParser();
+        for (TraceParser p : new TraceParser[] { seqParser, parParser }) {
+            p.addRegex("^(?<TIME>)(?<TYPE>)(?<host>)$");
+            p.setPartitionsMap(partitionsMap);
+            if (separator != null) {
+                p.addPartitionsSeparator(separator);
+            }
+        }
+
+        List<EventNode> seqEvents = seqParser.parseTraceFiles(files, 1);
+        // A small chunk size forces files to be split into many chunks.
+        List<EventNode> parEvents = parParser.parseTraceFiles(files, 4, 7);
+
+        assertEquals(seqEvents.size(), parEvents.size());
+        for (int i = 0; i < seqEvents.size(); i++) {
+            EventNode seq = seqEvents.get(i);
+            EventNode par = parEvents.get(i);
+            assertEquals(seq.getEType(), par.getEType());
+            assertEquals(seq.getTime(), par.getTime());
+            assertEquals(seq.getEvent().getFileName(), par.getEvent()
+                    .getFileName());
+            assertEquals(seq.getEvent().getLineNum(), par.getEvent()
+                    .getLineNum());
+            assertEquals(seq.getTraceID(), par.getTraceID());
+        }
+
+        ChainsTraceGraph seqGraph = seqParser
+                .generateDirectTORelation(seqEvents);
+        ChainsTraceGraph parGraph = parParser
+                .generateDirectTORelation(parEvents);
+        assertEquals(seqGraph.getNumTraces(), parGraph.getNumTraces());
+        assertEquals(seqGraph.getNodes().size(), parGraph.getNodes().size());
+    }
+
+    /**
+     * Parallel parsing of files that are split into chunks, with partitions
+     * that span chunks and files.
+     */
+    @Test
+    public void parseTraceFilesInParallelTest() throws Exception {
+        AbstractMain.getInstance().options.debugParse = false;
+        List<File> files = writeLogFiles("parallel-parse", 3, 50, 0);
+        checkParallelParseMatchesSequential(files, "\\k<host>", null);
+    }
+
+    /**
+     * Parallel parsing of files with a partitions separator: the separator
+     * incrementor requires each file to be parsed by a single worker.
+     */
+    @Test
+    public void parseTraceFilesInParallelWithSeparatorTest() throws Exception {
+        AbstractMain.getInstance().options.debugParse = false;
+        List<File> files = writeLogFiles("parallel-parse-sep", 3, 50, 11);
+        checkParallelParseMatchesSequential(files,
+                AbstractOptions.partitionRegExpDefault, "^--$");
+    }
+
+    /**
+     * Parses files into a trace graph while parsing, and checks that the graph
+     * matches the graph generated from the sequentially parsed events.
+     */
+    private void checkStreamingParseMatchesSequential(List<File> files,
+            String partitionsMap, String separator) throws Exception {
+        TraceParser seqParser = new TraceParser();
+        TraceParser streamParser = new TraceParser();
+        for (TraceParser p : new TraceParser[] { seqParser, streamParser }) {
+            p.addRegex("^(?<TIME>)(?<TYPE>)(?<host>)$");
+            p.setPartitionsMap(partitionsMap);
+            if (separator != null) {
+                p.addPartitionsSeparator(separator);
+            }
+        }
+
+        ChainsTraceGraph seqGraph = seqParser
+                .generateDirectTORelation(seqParser.parseTraceFiles(files, 1));
+        assertTrue(streamParser.canParseToGraph());
+        ChainsTraceGraph streamGraph = streamParser
+                .parseTraceFilesToGraph(files);
+
+        assertEquals(seqGraph.getNumTraces(), streamGraph.getNumTraces());
+        assertEquals(seqGraph.getNodes().size(), streamGraph.getNodes().size());
+        Iterator<EventNode> streamNodes = streamGraph.getNodes().iterator();
+        for (EventNode seq : seqGraph.getNodes()) {
+            EventNode stream = streamNodes.next();
+            assertEquals(seq.getEType(), stream.getEType());
+            assertEquals(seq.getEvent().getLineNum(), stream.getEvent()
+                    .getLineNum());
+            assertEquals(seq.getTraceID(), stream.getTraceID());
+            assertEquals(seq.getAllTransitions().size(), stream
+                    .getAllTransitions().size());
+            for (int i = 0; i < seq.getAllTransitions().size(); i++) {
+                assertEquals(seq.getAllTransitions().get(i).getTarget()
+                        .getEvent(), stream.getAllTransitions().get(i)
+                        .getTarget().getEvent());
+            }
+        }
+    }
+
+    /**
+     * Streaming parse with the default (per-file) partitions mapping and a
+     * partitions separator, in which traces are added to the graph at each
+     * separator.
+     */
+    @Test
+    public void parseTraceFilesToGraphWithSeparatorTest() throws Exception {
+        AbstractMain.getInstance().options.debugParse = false;
+        List<File> files = writeLogFiles("stream-parse-sep", 3, 50, 11);
+        checkStreamingParseMatchesSequential(files,
+                AbstractOptions.partitionRegExpDefault, "^--$");
+    }
+
+    /**
+     * Streaming parse with partitions that span files, which are only added to
+     * the graph at the end of the input.
+     */
+    @Test
+    public void parseTraceFilesToGraphAcrossFilesTest() throws Exception {
+        AbstractMain.getInstance().options.debugParse = false;
+        List<File> files = writeLogFiles("stream-parse", 3, 50, 0);
+        checkStreamingParseMatchesSequential(files, "\\k<host>", null);
+    }
+
+    /**
+     * Parsed events do not keep the log line text when discardLogLines is set.
+     */
+    @Test
+    public void discardLogLinesTest() throws Exception {
+        AbstractMain main = AbstractMain.getInstance();
+        main.options.debugParse = false;
+        main.options.discardLogLines = true;
+        try {
+            List<File> files = writeLogFiles("discard-lines", 1, 10, 0);
+            TraceParser parser = new TraceParser();
+            parser.addRegex("^(?<TIME>)(?<TYPE>)(?<host>)$");
+            List<EventNode> events = parser.parseTraceFiles(files, 1);
+            assertEquals(10, events.size());
+            for (int i = 0; i < events.size(); i++) {
+                assertNull(events.get(i).getLine());
+                assertEquals(i + 1, events.get(i).getEvent().getLineNum());
+            }
+        } finally {
+            main.options.discardLogLines = false;
+        }
+    }
 }
@@ -3,6 +3,7 @@ package synoptic.tests.units;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
 
 import java.util.Arrays;
 import java.util.LinkedList;
@@ -81,6 +82,45 @@ public class VectorTimeTests extends SynopticTest {
         v1.equals(v2);
     }
 
+    /**
+     * Vector times are parsed as by Integer.parseInt, including clocks that
+     * are not small, negative clocks, and trailing commas.
+     */
+    @Test
+    public void parseTest() {
+        VectorTime v = new VectorTime("1000,-3,2147483647,-2147483648,+5,");
+        assertEquals(Arrays.asList(new Integer[] { 1000, -3, Integer.MAX_VALUE,
+                Integer.MIN_VALUE, 5 }), v.getVector());
+        assertEquals(5, v.size());
+        assertEquals(1000, v.get(0));
+
+        String[] invalid = new String[] { "", "1,,2", " 1", "1 ,2", "-",
+                "2147483648", "a" };
+        for (String timeStr : invalid) {
+            try {
+                new VectorTime(timeStr);
+                fail("Expected a NumberFormatException for " + timeStr);
+            } catch (NumberFormatException e) {
+                // Expected.
+            }
+        }
+    }
+
+    /**
+     * Vector times with equal clocks that are not small are equal, and have
+     * equal hash codes.
+     */
+    @Test
+    public void equalityLargeClocksTest() {
+        VectorTime v1, v2;
+        v1 = new VectorTime("1000,2000");
+        v2 = new VectorTime(Arrays.asList(new Integer[] { 1000, 2000 }));
+        assertTrue(v1.equals(v2));
+        assertEquals(v1.hashCode(), v2.hashCode());
+        assertEquals(v1, new VectorTime(v2.toArray()));
+        assertFalse(v1.lessThan(v2));
+    }
+
     /**
      * Test the step() method.
      */
@@ -291,6 +331,8 @@ public class VectorTimeTests extends SynopticTest {
                 .mapLogEventsToNodes(parsedEvents);
 
         assertTrue(map.size() == 2);
+        assertEquals(parsedEvents.subList(0, 5), map.get(0));
+        assertEquals(parsedEvents.subList(5, 9), map.get(1));
         for (int i = 0; i < 5; i++) {
             assertTrue(VectorTime.determineIthEvent(0, parsedEvents, i + 1) == parsedEvents
                     .get(i));
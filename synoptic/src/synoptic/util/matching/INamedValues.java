@@ -0,0 +1,8 @@
+package synoptic.util.matching;
+
+// A read-only set of named string values, e.g., the fields of a parsed line.
+public interface INamedValues {
+
+    // Returns the value named name, or null if there is no such value.
+    String get(String name);
+}
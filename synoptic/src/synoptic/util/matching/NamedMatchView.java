@@ -0,0 +1,115 @@
+package synoptic.util.matching;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A reusable view of the named groups captured by a pattern, extended with a
+ * fixed set of extra named fields. The names of the groups and fields are
+ * resolved to slots once, when the view is created. Each call to matches()
+ * then reuses the same matcher, and group values are read from the matcher
+ * only when they are requested. So, unlike NamedMatcher.namedGroups(), using
+ * the view does not allocate a map for every matched input.
+ * <p>
+ * The slots are ordered as the pattern's groups followed by the extra fields
+ * that are not also groups. The value of a group can be overridden with set(),
+ * and the values of the extra fields are null until they are set. A view is
+ * not thread-safe.
+ * </p>
+ */
+public class NamedMatchView implements INamedValues {
+
+    private final NamedMatcher matcher;
+
+    // Number of groups in the pattern, which occupy the first slots.
+    private final int numGroups;
+
+    private final List<String> names;
+    private final Map<String, Integer> slots;
+
+    // Values set since the last match. Overrides group values.
+    private final String[] values;
+
+    public NamedMatchView(NamedPattern pattern, Collection<String> extraFields) {
+        matcher = pattern.matcher("");
+        numGroups = pattern.groupNames().size();
+        names = new ArrayList<String>(pattern.groupNames());
+        for (String field : extraFields) {
+            if (!names.contains(field)) {
+                names.add(field);
+            }
+        }
+        slots = new HashMap<String, Integer>();
+        for (int i = 0; i < names.size(); i++) {
+            slots.put(names.get(i), i);
+        }
+        values = new String[names.size()];
+    }
+
+    /**
+     * Matches the entire input against the pattern, and clears all of the
+     * values that were set for the previous input.
+     */
+    public boolean matches(CharSequence input) {
+        Arrays.fill(values, null);
+        return matcher.reset(input).matches();
+    }
+
+    /**
+     * Returns the number of slots (groups and extra fields).
+     */
+    public int size() {
+        return names.size();
+    }
+
+    /**
+     * Returns the name of the group or field in a slot.
+     */
+    public String name(int slot) {
+        return names.get(slot);
+    }
+
+    /**
+     * Returns the slot of a named group or field, or -1 if there is no such
+     * group or field.
+     */
+    public int slot(String name) {
+        Integer slot = slots.get(name);
+        return slot == null ? -1 : slot;
+    }
+
+    /**
+     * Returns whether name is the name of a group or field.
+     */
+    public boolean contains(String name) {
+        return slots.containsKey(name);
+    }
+
+    /**
+     * Returns the value in a slot: the value set for the slot, otherwise the
+     * value captured by the group in the slot (for the last successful match).
+     */
+    public String get(int slot) {
+        if (values[slot] != null || slot >= numGroups) {
+            return values[slot];
+        }
+        return matcher.group(slot + 1);
+    }
+
+    @Override
+    public String get(String name) {
+        Integer slot = slots.get(name);
+        return slot == null ? null : get(slot);
+    }
+
+    /**
+     * Sets the value of the named group or field until the next match.
+     */
+    public void set(String name, String value) {
+        values[slots.get(name)] = value;
+    }
+}
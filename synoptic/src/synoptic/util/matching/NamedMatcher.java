@@ -117,7 +117,7 @@ public class NamedMatcher implements INamedMatchResult {
     }
 
     private int groupIndex(String groupName) {
-        return parentPattern.groupNames().indexOf(groupName) + 1;
+        return parentPattern.groupIndex(groupName);
     }
 
     public int start() {
@@ -4,8 +4,10 @@
 
 package synoptic.util.matching;
 
+import java.util.HashMap;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Map;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
@@ -21,6 +23,8 @@ public class NamedPattern {
     private final Pattern pattern;
     private final String namedPattern;
     private final List<String> groupNames = new LinkedList<String>();
+    // Maps each group name to its (1-based) group index.
+    private final Map<String, Integer> groupIndexes = new HashMap<String, Integer>();
 
     public static NamedPattern compile(String regex) throws Exception {
         return new NamedPattern(regex, 0);
@@ -46,6 +50,7 @@ public class NamedPattern {
                 throw parseException;
             }
             groupNames.add(g);
+            groupIndexes.put(g, groupNames.size());
         }
     }
 
@@ -73,6 +78,12 @@ public class NamedPattern {
         return groupNames;
     }
 
+    // Returns the index of the named group, or 0 if there is no such group.
+    public int groupIndex(String groupName) {
+        Integer index = groupIndexes.get(groupName);
+        return index == null ? 0 : index;
+    }
+
     public String[] split(CharSequence input, int limit) {
         return pattern.split(input, limit);
     }
@@ -0,0 +1,363 @@
+package synoptic.util.matching;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * An index over an ordered list of patterns that is used to find the first
+ * pattern (in list order) that matches a line, without trying every pattern
+ * on every line. The index relies on two pieces of information:
+ * <ul>
+ * <li>The literal text that each pattern requires a matching line to start
+ * with, and to contain. A pattern is only tried on a line that has its
+ * required prefix and contains its required literals.</li>
+ * <li>The number of lines that each pattern has matched. Patterns that match
+ * often are tried first, but a pattern is never tried before an earlier
+ * pattern (in list order) that might match the same line. Two patterns can
+ * only be reordered when they require different, incompatible, prefixes.
+ * Therefore, the first pattern in try order that matches a line is also the
+ * first pattern in list order that matches the line.</li>
+ * </ul>
+ * The index is not thread-safe.
+ */
+public class NamedPatternDispatcher {
+
+    // Number of recorded hits after which the try order is recomputed.
+    private static final int reorderInterval = 1000;
+
+    private final List<NamedPattern> patterns;
+
+    // The literal prefix required by each pattern ("" if none).
+    private final String[] prefixes;
+
+    // The literals (other than the prefix) required by each pattern.
+    private final String[][] literals;
+
+    // mayOverlap[i][j] is true if patterns i and j might match the same line.
+    private final boolean[][] mayOverlap;
+
+    // The number of lines matched by each pattern.
+    private final long[] hits;
+
+    private int[] tryOrder;
+    private int hitsSinceReorder = 0;
+
+    public NamedPatternDispatcher(List<NamedPattern> patterns) {
+        this.patterns = patterns;
+        int n = patterns.size();
+        prefixes = new String[n];
+        literals = new String[n][];
+        hits = new long[n];
+        tryOrder = new int[n];
+
+        for (int i = 0; i < n; i++) {
+            tryOrder[i] = i;
+            List<String> required = requiredLiterals(patterns.get(i)
+                    .standardPattern());
+            if (required == null) {
+                prefixes[i] = "";
+                literals[i] = new String[0];
+            } else {
+                prefixes[i] = required.get(0);
+                literals[i] = required.subList(1, required.size()).toArray(
+                        new String[required.size() - 1]);
+            }
+        }
+
+        mayOverlap = new boolean[n][n];
+        for (int i = 0; i < n; i++) {
+            for (int j = 0; j < n; j++) {
+                mayOverlap[i][j] = prefixes[i].startsWith(prefixes[j])
+                        || prefixes[j].startsWith(prefixes[i]);
+            }
+        }
+    }
+
+    /**
+     * Returns the indices of the patterns in the order in which they should be
+     * tried on a line. The returned array must not be modified.
+     */
+    public int[] tryOrder() {
+        return tryOrder;
+    }
+
+    /**
+     * Returns false if the pattern at index i cannot match line, and true if
+     * it might.
+     */
+    public boolean mayMatch(int i, CharSequence line) {
+        if (!startsWith(line, prefixes[i])) {
+            return false;
+        }
+        for (String literal : literals[i]) {
+            if (!contains(line, literal)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean startsWith(CharSequence line, String prefix) {
+        if (line instanceof String) {
+            return ((String) line).startsWith(prefix);
+        }
+        if (line.length() < prefix.length()) {
+            return false;
+        }
+        for (int i = 0; i < prefix.length(); i++) {
+            if (line.charAt(i) != prefix.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean contains(CharSequence line, String literal) {
+        if (line instanceof String) {
+            return ((String) line).contains(literal);
+        }
+        int last = line.length() - literal.length();
+        for (int start = 0; start <= last; start++) {
+            int i = 0;
+            while (i < literal.length()
+                    && line.charAt(start + i) == literal.charAt(i)) {
+                i++;
+            }
+            if (i == literal.length()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Returns the pattern at index i.
+     */
+    public NamedPattern getPattern(int i) {
+        return patterns.get(i);
+    }
+
+    /**
+     * Records that the pattern at index i matched a line, and periodically
+     * recomputes the try order from the recorded hits.
+     */
+    public void recordHit(int i) {
+        hits[i]++;
+        hitsSinceReorder++;
+        if (hitsSinceReorder == reorderInterval) {
+            hitsSinceReorder = 0;
+            tryOrder = computeTryOrder();
+        }
+    }
+
+    /**
+     * Returns the number of lines matched by the pattern at index i.
+     */
+    public long getHits(int i) {
+        return hits[i];
+    }
+
+    /**
+     * Orders the patterns by decreasing number of hits, such that every
+     * pattern is preceded by all of the earlier patterns (in list order) that
+     * might match the same lines. Ties are broken by list order.
+     */
+    private int[] computeTryOrder() {
+        int n = patterns.size();
+        int[] order = new int[n];
+        boolean[] placed = new boolean[n];
+        for (int k = 0; k < n; k++) {
+            int next = -1;
+            for (int j = 0; j < n; j++) {
+                if (placed[j] || (next != -1 && hits[j] <= hits[next])) {
+                    continue;
+                }
+                boolean ready = true;
+                for (int i = 0; i < j; i++) {
+                    if (!placed[i] && mayOverlap[i][j]) {
+                        ready = false;
+                        break;
+                    }
+                }
+                if (ready) {
+                    next = j;
+                }
+            }
+            // The first unplaced pattern is always ready, so next is set.
+            order[k] = next;
+            placed[next] = true;
+        }
+        return order;
+    }
+
+    /**
+     * Returns the literal strings that every string matched (in its entirety)
+     * by regex must contain. The first element is the literal prefix of every
+     * matched string, and is "" if there is no such prefix. Only literals that
+     * appear outside of groups are extracted. Returns null if the regex uses a
+     * construct that this analysis does not handle, such as alternation at the
+     * top level, inline flags, or quoting.
+     */
+    public static List<String> requiredLiterals(String regex) {
+        List<String> required = new ArrayList<String>();
+        required.add("");
+
+        StringBuilder run = new StringBuilder();
+        // Whether every token so far was a (non-optional) literal character.
+        boolean inPrefix = true;
+        int i = regex.startsWith("^") ? 1 : 0;
+        while (i < regex.length()) {
+            char c = regex.charAt(i);
+            int tokenEnd;
+            char literal = 0;
+            boolean isLiteral = false;
+
+            if (c == '\\') {
+                if (i + 1 >= regex.length()) {
+                    return null;
+                }
+                char d = regex.charAt(i + 1);
+                if (!Character.isLetterOrDigit(d)) {
+                    isLiteral = true;
+                    literal = d;
+                } else if ("sSdDwWbBAzZGtnrfeahHvVR".indexOf(d) == -1) {
+                    // Back-references, code points, properties, quoting.
+                    return null;
+                }
+                tokenEnd = i + 2;
+            } else if (c == '[') {
+                tokenEnd = skipCharClass(regex, i);
+            } else if (c == '(') {
+                if (isInlineFlags(regex, i)) {
+                    return null;
+                }
+                tokenEnd = skipGroup(regex, i);
+            } else if (c == '*' || c == '+' || c == '?' || c == '{') {
+                // A quantifier, which might make the previous token optional.
+                if (run.length() > 0) {
+                    run.setLength(run.length() - 1);
+                }
+                tokenEnd = (c == '{') ? regex.indexOf('}', i) + 1 : i + 1;
+            } else if (c == '|' || c == ')') {
+                return null;
+            } else if (c == '.' || c == '$' || c == '^') {
+                tokenEnd = i + 1;
+            } else {
+                isLiteral = true;
+                literal = c;
+                tokenEnd = i + 1;
+            }
+
+            if (tokenEnd <= i) {
+                return null;
+            }
+            if (isLiteral) {
+                run.append(literal);
+            } else {
+                flushRun(required, run, inPrefix);
+                inPrefix = false;
+            }
+            i = tokenEnd;
+        }
+        flushRun(required, run, inPrefix);
+        return required;
+    }
+
+    /**
+     * Adds the run of literal characters to the required literals, as the
+     * prefix if inPrefix is true, and clears the run.
+     */
+    private static void flushRun(List<String> required, StringBuilder run,
+            boolean inPrefix) {
+        if (run.length() > 0) {
+            if (inPrefix) {
+                required.set(0, run.toString());
+            } else {
+                required.add(run.toString());
+            }
+            run.setLength(0);
+        }
+    }
+
+    /**
+     * Returns whether the group starting at index start of regex is an inline
+     * flags expression, e.g., (?i), which applies to the rest of the regex.
+     */
+    private static boolean isInlineFlags(String regex, int start) {
+        if (!regex.startsWith("(?", start)) {
+            return false;
+        }
+        int i = start + 2;
+        while (i < regex.length()
+                && (Character.isLetter(regex.charAt(i)) || regex.charAt(i) == '-')) {
+            i++;
+        }
+        return i > start + 2 && i < regex.length() && regex.charAt(i) == ')';
+    }
+
+    /**
+     * Returns the index just past the group that starts at index start of
+     * regex, or -1 if the group is not closed.
+     */
+    private static int skipGroup(String regex, int start) {
+        int depth = 0;
+        int i = start;
+        while (i < regex.length()) {
+            char c = regex.charAt(i);
+            if (c == '\\') {
+                i += 2;
+                continue;
+            }
+            if (c == '[') {
+                i = skipCharClass(regex, i);
+                if (i == -1) {
+                    return -1;
+                }
+                continue;
+            }
+            if (c == '(') {
+                depth++;
+            } else if (c == ')') {
+                depth--;
+                if (depth == 0) {
+                    return i + 1;
+                }
+            }
+            i++;
+        }
+        return -1;
+    }
+
+    /**
+     * Returns the index just past the character class that starts at index
+     * start of regex, or -1 if the class is not closed.
+     */
+    private static int skipCharClass(String regex, int start) {
+        int depth = 0;
+        int i = start;
+        while (i < regex.length()) {
+            char c = regex.charAt(i);
+            if (c == '\\') {
+                i += 2;
+                continue;
+            }
+            if (c == '[') {
+                depth++;
+                // A ']' right after the opening bracket (or its negation) is
+                // a literal.
+                if (regex.startsWith("^]", i + 1)) {
+                    i += 2;
+                } else if (regex.startsWith("]", i + 1)) {
+                    i++;
+                }
+            } else if (c == ']') {
+                depth--;
+                if (depth == 0) {
+                    return i + 1;
+                }
+            }
+            i++;
+        }
+        return -1;
+    }
+}
@@ -44,6 +44,28 @@ public class NamedSubstitution {
         return result.toString();
     }
 
+    // Same as substitute(Map), but looks up the values in a (reusable) set of
+    // named values instead of a map.
+    public String substitute(INamedValues values) {
+        StringBuilder result = new StringBuilder();
+        for (int i = 1; i < contents.size(); i += 2) {
+            result.append(contents.get(i - 1));
+            result.append(values.get(contents.get(i)));
+        }
+        result.append(contents.get(contents.size() - 1));
+        return result.toString();
+    }
+
+    // Whether or not the substitution back-references the named group.
+    public boolean references(String groupName) {
+        for (int i = 1; i < contents.size(); i += 2) {
+            if (contents.get(i).equals(groupName)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
     @Override
     public String toString() {
         return contents.toString();
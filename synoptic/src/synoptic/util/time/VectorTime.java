@@ -1,8 +1,11 @@
 package synoptic.util.time;
 
+import java.util.AbstractList;
 import java.util.ArrayList;
-import java.util.LinkedList;
+import java.util.Arrays;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 import synoptic.model.EventNode;
 
@@ -11,9 +14,15 @@ import synoptic.model.EventNode;
  * integer clock at index i represents the local time of process i. If the
  * system is distributed, then a process is a host. Therefore, the vector
  * represents a point in time in a multiprocess (or distributed) execution.
+ * <p>
+ * The clocks are stored in a primitive int array that is never changed after
+ * construction, so comparisons do not unbox or allocate, and the hash code is
+ * computed once.
+ * </p>
  */
 public class VectorTime implements ITime {
-    ArrayList<Integer> vector = new ArrayList<Integer>();
+    private final int[] vector;
+    private final int hash;
 
     /**
      * Determines and returns the ith event for node identified by nodeIndex in
@@ -29,7 +38,7 @@ public class VectorTime implements ITime {
             if (!(etime instanceof VectorTime)) {
                 throw new WrongTimeTypeException();
             }
-            if (((VectorTime) etime).vector.get(nodeIndex) != i) {
+            if (((VectorTime) etime).vector[nodeIndex] != i) {
                 continue;
             }
             if (earliestEvent == null) {
@@ -53,6 +62,10 @@ public class VectorTime implements ITime {
      * for all e' in events, e'.time[n] == i, e < e'
      * </pre>
      * 
+     * The result is the same as calling determineIthEvent for each node and
+     * i = 1, 2, ... until there is no ith event, but the candidates for every
+     * node and i are found in a single pass over the events.
+     * 
      * @param events
      * @return A list in which an item a index j is a (totally ordered) list of
      *         events that occurred locally at node j.
@@ -62,7 +75,6 @@ public class VectorTime implements ITime {
         if (events == null || events.size() == 0) {
             return null;
         }
-        LinkedList<List<EventNode>> map = new LinkedList<List<EventNode>>();
 
         ITime e0time = events.get(0).getEvent().getTime();
         if (!(e0time instanceof VectorTime)) {
@@ -70,16 +82,43 @@ public class VectorTime implements ITime {
         }
 
         // The number of nodes is indicated by the length of the vector time.
-        int numNodes = ((VectorTime) e0time).vector.size();
+        int numNodes = ((VectorTime) e0time).vector.length;
+
+        // earliest.get(nodeIndex).get(i) is the earliest found ith event at
+        // node nodeIndex so far.
+        List<Map<Integer, EventNode>> earliest = new ArrayList<Map<Integer, EventNode>>(
+                numNodes);
+        for (int nodeIndex = 0; nodeIndex < numNodes; nodeIndex++) {
+            earliest.add(new HashMap<Integer, EventNode>());
+        }
+        for (EventNode e : events) {
+            ITime etime = e.getEvent().getTime();
+            if (!(etime instanceof VectorTime)) {
+                throw new WrongTimeTypeException();
+            }
+            VectorTime vtime = (VectorTime) etime;
+            if (vtime.vector.length != numNodes) {
+                throw new NotComparableVectorsException(e0time, vtime);
+            }
+            for (int nodeIndex = 0; nodeIndex < numNodes; nodeIndex++) {
+                Map<Integer, EventNode> nodeEarliest = earliest.get(nodeIndex);
+                Integer i = vtime.vector[nodeIndex];
+                EventNode earliestEvent = nodeEarliest.get(i);
+                if (earliestEvent == null
+                        || vtime.lessThan(earliestEvent.getTime())) {
+                    nodeEarliest.put(i, e);
+                }
+            }
+        }
 
         // For each node, for all i determine the ith local event at the node.
-        EventNode e;
-        LinkedList<EventNode> eventList;
+        List<List<EventNode>> map = new ArrayList<List<EventNode>>(numNodes);
         for (int nodeIndex = 0; nodeIndex < numNodes; nodeIndex++) {
+            Map<Integer, EventNode> nodeEarliest = earliest.get(nodeIndex);
+            List<EventNode> eventList = new ArrayList<EventNode>();
             int i = 1;
-            eventList = new LinkedList<EventNode>();
             while (true) {
-                e = determineIthEvent(nodeIndex, events, i);
+                EventNode e = nodeEarliest.get(i);
                 if (e == null) {
                     // No ith event exists for nodeIndex.
                     break;
@@ -99,11 +138,29 @@ public class VectorTime implements ITime {
      *            string input representing a vtime
      */
     public VectorTime(String timeStr) throws IllegalArgumentException {
-        String[] times = timeStr.split(",");
-        for (String t : times) {
-            Integer i = Integer.parseInt(t);
-            vector.add(i);
+        // As with String.split(","), trailing empty clocks are dropped.
+        int end = timeStr.length();
+        while (end > 0 && timeStr.charAt(end - 1) == ',') {
+            end--;
+        }
+        int length = 1;
+        for (int pos = 0; pos < end; pos++) {
+            if (timeStr.charAt(pos) == ',') {
+                length++;
+            }
+        }
+        vector = new int[end == 0 && timeStr.length() > 0 ? 0 : length];
+
+        int start = 0;
+        for (int i = 0; i < vector.length; i++) {
+            int comma = timeStr.indexOf(',', start);
+            if (comma < 0 || comma > end) {
+                comma = end;
+            }
+            vector[i] = parseClock(timeStr, start, comma);
+            start = comma + 1;
         }
+        hash = Arrays.hashCode(vector);
     }
 
     /**
@@ -113,7 +170,23 @@ public class VectorTime implements ITime {
      *            input vector
      */
     public VectorTime(List<Integer> vector) throws IllegalArgumentException {
-        this.vector.addAll(vector);
+        this.vector = new int[vector.size()];
+        int i = 0;
+        for (int clock : vector) {
+            this.vector[i++] = clock;
+        }
+        hash = Arrays.hashCode(this.vector);
+    }
+
+    /**
+     * Builds a VectorTime from an array of clocks, which is copied.
+     * 
+     * @param vector
+     *            input vector
+     */
+    public VectorTime(int[] vector) {
+        this.vector = vector.clone();
+        hash = Arrays.hashCode(this.vector);
     }
 
     /**
@@ -122,7 +195,45 @@ public class VectorTime implements ITime {
      * @param i
      */
     public VectorTime(Integer i) {
-        vector.add(i);
+        vector = new int[] { i };
+        hash = Arrays.hashCode(vector);
+    }
+
+    /**
+     * Parses the clock in timeStr between begin and end, without creating a
+     * substring unless the clock is not a plain decimal int.
+     */
+    private static int parseClock(String timeStr, int begin, int end) {
+        int pos = begin;
+        boolean negative = false;
+        if (pos < end && timeStr.charAt(pos) == '-') {
+            negative = true;
+            pos++;
+        }
+        // Accumulate negatively, as Integer.parseInt does, so that
+        // Integer.MIN_VALUE can be parsed.
+        int result = 0;
+        int limit = negative ? Integer.MIN_VALUE : -Integer.MAX_VALUE;
+        boolean plain = pos < end && end - pos <= 10;
+        for (; plain && pos < end; pos++) {
+            int digit = timeStr.charAt(pos) - '0';
+            if (digit < 0 || digit > 9 || result < limit / 10) {
+                plain = false;
+                break;
+            }
+            result *= 10;
+            if (result < limit + digit) {
+                plain = false;
+                break;
+            }
+            result -= digit;
+        }
+        if (!plain) {
+            // Integer.parseInt handles the other valid forms (e.g. a leading
+            // '+'), and throws the usual NumberFormatException otherwise.
+            return Integer.parseInt(timeStr.substring(begin, end));
+        }
+        return negative ? result : -result;
     }
 
     /*
@@ -135,38 +246,76 @@ public class VectorTime implements ITime {
         if (!(t instanceof VectorTime)) {
             throw new NonComparableTimesException(this, t);
         }
-        VectorTime vTime = (VectorTime) t;
+        int[] other = ((VectorTime) t).vector;
 
         boolean foundStrictlyLess = false;
 
-        if (vector.size() != vTime.vector.size()) {
+        if (vector.length != other.length) {
             // Two vectors are only comparable if they have the same length.
             throw new NotComparableVectorsException(this, t);
         }
 
-        for (int i = 0; i < vector.size(); ++i) {
-            if (vector.get(i) < vTime.vector.get(i)) {
+        for (int i = 0; i < vector.length; ++i) {
+            if (vector[i] < other[i]) {
                 foundStrictlyLess = true;
-            } else if (vector.get(i) > vTime.vector.get(i)) {
+            } else if (vector[i] > other[i]) {
                 return false;
             }
         }
         return foundStrictlyLess;
     }
 
+    /**
+     * @return The components of this vector time
+     */
+    public List<Integer> getVector() {
+        return new AbstractList<Integer>() {
+            @Override
+            public Integer get(int index) {
+                return vector[index];
+            }
+
+            @Override
+            public int size() {
+                return vector.length;
+            }
+        };
+    }
+
+    /**
+     * @return The clock at index
+     */
+    public int get(int index) {
+        return vector[index];
+    }
+
+    /**
+     * @return The number of clocks in this vector time
+     */
+    public int size() {
+        return vector.length;
+    }
+
+    /**
+     * @return A copy of the clocks of this vector time
+     */
+    public int[] toArray() {
+        return vector.clone();
+    }
+
     /**
      * @return Whether or not this is a unit vector
      */
     public boolean isUnitVector() {
         boolean sawOne = false;
-        for (int i = 0; i < vector.size(); ++i) {
-            if (sawOne && vector.get(i) == 1) {
+        for (int i = 0; i < vector.length; ++i) {
+            if (sawOne && vector[i] == 1) {
                 return false;
             }
-            if (vector.get(i) == 1) {
+            if (vector[i] == 1) {
                 sawOne = true;
             }
-            if (vector.get(i) > 1) {
+            if (vector[i] > 1) {
                 return false;
             }
         }
@@ -177,7 +326,7 @@ public class VectorTime implements ITime {
      * @return Whether or not the vector is of length 1
      */
     public boolean isSingular() {
-        return vector.size() == 1;
+        return vector.length == 1;
     }
 
     /**
@@ -187,9 +336,8 @@ public class VectorTime implements ITime {
      * @return the newly created, incremented vtime
      */
     public VectorTime step(int index) {
-        List<Integer> vec = new ArrayList<Integer>();
-        vec.addAll(this.vector);
-        vec.set(index, vec.get(index) + 1);
+        int[] vec = vector.clone();
+        vec[index]++;
         return new VectorTime(vec);
     }
 
@@ -200,15 +348,7 @@ public class VectorTime implements ITime {
      */
     @Override
     public int hashCode() {
-        final int prime = 31;
-        int result = 1;
-        result = prime * result + (vector == null ? 0 : vector.hashCode());
-        if (vector != null) {
-            for (int i = 0; i < vector.size(); ++i) {
-                result += prime * result + vector.get(i).hashCode();
-            }
-        }
-        return result;
+        return hash;
     }
 
     /*
@@ -228,22 +368,14 @@ public class VectorTime implements ITime {
             return false;
         }
         VectorTime other = (VectorTime) obj;
-        if (vector == null) {
-            if (other.vector != null) {
-                return false;
-            }
-        } else {
-            if (vector.size() != other.vector.size()) {
-                // Two vectors are only comparable if they have the same length.
-                throw new NotComparableVectorsException(this, other);
-            }
-            for (int i = 0; i < vector.size(); ++i) {
-                if (vector.get(i) != other.vector.get(i)) {
-                    return false;
-                }
-            }
+        if (vector.length != other.vector.length) {
+            // Two vectors are only comparable if they have the same length.
+            throw new NotComparableVectorsException(this, other);
+        }
+        if (hash != other.hash) {
+            return false;
         }
-        return true;
+        return Arrays.equals(vector, other.vector);
     }
 
     /*
@@ -253,7 +385,7 @@ public class VectorTime implements ITime {
      */
     @Override
     public String toString() {
-        return vector.toString();
+        return Arrays.toString(vector);
     }
 
     /**